@@ -33,7 +33,7 @@ import org.xhy.domain.llm.service.HighAvailabilityDomainService;
 import org.xhy.domain.llm.service.LLMDomainService;
 import org.xhy.domain.user.service.UserSettingsDomainService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.xhy.domain.memory.service.MemoryDomainService;
+import org.xhy.domain.memory.service.MemoryRecallDomainService;
 import org.xhy.domain.memory.service.MemoryExtractorService;
 import org.springframework.scheduling.annotation.Async;
 import org.xhy.application.conversation.service.message.rag.RagChatContext;
@@ -82,10 +82,10 @@ public abstract class AbstractMessageHandler {
     protected final AccountDomainService accountDomainService;
     protected final ChatSessionManager chatSessionManager;
     @Autowired
-    protected MemoryDomainService memoryDomainService;
+    protected MemoryRecallDomainService memoryRecallDomainService;
     @Autowired
     protected MemoryExtractorService memoryExtractorService;
-    // 无需事件或单独服务，直接调用异步方法
+    // 无需事件或单独服务，抽取服务按会话合并发言后异步执行
     // 记忆注入常量（默认开启）
     private static final String MEMORY_SECTION_TITLE = "[记忆要点]";
     private static final int MEMORY_TOP_K = 5;
@@ -203,9 +203,9 @@ public abstract class AbstractMessageHandler {
         if (StringUtils.isBlank(userId) || StringUtils.isBlank(sessionId) || StringUtils.isBlank(userText))
             return;
 
-        // 直接调用异步方法，避免阻塞主流程
+        // 登记到会话抽取窗口，攒够轮数或空闲后异步抽取，不阻塞主流程
         try {
-            memoryExtractorService.extractAndPersistAsync(userId, sessionId, userText);
+            memoryExtractorService.submitTurn(userId, sessionId, userText);
         } catch (Exception ignore) {
             // 异步任务调度异常不影响主流程
         }
@@ -560,8 +560,8 @@ public abstract class AbstractMessageHandler {
                     || !StringUtils.isNotBlank(chatContext.getUserMessage())) {
                 return "";
             }
-            var results = memoryDomainService.searchRelevant(chatContext.getUserId(), chatContext.getUserMessage(),
-                    topK);
+            var results = memoryRecallDomainService.recall(chatContext.getUserId(), chatContext.getSessionId(),
+                    chatContext.getUserMessage(), topK);
             if (results == null || results.isEmpty()) {
                 return "";
             }
@@ -12,6 +12,7 @@ import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.repository.DocumentUnitRepository;
 import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.domain.rag.service.RagQaDatasetDomainService;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
@@ -38,13 +39,16 @@ public class RagFileStorageStrategy implements FileStorageStrategy {
     private final FileDetailRepository fileDetailRepository;
     private final DocumentUnitRepository documentUnitRepository;
     private final EmbeddingStore<TextSegment> embeddingStore;
+    private final RagQaDatasetDomainService ragQaDatasetDomainService;
 
     public RagFileStorageStrategy(FileDetailRepository fileDetailRepository,
             DocumentUnitRepository documentUnitRepository,
-            @Qualifier("initEmbeddingStore") EmbeddingStore<TextSegment> embeddingStore) {
+            @Qualifier("initEmbeddingStore") EmbeddingStore<TextSegment> embeddingStore,
+            RagQaDatasetDomainService ragQaDatasetDomainService) {
         this.fileDetailRepository = fileDetailRepository;
         this.documentUnitRepository = documentUnitRepository;
         this.embeddingStore = embeddingStore;
+        this.ragQaDatasetDomainService = ragQaDatasetDomainService;
     }
 
     @Override
@@ -114,6 +118,9 @@ public class RagFileStorageStrategy implements FileStorageStrategy {
         // 3. 删除向量存储中的数据
         embeddingStore.removeAll(metadataKey(MetadataConstant.FILE_ID).isIn(fileDetailEntity.getId()));
 
+        // 4. 递增数据集入库代次，使检索缓存失效
+        ragQaDatasetDomainService.bumpIngestGeneration(fileDetailEntity.getDataSetId());
+
         return true;
     }
 
@@ -43,6 +43,14 @@ public class FileProcessProgressAssembler {
         dto.setOcrProcessProgress(entity.getOcrProcessProgress() != null ? entity.getOcrProcessProgress() : 0.0);
         dto.setEmbeddingProcessProgress(
                 entity.getEmbeddingProcessProgress() != null ? entity.getEmbeddingProcessProgress() : 0.0);
+        dto.setTextLayerPageCount(entity.getTextLayerPageCount() != null ? entity.getTextLayerPageCount() : 0);
+        dto.setOcrPageCount(entity.getOcrPageCount() != null ? entity.getOcrPageCount() : 0);
+        int cacheHits = entity.getEmbeddingCacheHits() != null ? entity.getEmbeddingCacheHits() : 0;
+        int cacheMisses = entity.getEmbeddingCacheMisses() != null ? entity.getEmbeddingCacheMisses() : 0;
+        dto.setEmbeddingCacheHits(cacheHits);
+        dto.setEmbeddingCacheMisses(cacheMisses);
+        dto.setEmbeddingCacheHitRatio(
+                cacheHits + cacheMisses > 0 ? (double) cacheHits / (cacheHits + cacheMisses) : 0.0);
 
         // 设置兼容性字段 - 从统一状态映射到旧状态
         mapToLegacyStatus(dto, processingStatus);
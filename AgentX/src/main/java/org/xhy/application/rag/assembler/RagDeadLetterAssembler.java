@@ -0,0 +1,36 @@
+package org.xhy.application.rag.assembler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.BeanUtils;
+import org.xhy.application.rag.dto.RagDeadLetterDTO;
+import org.xhy.domain.rag.constant.DeadLetterStatus;
+import org.xhy.domain.rag.model.RagDeadLetterEntity;
+
+/** RAG入库死信消息Assembler */
+public class RagDeadLetterAssembler {
+
+    /** Convert Entity to DTO using BeanUtils */
+    public static RagDeadLetterDTO toDTO(RagDeadLetterEntity entity) {
+        if (entity == null) {
+            return null;
+        }
+
+        RagDeadLetterDTO dto = new RagDeadLetterDTO();
+        BeanUtils.copyProperties(entity, dto);
+        if (entity.getStatus() != null) {
+            dto.setStatusDesc(DeadLetterStatus.fromCode(entity.getStatus()).getDescription());
+        }
+        return dto;
+    }
+
+    /** Convert Entity list to DTO list */
+    public static List<RagDeadLetterDTO> toDTOs(List<RagDeadLetterEntity> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return entities.stream().map(RagDeadLetterAssembler::toDTO).collect(Collectors.toList());
+    }
+}
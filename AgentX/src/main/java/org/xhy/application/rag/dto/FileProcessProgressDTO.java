@@ -37,6 +37,21 @@ public class FileProcessProgressDTO {
     /** 向量化处理进度百分比 */
     private Double embeddingProcessProgress;
 
+    /** 直接使用PDF文本层的页数（即节省的OCR调用次数） */
+    private Integer textLayerPageCount;
+
+    /** 经过OCR识别的页数 */
+    private Integer ocrPageCount;
+
+    /** 复用缓存向量的段落数 */
+    private Integer embeddingCacheHits;
+
+    /** 调用嵌入接口生成向量的段落数 */
+    private Integer embeddingCacheMisses;
+
+    /** 向量缓存命中率（0-1） */
+    private Double embeddingCacheHitRatio;
+
     /** 状态描述 */
     private String statusDescription;
 
@@ -207,4 +222,44 @@ public class FileProcessProgressDTO {
     public void setProcessProgress(Double processProgress) {
         this.processProgress = processProgress;
     }
-}
\ No newline at end of file
+
+    public Integer getTextLayerPageCount() {
+        return textLayerPageCount;
+    }
+
+    public void setTextLayerPageCount(Integer textLayerPageCount) {
+        this.textLayerPageCount = textLayerPageCount;
+    }
+
+    public Integer getOcrPageCount() {
+        return ocrPageCount;
+    }
+
+    public void setOcrPageCount(Integer ocrPageCount) {
+        this.ocrPageCount = ocrPageCount;
+    }
+
+    public Integer getEmbeddingCacheHits() {
+        return embeddingCacheHits;
+    }
+
+    public void setEmbeddingCacheHits(Integer embeddingCacheHits) {
+        this.embeddingCacheHits = embeddingCacheHits;
+    }
+
+    public Integer getEmbeddingCacheMisses() {
+        return embeddingCacheMisses;
+    }
+
+    public void setEmbeddingCacheMisses(Integer embeddingCacheMisses) {
+        this.embeddingCacheMisses = embeddingCacheMisses;
+    }
+
+    public Double getEmbeddingCacheHitRatio() {
+        return embeddingCacheHitRatio;
+    }
+
+    public void setEmbeddingCacheHitRatio(Double embeddingCacheHitRatio) {
+        this.embeddingCacheHitRatio = embeddingCacheHitRatio;
+    }
+}
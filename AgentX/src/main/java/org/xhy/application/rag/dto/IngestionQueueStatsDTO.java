@@ -0,0 +1,95 @@
+package org.xhy.application.rag.dto;
+
+import java.time.LocalDateTime;
+
+/** 用户入库排队统计DTO */
+public class IngestionQueueStatsDTO {
+
+    /** 用户ID */
+    private String userId;
+
+    /** 排队中的文件数 */
+    private Long pendingCount;
+
+    /** 已放行处理中的文件数 */
+    private Long inFlightCount;
+
+    /** 最早排队文件的入队时间 */
+    private LocalDateTime oldestPendingAt;
+
+    /** 最早排队文件已等待的时间（毫秒） */
+    private Long currentWaitMillis;
+
+    /** 统计窗口内放行的文件数 */
+    private Long dispatchedCount;
+
+    /** 统计窗口内放行文件的平均排队时间（毫秒） */
+    private Long avgWaitMillis;
+
+    /** 统计窗口内放行文件的最长排队时间（毫秒） */
+    private Long maxWaitMillis;
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public Long getPendingCount() {
+        return pendingCount;
+    }
+
+    public void setPendingCount(Long pendingCount) {
+        this.pendingCount = pendingCount;
+    }
+
+    public Long getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public void setInFlightCount(Long inFlightCount) {
+        this.inFlightCount = inFlightCount;
+    }
+
+    public LocalDateTime getOldestPendingAt() {
+        return oldestPendingAt;
+    }
+
+    public void setOldestPendingAt(LocalDateTime oldestPendingAt) {
+        this.oldestPendingAt = oldestPendingAt;
+    }
+
+    public Long getCurrentWaitMillis() {
+        return currentWaitMillis;
+    }
+
+    public void setCurrentWaitMillis(Long currentWaitMillis) {
+        this.currentWaitMillis = currentWaitMillis;
+    }
+
+    public Long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    public void setDispatchedCount(Long dispatchedCount) {
+        this.dispatchedCount = dispatchedCount;
+    }
+
+    public Long getAvgWaitMillis() {
+        return avgWaitMillis;
+    }
+
+    public void setAvgWaitMillis(Long avgWaitMillis) {
+        this.avgWaitMillis = avgWaitMillis;
+    }
+
+    public Long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(Long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+}
@@ -0,0 +1,150 @@
+package org.xhy.application.rag.dto;
+
+import java.time.LocalDateTime;
+
+/** RAG入库死信消息DTO */
+public class RagDeadLetterDTO {
+
+    /** 死信ID */
+    private String id;
+
+    /** 原队列 */
+    private String sourceQueue;
+
+    /** 原交换机 */
+    private String sourceExchange;
+
+    /** 原路由键 */
+    private String sourceRoutingKey;
+
+    /** 文件ID */
+    private String fileId;
+
+    /** 链路追踪ID */
+    private String traceId;
+
+    /** 原始消息体 */
+    private String payload;
+
+    /** 最后一次失败原因 */
+    private String errorMessage;
+
+    /** 已重试次数 */
+    private Integer retryCount;
+
+    /** 状态 */
+    private Integer status;
+
+    /** 状态描述 */
+    private String statusDesc;
+
+    /** 重放时间 */
+    private LocalDateTime replayedAt;
+
+    /** 进入死信时间 */
+    private LocalDateTime createdAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getSourceQueue() {
+        return sourceQueue;
+    }
+
+    public void setSourceQueue(String sourceQueue) {
+        this.sourceQueue = sourceQueue;
+    }
+
+    public String getSourceExchange() {
+        return sourceExchange;
+    }
+
+    public void setSourceExchange(String sourceExchange) {
+        this.sourceExchange = sourceExchange;
+    }
+
+    public String getSourceRoutingKey() {
+        return sourceRoutingKey;
+    }
+
+    public void setSourceRoutingKey(String sourceRoutingKey) {
+        this.sourceRoutingKey = sourceRoutingKey;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public Integer getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(Integer retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public String getStatusDesc() {
+        return statusDesc;
+    }
+
+    public void setStatusDesc(String statusDesc) {
+        this.statusDesc = statusDesc;
+    }
+
+    public LocalDateTime getReplayedAt() {
+        return replayedAt;
+    }
+
+    public void setReplayedAt(LocalDateTime replayedAt) {
+        this.replayedAt = replayedAt;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -28,6 +28,9 @@ public class RagQaDatasetDTO {
     /** 文件数量 */
     private Long fileCount;
 
+    /** 混合检索融合策略 */
+    private String fusionStrategy;
+
     /** 创建时间 */
     private LocalDateTime createdAt;
 
@@ -82,6 +85,14 @@ public class RagQaDatasetDTO {
         this.userId = userId;
     }
 
+    public String getFusionStrategy() {
+        return fusionStrategy;
+    }
+
+    public void setFusionStrategy(String fusionStrategy) {
+        this.fusionStrategy = fusionStrategy;
+    }
+
     public Long getFileCount() {
         return fileCount;
     }
@@ -21,6 +21,9 @@ public class UpdateDatasetRequest {
     @Size(max = 1000, message = "数据集说明不能超过1000个字符")
     private String description;
 
+    /** 混合检索融合策略：RRF/WEIGHTED_RRF/MIN_MAX/Z_SCORE/DBSF，为空时使用全局默认策略 */
+    private String fusionStrategy;
+
     public String getName() {
         return name;
     }
@@ -37,6 +40,14 @@ public class UpdateDatasetRequest {
         this.icon = icon;
     }
 
+    public String getFusionStrategy() {
+        return fusionStrategy;
+    }
+
+    public void setFusionStrategy(String fusionStrategy) {
+        this.fusionStrategy = fusionStrategy;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -0,0 +1,40 @@
+package org.xhy.application.rag.request;
+
+import org.xhy.interfaces.dto.Page;
+
+/** 查询入库死信消息请求 */
+public class QueryDeadLetterRequest extends Page {
+
+    /** 原队列 */
+    private String sourceQueue;
+
+    /** 文件ID */
+    private String fileId;
+
+    /** 状态：0-待处理，1-已重放 */
+    private Integer status;
+
+    public String getSourceQueue() {
+        return sourceQueue;
+    }
+
+    public void setSourceQueue(String sourceQueue) {
+        this.sourceQueue = sourceQueue;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+}
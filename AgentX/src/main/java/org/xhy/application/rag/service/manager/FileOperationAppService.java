@@ -14,6 +14,7 @@ import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.service.DocumentUnitDomainService;
 import org.xhy.domain.rag.service.FileDetailDomainService;
+import org.xhy.domain.rag.service.RagQaDatasetDomainService;
 import org.xhy.infrastructure.mq.enums.EventType;
 import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
 import org.dromara.x.file.storage.core.FileStorageService;
@@ -30,14 +31,16 @@ public class FileOperationAppService {
     private final DocumentUnitDomainService documentUnitDomainService;
     private final MessagePublisher messagePublisher;
     private final FileStorageService fileStorageService;
+    private final RagQaDatasetDomainService ragQaDatasetDomainService;
 
     public FileOperationAppService(FileDetailDomainService fileDetailDomainService,
             DocumentUnitDomainService documentUnitDomainService, MessagePublisher messagePublisher,
-            FileStorageService fileStorageService) {
+            FileStorageService fileStorageService, RagQaDatasetDomainService ragQaDatasetDomainService) {
         this.fileDetailDomainService = fileDetailDomainService;
         this.documentUnitDomainService = documentUnitDomainService;
         this.messagePublisher = messagePublisher;
         this.fileStorageService = fileStorageService;
+        this.ragQaDatasetDomainService = ragQaDatasetDomainService;
     }
 
     /** 根据文件ID获取文件详细信息
@@ -85,6 +88,9 @@ public class FileOperationAppService {
         DocumentUnitEntity updateEntity = DocumentUnitAssembler.toEntity(request, userId);
         documentUnitDomainService.updateDocumentUnit(updateEntity, userId);
 
+        // 语料内容变化，使所属数据集的检索缓存失效
+        bumpDatasetGeneration(existingEntity.getFileId());
+
         // 如果需要重新向量化，发送MQ消息
         if (Boolean.TRUE.equals(request.getReEmbedding())) {
             triggerReEmbedding(existingEntity, request.getContent());
@@ -113,10 +119,21 @@ public class FileOperationAppService {
     @Transactional
     public void deleteDocumentUnit(String documentUnitId, String userId) {
         // 验证语料是否存在
-        documentUnitDomainService.checkDocumentUnitExists(documentUnitId, userId);
+        DocumentUnitEntity existingEntity = documentUnitDomainService.getDocumentUnit(documentUnitId, userId);
 
         // 删除语料
         documentUnitDomainService.deleteDocumentUnit(documentUnitId, userId);
+
+        // 语料删除，使所属数据集的检索缓存失效
+        bumpDatasetGeneration(existingEntity.getFileId());
+    }
+
+    /** 递增文件所属数据集的入库代次
+     * 
+     * @param fileId 文件ID */
+    private void bumpDatasetGeneration(String fileId) {
+        FileDetailEntity fileEntity = fileDetailDomainService.getFileByIdWithoutUserCheck(fileId);
+        ragQaDatasetDomainService.bumpIngestGeneration(fileEntity.getDataSetId());
     }
 
     /** 批量删除文件
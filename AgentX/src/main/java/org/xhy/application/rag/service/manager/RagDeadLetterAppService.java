@@ -0,0 +1,100 @@
+package org.xhy.application.rag.service.manager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.xhy.application.rag.assembler.RagDeadLetterAssembler;
+import org.xhy.application.rag.dto.RagDeadLetterDTO;
+import org.xhy.application.rag.request.QueryDeadLetterRequest;
+import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
+import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.model.RagDeadLetterEntity;
+import org.xhy.domain.rag.service.FileDetailDomainService;
+import org.xhy.domain.rag.service.RagDeadLetterDomainService;
+import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.mq.core.MessageHeaders;
+import org.xhy.infrastructure.mq.core.MessagePublisher;
+import org.xhy.infrastructure.mq.core.MessageRoute;
+import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+
+/** RAG入库死信消息应用服务 查看进入死信的入库消息并在排除故障后重放 */
+@Service
+public class RagDeadLetterAppService {
+
+    private static final Logger log = LoggerFactory.getLogger(RagDeadLetterAppService.class);
+
+    private final RagDeadLetterDomainService ragDeadLetterDomainService;
+    private final FileDetailDomainService fileDetailDomainService;
+    private final MessagePublisher messagePublisher;
+
+    public RagDeadLetterAppService(RagDeadLetterDomainService ragDeadLetterDomainService,
+            FileDetailDomainService fileDetailDomainService, MessagePublisher messagePublisher) {
+        this.ragDeadLetterDomainService = ragDeadLetterDomainService;
+        this.fileDetailDomainService = fileDetailDomainService;
+        this.messagePublisher = messagePublisher;
+    }
+
+    /** 分页查询死信消息
+     * 
+     * @param request 查询请求
+     * @return 死信消息分页 */
+    public Page<RagDeadLetterDTO> listDeadLetters(QueryDeadLetterRequest request) {
+        IPage<RagDeadLetterEntity> entityPage = ragDeadLetterDomainService.listDeadLetters(request.getPage(),
+                request.getPageSize(), request.getSourceQueue(), request.getFileId(), request.getStatus());
+
+        List<RagDeadLetterDTO> dtoList = RagDeadLetterAssembler.toDTOs(entityPage.getRecords());
+        Page<RagDeadLetterDTO> dtoPage = new Page<>(entityPage.getCurrent(), entityPage.getSize(),
+                entityPage.getTotal());
+        dtoPage.setRecords(dtoList);
+        return dtoPage;
+    }
+
+    /** 获取死信消息详情
+     * 
+     * @param id 死信ID
+     * @return 死信消息 */
+    public RagDeadLetterDTO getDeadLetter(String id) {
+        return RagDeadLetterAssembler.toDTO(ragDeadLetterDomainService.getDeadLetter(id));
+    }
+
+    /** 重放死信消息，原样投递回原队列并重新开始计算重试次数
+     * 
+     * @param id 死信ID
+     * @return 重放后的死信消息 */
+    @Transactional
+    public RagDeadLetterDTO replay(String id) {
+        RagDeadLetterEntity deadLetter = ragDeadLetterDomainService.getDeadLetter(id);
+        if (!ragDeadLetterDomainService.markReplayed(id)) {
+            throw new BusinessException("死信消息已重放");
+        }
+
+        // 向量化失败的文件需要先回到向量化中状态，OCR失败的文件由消费者自行重新开始
+        if (RagDocSyncStorageEvent.QUEUE_NAME.equals(deadLetter.getSourceQueue())
+                && StringUtils.isNotBlank(deadLetter.getFileId())) {
+            FileDetailEntity file = fileDetailDomainService.getFileByIdWithoutUserCheck(deadLetter.getFileId());
+            if (FileProcessingStatusEnum.EMBEDDING_FAILED.getCode().equals(file.getProcessingStatus())) {
+                fileDetailDomainService.startFileEmbeddingProcessing(file.getId(), file.getUserId());
+            }
+        }
+
+        Map<String, Object> headers = new HashMap<>();
+        if (deadLetter.getTraceId() != null) {
+            headers.put(MessageHeaders.TRACE_ID, deadLetter.getTraceId());
+        }
+        messagePublisher.publishRaw(MessageRoute.topic(deadLetter.getSourceExchange(),
+                deadLetter.getSourceRoutingKey(), deadLetter.getSourceQueue()), deadLetter.getPayload(), headers);
+        log.info("Replayed dead letter {} to queue {}, fileId: {}", id, deadLetter.getSourceQueue(),
+                deadLetter.getFileId());
+
+        return getDeadLetter(id);
+    }
+}
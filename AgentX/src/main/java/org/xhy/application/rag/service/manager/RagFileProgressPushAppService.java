@@ -0,0 +1,198 @@
+package org.xhy.application.rag.service.manager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.xhy.application.rag.assembler.FileProcessProgressAssembler;
+import org.xhy.application.rag.dto.FileProcessProgressDTO;
+import org.xhy.domain.rag.event.FileProgressChangedEvent;
+import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.service.FileDetailDomainService;
+import org.xhy.domain.rag.service.RagQaDatasetDomainService;
+import org.xhy.infrastructure.rag.config.RagProgressPushProperties;
+
+/** RAG文件处理进度推送应用服务
+ *
+ * 前端按数据集订阅SSE，订阅时推送一次全量进度，之后只推送有变化的文件。状态机和向量化计数发布的进度事件只把文件记为待推送，
+ * 由定时任务按固定周期合并：一个周期内同一文件的多次变更只读一次库、推一次，读库是所有待推送文件的一条批量查询，与订阅连接数无关。
+ * 文件在最后一次事件后还会多推一轮，避免读到事件发布方尚未落库的状态；每个连接各自记录推送过的内容，与该连接上次推送相同时不重复推送。
+ * 事件只在本实例内传播，另按对账周期对订阅中的数据集全量比对一次，补齐其他实例处理的文件 */
+@Service
+public class RagFileProgressPushAppService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RagFileProgressPushAppService.class);
+
+    private static final String EVENT_NAME = "progress";
+
+    /** 每次事件后推送的轮数 */
+    private static final int SETTLE_ROUNDS = 2;
+
+    private final FileDetailDomainService fileDetailDomainService;
+
+    private final RagQaDatasetDomainService ragQaDatasetDomainService;
+
+    private final RagProgressPushProperties properties;
+
+    /** 数据集ID -> 订阅连接 */
+    private final Map<String, List<Subscription>> subscribers = new ConcurrentHashMap<>();
+
+    /** 待推送的文件ID -> 剩余推送轮数 */
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+
+    private long lastResyncAt = System.currentTimeMillis();
+
+    public RagFileProgressPushAppService(FileDetailDomainService fileDetailDomainService,
+            RagQaDatasetDomainService ragQaDatasetDomainService, RagProgressPushProperties properties) {
+        this.fileDetailDomainService = fileDetailDomainService;
+        this.ragQaDatasetDomainService = ragQaDatasetDomainService;
+        this.properties = properties;
+    }
+
+    /** 订阅数据集的文件处理进度
+     * @param datasetId 数据集ID
+     * @param userId 用户ID
+     * @return SSE连接，首条消息为数据集下所有文件的进度 */
+    public SseEmitter subscribe(String datasetId, String userId) {
+        ragQaDatasetDomainService.checkDatasetExists(datasetId, userId);
+
+        SseEmitter emitter = new SseEmitter(properties.getEmitterTimeoutMillis());
+        Subscription subscription = register(datasetId, emitter);
+        List<FileProcessProgressDTO> snapshot = FileProcessProgressAssembler
+                .toDTOs(fileDetailDomainService.listAllFilesByDataset(datasetId, userId));
+        // 全量快照可能晚于同时进行的增量推送到达，只记在本连接上，由对账发现差异再补推
+        snapshot.forEach(dto -> subscription.lastPushed.put(dto.getFileId(), signature(dto)));
+        send(subscription, snapshot);
+        return emitter;
+    }
+
+    /** 登记订阅连接，连接结束时自动移除
+     * @param datasetId 数据集ID
+     * @param emitter SSE连接
+     * @return 订阅 */
+    Subscription register(String datasetId, SseEmitter emitter) {
+        Subscription subscription = new Subscription(datasetId, emitter);
+        subscribers.compute(datasetId, (key, subscriptions) -> {
+            List<Subscription> list = subscriptions != null ? subscriptions : new CopyOnWriteArrayList<>();
+            list.add(subscription);
+            return list;
+        });
+        emitter.onCompletion(() -> unregister(subscription));
+        emitter.onTimeout(() -> unregister(subscription));
+        emitter.onError(e -> unregister(subscription));
+        return subscription;
+    }
+
+    private void unregister(Subscription subscription) {
+        subscribers.computeIfPresent(subscription.datasetId, (key, subscriptions) -> {
+            subscriptions.remove(subscription);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+
+    /** 文件进度变更时记为待推送，没有订阅方时直接忽略
+     * @param event 进度变更事件 */
+    @EventListener
+    public void onProgressChanged(FileProgressChangedEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        if (event.getDatasetId() != null && !subscribers.containsKey(event.getDatasetId())) {
+            return;
+        }
+        pending.put(event.getFileId(), SETTLE_ROUNDS);
+    }
+
+    /** 合并推送待推送文件的最新进度 */
+    @Scheduled(fixedDelayString = "${rag.progress-push.interval-millis:500}")
+    public void flush() {
+        if (subscribers.isEmpty()) {
+            pending.clear();
+            return;
+        }
+
+        Set<String> fileIds = new HashSet<>();
+        for (String fileId : pending.keySet()) {
+            fileIds.add(fileId);
+            pending.computeIfPresent(fileId, (key, rounds) -> rounds > 1 ? rounds - 1 : null);
+        }
+
+        Map<String, FileDetailEntity> files = new LinkedHashMap<>();
+        try {
+            if (!fileIds.isEmpty()) {
+                fileDetailDomainService.listFilesByIds(fileIds).forEach(file -> files.put(file.getId(), file));
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastResyncAt >= properties.getResyncIntervalMillis()) {
+                lastResyncAt = now;
+                fileDetailDomainService.listFilesByDatasets(new ArrayList<>(subscribers.keySet()))
+                        .forEach(file -> files.putIfAbsent(file.getId(), file));
+            }
+        } catch (Exception e) {
+            logger.warn("读取文件处理进度失败，下个周期重试: {}", e.getMessage());
+            fileIds.forEach(fileId -> pending.putIfAbsent(fileId, 1));
+            return;
+        }
+
+        Map<Subscription, List<FileProcessProgressDTO>> changed = new LinkedHashMap<>();
+        for (FileDetailEntity file : files.values()) {
+            List<Subscription> subscriptions = subscribers.get(file.getDataSetId());
+            if (subscriptions == null) {
+                continue;
+            }
+            FileProcessProgressDTO dto = FileProcessProgressAssembler.toDTO(file);
+            String signature = signature(dto);
+            for (Subscription subscription : subscriptions) {
+                if (!signature.equals(subscription.lastPushed.put(file.getId(), signature))) {
+                    changed.computeIfAbsent(subscription, key -> new ArrayList<>()).add(dto);
+                }
+            }
+        }
+
+        changed.forEach(this::send);
+    }
+
+    private void send(Subscription subscription, List<FileProcessProgressDTO> batch) {
+        try {
+            subscription.emitter.send(SseEmitter.event().name(EVENT_NAME).data(batch));
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("进度推送连接已断开，移除订阅: {}", e.getMessage());
+            unregister(subscription);
+        }
+    }
+
+    /** 前端展示用到的状态和进度字段 */
+    private static String signature(FileProcessProgressDTO dto) {
+        return dto.getProcessingStatus() + "|" + dto.getOcrProcessProgress() + "|" + dto.getEmbeddingProcessProgress()
+                + "|" + dto.getCurrentOcrPageNumber() + "|" + dto.getCurrentEmbeddingPageNumber() + "|"
+                + dto.getFilePageSize() + "|" + dto.getEmbeddingCacheHits() + "|" + dto.getEmbeddingCacheMisses();
+    }
+
+    /** 一个订阅连接及其推送过的内容 */
+    static final class Subscription {
+
+        private final String datasetId;
+
+        private final SseEmitter emitter;
+
+        /** 文件ID -> 本连接上次推送内容的签名 */
+        private final Map<String, String> lastPushed = new ConcurrentHashMap<>();
+
+        private Subscription(String datasetId, SseEmitter emitter) {
+            this.datasetId = datasetId;
+            this.emitter = emitter;
+        }
+    }
+}
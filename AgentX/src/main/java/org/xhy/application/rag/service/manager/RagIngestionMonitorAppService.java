@@ -0,0 +1,39 @@
+package org.xhy.application.rag.service.manager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Service;
+import org.xhy.application.rag.dto.IngestionQueueStatsDTO;
+import org.xhy.domain.rag.model.IngestionQueueStats;
+import org.xhy.domain.rag.service.RagIngestionQueueDomainService;
+
+/** RAG入库监控应用服务 */
+@Service
+public class RagIngestionMonitorAppService {
+
+    private final RagIngestionQueueDomainService ragIngestionQueueDomainService;
+
+    public RagIngestionMonitorAppService(RagIngestionQueueDomainService ragIngestionQueueDomainService) {
+        this.ragIngestionQueueDomainService = ragIngestionQueueDomainService;
+    }
+
+    /** 获取各用户的入库排队情况和排队等待时间
+     * 
+     * @return 用户排队统计 */
+    public List<IngestionQueueStatsDTO> listQueueStats() {
+        LocalDateTime now = LocalDateTime.now();
+        return ragIngestionQueueDomainService.listQueueStats().stream().map(stats -> toDTO(stats, now)).toList();
+    }
+
+    private static IngestionQueueStatsDTO toDTO(IngestionQueueStats stats, LocalDateTime now) {
+        IngestionQueueStatsDTO dto = new IngestionQueueStatsDTO();
+        BeanUtils.copyProperties(stats, dto);
+        if (stats.getOldestPendingAt() != null) {
+            dto.setCurrentWaitMillis(Duration.between(stats.getOldestPendingAt(), now).toMillis());
+        }
+        return dto;
+    }
+}
@@ -5,9 +5,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 
 import java.util.Collections;
 
-import org.dromara.streamquery.stream.core.stream.Steam;
 import org.xhy.infrastructure.mq.core.MessageEnvelope;
-import org.xhy.infrastructure.mq.core.MessagePublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
@@ -33,8 +31,6 @@ import org.xhy.domain.rag.model.RagVersionEntity;
 import org.xhy.domain.rag.service.*;
 import org.xhy.infrastructure.exception.BusinessException;
 import org.xhy.infrastructure.mq.enums.EventType;
-import org.xhy.infrastructure.mq.events.RagDocSyncOcrEvent;
-import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
 import org.xhy.infrastructure.llm.LLMServiceFactory;
 import org.xhy.domain.llm.service.LLMDomainService;
 import org.xhy.domain.llm.service.HighAvailabilityDomainService;
@@ -56,8 +52,7 @@ public class RagQaDatasetAppService {
     private final RagQaDatasetDomainService ragQaDatasetDomainService;
     private final FileDetailDomainService fileDetailDomainService;
     private final DocumentUnitDomainService documentUnitDomainService;
-    private final MessagePublisher messagePublisher;
-    private final EmbeddingDomainService embeddingDomainService;
+    private final RagIngestionQueueDomainService ragIngestionQueueDomainService;
 
     // 添加RAG发布和市场服务依赖
     private final RagPublishAppService ragPublishAppService;
@@ -67,22 +62,24 @@ public class RagQaDatasetAppService {
 
     private final UserModelConfigResolver userModelConfigResolver;
 
+    private final EmbeddingBatchDispatcher embeddingBatchDispatcher;
+
     public RagQaDatasetAppService(RagQaDatasetDomainService ragQaDatasetDomainService,
             FileDetailDomainService fileDetailDomainService, DocumentUnitDomainService documentUnitDomainService,
-            MessagePublisher messagePublisher, EmbeddingDomainService embeddingDomainService,
-            RagPublishAppService ragPublishAppService, RagVersionDomainService ragVersionDomainService,
-            UserRagDomainService userRagDomainService, RagDataAccessDomainService ragDataAccessService,
-            UserModelConfigResolver userModelConfigResolver) {
+            RagIngestionQueueDomainService ragIngestionQueueDomainService, RagPublishAppService ragPublishAppService,
+            RagVersionDomainService ragVersionDomainService, UserRagDomainService userRagDomainService,
+            RagDataAccessDomainService ragDataAccessService, UserModelConfigResolver userModelConfigResolver,
+            EmbeddingBatchDispatcher embeddingBatchDispatcher) {
         this.ragQaDatasetDomainService = ragQaDatasetDomainService;
         this.fileDetailDomainService = fileDetailDomainService;
         this.documentUnitDomainService = documentUnitDomainService;
-        this.messagePublisher = messagePublisher;
-        this.embeddingDomainService = embeddingDomainService;
+        this.ragIngestionQueueDomainService = ragIngestionQueueDomainService;
         this.ragPublishAppService = ragPublishAppService;
         this.ragVersionDomainService = ragVersionDomainService;
         this.userRagDomainService = userRagDomainService;
         this.ragDataAccessService = ragDataAccessService;
         this.userModelConfigResolver = userModelConfigResolver;
+        this.embeddingBatchDispatcher = embeddingBatchDispatcher;
     }
 
     /** 创建数据集
@@ -383,9 +380,6 @@ public class RagQaDatasetAppService {
         try {
             log.info("Auto-starting preprocessing for file: {}", fileId);
 
-            // 清理已有的语料和向量数据
-            cleanupExistingDocumentUnits(fileId);
-
             // 设置初始状态为初始化中
             // fileDetailDomainService.startFileOcrProcessing(fileId, userId);
             fileDetailDomainService.updateFileOcrProgress(fileId, 0, 0.0);
@@ -405,7 +399,8 @@ public class RagQaDatasetAppService {
 
             MessageEnvelope<RagDocMessage> envelope = MessageEnvelope.builder(ocrMessage)
                     .addEventType(EventType.DOC_REFRESH_ORG).description("文件自动预处理任务").build();
-            messagePublisher.publish(RagDocSyncOcrEvent.route(), envelope);
+            // 按用户公平排队后放行到预处理队列
+            ragIngestionQueueDomainService.submit(userId, fileId, envelope);
 
             log.info("Auto-preprocessing started for file: {}", fileId);
 
@@ -475,8 +470,7 @@ public class RagQaDatasetAppService {
             // OCR预处理 - 检查是否可以启动预处理
             validateOcrProcessing(fileEntity);
 
-            // 清理已有的语料和向量数据
-            cleanupExistingDocumentUnits(request.getFileId());
+            // 保留已有的语料和向量数据，预处理时与上一轮结果比对，只重新处理变化的页面和段落
 
             // fileDetailDomainService.startFileOcrProcessing(request.getFileId(), userId);
             fileDetailDomainService.updateFileOcrProgress(request.getFileId(), 0, 0.0);
@@ -490,14 +484,14 @@ public class RagQaDatasetAppService {
 
             MessageEnvelope<RagDocMessage> envelope = MessageEnvelope.builder(ocrMessage)
                     .addEventType(EventType.DOC_REFRESH_ORG).description("文件OCR预处理任务").build();
-            messagePublisher.publish(RagDocSyncOcrEvent.route(), envelope);
+            ragIngestionQueueDomainService.submit(userId, request.getFileId(), envelope);
 
         } else if (request.getProcessType() == 2) {
             // 向量化处理 - 检查是否可以启动向量化
             validateEmbeddingProcessing(fileEntity);
 
             fileDetailDomainService.startFileEmbeddingProcessing(request.getFileId(), userId);
-            fileDetailDomainService.updateFileEmbeddingProgress(request.getFileId(), 0, 0.0);
+            fileDetailDomainService.resetEmbeddingProgress(request.getFileId());
 
             List<DocumentUnitEntity> documentUnits = documentUnitDomainService
                     .listDocumentsByFileAndStatus(request.getFileId(), true, false);
@@ -506,22 +500,9 @@ public class RagQaDatasetAppService {
                 throw new IllegalStateException("文件没有找到可用于向量化的语料数据");
             }
 
-            // 为每个DocumentUnit发送单独的向量化MQ消息
-            for (DocumentUnitEntity documentUnit : documentUnits) {
-                RagDocSyncStorageMessage storageMessage = new RagDocSyncStorageMessage();
-                storageMessage.setId(documentUnit.getId());
-                storageMessage.setFileId(request.getFileId());
-                storageMessage.setFileName(fileEntity.getOriginalFilename());
-                storageMessage.setPage(documentUnit.getPage());
-                storageMessage.setContent(documentUnit.getContent());
-                storageMessage.setVector(true);
-                storageMessage.setDatasetId(request.getDatasetId()); // 设置数据集ID
-
-                MessageEnvelope<RagDocSyncStorageMessage> env = MessageEnvelope.builder(storageMessage)
-                        .addEventType(EventType.DOC_SYNC_RAG).description("文件向量化处理任务 - 页面 " + documentUnit.getPage())
-                        .build();
-                messagePublisher.publish(RagDocSyncStorageEvent.route(), env);
-            }
+            // 所有DocumentUnit按批次发送向量化MQ消息
+            embeddingBatchDispatcher.dispatch(buildStorageMessages(documentUnits, fileEntity, request),
+                    "文件向量化处理任务");
 
         } else {
             throw new IllegalArgumentException("不支持的处理类型: " + request.getProcessType());
@@ -577,8 +558,7 @@ public class RagQaDatasetAppService {
             // 强制重新OCR预处理
             log.info("Force restarting OCR preprocessing for file: {}", request.getFileId());
 
-            // 清理已有的语料和向量数据
-            cleanupExistingDocumentUnits(request.getFileId());
+            // 保留已有的语料和向量数据，预处理时与上一轮结果比对，只重新处理变化的页面和段落
 
             // 重置状态
             // fileDetailDomainService.startFileOcrProcessing(request.getFileId(), userId);
@@ -593,7 +573,7 @@ public class RagQaDatasetAppService {
 
             MessageEnvelope<RagDocMessage> envelope = MessageEnvelope.builder(ocrMessage)
                     .addEventType(EventType.DOC_REFRESH_ORG).description("文件强制重新OCR预处理任务").build();
-            messagePublisher.publish(RagDocSyncOcrEvent.route(), envelope);
+            ragIngestionQueueDomainService.submit(userId, request.getFileId(), envelope);
 
         } else if (request.getProcessType() == 2) {
             // 强制重新向量化处理
@@ -608,8 +588,9 @@ public class RagQaDatasetAppService {
                 throw new IllegalStateException("文件需要先完成预处理才能进行向量化");
             }
 
-            // 重置向量化状态
+            // 重置向量化状态和进度计数
             fileDetailDomainService.startFileEmbeddingProcessing(request.getFileId(), userId);
+            fileDetailDomainService.resetEmbeddingProgress(request.getFileId());
 
             List<DocumentUnitEntity> documentUnits = documentUnitDomainService
                     .listDocumentsByFileAndStatus(request.getFileId(), true, null);
@@ -624,52 +605,35 @@ public class RagQaDatasetAppService {
                 documentUnitDomainService.updateDocumentUnitById(documentUnit);
             }
 
-            // 为每个DocumentUnit发送向量化MQ消息
-            for (DocumentUnitEntity documentUnit : documentUnits) {
-                RagDocSyncStorageMessage storageMessage = new RagDocSyncStorageMessage();
-                storageMessage.setId(documentUnit.getId());
-                storageMessage.setFileId(request.getFileId());
-                storageMessage.setFileName(fileEntity.getOriginalFilename());
-                storageMessage.setPage(documentUnit.getPage());
-                storageMessage.setContent(documentUnit.getContent());
-                storageMessage.setVector(true);
-                storageMessage.setDatasetId(request.getDatasetId());
-
-                MessageEnvelope<RagDocSyncStorageMessage> env = MessageEnvelope.builder(storageMessage)
-                        .addEventType(EventType.DOC_SYNC_RAG)
-                        .description("文件强制重新向量化处理任务 - 页面 " + documentUnit.getPage()).build();
-                messagePublisher.publish(RagDocSyncStorageEvent.route(), env);
-            }
+            // 所有DocumentUnit按批次发送向量化MQ消息
+            embeddingBatchDispatcher.dispatch(buildStorageMessages(documentUnits, fileEntity, request),
+                    "文件强制重新向量化处理任务");
 
         } else {
             throw new IllegalArgumentException("不支持的处理类型: " + request.getProcessType());
         }
     }
 
-    /** 清理文件的已有语料和向量数据
-     * @param fileId 文件ID */
-    private void cleanupExistingDocumentUnits(String fileId) {
-        try {
-            // 查询该文件的所有文档单元
-            List<DocumentUnitEntity> existingUnits = documentUnitDomainService.listDocumentsByFile(fileId);
-
-            if (!existingUnits.isEmpty()) {
-                log.info("Cleaning up {} existing document units for file: {}", existingUnits.size(), fileId);
-
-                final List<String> documentUnitEntities = Steam.of(existingUnits).map(DocumentUnitEntity::getId)
-                        .toList();
-                // 删除所有文档单元（包括语料和向量数据）
-                documentUnitDomainService.batchDeleteDocumentUnits(documentUnitEntities);
-
-                embeddingDomainService.deleteEmbedding(Collections.singletonList(fileId));
-                log.info("Successfully cleaned up document units for file: {}", fileId);
-            } else {
-                log.debug("No existing document units found for file: {}", fileId);
-            }
-        } catch (Exception e) {
-            log.error("Failed to cleanup existing document units for file: {}", fileId, e);
-            throw new BusinessException("清理已有语料数据失败: " + e.getMessage());
+    /** 构建文件各文档单元的向量化消息
+     * @param documentUnits 文档单元
+     * @param fileEntity 文件实体
+     * @param request 处理请求
+     * @return 向量化消息列表 */
+    private List<RagDocSyncStorageMessage> buildStorageMessages(List<DocumentUnitEntity> documentUnits,
+            FileDetailEntity fileEntity, ProcessFileRequest request) {
+        List<RagDocSyncStorageMessage> storageMessages = new ArrayList<>(documentUnits.size());
+        for (DocumentUnitEntity documentUnit : documentUnits) {
+            RagDocSyncStorageMessage storageMessage = new RagDocSyncStorageMessage();
+            storageMessage.setId(documentUnit.getId());
+            storageMessage.setFileId(request.getFileId());
+            storageMessage.setFileName(fileEntity.getOriginalFilename());
+            storageMessage.setPage(documentUnit.getPage());
+            storageMessage.setContent(documentUnit.getContent());
+            storageMessage.setVector(true);
+            storageMessage.setDatasetId(request.getDatasetId());
+            storageMessages.add(storageMessage);
         }
+        return storageMessages;
     }
 
     /** 获取文件处理进度
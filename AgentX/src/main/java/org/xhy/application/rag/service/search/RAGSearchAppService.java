@@ -188,7 +188,7 @@ public class RAGSearchAppService {
             // REFERENCE类型：使用原始数据集ID
             actualDatasetId = sourceInfo.getOriginalRagId();
         } else {
-            // SNAPSHOT类型：使用原始数据集ID（但实际搜索会通过版本控制过滤）
+            // SNAPSHOT类型：使用原始数据集ID（检索按安装版本过滤）
             actualDatasetId = sourceInfo.getOriginalRagId();
         }
 
@@ -228,13 +228,13 @@ public class RAGSearchAppService {
                     .build();
             entities = hybridSearchDomainService.hybridSearch(config);
         } else {
-            // 对快照数据进行混合检索（这里可能需要特殊处理，暂时使用相同逻辑）
+            // SNAPSHOT类型：只在安装版本引用的分块内检索，不受原始数据集后续修改影响
             HybridSearchConfig config = HybridSearchConfig.builder(List.of(actualDatasetId), request.getQuestion())
                     .maxResults(request.getMaxResults()).minScore(adjustedMinScore)
                     .enableRerank(request.getEnableRerank()).candidateMultiplier(adjustedCandidateMultiplier)
                     .embeddingConfig(embeddingConfig).enableQueryExpansion(request.getEnableQueryExpansion())
                     .chatModelConfig(chatModelConfig) // 传入聊天模型配置（用于HyDE）
-                    .build();
+                    .ragVersionId(sourceInfo.getVersionId()).build();
             entities = hybridSearchDomainService.hybridSearch(config);
         }
 
@@ -9,6 +9,9 @@ public interface MemoryMetadataConstant {
     /** 记忆条目ID（对应 memory_items.id） */
     String ITEM_ID = "ITEM_ID";
 
+    /** 向量ID（由条目ID派生，用于区分旧版本按随机ID写入的向量） */
+    String VECTOR_ID = "VECTOR_ID";
+
     /** 记忆类型：PROFILE/TASK/FACT/EPISODIC */
     String MEMORY_TYPE = "MEMORY_TYPE";
 
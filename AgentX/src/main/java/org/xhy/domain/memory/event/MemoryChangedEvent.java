@@ -0,0 +1,16 @@
+package org.xhy.domain.memory.event;
+
+/** 用户记忆变更事件 记忆保存或删除后触发，订阅方据此丢弃该用户已缓存的召回结果 */
+public class MemoryChangedEvent {
+
+    /** 用户ID */
+    private final String userId;
+
+    public MemoryChangedEvent(String userId) {
+        this.userId = userId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+}
@@ -12,12 +12,17 @@ import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
+import org.xhy.domain.memory.event.MemoryChangedEvent;
 import org.xhy.domain.memory.model.CandidateMemory;
 import org.xhy.domain.memory.model.MemoryItemEntity;
 import org.xhy.domain.memory.model.MemoryResult;
@@ -47,16 +52,26 @@ public class MemoryDomainService {
 
     private final EmbeddingStore<TextSegment> memoryEmbeddingStore;
 
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final TransactionTemplate transactionTemplate;
+
     public MemoryDomainService(MemoryItemRepository memoryItemRepository, EmbeddingModelFactory embeddingModelFactory,
             UserModelConfigResolver userModelConfigResolver,
-            @Qualifier("memoryEmbeddingStore") EmbeddingStore<TextSegment> memoryEmbeddingStore) {
+            @Qualifier("memoryEmbeddingStore") EmbeddingStore<TextSegment> memoryEmbeddingStore,
+            ApplicationEventPublisher eventPublisher, TransactionTemplate transactionTemplate) {
         this.memoryItemRepository = memoryItemRepository;
         this.embeddingModelFactory = embeddingModelFactory;
         this.userModelConfigResolver = userModelConfigResolver;
         this.memoryEmbeddingStore = memoryEmbeddingStore;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
     }
 
     /** 保存记忆（去重/合并 + 向量入库）
+     *
+     * 批内先按去重hash合并候选，再一次查出已有条目、一次批量嵌入；嵌入在事务外完成，不在模型调用期间占用数据库连接。
+     * 向量以条目ID派生的固定ID覆盖写入，写入成功后再清理旧版本遗留的随机ID向量，保证每个条目只有一条向量
      *
      * @return 写入/更新后的 itemId 列表 */
     public List<String> saveMemories(String userId, String sessionId, List<CandidateMemory> candidates) {
@@ -64,29 +79,33 @@ public class MemoryDomainService {
             return Collections.emptyList();
         }
 
-        // 构造嵌入模型
-        var embeddingCfg = userModelConfigResolver.getUserEmbeddingModelConfig(userId);
-        var embeddingModel = embeddingModelFactory.createEmbeddingModel(new EmbeddingModelFactory.EmbeddingConfig(
-                embeddingCfg.getApiKey(), embeddingCfg.getBaseUrl(), embeddingCfg.getModelEndpoint()));
-
-        List<String> itemIds = new ArrayList<>();
+        // 批内按hash合并，避免同一批次重复写入
+        Map<String, CandidateMemory> byHash = new LinkedHashMap<>();
         for (CandidateMemory c : candidates) {
             if (c == null || !StringUtils.hasText(c.getText())) {
                 continue;
             }
+            byHash.merge(sha256(normalizeText(c.getText())), c, MemoryDomainService::mergeCandidates);
+        }
+        if (byHash.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-            MemoryType type = (c.getType() != null) ? c.getType() : MemoryType.FACT;
-            String normalized = normalizeText(c.getText());
-            String hash = sha256(normalized);
-
-            // 查重（同用户，同hash）
-            MemoryItemEntity existed = memoryItemRepository.selectOne(Wrappers.<MemoryItemEntity>lambdaQuery()
-                    .eq(MemoryItemEntity::getUserId, userId).eq(MemoryItemEntity::getDedupeHash, hash));
-
-            MemoryItemEntity toSave;
+        // 查重（同用户，hash集合一次查询）
+        Map<String, MemoryItemEntity> existedMap = memoryItemRepository
+                .selectList(Wrappers.<MemoryItemEntity>lambdaQuery().eq(MemoryItemEntity::getUserId, userId)
+                        .in(MemoryItemEntity::getDedupeHash, byHash.keySet()))
+                .stream().collect(Collectors.toMap(MemoryItemEntity::getDedupeHash, it -> it, (a, b) -> a));
+
+        List<MemoryItemEntity> toInsert = new ArrayList<>();
+        List<MemoryItemEntity> toUpdate = new ArrayList<>();
+        for (Map.Entry<String, CandidateMemory> entry : byHash.entrySet()) {
+            CandidateMemory c = entry.getValue();
+            MemoryItemEntity existed = existedMap.get(entry.getKey());
             if (existed == null) {
                 // 新增
-                toSave = new MemoryItemEntity();
+                MemoryType type = (c.getType() != null) ? c.getType() : MemoryType.FACT;
+                MemoryItemEntity toSave = new MemoryItemEntity();
                 toSave.setUserId(userId);
                 toSave.setType(type.name());
                 toSave.setText(c.getText().trim());
@@ -94,45 +113,75 @@ public class MemoryDomainService {
                 toSave.setImportance(safeImportance(c.getImportance()));
                 toSave.setTags(safeList(c.getTags()));
                 toSave.setSourceSessionId(sessionId);
-                toSave.setDedupeHash(hash);
+                toSave.setDedupeHash(entry.getKey());
                 toSave.setStatus(ACTIVE);
-                try {
-                    memoryItemRepository.insert(toSave);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                toInsert.add(toSave);
             } else {
                 // 合并（简单策略：importance 取 max，tags 合并去重，text 以更长者为准）
-                toSave = existed;
-                Float newImportance = max(existed.getImportance(), c.getImportance());
-                toSave.setImportance(newImportance);
-                toSave.setTags(mergeTags(existed.getTags(), c.getTags()));
-                toSave.setData(mergeData(existed.getData(), c.getData()));
-                toSave.setText(pickRichText(existed.getText(), c.getText()));
-                memoryItemRepository.updateById(toSave);
+                existed.setImportance(max(existed.getImportance(), c.getImportance()));
+                existed.setTags(mergeTags(existed.getTags(), c.getTags()));
+                existed.setData(mergeData(existed.getData(), c.getData()));
+                existed.setText(pickRichText(existed.getText(), c.getText()));
+                toUpdate.add(existed);
             }
+        }
 
-            itemIds.add(toSave.getId());
+        // 写库前一次批量嵌入，嵌入失败不留下半批数据
+        var embeddingCfg = userModelConfigResolver.getUserEmbeddingModelConfig(userId);
+        var embeddingModel = embeddingModelFactory.createEmbeddingModel(new EmbeddingModelFactory.EmbeddingConfig(
+                embeddingCfg.getApiKey(), embeddingCfg.getBaseUrl(), embeddingCfg.getModelEndpoint()));
+        List<MemoryItemEntity> items = new ArrayList<>(toInsert);
+        items.addAll(toUpdate);
+        List<TextSegment> segments = new ArrayList<>(items.size());
+        for (MemoryItemEntity item : items) {
+            segments.add(TextSegment.from(item.getText()));
+        }
+        List<Embedding> embeddings;
+        try {
+            embeddings = embeddingModel.embedAll(segments).content();
+        } catch (Exception e) {
+            log.error("记忆批量嵌入失败 userId={}, size={}, err={}", userId, segments.size(), e.getMessage(), e);
+            throw new BusinessException("记忆向量入库失败: " + e.getMessage(), e);
+        }
 
-            // 向量入库
+        // 行写入与向量覆盖写入在同一事务内，向量写入失败时回滚行数据，已有向量保持不变
+        List<String> vectorIds = transactionTemplate.execute(status -> {
+            toInsert.forEach(memoryItemRepository::checkInsert);
+            toUpdate.forEach(memoryItemRepository::checkedUpdateById);
+
+            // 条目ID写入后再补元数据
+            List<String> ids = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                MemoryItemEntity item = items.get(i);
+                ids.add(vectorId(item.getId()));
+                segments.set(i, new TextSegment(item.getText(), buildMetadata(userId, item, ids.get(i))));
+            }
             try {
-                Metadata md = new Metadata();
-                md.put(USER_ID, userId);
-                md.put(ITEM_ID, toSave.getId());
-                md.put(MEMORY_TYPE, type.name());
-                md.put(TAGS, String.join(",", toSave.getTags() == null ? List.of() : toSave.getTags()));
-                md.put(STATUS, String.valueOf(ACTIVE));
-
-                TextSegment segment = new TextSegment(toSave.getText(), md);
-                Embedding emb = embeddingModel.embed(segment).content();
-                memoryEmbeddingStore.add(emb, segment);
+                memoryEmbeddingStore.addAll(ids, embeddings, segments);
             } catch (Exception e) {
-                log.error("向量入库失败 userId={}, itemId={}, err={}", userId, toSave.getId(), e.getMessage(), e);
+                log.error("向量入库失败 userId={}, itemIds={}, err={}", userId,
+                        items.stream().map(MemoryItemEntity::getId).collect(Collectors.toList()), e.getMessage(), e);
                 throw new BusinessException("记忆向量入库失败: " + e.getMessage(), e);
             }
+            return ids;
+        });
+
+        // 新向量写入成功后清理合并条目的旧随机ID向量，清理失败只多留一条向量，不影响本次保存
+        if (!toUpdate.isEmpty()) {
+            try {
+                memoryEmbeddingStore.removeAll(new IsIn(ITEM_ID,
+                        toUpdate.stream().map(MemoryItemEntity::getId).collect(Collectors.toList()))
+                        .and(new IsNotIn(VECTOR_ID, vectorIds)));
+            } catch (Exception e) {
+                log.warn("清理旧记忆向量失败 userId={}, err={}", userId, e.getMessage());
+            }
         }
+        eventPublisher.publishEvent(new MemoryChangedEvent(userId));
 
-        return itemIds;
+        // 保持与入参候选相同的相对顺序
+        Map<String, String> itemIdByHash = items.stream()
+                .collect(Collectors.toMap(MemoryItemEntity::getDedupeHash, MemoryItemEntity::getId, (a, b) -> a));
+        return byHash.keySet().stream().map(itemIdByHash::get).collect(Collectors.toList());
     }
 
     /** 记忆检索（相似度 + 重要性加权） */
@@ -235,9 +284,38 @@ public class MemoryDomainService {
         LambdaQueryWrapper<MemoryItemEntity> qw = Wrappers.<MemoryItemEntity>lambdaQuery()
                 .eq(MemoryItemEntity::getUserId, userId).eq(MemoryItemEntity::getId, itemId);
         memoryItemRepository.delete(qw);
+        eventPublisher.publishEvent(new MemoryChangedEvent(userId));
         return true;
     }
 
+    private static Metadata buildMetadata(String userId, MemoryItemEntity item, String vectorId) {
+        Metadata md = new Metadata();
+        md.put(USER_ID, userId);
+        md.put(ITEM_ID, item.getId());
+        md.put(VECTOR_ID, vectorId);
+        md.put(MEMORY_TYPE, item.getType());
+        md.put(TAGS, String.join(",", item.getTags() == null ? List.of() : item.getTags()));
+        md.put(STATUS, String.valueOf(ACTIVE));
+        return md;
+    }
+
+    /** 由条目ID派生固定的向量ID，重复写入同一条目时覆盖原向量 */
+    private static String vectorId(String itemId) {
+        return UUID.nameUUIDFromBytes(itemId.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static CandidateMemory mergeCandidates(CandidateMemory a, CandidateMemory b) {
+        CandidateMemory m = new CandidateMemory();
+        m.setType(a.getType() != null ? a.getType() : b.getType());
+        m.setText(pickRichText(a.getText(), b.getText()));
+        m.setImportance(a.getImportance() == null && b.getImportance() == null
+                ? null
+                : max(a.getImportance(), b.getImportance()));
+        m.setTags(mergeTags(a.getTags(), b.getTags()));
+        m.setData(mergeData(a.getData(), b.getData()));
+        return m;
+    }
+
     private static String normalizeText(String s) {
         return s == null ? "" : s.replaceAll("\n+", "\n").replaceAll("\s+", " ").trim().toLowerCase();
     }
@@ -2,14 +2,18 @@ package org.xhy.domain.memory.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.response.ChatResponse;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -17,12 +21,20 @@ import org.xhy.domain.memory.model.CandidateMemory;
 import org.xhy.domain.memory.model.MemoryType;
 import org.xhy.domain.rag.model.ModelConfig;
 import org.xhy.infrastructure.llm.LLMProviderService;
+import org.xhy.infrastructure.memory.config.MemoryExtractionProperties;
 import org.xhy.infrastructure.rag.service.UserModelConfigResolver;
 
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.w3c.dom.Document;
@@ -31,14 +43,14 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 
-/** 记忆抽取服务（对话后从一轮对话提取可长期复用的要点） */
+/** 记忆抽取服务（对话后按会话累积用户发言，合并为一次调用提取可长期复用的要点） */
 @Service
 public class MemoryExtractorService {
 
     private static final Logger log = LoggerFactory.getLogger(MemoryExtractorService.class);
 
     private static final String EXTRACT_PROMPT = """
-            你是一名对话记忆提取器。你的任务是从“本轮用户发言”中抽取对后续多轮交互有复用价值的要点。
+            你是一名对话记忆提取器。你的任务是从“用户最近发言”（一轮，或按顺序编号的多轮）中抽取对后续多轮交互有复用价值的要点。
 
             一、类型定义（仅限以下四类）
             - PROFILE：用户稳定的偏好/人格特质/固定格式要求（例如“以后都用中文回答”“回答尽量附带 bash 示例”）。
@@ -110,35 +122,167 @@ public class MemoryExtractorService {
 
     private final UserModelConfigResolver userModelConfigResolver;
     private final MemoryDomainService memoryDomainService;
+    private final MemoryExtractionProperties properties;
+    private final Executor memoryTaskExecutor;
     private final ObjectMapper objectMapper;
 
+    /** 待抽取的会话发言窗口：userId:sessionId -> 窗口 */
+    private final ConcurrentMap<String, PendingWindow> pendingWindows = new ConcurrentHashMap<>();
+
+    /** 近期出现过的会话，用于统计每个会话的抽取次数 */
+    private final Cache<String, Boolean> seenSessions = CacheBuilder.newBuilder().maximumSize(100000)
+            .expireAfterAccess(1, TimeUnit.DAYS).build();
+
+    private final AtomicLong turns = new AtomicLong();
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong extractionCalls = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong droppedTurns = new AtomicLong();
+    private final AtomicLong lastLoggedTurns = new AtomicLong();
+
     public MemoryExtractorService(UserModelConfigResolver userModelConfigResolver,
-            MemoryDomainService memoryDomainService) {
+            MemoryDomainService memoryDomainService, MemoryExtractionProperties properties,
+            @Qualifier("memoryTaskExecutor") Executor memoryTaskExecutor) {
         this.userModelConfigResolver = userModelConfigResolver;
         this.memoryDomainService = memoryDomainService;
+        this.properties = properties;
+        this.memoryTaskExecutor = memoryTaskExecutor;
         this.objectMapper = new ObjectMapper();
     }
 
-    /** 异步抽取并持久化（供外部直接调用，无需处理返回值） */
-    @Async("memoryTaskExecutor")
-    public void extractAndPersistAsync(String userId, String sessionId, String userMessage) {
+    /** 登记一轮用户发言（供对话完成后直接调用，不阻塞主流程）
+     *
+     * 发言先累积在会话窗口中，攒够轮数立即提交抽取，否则等空闲超时后由定时任务提交，一个窗口只调用一次模型 */
+    public void submitTurn(String userId, String sessionId, String userMessage) {
+        if (!StringUtils.hasText(userId) || !StringUtils.hasText(sessionId) || !StringUtils.hasText(userMessage)) {
+            return;
+        }
+        String key = userId + ":" + sessionId;
+        turns.incrementAndGet();
+        if (seenSessions.asMap().putIfAbsent(key, Boolean.TRUE) == null) {
+            sessions.incrementAndGet();
+        }
+
+        PendingWindow window = pendingWindows.compute(key, (k, w) -> {
+            if (w == null) {
+                if (pendingWindows.size() >= properties.getMaxPendingSessions()) {
+                    droppedTurns.incrementAndGet();
+                    return null;
+                }
+                w = new PendingWindow(userId, sessionId);
+            }
+            w.turns.add(userMessage.trim());
+            trimWindow(w);
+            w.lastTurnAt = System.currentTimeMillis();
+            return w;
+        });
+        if (window != null && window.turns.size() >= Math.max(1, properties.getDebounceTurns())) {
+            dispatch(key);
+        }
+    }
+
+    /** 定时提交空闲超时的会话窗口 */
+    @Scheduled(fixedDelayString = "${memory.extraction.flush-interval-millis:1000}")
+    public void flushIdleWindows() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, PendingWindow> entry : pendingWindows.entrySet()) {
+            if (now - entry.getValue().lastTurnAt >= properties.getIdleMillis()) {
+                dispatch(entry.getKey());
+            }
+        }
+    }
+
+    /** 停机前提交全部待抽取窗口，线程池停机时会等待已提交的抽取完成 */
+    @PreDestroy
+    public void flushAll() {
+        int size = pendingWindows.size();
+        for (String key : new ArrayList<>(pendingWindows.keySet())) {
+            PendingWindow window = pendingWindows.remove(key);
+            if (window == null) {
+                continue;
+            }
+            try {
+                memoryTaskExecutor.execute(() -> process(window));
+            } catch (RejectedExecutionException e) {
+                // 队列已满时在停机线程内完成，避免丢失
+                process(window);
+            }
+        }
+        if (size > 0) {
+            log.info("停机前提交 {} 个待抽取会话窗口，抽取统计: {}", size, stats());
+        }
+    }
+
+    /** 抽取统计：发言轮数、会话数、模型调用次数、平均每次调用覆盖的轮数和每个会话的调用次数 */
+    public String stats() {
+        long calls = extractionCalls.get();
+        long sessionCount = sessions.get();
+        return String.format(Locale.ROOT,
+                "turns=%d, sessions=%d, calls=%d, turnsPerCall=%.2f, callsPerSession=%.2f, deferred=%d, droppedTurns=%d, pending=%d",
+                turns.get(), sessionCount, calls, calls == 0 ? 0 : (double) turns.get() / calls,
+                sessionCount == 0 ? 0 : (double) calls / sessionCount, deferred.get(), droppedTurns.get(),
+                pendingWindows.size());
+    }
+
+    /** 定时输出抽取统计，期间没有新发言时不输出 */
+    @Scheduled(fixedDelayString = "${memory.extraction.stats-log-interval-millis:300000}",
+            initialDelayString = "${memory.extraction.stats-log-interval-millis:300000}")
+    public void logStats() {
+        long total = turns.get();
+        if (lastLoggedTurns.getAndSet(total) != total) {
+            log.info("记忆抽取统计: {}", stats());
+        }
+    }
+
+    /** 取出会话窗口提交到抽取线程池；线程池队列已满时放回窗口，与期间新累积的发言合并后同样不超过窗口上限，
+     * 等下次定时检查再提交 */
+    private void dispatch(String key) {
+        PendingWindow window = pendingWindows.remove(key);
+        if (window == null) {
+            return;
+        }
         try {
-            List<CandidateMemory> candidates = extract(userId, sessionId, userMessage);
+            memoryTaskExecutor.execute(() -> process(window));
+        } catch (RejectedExecutionException e) {
+            deferred.incrementAndGet();
+            pendingWindows.merge(key, window, (current, returned) -> {
+                returned.turns.addAll(current.turns);
+                returned.lastTurnAt = current.lastTurnAt;
+                trimWindow(returned);
+                return returned;
+            });
+        }
+    }
+
+    /** 窗口超过最大轮数时丢弃最早的发言 */
+    private void trimWindow(PendingWindow window) {
+        int maxWindowTurns = Math.max(1, properties.getMaxWindowTurns());
+        while (window.turns.size() > maxWindowTurns) {
+            window.turns.remove(0);
+            droppedTurns.incrementAndGet();
+        }
+    }
+
+    private void process(PendingWindow window) {
+        extractionCalls.incrementAndGet();
+        try {
+            List<CandidateMemory> candidates = extract(window.userId, window.sessionId, window.turns);
             if (candidates != null && !candidates.isEmpty()) {
-                memoryDomainService.saveMemories(userId, sessionId, candidates);
+                memoryDomainService.saveMemories(window.userId, window.sessionId, candidates);
             }
         } catch (Exception e) {
-            log.warn("async extract&persist failed userId={}, sessionId={}, err={}", userId, sessionId, e.getMessage());
+            log.warn("extract&persist failed userId={}, sessionId={}, err={}", window.userId, window.sessionId,
+                    e.getMessage());
         }
     }
 
-    /** 抽取候选记忆（仅基于用户当轮发言）
+    /** 抽取候选记忆（仅基于用户发言，一个窗口调用一次模型）
      * @param userId 用户ID
      * @param sessionId 会话ID（仅记录来源）
-     * @param userMessage 用户消息
+     * @param userMessages 按时间顺序的用户发言
      * @return 候选记忆列表（可能为空） */
-    public List<CandidateMemory> extract(String userId, String sessionId, String userMessage) {
-        if (!StringUtils.hasText(userMessage)) {
+    public List<CandidateMemory> extract(String userId, String sessionId, List<String> userMessages) {
+        if (CollectionUtils.isEmpty(userMessages)) {
             return new ArrayList<>();
         }
         try {
@@ -150,9 +294,7 @@ public class MemoryExtractorService {
 
             List<ChatMessage> messages = new ArrayList<>();
             messages.add(new SystemMessage(EXTRACT_PROMPT));
-            if (StringUtils.hasText(userMessage)) {
-                messages.add(new UserMessage(userMessage.trim()));
-            }
+            messages.add(new UserMessage(joinTurns(userMessages)));
 
             ChatResponse resp = chatModel.chat(messages);
 
@@ -168,6 +310,18 @@ public class MemoryExtractorService {
         }
     }
 
+    /** 单轮发言原样传入，多轮发言按顺序编号 */
+    private static String joinTurns(List<String> userMessages) {
+        if (userMessages.size() == 1) {
+            return userMessages.get(0);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < userMessages.size(); i++) {
+            sb.append(i + 1).append(". ").append(userMessages.get(i)).append('\n');
+        }
+        return sb.toString().trim();
+    }
+
     private static String asString(Object o) {
         return o == null ? null : String.valueOf(o);
     }
@@ -260,4 +414,17 @@ public class MemoryExtractorService {
         String v = nl.item(0).getTextContent();
         return v == null ? null : v.trim();
     }
+
+    /** 会话待抽取发言窗口，只在 pendingWindows.compute 内修改，取出后归单个抽取任务所有 */
+    private static final class PendingWindow {
+        private final String userId;
+        private final String sessionId;
+        private final List<String> turns = new ArrayList<>();
+        private volatile long lastTurnAt;
+
+        private PendingWindow(String userId, String sessionId) {
+            this.userId = userId;
+            this.sessionId = sessionId;
+        }
+    }
 }
@@ -0,0 +1,267 @@
+package org.xhy.domain.memory.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.xhy.domain.memory.event.MemoryChangedEvent;
+import org.xhy.domain.memory.model.MemoryResult;
+import org.xhy.infrastructure.memory.config.MemoryRecallProperties;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/** 对话记忆召回门控领域服务
+ *
+ * 每轮对话召回记忆前先做廉价判断：寒暄/确认等低信息消息、与上次召回同话题的消息沿用会话内上次的召回结果，冷却期内的新话题本轮不召回；
+ * 需要召回时在专用线程池执行并限定耗时，超时本轮跳过，迟到的结果写入会话缓存供后续轮次复用。会话召回结果自召回完成起最多复用
+ * 缓存有效期，用户记忆保存或删除后立即丢弃该用户所有会话的缓存结果 */
+@Service
+public class MemoryRecallDomainService {
+
+    private static final Logger log = LoggerFactory.getLogger(MemoryRecallDomainService.class);
+
+    /** 超过该长度的消息不再尝试拆分为多个寒暄短语 */
+    private static final int MAX_STOP_PHRASES_LENGTH = 32;
+
+    private final MemoryDomainService memoryDomainService;
+    private final MemoryRecallProperties properties;
+    private final Executor memoryRecallExecutor;
+
+    /** 会话最近一次召回：userId:sessionId -> 召回状态 */
+    private final Cache<String, SessionRecall> sessionRecalls;
+
+    /** 用户记忆最近一次变更时间：userId -> 毫秒时间戳，用于丢弃变更前发起、变更后才返回的召回结果 */
+    private final Cache<String, Long> memoryChangedAt;
+
+    private final Set<String> stopPhrases;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cooldownSkips = new AtomicLong();
+    private final AtomicLong recalls = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong addedNanos = new AtomicLong();
+    private final AtomicLong lastLoggedRequests = new AtomicLong();
+
+    public MemoryRecallDomainService(MemoryDomainService memoryDomainService, MemoryRecallProperties properties,
+            @Qualifier("memoryRecallExecutor") Executor memoryRecallExecutor) {
+        this.memoryDomainService = memoryDomainService;
+        this.properties = properties;
+        this.memoryRecallExecutor = memoryRecallExecutor;
+        // 按写入时间过期，持续命中的会话也不会无限期复用同一次召回结果
+        this.sessionRecalls = CacheBuilder.newBuilder().maximumSize(properties.getCacheMaxSessions())
+                .expireAfterWrite(properties.getCacheTtlSeconds(), TimeUnit.SECONDS).build();
+        this.memoryChangedAt = CacheBuilder.newBuilder().maximumSize(properties.getCacheMaxSessions())
+                .expireAfterWrite(properties.getCacheTtlSeconds(), TimeUnit.SECONDS).build();
+        this.stopPhrases = properties.getStopPhrases() == null
+                ? Collections.emptySet()
+                : properties.getStopPhrases().stream().map(MemoryRecallDomainService::normalize)
+                        .collect(Collectors.toSet());
+    }
+
+    /** 为当前轮对话召回相关记忆
+     *
+     * @param userId 用户ID
+     * @param sessionId 会话ID，为空时不使用会话缓存和冷却
+     * @param message 用户本轮消息
+     * @param topK 返回条数
+     * @return 相关记忆，跳过召回时为会话上次的结果或空列表 */
+    public List<MemoryResult> recall(String userId, String sessionId, String message, int topK) {
+        if (!properties.isEnabled()) {
+            return memoryDomainService.searchRelevant(userId, message, topK);
+        }
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+            String key = StringUtils.hasText(sessionId) ? userId + ":" + sessionId : null;
+            SessionRecall last = key == null ? null : sessionRecalls.getIfPresent(key);
+            List<MemoryResult> fallback = last == null || last.topK != topK ? Collections.emptyList() : last.results;
+
+            String normalized = normalize(message);
+            if (normalized.codePointCount(0, normalized.length()) < properties.getMinQueryLength()
+                    || isStopPhrases(normalized)) {
+                skipped.incrementAndGet();
+                return fallback;
+            }
+
+            Set<String> terms = bigrams(normalized);
+            if (last != null && last.topK == topK && similarity(terms, last.terms) >= properties.getTopicSimilarity()) {
+                cacheHits.incrementAndGet();
+                return fallback;
+            }
+            if (last != null && System.currentTimeMillis() - last.recalledAt < properties.getCooldownMillis()) {
+                // 话题已变化，上次的结果与本轮无关，冷却期内本轮不注入记忆
+                skipped.incrementAndGet();
+                cooldownSkips.incrementAndGet();
+                return Collections.emptyList();
+            }
+
+            return recallWithinBudget(key, userId, message, topK, terms, fallback);
+        } finally {
+            addedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /** 用户记忆保存或删除后丢弃该用户所有会话的召回缓存
+     *
+     * @param event 记忆变更事件 */
+    @EventListener
+    public void onMemoryChanged(MemoryChangedEvent event) {
+        String userId = event.getUserId();
+        // 先记录变更时间再清理，保证迟到的召回结果要么被清理、要么在写入后自查时被移除
+        memoryChangedAt.put(userId, System.currentTimeMillis());
+        String prefix = userId + ":";
+        sessionRecalls.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /** 召回统计：请求数、跳过率、缓存命中率、超时数和平均增加耗时 */
+    public String stats() {
+        long total = requests.get();
+        double perRequestMs = total == 0 ? 0 : addedNanos.get() / 1_000_000.0 / total;
+        return String.format(Locale.ROOT,
+                "requests=%d, skipRate=%.2f, hitRate=%.2f, cooldownSkips=%d, recalls=%d, timeouts=%d, avgAddedMs=%.1f",
+                total, ratio(skipped.get(), total), ratio(cacheHits.get(), total), cooldownSkips.get(), recalls.get(),
+                timeouts.get(), perRequestMs);
+    }
+
+    /** 定时输出召回统计，期间没有新请求时不输出 */
+    @Scheduled(fixedDelayString = "${memory.recall.stats-log-interval-millis:300000}",
+            initialDelayString = "${memory.recall.stats-log-interval-millis:300000}")
+    public void logStats() {
+        long total = requests.get();
+        if (lastLoggedRequests.getAndSet(total) != total) {
+            log.info("记忆召回统计: {}", stats());
+        }
+    }
+
+    private List<MemoryResult> recallWithinBudget(String key, String userId, String message, int topK,
+            Set<String> terms, List<MemoryResult> fallback) {
+        long submittedAt = System.currentTimeMillis();
+        CompletableFuture<List<MemoryResult>> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> {
+                List<MemoryResult> results = memoryDomainService.searchRelevant(userId, message, topK);
+                if (key != null) {
+                    // 在召回线程内写缓存，结果返回前缓存已可见；超时后结果仍会写入，下一轮同话题可直接复用
+                    cacheRecall(key, userId, submittedAt,
+                            new SessionRecall(terms, results == null ? Collections.emptyList() : results, topK));
+                }
+                return results;
+            }, memoryRecallExecutor);
+        } catch (RejectedExecutionException e) {
+            skipped.incrementAndGet();
+            return fallback;
+        }
+        try {
+            List<MemoryResult> results = future.get(properties.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            recalls.incrementAndGet();
+            return results == null ? Collections.emptyList() : results;
+        } catch (TimeoutException e) {
+            skipped.incrementAndGet();
+            timeouts.incrementAndGet();
+            log.debug("记忆召回超过 {}ms 预算，本轮跳过 userId={}", properties.getTimeoutMillis(), userId);
+            return fallback;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (Exception e) {
+            log.warn("记忆召回失败 userId={}, err={}", userId, e.getMessage());
+            return fallback;
+        }
+    }
+
+    /** 写入会话召回缓存，召回期间用户记忆发生变更时结果可能已过时，不保留 */
+    private void cacheRecall(String key, String userId, long submittedAt, SessionRecall recall) {
+        sessionRecalls.put(key, recall);
+        Long changedAt = memoryChangedAt.getIfPresent(userId);
+        if (changedAt != null && changedAt >= submittedAt) {
+            sessionRecalls.asMap().remove(key, recall);
+        }
+    }
+
+    /** 去掉空白和标点并统一小写 */
+    static String normalize(String s) {
+        return s == null ? "" : s.replaceAll("[\\p{P}\\p{S}\\s]+", "").toLowerCase(Locale.ROOT);
+    }
+
+    /** 消息是否由一个或多个寒暄/确认短语拼接而成，如“好的，谢谢” */
+    private boolean isStopPhrases(String normalized) {
+        if (stopPhrases.contains(normalized)) {
+            return true;
+        }
+        if (normalized.length() > MAX_STOP_PHRASES_LENGTH) {
+            return false;
+        }
+        // matched[i]表示前i个字符可以完整拆分为若干短语
+        boolean[] matched = new boolean[normalized.length() + 1];
+        matched[0] = true;
+        for (int end = 1; end <= normalized.length(); end++) {
+            for (int start = 0; start < end && !matched[end]; start++) {
+                matched[end] = matched[start] && stopPhrases.contains(normalized.substring(start, end));
+            }
+        }
+        return matched[normalized.length()];
+    }
+
+    /** 字二元组，单字消息退化为单字 */
+    static Set<String> bigrams(String normalized) {
+        Set<String> terms = new HashSet<>();
+        int[] cps = normalized.codePoints().toArray();
+        if (cps.length == 1) {
+            terms.add(normalized);
+        }
+        for (int i = 0; i + 1 < cps.length; i++) {
+            terms.add(new String(cps, i, 2));
+        }
+        return terms;
+    }
+
+    /** Jaccard相似度 */
+    static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int common = 0;
+        for (String t : a) {
+            if (b.contains(t)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    private static double ratio(long part, long total) {
+        return total == 0 ? 0 : (double) part / total;
+    }
+
+    /** 会话最近一次实际召回 */
+    private static final class SessionRecall {
+        private final Set<String> terms;
+        private final List<MemoryResult> results;
+        private final int topK;
+        private final long recalledAt = System.currentTimeMillis();
+
+        private SessionRecall(Set<String> terms, List<MemoryResult> results, int topK) {
+            this.terms = terms;
+            this.results = List.copyOf(results);
+            this.topK = topK;
+        }
+    }
+}
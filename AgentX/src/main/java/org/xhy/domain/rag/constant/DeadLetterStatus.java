@@ -0,0 +1,44 @@
+package org.xhy.domain.rag.constant;
+
+import org.xhy.infrastructure.exception.BusinessException;
+
+/** 入库死信消息状态枚举 */
+public enum DeadLetterStatus {
+
+    /** 待处理状态 */
+    PENDING(0, "待处理"),
+
+    /** 已重放状态 */
+    REPLAYED(1, "已重放");
+
+    private final Integer code;
+    private final String description;
+
+    DeadLetterStatus(Integer code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /** 根据状态码获取枚举值 */
+    public static DeadLetterStatus fromCode(Integer code) {
+        if (code == null) {
+            return null;
+        }
+
+        for (DeadLetterStatus status : DeadLetterStatus.values()) {
+            if (status.getCode().equals(code)) {
+                return status;
+            }
+        }
+
+        throw new BusinessException("INVALID_DEAD_LETTER_STATUS_CODE", "无效的死信消息状态码: " + code);
+    }
+}
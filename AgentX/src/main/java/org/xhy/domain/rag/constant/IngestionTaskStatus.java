@@ -0,0 +1,47 @@
+package org.xhy.domain.rag.constant;
+
+import org.xhy.infrastructure.exception.BusinessException;
+
+/** 入库排队任务状态枚举 */
+public enum IngestionTaskStatus {
+
+    /** 排队中 */
+    PENDING(0, "排队中"),
+
+    /** 已放行到预处理队列，占用并发名额 */
+    DISPATCHED(1, "处理中"),
+
+    /** 预处理结束，释放并发名额 */
+    FINISHED(2, "已结束");
+
+    private final Integer code;
+    private final String description;
+
+    IngestionTaskStatus(Integer code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /** 根据状态码获取枚举值 */
+    public static IngestionTaskStatus fromCode(Integer code) {
+        if (code == null) {
+            return null;
+        }
+
+        for (IngestionTaskStatus status : IngestionTaskStatus.values()) {
+            if (status.getCode().equals(code)) {
+                return status;
+            }
+        }
+
+        throw new BusinessException("INVALID_INGESTION_TASK_STATUS_CODE", "无效的入库任务状态码: " + code);
+    }
+}
@@ -0,0 +1,80 @@
+package org.xhy.domain.rag.consumer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.rag.model.RagDeadLetterEntity;
+import org.xhy.domain.rag.service.RagDeadLetterDomainService;
+import org.xhy.infrastructure.mq.core.MessageHeaders;
+import org.xhy.infrastructure.mq.events.RagDeadLetterEvent;
+import org.xhy.infrastructure.mq.rabbit.RagIngestionFailureHandler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+
+/** 入库死信消费者 将超过重试次数的预处理和向量化消息连同失败信息落库，供管理员查看和重放
+ * @author zang */
+@Component
+public class RagDeadLetterConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(RagDeadLetterConsumer.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final RagDeadLetterDomainService ragDeadLetterDomainService;
+
+    public RagDeadLetterConsumer(RagDeadLetterDomainService ragDeadLetterDomainService) {
+        this.ragDeadLetterDomainService = ragDeadLetterDomainService;
+    }
+
+    @RabbitListener(bindings = @QueueBinding(value = @Queue(RagDeadLetterEvent.QUEUE_NAME), exchange = @Exchange(value = RagDeadLetterEvent.EXCHANGE_NAME, type = ExchangeTypes.TOPIC), key = RagDeadLetterEvent.ROUTE_KEY))
+    public void receiveMessage(Message message, Channel channel) throws IOException {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        try {
+            ragDeadLetterDomainService.recordDeadLetter(toDeadLetter(message));
+        } catch (Exception e) {
+            // 落库失败时保留在死信队列中，稍后重新投递
+            log.error("死信消息落库失败", e);
+            channel.basicNack(deliveryTag, false, true);
+            return;
+        }
+        channel.basicAck(deliveryTag, false);
+    }
+
+    /** 从消息头和消息体中提取死信信息 */
+    static RagDeadLetterEntity toDeadLetter(Message message) {
+        Map<String, Object> headers = message.getMessageProperties().getHeaders();
+        String payload = new String(message.getBody(), StandardCharsets.UTF_8);
+
+        RagDeadLetterEntity deadLetter = new RagDeadLetterEntity();
+        deadLetter.setSourceQueue(header(headers, MessageHeaders.ORIGINAL_QUEUE));
+        deadLetter.setSourceExchange(header(headers, MessageHeaders.ORIGINAL_EXCHANGE));
+        deadLetter.setSourceRoutingKey(header(headers, MessageHeaders.ORIGINAL_ROUTING_KEY));
+        deadLetter.setErrorMessage(header(headers, MessageHeaders.LAST_ERROR));
+        deadLetter.setRetryCount(RagIngestionFailureHandler.retryCount(message.getMessageProperties()));
+        deadLetter.setPayload(payload);
+        try {
+            JsonNode envelope = OBJECT_MAPPER.readTree(payload);
+            deadLetter.setTraceId(envelope.path("traceId").asText(null));
+            deadLetter.setFileId(envelope.path("data").path("fileId").asText(null));
+        } catch (Exception e) {
+            log.warn("死信消息体无法解析为JSON: {}", e.getMessage());
+        }
+        return deadLetter;
+    }
+
+    private static String header(Map<String, Object> headers, String name) {
+        Object value = headers.get(name);
+        return value != null ? value.toString() : null;
+    }
+}
@@ -3,6 +3,7 @@ package org.xhy.domain.rag.consumer;
 import static org.xhy.infrastructure.mq.core.MessageHeaders.TRACE_ID;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -18,20 +19,21 @@ import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.xhy.infrastructure.mq.core.MessageEnvelope;
-import org.xhy.infrastructure.mq.core.MessagePublisher;
 import org.springframework.stereotype.Component;
 import org.xhy.domain.rag.message.RagDocMessage;
 import org.xhy.domain.rag.message.RagDocSyncStorageMessage;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.model.ModelConfig;
 import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.domain.rag.service.EmbeddingBatchDispatcher;
 import org.xhy.domain.rag.service.FileDetailDomainService;
+import org.xhy.domain.rag.service.RagIngestionQueueDomainService;
 import org.xhy.domain.rag.strategy.DocumentProcessingStrategy;
 import org.xhy.domain.rag.strategy.context.DocumentProcessingFactory;
 import org.xhy.infrastructure.exception.BusinessException;
-import org.xhy.infrastructure.mq.enums.EventType;
 import org.xhy.infrastructure.mq.events.RagDocSyncOcrEvent;
-import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
+import org.xhy.infrastructure.mq.rabbit.RagIngestionFailureHandler;
 
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
@@ -58,17 +60,22 @@ public class RagDocConsumer {
     private final DocumentProcessingFactory documentProcessingFactory;
     private final FileDetailDomainService fileDetailDomainService;
     private final DocumentUnitRepository documentUnitRepository;
-    private final MessagePublisher messagePublisher;
+    private final EmbeddingBatchDispatcher embeddingBatchDispatcher;
     private final UserModelConfigResolver userModelConfigResolver;
+    private final RagIngestionFailureHandler failureHandler;
+    private final RagIngestionQueueDomainService ingestionQueueDomainService;
 
     public RagDocConsumer(DocumentProcessingFactory ragDocSyncOcrContext,
             FileDetailDomainService fileDetailDomainService, DocumentUnitRepository documentUnitRepository,
-            MessagePublisher messagePublisher, UserModelConfigResolver userModelConfigResolver) {
+            EmbeddingBatchDispatcher embeddingBatchDispatcher, UserModelConfigResolver userModelConfigResolver,
+            RagIngestionFailureHandler failureHandler, RagIngestionQueueDomainService ingestionQueueDomainService) {
         this.documentProcessingFactory = ragDocSyncOcrContext;
         this.fileDetailDomainService = fileDetailDomainService;
         this.documentUnitRepository = documentUnitRepository;
-        this.messagePublisher = messagePublisher;
+        this.embeddingBatchDispatcher = embeddingBatchDispatcher;
         this.userModelConfigResolver = userModelConfigResolver;
+        this.failureHandler = failureHandler;
+        this.ingestionQueueDomainService = ingestionQueueDomainService;
     }
 
     @RabbitHandler
@@ -96,6 +103,8 @@ public class RagDocConsumer {
             if (!startSuccess) {
                 throw new BusinessException("无法开始OCR处理，文件状态不允许");
             }
+            // 新一轮处理开始，部分策略（如Markdown）在预处理阶段就会分发向量化
+            fileDetailDomainService.resetEmbeddingProgress(docMessage.getFileId());
 
             // 获取文件扩展名并选择处理策略
             String fileExt = fileDetailDomainService.getFileExtension(docMessage.getFileId());
@@ -133,7 +142,7 @@ public class RagDocConsumer {
 
         } catch (Exception e) {
             log.error("OCR处理失败，文件ID: {}", docMessage != null ? docMessage.getFileId() : "unknown", e);
-            // 处理失败
+            // 处理失败，OCR失败状态允许重试时重新开始处理
             try {
                 if (docMessage != null) {
                     FileDetailEntity fileEntity = fileDetailDomainService
@@ -143,8 +152,28 @@ public class RagDocConsumer {
             } catch (Exception ex) {
                 log.error("更新文件状态为失败失败，文件ID: {}", docMessage != null ? docMessage.getFileId() : "unknown", ex);
             }
-        } finally {
-            channel.basicAck(deliveryTag, false);
+            // 按重试次数转入延迟重试队列或死信队列，原消息由失败处理器确认
+            RagIngestionFailureHandler.Outcome outcome = failureHandler.handleFailure(message, channel,
+                    RagDocSyncOcrEvent.route(), e);
+            // 转入延迟重试或重新入队的消息还会再次投递，预处理尚未结束，名额继续由该文件占用
+            if (outcome == RagIngestionFailureHandler.Outcome.DEAD_LETTERED) {
+                releaseIngestionSlot(docMessage);
+            }
+            return;
+        }
+        // 预处理结束，释放公平排队的并发名额
+        releaseIngestionSlot(docMessage);
+        channel.basicAck(deliveryTag, false);
+    }
+
+    private void releaseIngestionSlot(RagDocMessage docMessage) {
+        if (docMessage == null || docMessage.getFileId() == null) {
+            return;
+        }
+        try {
+            ingestionQueueDomainService.release(docMessage.getFileId());
+        } catch (Exception e) {
+            log.warn("释放入库排队名额失败，文件ID: {}，等待超时回收: {}", docMessage.getFileId(), e.getMessage());
         }
     }
 
@@ -161,7 +190,7 @@ public class RagDocConsumer {
                             .eq(DocumentUnitEntity::getIsOcr, true).eq(DocumentUnitEntity::getIsVector, false));
 
             if (documentUnits.isEmpty()) {
-                log.warn("未找到用于向量化的文档单元，文件ID: {}", fileId);
+                completePreDispatchedVectorization(fileId, fileEntity);
                 return;
             }
 
@@ -172,7 +201,12 @@ public class RagDocConsumer {
                 return;
             }
 
-            // 为每个DocumentUnit发送向量化MQ消息
+            fileDetailDomainService.resetEmbeddingProgress(fileId);
+
+            // 嵌入模型配置对整个文件只解析一次，所有DocumentUnit按批次发送向量化MQ消息
+            ModelConfig embeddingModelConfig = userModelConfigResolver
+                    .getUserEmbeddingModelConfig(fileEntity.getUserId());
+            List<RagDocSyncStorageMessage> storageMessages = new ArrayList<>(documentUnits.size());
             for (DocumentUnitEntity documentUnit : documentUnits) {
                 RagDocSyncStorageMessage storageMessage = new RagDocSyncStorageMessage();
                 storageMessage.setId(documentUnit.getId());
@@ -183,15 +217,10 @@ public class RagDocConsumer {
                 storageMessage.setVector(true);
                 storageMessage.setDatasetId(fileEntity.getDataSetId());
                 storageMessage.setUserId(fileEntity.getUserId());
-                // 获取用户的嵌入模型配置
-                storageMessage.setEmbeddingModelConfig(
-                        userModelConfigResolver.getUserEmbeddingModelConfig(fileEntity.getUserId()));
-
-                MessageEnvelope<RagDocSyncStorageMessage> env = MessageEnvelope.builder(storageMessage)
-                        .addEventType(EventType.DOC_SYNC_RAG).description("文件自动向量化处理任务 - 页面 " + documentUnit.getPage())
-                        .build();
-                messagePublisher.publish(RagDocSyncStorageEvent.route(), env);
+                storageMessage.setEmbeddingModelConfig(embeddingModelConfig);
+                storageMessages.add(storageMessage);
             }
+            embeddingBatchDispatcher.dispatch(storageMessages, "文件自动向量化处理任务");
 
             log.info("自动向量化启动完成，文件ID: {}，{}个文档单元", fileId, documentUnits.size());
 
@@ -205,4 +234,39 @@ public class RagDocConsumer {
             }
         }
     }
+
+    /** 预处理阶段已分发向量化的文件（如Markdown）进入向量化状态，若段落已全部处理完则直接完成
+     * @param fileId 文件ID
+     * @param fileEntity 文件实体 */
+    private void completePreDispatchedVectorization(String fileId, FileDetailEntity fileEntity) {
+        FileDetailEntity latest = fileDetailDomainService.getFileByIdWithoutUserCheck(fileId);
+        Integer dispatched = latest.getEmbeddingTotalCount();
+        if (dispatched == null || dispatched <= 0) {
+            completeUnchangedVectorization(fileId, fileEntity);
+            return;
+        }
+
+        fileDetailDomainService.startFileEmbeddingProcessing(fileId, fileEntity.getUserId());
+        // 最后一批可能在进入向量化状态之前就已完成，此时由这里补上完成转换，状态条件更新保证只完成一次
+        if (fileDetailDomainService.completeEmbeddingIfFinished(fileId)) {
+            log.info("文件{}的预分发段落均已向量化，标记为完成", fileId);
+        }
+    }
+
+    /** 增量处理后没有需要向量化的段落：已有向量的文件沿用原向量直接完成
+     * @param fileId 文件ID
+     * @param fileEntity 文件实体 */
+    private void completeUnchangedVectorization(String fileId, FileDetailEntity fileEntity) {
+        Long vectorized = documentUnitRepository.selectCount(Wrappers.lambdaQuery(DocumentUnitEntity.class)
+                .eq(DocumentUnitEntity::getFileId, fileId).eq(DocumentUnitEntity::getIsVector, true));
+        if (vectorized == null || vectorized == 0) {
+            log.warn("未找到用于向量化的文档单元，文件ID: {}", fileId);
+            return;
+        }
+
+        fileDetailDomainService.startFileEmbeddingProcessing(fileId, fileEntity.getUserId());
+        if (fileDetailDomainService.completeFileEmbeddingProcessing(fileId, fileEntity.getUserId())) {
+            log.info("文件{}的内容与上一轮相同，沿用{}个文档单元的已有向量，标记为完成", fileId, vectorized);
+        }
+    }
 }
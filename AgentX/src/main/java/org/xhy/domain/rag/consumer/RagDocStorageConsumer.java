@@ -3,6 +3,7 @@ package org.xhy.domain.rag.consumer;
 import static org.xhy.infrastructure.mq.core.MessageHeaders.TRACE_ID;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.Objects;
 
 import org.slf4j.Logger;
@@ -17,16 +18,16 @@ import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
+import org.xhy.domain.rag.message.RagDocSyncStorageBatchMessage;
 import org.xhy.domain.rag.message.RagDocSyncStorageMessage;
-import org.xhy.domain.rag.model.DocumentUnitEntity;
-import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.service.EmbeddingDomainService;
 import org.xhy.domain.rag.service.FileDetailDomainService;
 import org.xhy.infrastructure.mq.core.MessageEnvelope;
 import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
+import org.xhy.infrastructure.mq.rabbit.RagIngestionFailureHandler;
 
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
-import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -48,85 +49,93 @@ public class RagDocStorageConsumer {
 
     private final EmbeddingDomainService embeddingService;
     private final FileDetailDomainService fileDetailDomainService;
-    private final DocumentUnitRepository documentUnitRepository;
+    private final RagIngestionFailureHandler failureHandler;
 
     public RagDocStorageConsumer(EmbeddingDomainService embeddingService,
-            FileDetailDomainService fileDetailDomainService, DocumentUnitRepository documentUnitRepository) {
+            FileDetailDomainService fileDetailDomainService, RagIngestionFailureHandler failureHandler) {
         this.embeddingService = embeddingService;
         this.fileDetailDomainService = fileDetailDomainService;
-        this.documentUnitRepository = documentUnitRepository;
+        this.failureHandler = failureHandler;
     }
 
     @RabbitHandler
-    public void receiveMessage(java.util.Map<String, Object> payload, Message message, Channel channel)
+    public void receiveMessage(Map<String, Object> payload, Message message, Channel channel)
             throws IOException {
         MessageProperties messageProperties = message.getMessageProperties();
         long deliveryTag = messageProperties.getDeliveryTag();
 
         try {
-            // 将已由 Jackson 转换的 Map 转为强类型 Envelope
-            MessageEnvelope<RagDocSyncStorageMessage> envelope = OBJECT_MAPPER.convertValue(payload,
-                    new TypeReference<MessageEnvelope<RagDocSyncStorageMessage>>() {
-                    });
-
-            MDC.put(TRACE_ID, Objects.nonNull(envelope.getTraceId()) ? envelope.getTraceId() : IdWorker.getTimeId());
-            RagDocSyncStorageMessage mqRecordReqDTO = envelope.getData();
-
-            log.info("当前文件 {} 页面 {} ———— 开始向量化", mqRecordReqDTO.getFileName(), mqRecordReqDTO.getPage());
-
-            // 执行向量化处理
-            embeddingService.syncStorage(mqRecordReqDTO);
-
-            // 更新向量化进度（假设每个页面向量化完成后更新）
-            updateEmbeddingProgress(mqRecordReqDTO);
-
-            log.info("当前文件 {} 第{}页 ———— 向量化完成", mqRecordReqDTO.getFileName(), mqRecordReqDTO.getPage());
+            if (isBatchPayload(payload)) {
+                receiveBatch(payload);
+            } else {
+                receiveSingle(payload);
+            }
         } catch (Exception e) {
             log.error("向量化过程中发生异常", e);
-        } finally {
-            channel.basicAck(deliveryTag, false);
+            // 按重试次数转入延迟重试队列或死信队列，原消息由失败处理器确认
+            if (failureHandler.handleFailure(message, channel, RagDocSyncStorageEvent.route(),
+                    e) == RagIngestionFailureHandler.Outcome.DEAD_LETTERED) {
+                failFileEmbedding(payload);
+            }
+            return;
         }
+        channel.basicAck(deliveryTag, false);
     }
 
-    /** 更新向量化进度
-     * @param message 向量化消息 */
-    private void updateEmbeddingProgress(RagDocSyncStorageMessage message) {
+    /** 消息进入死信队列后不会再有段落完成计数，将文件置为向量化失败，避免一直停留在处理中 */
+    private void failFileEmbedding(Map<String, Object> payload) {
+        String fileId = payload.get("data") instanceof Map<?, ?> data && data.get("fileId") != null
+                ? data.get("fileId").toString()
+                : null;
+        if (fileId == null) {
+            return;
+        }
         try {
-            String fileId = message.getFileId();
-            Integer pageIndex = message.getPage(); // 这是从0开始的页面索引
-
-            // 获取文件总页数来计算进度
-            var fileEntity = fileDetailDomainService.getFileByIdWithoutUserCheck(fileId);
-            Integer totalPages = fileEntity.getFilePageSize();
-
-            if (totalPages != null && totalPages > 0) {
-                // 查询已完成向量化的页面数量
-                long completedVectorPages = documentUnitRepository
-                        .selectCount(Wrappers.<DocumentUnitEntity>lambdaQuery()
-                                .eq(DocumentUnitEntity::getFileId, fileId).eq(DocumentUnitEntity::getIsVector, true));
-
-                // 当前页面完成后的总完成页数
-                int currentCompletedPages = (int) (completedVectorPages + 1);
-
-                // 计算百分比：已完成的页数 / 总页数 * 100
-                double progress = ((double) currentCompletedPages / totalPages) * 100.0;
-
-                fileDetailDomainService.updateFileEmbeddingProgress(fileId, currentCompletedPages, progress);
-                log.debug("更新文件{}的嵌入进度: {}/{} ({}%)", fileId, currentCompletedPages, totalPages,
-                        String.format("%.1f", progress));
-
-                // 检查是否所有页面都已完成向量化
-                if (currentCompletedPages >= totalPages) {
-                    // 确保进度为100%
-                    fileDetailDomainService.updateFileEmbeddingProgress(fileId, totalPages, 100.0);
-                    // 通过状态机完成向量化处理
-                    fileDetailDomainService.completeFileEmbeddingProcessing(fileId, fileEntity.getUserId());
-                    log.info("文件{}的所有页面均已向量化，标记为完成", fileId);
-                }
-            }
+            FileDetailEntity fileEntity = fileDetailDomainService.getFileByIdWithoutUserCheck(fileId);
+            fileDetailDomainService.failFileEmbeddingProcessing(fileId, fileEntity.getUserId());
         } catch (Exception e) {
-            log.warn("更新文件{}的嵌入进度失败: {}", message.getFileId(), e.getMessage());
+            log.error("更新文件嵌入状态为失败失败，文件ID: {}", fileId, e);
         }
     }
 
+    /** 处理单段落向量化消息 */
+    private void receiveSingle(Map<String, Object> payload) {
+        // 将已由 Jackson 转换的 Map 转为强类型 Envelope
+        MessageEnvelope<RagDocSyncStorageMessage> envelope = OBJECT_MAPPER.convertValue(payload,
+                new TypeReference<MessageEnvelope<RagDocSyncStorageMessage>>() {
+                });
+
+        MDC.put(TRACE_ID, Objects.nonNull(envelope.getTraceId()) ? envelope.getTraceId() : IdWorker.getTimeId());
+        RagDocSyncStorageMessage mqRecordReqDTO = envelope.getData();
+
+        log.info("当前文件 {} 页面 {} ———— 开始向量化", mqRecordReqDTO.getFileName(), mqRecordReqDTO.getPage());
+
+        // 执行向量化处理，进度与完成状态由完成计数原子维护
+        embeddingService.syncStorage(mqRecordReqDTO);
+
+        log.info("当前文件 {} 第{}页 ———— 向量化完成", mqRecordReqDTO.getFileName(), mqRecordReqDTO.getPage());
+    }
+
+    /** 处理批量向量化消息 */
+    private void receiveBatch(Map<String, Object> payload) {
+        MessageEnvelope<RagDocSyncStorageBatchMessage> envelope = OBJECT_MAPPER.convertValue(payload,
+                new TypeReference<MessageEnvelope<RagDocSyncStorageBatchMessage>>() {
+                });
+
+        MDC.put(TRACE_ID, Objects.nonNull(envelope.getTraceId()) ? envelope.getTraceId() : IdWorker.getTimeId());
+        RagDocSyncStorageBatchMessage batchMessage = envelope.getData();
+
+        log.info("当前文件 {} ———— 开始批量向量化 {} 个段落", batchMessage.getFileName(), batchMessage.getItems().size());
+
+        int stored = embeddingService.syncStorageBatch(batchMessage);
+
+        log.info("当前文件 {} ———— 批量向量化完成 {}/{} 个段落", batchMessage.getFileName(), stored,
+                batchMessage.getItems().size());
+    }
+
+    /** 批量消息的data中带有items列表 */
+    private static boolean isBatchPayload(Map<String, Object> payload) {
+        return payload.get("data") instanceof Map<?, ?> data && data.containsKey("items");
+    }
+
 }
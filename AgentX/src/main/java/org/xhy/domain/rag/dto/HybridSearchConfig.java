@@ -37,6 +37,9 @@ public class HybridSearchConfig {
     /** 聊天模型配置（用于HyDE） */
     private ModelConfig chatModelConfig;
 
+    /** RAG版本ID，设置时只在该版本引用的分块内检索，用于SNAPSHOT安装 */
+    private String ragVersionId;
+
     public HybridSearchConfig() {
     }
 
@@ -94,6 +97,11 @@ public class HybridSearchConfig {
             return this;
         }
 
+        public Builder ragVersionId(String ragVersionId) {
+            config.setRagVersionId(ragVersionId);
+            return this;
+        }
+
         public HybridSearchConfig build() {
             return config;
         }
@@ -212,4 +220,12 @@ public class HybridSearchConfig {
                 + candidateMultiplier + ", enableQueryExpansion=" + enableQueryExpansion + ", hasChatModelConfig="
                 + hasValidChatModelConfig() + '}';
     }
-}
\ No newline at end of file
+
+    public String getRagVersionId() {
+        return ragVersionId;
+    }
+
+    public void setRagVersionId(String ragVersionId) {
+        this.ragVersionId = ragVersionId;
+    }
+}
@@ -0,0 +1,26 @@
+package org.xhy.domain.rag.event;
+
+/** 文件处理进度变更事件 状态转换、进度更新和向量化计数推进时触发，只携带文件标识，订阅方按需读取最新进度
+ *
+ * @author zang */
+public class FileProgressChangedEvent {
+
+    /** 文件ID */
+    private final String fileId;
+
+    /** 数据集ID，向量化计数推进时未知，为null */
+    private final String datasetId;
+
+    public FileProgressChangedEvent(String fileId, String datasetId) {
+        this.fileId = fileId;
+        this.datasetId = datasetId;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public String getDatasetId() {
+        return datasetId;
+    }
+}
@@ -0,0 +1,81 @@
+package org.xhy.domain.rag.message;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xhy.domain.rag.model.ModelConfig;
+
+/** 批量向量化消息 同一文件、同一嵌入模型的多个段落合并为一条消息，消费端一次调用embedAll并批量写入向量库 */
+public class RagDocSyncStorageBatchMessage implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 3512298470021867315L;
+
+    /** 文件ID */
+    private String fileId;
+
+    /** 文件名 */
+    private String fileName;
+
+    /** 数据集ID */
+    private String datasetId;
+
+    /** 用户ID */
+    private String userId;
+
+    /** 嵌入模型配置 */
+    private ModelConfig embeddingModelConfig;
+
+    /** 批次内的段落 */
+    private List<RagDocSyncStorageMessage> items = new ArrayList<>();
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getDatasetId() {
+        return datasetId;
+    }
+
+    public void setDatasetId(String datasetId) {
+        this.datasetId = datasetId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public ModelConfig getEmbeddingModelConfig() {
+        return embeddingModelConfig;
+    }
+
+    public void setEmbeddingModelConfig(ModelConfig embeddingModelConfig) {
+        this.embeddingModelConfig = embeddingModelConfig;
+    }
+
+    public List<RagDocSyncStorageMessage> getItems() {
+        return items;
+    }
+
+    public void setItems(List<RagDocSyncStorageMessage> items) {
+        this.items = items;
+    }
+}
@@ -0,0 +1,28 @@
+package org.xhy.domain.rag.model;
+
+import org.xhy.domain.rag.model.enums.FusionStrategy;
+
+import java.util.Map;
+
+/** 数据集检索配置 一次查询得到的各数据集入库代次，以及这组数据集统一指定的融合策略 */
+public class DatasetSearchProfile {
+
+    /** 数据集ID与入库代次映射，不存在的数据集代次为0 */
+    private final Map<String, Long> ingestGenerations;
+
+    /** 所有数据集指定的相同融合策略，未指定或互相冲突时为null */
+    private final FusionStrategy fusionStrategy;
+
+    public DatasetSearchProfile(Map<String, Long> ingestGenerations, FusionStrategy fusionStrategy) {
+        this.ingestGenerations = ingestGenerations;
+        this.fusionStrategy = fusionStrategy;
+    }
+
+    public Map<String, Long> getIngestGenerations() {
+        return ingestGenerations;
+    }
+
+    public FusionStrategy getFusionStrategy() {
+        return fusionStrategy;
+    }
+}
@@ -38,6 +38,12 @@ public class DocumentUnitEntity extends BaseEntity implements Serializable {
     /** ocr识别状态 */
     private Boolean isOcr;
 
+    /** 源页面指纹，源页面不变时沿用上一轮的提取结果 */
+    private String sourceHash;
+
+    /** 提取内容指纹，内容不变时沿用已有向量 */
+    private String contentHash;
+
     /** 相似度分数（非持久化字段，用于RAG搜索结果） */
     @TableField(exist = false)
     private Double similarityScore;
@@ -97,4 +103,20 @@ public class DocumentUnitEntity extends BaseEntity implements Serializable {
     public void setIsVector(Boolean isVector) {
         this.isVector = isVector;
     }
+
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    public void setSourceHash(String sourceHash) {
+        this.sourceHash = sourceHash;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
 }
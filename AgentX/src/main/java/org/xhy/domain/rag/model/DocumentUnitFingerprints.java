@@ -0,0 +1,39 @@
+package org.xhy.domain.rag.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/** 本轮提取结果的内容指纹统计 分批同步前先扫描一遍提取结果得到，只记录指纹出现次数和空页页码，不保留内容，
+ * 供增量同步预先确定哪些原有单元会按内容沿用
+ *
+ * @author zang */
+public class DocumentUnitFingerprints {
+
+    /** 内容指纹 -> 本轮出现次数，空内容的键为空串 */
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    /** 本轮未提取出内容的页码 */
+    private final Set<Integer> emptyPages = new HashSet<>();
+
+    /** 登记一个提取单元
+     * @param page 页码
+     * @param contentHash 内容指纹，内容为空时为null */
+    public void add(Integer page, String contentHash) {
+        counts.merge(Objects.toString(contentHash, ""), 1, Integer::sum);
+        if (contentHash == null) {
+            emptyPages.add(page);
+        }
+    }
+
+    public Map<String, Integer> getCounts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    public Set<Integer> getEmptyPages() {
+        return Collections.unmodifiableSet(emptyPages);
+    }
+}
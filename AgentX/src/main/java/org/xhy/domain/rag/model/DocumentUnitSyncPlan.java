@@ -0,0 +1,62 @@
+package org.xhy.domain.rag.model;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+
+/** 文档单元分批增量同步的状态 由同步开始时的原有单元和本轮内容指纹统计生成，随各批次消耗，原有单元不保留内容
+ *
+ * @author zang */
+public class DocumentUnitSyncPlan {
+
+    private final String fileId;
+
+    /** 内容指纹 -> 将按内容沿用的原有单元，按页码排列 */
+    private final Map<String, Deque<DocumentUnitEntity>> reusable;
+
+    /** 不会按内容沿用的原有单元，可被同页变化的单元改写，同步结束时仍未改写的连同向量删除 */
+    private final Map<String, DocumentUnitEntity> leftovers;
+
+    /** 页码 -> 该页未被沿用的原有单元 */
+    private final Map<Integer, DocumentUnitEntity> leftoverByPage;
+
+    /** 本轮未提取出内容、沿用原有单元的页码 */
+    private final Set<Integer> keptPages;
+
+    /** 各批次累计的同步计数，不保留待向量化的单元 */
+    private final DocumentUnitSyncResult totals = new DocumentUnitSyncResult();
+
+    public DocumentUnitSyncPlan(String fileId, Map<String, Deque<DocumentUnitEntity>> reusable,
+            Map<String, DocumentUnitEntity> leftovers, Map<Integer, DocumentUnitEntity> leftoverByPage,
+            Set<Integer> keptPages) {
+        this.fileId = fileId;
+        this.reusable = reusable;
+        this.leftovers = leftovers;
+        this.leftoverByPage = leftoverByPage;
+        this.keptPages = keptPages;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public Map<String, Deque<DocumentUnitEntity>> getReusable() {
+        return reusable;
+    }
+
+    public Map<String, DocumentUnitEntity> getLeftovers() {
+        return leftovers;
+    }
+
+    public Map<Integer, DocumentUnitEntity> getLeftoverByPage() {
+        return leftoverByPage;
+    }
+
+    public Set<Integer> getKeptPages() {
+        return keptPages;
+    }
+
+    public DocumentUnitSyncResult getTotals() {
+        return totals;
+    }
+}
@@ -0,0 +1,93 @@
+package org.xhy.domain.rag.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** 文档单元增量同步结果 记录与上一轮相比沿用、改写、新增和删除的单元数，以及仍需向量化的单元
+ *
+ * @author zang */
+public class DocumentUnitSyncResult {
+
+    /** 内容未变、沿用原记录及向量的单元数 */
+    private int reusedCount;
+
+    /** 内容变化、原记录改写并需重新向量化的单元数 */
+    private int updatedCount;
+
+    /** 新增的单元数 */
+    private int insertedCount;
+
+    /** 上一轮存在而本轮消失的单元数 */
+    private int deletedCount;
+
+    /** 需要向量化的单元数，汇总多批结果时只累加计数 */
+    private int pendingCount;
+
+    /** 需要向量化的单元（变化、新增以及上一轮未完成向量化的单元） */
+    private final List<DocumentUnitEntity> pendingUnits = new ArrayList<>();
+
+    public int getReusedCount() {
+        return reusedCount;
+    }
+
+    public int getUpdatedCount() {
+        return updatedCount;
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    public List<DocumentUnitEntity> getPendingUnits() {
+        return pendingUnits;
+    }
+
+    /** 是否与上一轮存在差异 */
+    public boolean hasChanges() {
+        return updatedCount + insertedCount + deletedCount > 0;
+    }
+
+    public void addReused() {
+        reusedCount++;
+    }
+
+    public void addUpdated() {
+        updatedCount++;
+    }
+
+    public void addInserted() {
+        insertedCount++;
+    }
+
+    public void addDeleted(int count) {
+        deletedCount += count;
+    }
+
+    public void addPending(DocumentUnitEntity unit) {
+        pendingUnits.add(unit);
+        pendingCount++;
+    }
+
+    /** 累加另一批结果的计数，不合并其待向量化的单元 */
+    public void addCounts(DocumentUnitSyncResult other) {
+        reusedCount += other.reusedCount;
+        updatedCount += other.updatedCount;
+        insertedCount += other.insertedCount;
+        deletedCount += other.deletedCount;
+        pendingCount += other.pendingCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("reused=%d, updated=%d, inserted=%d, deleted=%d, pending=%d", reusedCount, updatedCount,
+                insertedCount, deletedCount, pendingCount);
+    }
+}
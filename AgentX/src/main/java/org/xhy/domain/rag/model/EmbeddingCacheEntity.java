@@ -0,0 +1,85 @@
+package org.xhy.domain.rag.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+/** 嵌入向量缓存实体 以嵌入模型标识与规范化文本的哈希为主键，内容相同的段落共享同一个向量
+ * @author zang */
+@TableName("embedding_cache")
+public class EmbeddingCacheEntity implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 3817265520318457310L;
+
+    /** 嵌入模型标识与规范化文本的SHA-256 */
+    @TableId(type = IdType.INPUT)
+    private String id;
+
+    /** 嵌入模型标识（服务地址|模型名） */
+    private String modelKey;
+
+    /** 向量维度 */
+    private Integer dimension;
+
+    /** 小端序float32向量 */
+    private byte[] vector;
+
+    /** 创建时间 */
+    private LocalDateTime createdAt;
+
+    /** 最近一次写入或命中的时间 */
+    private LocalDateTime lastUsedAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getModelKey() {
+        return modelKey;
+    }
+
+    public void setModelKey(String modelKey) {
+        this.modelKey = modelKey;
+    }
+
+    public Integer getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(Integer dimension) {
+        this.dimension = dimension;
+    }
+
+    public byte[] getVector() {
+        return vector;
+    }
+
+    public void setVector(byte[] vector) {
+        this.vector = vector;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public void setLastUsedAt(LocalDateTime lastUsedAt) {
+        this.lastUsedAt = lastUsedAt;
+    }
+}
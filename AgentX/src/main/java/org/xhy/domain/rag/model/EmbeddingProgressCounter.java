@@ -0,0 +1,83 @@
+package org.xhy.domain.rag.model;
+
+/** 文件向量化进度计数 由原子自增语句的RETURNING结果映射而来
+ *
+ * @author zang */
+public class EmbeddingProgressCounter {
+
+    /** 自增后已处理完成的段落数 */
+    private Integer doneCount;
+
+    /** 本轮已分发的段落数 */
+    private Integer totalCount;
+
+    /** 自增后复用缓存向量的段落数 */
+    private Integer cacheHits;
+
+    /** 自增后调用嵌入接口的段落数 */
+    private Integer cacheMisses;
+
+    /** 本次新计入完成数的段落数，已登记过的段落不计入 */
+    private Integer incrementCount;
+
+    public Integer getDoneCount() {
+        return doneCount;
+    }
+
+    public void setDoneCount(Integer doneCount) {
+        this.doneCount = doneCount;
+    }
+
+    public Integer getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(Integer totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public Integer getCacheHits() {
+        return cacheHits;
+    }
+
+    public void setCacheHits(Integer cacheHits) {
+        this.cacheHits = cacheHits;
+    }
+
+    public Integer getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public void setCacheMisses(Integer cacheMisses) {
+        this.cacheMisses = cacheMisses;
+    }
+
+    public Integer getIncrementCount() {
+        return incrementCount;
+    }
+
+    public void setIncrementCount(Integer incrementCount) {
+        this.incrementCount = incrementCount;
+    }
+
+    /** 向量缓存命中率，没有写入过向量时为0 */
+    public double cacheHitRatio() {
+        int hits = cacheHits != null ? cacheHits : 0;
+        int misses = cacheMisses != null ? cacheMisses : 0;
+        return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+    }
+
+    /** 本次自增是否恰好越过完成线 行锁保证自增串行执行，同一轮中只有一次自增满足该条件
+     * @param increment 本次自增量 */
+    public boolean crossedCompletion(int increment) {
+        int done = doneCount != null ? doneCount : 0;
+        int total = totalCount != null ? totalCount : 0;
+        return total > 0 && done >= total && done - increment < total;
+    }
+
+    /** 是否已全部处理完成 */
+    public boolean isFinished() {
+        int total = totalCount != null ? totalCount : 0;
+        return total > 0 && doneCount != null && doneCount >= total;
+    }
+}
@@ -0,0 +1,28 @@
+package org.xhy.domain.rag.model;
+
+import java.util.Map;
+
+/** 单个文件按页提取的结果 页码到文本的映射，以及可选的页码到页面源指纹的映射，随同一条消息在处理流程内传递，不在策略实例上保存
+ *
+ * @author zang */
+public class ExtractedPages {
+
+    /** 页码 -> 提取文本 */
+    private final Map<Integer, String> texts;
+
+    /** 页码 -> 页面源指纹，不支持增量比对的格式为空 */
+    private final Map<Integer, String> sourceHashes;
+
+    public ExtractedPages(Map<Integer, String> texts, Map<Integer, String> sourceHashes) {
+        this.texts = texts;
+        this.sourceHashes = sourceHashes == null ? Map.of() : sourceHashes;
+    }
+
+    public Map<Integer, String> getTexts() {
+        return texts;
+    }
+
+    public Map<Integer, String> getSourceHashes() {
+        return sourceHashes;
+    }
+}
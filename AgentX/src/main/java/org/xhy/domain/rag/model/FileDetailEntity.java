@@ -8,6 +8,7 @@ import org.springframework.web.multipart.MultipartFile;
 import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
 import org.xhy.infrastructure.entity.BaseEntity;
 
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
@@ -127,6 +128,31 @@ public class FileDetailEntity extends BaseEntity implements Serializable {
     /** 向量化处理进度百分比 */
     private Double embeddingProcessProgress;
 
+    /** 直接使用PDF文本层的页数（即节省的OCR调用次数） */
+    private Integer textLayerPageCount;
+
+    /** 经过OCR识别的页数 */
+    private Integer ocrPageCount;
+
+    /** 每页提取方式及文本层质量统计（JSON） */
+    private String pageExtractionStats;
+
+    /** 本轮向量化已分发的段落数，只通过原子SQL维护，实体更新不写入 */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Integer embeddingTotalCount;
+
+    /** 本轮向量化已处理完成的段落数，只通过原子SQL维护，实体更新不写入 */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Integer embeddingDoneCount;
+
+    /** 本轮向量化复用缓存向量的段落数，只通过原子SQL维护 */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Integer embeddingCacheHits;
+
+    /** 本轮向量化调用嵌入接口的段落数，只通过原子SQL维护 */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Integer embeddingCacheMisses;
+
     @TableField(exist = false)
     private MultipartFile multipartFile;
 
@@ -410,6 +436,62 @@ public class FileDetailEntity extends BaseEntity implements Serializable {
         this.embeddingProcessProgress = embeddingProcessProgress;
     }
 
+    public Integer getTextLayerPageCount() {
+        return textLayerPageCount;
+    }
+
+    public void setTextLayerPageCount(Integer textLayerPageCount) {
+        this.textLayerPageCount = textLayerPageCount;
+    }
+
+    public Integer getOcrPageCount() {
+        return ocrPageCount;
+    }
+
+    public void setOcrPageCount(Integer ocrPageCount) {
+        this.ocrPageCount = ocrPageCount;
+    }
+
+    public String getPageExtractionStats() {
+        return pageExtractionStats;
+    }
+
+    public void setPageExtractionStats(String pageExtractionStats) {
+        this.pageExtractionStats = pageExtractionStats;
+    }
+
+    public Integer getEmbeddingTotalCount() {
+        return embeddingTotalCount;
+    }
+
+    public void setEmbeddingTotalCount(Integer embeddingTotalCount) {
+        this.embeddingTotalCount = embeddingTotalCount;
+    }
+
+    public Integer getEmbeddingDoneCount() {
+        return embeddingDoneCount;
+    }
+
+    public void setEmbeddingDoneCount(Integer embeddingDoneCount) {
+        this.embeddingDoneCount = embeddingDoneCount;
+    }
+
+    public Integer getEmbeddingCacheHits() {
+        return embeddingCacheHits;
+    }
+
+    public void setEmbeddingCacheHits(Integer embeddingCacheHits) {
+        this.embeddingCacheHits = embeddingCacheHits;
+    }
+
+    public Integer getEmbeddingCacheMisses() {
+        return embeddingCacheMisses;
+    }
+
+    public void setEmbeddingCacheMisses(Integer embeddingCacheMisses) {
+        this.embeddingCacheMisses = embeddingCacheMisses;
+    }
+
     /** 兼容性方法：获取初始化状态（基于新的统一状态判断）
      * @return 初始化状态 */
     @Deprecated
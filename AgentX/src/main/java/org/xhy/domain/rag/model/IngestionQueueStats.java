@@ -0,0 +1,85 @@
+package org.xhy.domain.rag.model;
+
+import java.time.LocalDateTime;
+
+/** 用户入库排队统计 当前排队、处理中的文件数以及统计窗口内的排队等待时间 */
+public class IngestionQueueStats {
+
+
+    /** 用户ID */
+    private String userId;
+
+    /** 排队中的文件数 */
+    private Long pendingCount;
+
+    /** 已放行处理中的文件数 */
+    private Long inFlightCount;
+
+    /** 最早排队文件的入队时间 */
+    private LocalDateTime oldestPendingAt;
+
+    /** 统计窗口内放行的文件数 */
+    private Long dispatchedCount;
+
+    /** 统计窗口内放行文件的平均排队时间（毫秒） */
+    private Long avgWaitMillis;
+
+    /** 统计窗口内放行文件的最长排队时间（毫秒） */
+    private Long maxWaitMillis;
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public Long getPendingCount() {
+        return pendingCount;
+    }
+
+    public void setPendingCount(Long pendingCount) {
+        this.pendingCount = pendingCount;
+    }
+
+    public Long getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public void setInFlightCount(Long inFlightCount) {
+        this.inFlightCount = inFlightCount;
+    }
+
+    public LocalDateTime getOldestPendingAt() {
+        return oldestPendingAt;
+    }
+
+    public void setOldestPendingAt(LocalDateTime oldestPendingAt) {
+        this.oldestPendingAt = oldestPendingAt;
+    }
+
+    public Long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    public void setDispatchedCount(Long dispatchedCount) {
+        this.dispatchedCount = dispatchedCount;
+    }
+
+    public Long getAvgWaitMillis() {
+        return avgWaitMillis;
+    }
+
+    public void setAvgWaitMillis(Long avgWaitMillis) {
+        this.avgWaitMillis = avgWaitMillis;
+    }
+
+    public Long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(Long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+}
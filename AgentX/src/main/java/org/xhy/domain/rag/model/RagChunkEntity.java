@@ -0,0 +1,74 @@
+package org.xhy.domain.rag.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+/** RAG内容寻址分块实体 以内容的SHA-256为主键，内容相同的文档单元在所有版本和安装间共享一行，不再被任何集合引用时回收
+ * @author zang */
+@TableName("rag_chunk")
+public class RagChunkEntity implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 6021845337162093418L;
+
+    /** 内容的SHA-256，与DocumentUnitEntity#getContentHash一致 */
+    @TableId(type = IdType.INPUT)
+    private String id;
+
+    /** 分块内容 */
+    private String content;
+
+    /** 引用该分块的集合成员数 */
+    private Integer refCount;
+
+    /** 创建时间 */
+    private LocalDateTime createdAt;
+
+    /** 更新时间 */
+    private LocalDateTime updatedAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public Integer getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(Integer refCount) {
+        this.refCount = refCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
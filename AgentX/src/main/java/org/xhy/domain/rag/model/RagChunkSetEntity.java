@@ -0,0 +1,86 @@
+package org.xhy.domain.rag.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+/** RAG分块集合实体 一个文件在某一时刻的全部分块，以按页码排序的（页码:分块ID）序列的SHA-256为主键，
+ * 内容不变的文件在不同版本间引用同一个集合；成员写入后即封存，不再变化
+ * @author zang */
+@TableName("rag_chunk_set")
+public class RagChunkSetEntity implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -2716633104925786140L;
+
+    /** 按页码排序的（页码:分块ID）序列的SHA-256 */
+    @TableId(type = IdType.INPUT)
+    private String id;
+
+    /** 成员数 */
+    private Integer documentCount;
+
+    /** 引用该集合的版本文件和用户文件数 */
+    private Integer refCount;
+
+    /** 成员是否已写入 */
+    private Boolean sealed;
+
+    /** 创建时间 */
+    private LocalDateTime createdAt;
+
+    /** 更新时间，引用数归零的集合在宽限期过后回收 */
+    private LocalDateTime updatedAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Integer getDocumentCount() {
+        return documentCount;
+    }
+
+    public void setDocumentCount(Integer documentCount) {
+        this.documentCount = documentCount;
+    }
+
+    public Integer getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(Integer refCount) {
+        this.refCount = refCount;
+    }
+
+    public Boolean getSealed() {
+        return sealed;
+    }
+
+    public void setSealed(Boolean sealed) {
+        this.sealed = sealed;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,142 @@
+package org.xhy.domain.rag.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import org.xhy.infrastructure.entity.BaseEntity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+/** 入库死信消息实体 预处理或向量化消息超过重试次数后的原始消息与失败信息，供管理员查看和重放
+ * @author zang */
+@TableName("rag_dead_letter")
+public class RagDeadLetterEntity extends BaseEntity implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 6203417582290146715L;
+
+    /** 死信ID */
+    @TableId(type = IdType.ASSIGN_UUID)
+    private String id;
+
+    /** 原队列 */
+    private String sourceQueue;
+
+    /** 原交换机 */
+    private String sourceExchange;
+
+    /** 原路由键 */
+    private String sourceRoutingKey;
+
+    /** 关联的文件ID */
+    private String fileId;
+
+    /** 链路追踪ID */
+    private String traceId;
+
+    /** 原始消息体 */
+    private String payload;
+
+    /** 最后一次失败的错误信息 */
+    private String errorMessage;
+
+    /** 进入死信队列前的重试次数 */
+    private Integer retryCount;
+
+    /** 状态：0待处理 1已重放 */
+    private Integer status;
+
+    /** 重放时间 */
+    private LocalDateTime replayedAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getSourceQueue() {
+        return sourceQueue;
+    }
+
+    public void setSourceQueue(String sourceQueue) {
+        this.sourceQueue = sourceQueue;
+    }
+
+    public String getSourceExchange() {
+        return sourceExchange;
+    }
+
+    public void setSourceExchange(String sourceExchange) {
+        this.sourceExchange = sourceExchange;
+    }
+
+    public String getSourceRoutingKey() {
+        return sourceRoutingKey;
+    }
+
+    public void setSourceRoutingKey(String sourceRoutingKey) {
+        this.sourceRoutingKey = sourceRoutingKey;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public Integer getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(Integer retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getReplayedAt() {
+        return replayedAt;
+    }
+
+    public void setReplayedAt(LocalDateTime replayedAt) {
+        this.replayedAt = replayedAt;
+    }
+}
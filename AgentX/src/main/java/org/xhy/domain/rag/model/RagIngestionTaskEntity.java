@@ -0,0 +1,110 @@
+package org.xhy.domain.rag.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import org.xhy.infrastructure.entity.BaseEntity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+/** 入库排队任务实体 文件预处理消息先按用户排队，由公平调度按用户轮流放行到预处理队列，创建时间即入队时间
+ * @author zang */
+@TableName("rag_ingestion_task")
+public class RagIngestionTaskEntity extends BaseEntity implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 4719023358870126541L;
+
+    /** 任务ID */
+    @TableId(type = IdType.ASSIGN_UUID)
+    private String id;
+
+
+    /** 提交用户ID */
+    private String userId;
+
+    /** 文件ID */
+    private String fileId;
+
+    /** 链路追踪ID */
+    private String traceId;
+
+    /** 预处理消息体，放行时原样投递到预处理队列 */
+    private String payload;
+
+    /** 状态：0排队中 1处理中 2已结束 */
+    private Integer status;
+
+    /** 放行时间，与创建时间之差即排队等待时间 */
+    private LocalDateTime dispatchedAt;
+
+    /** 结束时间 */
+    private LocalDateTime finishedAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getDispatchedAt() {
+        return dispatchedAt;
+    }
+
+    public void setDispatchedAt(LocalDateTime dispatchedAt) {
+        this.dispatchedAt = dispatchedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
@@ -33,6 +33,12 @@ public class RagQaDatasetEntity extends BaseEntity implements Serializable {
     /** 用户ID */
     private String userId;
 
+    /** 入库代次，数据集内文件新增、重新处理或删除时递增，用于检索结果缓存失效 */
+    private Long ingestGeneration;
+
+    /** 混合检索融合策略，为空时使用全局默认策略 */
+    private String fusionStrategy;
+
     public String getId() {
         return id;
     }
@@ -72,4 +78,20 @@ public class RagQaDatasetEntity extends BaseEntity implements Serializable {
     public void setUserId(String userId) {
         this.userId = userId;
     }
+
+    public String getFusionStrategy() {
+        return fusionStrategy;
+    }
+
+    public void setFusionStrategy(String fusionStrategy) {
+        this.fusionStrategy = fusionStrategy;
+    }
+
+    public Long getIngestGeneration() {
+        return ingestGeneration;
+    }
+
+    public void setIngestGeneration(Long ingestGeneration) {
+        this.ingestGeneration = ingestGeneration;
+    }
 }
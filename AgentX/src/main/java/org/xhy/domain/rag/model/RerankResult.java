@@ -0,0 +1,26 @@
+package org.xhy.domain.rag.model;
+
+import java.util.List;
+
+/** 重排序结果 记录重排序后的候选下标顺序，以及远程重排序是否失败或超时而回退为本地兜底排序 */
+public class RerankResult {
+
+    /** 重排序后的候选下标 */
+    private final List<Integer> order;
+
+    /** 是否回退为本地重排序或原始顺序 */
+    private final boolean fallback;
+
+    public RerankResult(List<Integer> order, boolean fallback) {
+        this.order = order;
+        this.fallback = fallback;
+    }
+
+    public List<Integer> getOrder() {
+        return order;
+    }
+
+    public boolean isFallback() {
+        return fallback;
+    }
+}
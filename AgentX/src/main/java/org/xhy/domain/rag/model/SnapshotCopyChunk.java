@@ -0,0 +1,29 @@
+package org.xhy.domain.rag.model;
+
+/** 快照分块复制结果 由分块INSERT ... SELECT语句的汇总行映射而来
+ *
+ * @author xhy */
+public class SnapshotCopyChunk {
+
+    /** 本块最后一条源文档ID，作为下一块的游标，本块为空时为null */
+    private String lastSourceId;
+
+    /** 本块复制的文档数 */
+    private Integer copiedCount;
+
+    public String getLastSourceId() {
+        return lastSourceId;
+    }
+
+    public void setLastSourceId(String lastSourceId) {
+        this.lastSourceId = lastSourceId;
+    }
+
+    public Integer getCopiedCount() {
+        return copiedCount;
+    }
+
+    public void setCopiedCount(Integer copiedCount) {
+        this.copiedCount = copiedCount;
+    }
+}
@@ -0,0 +1,29 @@
+package org.xhy.domain.rag.model;
+
+/** 快照源文件的文档数 用于把源文件装箱成复制块并计算复制进度
+ *
+ * @author xhy */
+public class SnapshotSourceCount {
+
+    /** 源文件ID */
+    private String sourceFileId;
+
+    /** 源文件下待复制的文档数 */
+    private Integer documentCount;
+
+    public String getSourceFileId() {
+        return sourceFileId;
+    }
+
+    public void setSourceFileId(String sourceFileId) {
+        this.sourceFileId = sourceFileId;
+    }
+
+    public Integer getDocumentCount() {
+        return documentCount;
+    }
+
+    public void setDocumentCount(Integer documentCount) {
+        this.documentCount = documentCount;
+    }
+}
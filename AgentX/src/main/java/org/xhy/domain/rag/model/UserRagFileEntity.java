@@ -48,6 +48,9 @@ public class UserRagFileEntity extends BaseEntity implements Serializable {
     /** 向量化状态 */
     private Integer embeddingStatus;
 
+    /** 引用的分块集合ID，文件没有文档时为空 */
+    private String chunkSetId;
+
     public String getId() {
         return id;
     }
@@ -127,4 +130,12 @@ public class UserRagFileEntity extends BaseEntity implements Serializable {
     public void setEmbeddingStatus(Integer embeddingStatus) {
         this.embeddingStatus = embeddingStatus;
     }
-}
\ No newline at end of file
+
+    public String getChunkSetId() {
+        return chunkSetId;
+    }
+
+    public void setChunkSetId(String chunkSetId) {
+        this.chunkSetId = chunkSetId;
+    }
+}
@@ -0,0 +1,38 @@
+package org.xhy.domain.rag.model.enums;
+
+/** 混合检索融合策略 决定向量检索与关键词检索结果如何合并为一个排序 */
+public enum FusionStrategy {
+
+    /** 倒数排名融合：Σ 1/(k + rank) */
+    RRF,
+
+    /** 加权倒数排名融合：Σ w_i/(k + rank) */
+    WEIGHTED_RRF,
+
+    /** 各路分数按min-max归一化到[0,1]后加权求和 */
+    MIN_MAX,
+
+    /** 各路分数按z-score标准化后加权求和 */
+    Z_SCORE,
+
+    /** 基于分布的融合：以均值±3倍标准差为区间归一化后加权求和，对离群分数更稳健 */
+    DBSF,
+
+    ;
+
+    /** 按名称解析融合策略，忽略大小写
+     *
+     * @param name 策略名称
+     * @return 融合策略，名称为空或无法识别时返回null */
+    public static FusionStrategy fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        for (FusionStrategy strategy : values()) {
+            if (strategy.name().equalsIgnoreCase(name.trim())) {
+                return strategy;
+            }
+        }
+        return null;
+    }
+}
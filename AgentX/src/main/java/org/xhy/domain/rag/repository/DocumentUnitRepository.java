@@ -1,6 +1,11 @@
 package org.xhy.domain.rag.repository;
 
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 
@@ -10,4 +15,26 @@ import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 @Mapper
 public interface DocumentUnitRepository extends MyBatisPlusExtRepository<DocumentUnitEntity> {
 
+    /** 查询文件及其历史版本（同一数据集内同名文件）已成功提取的带源页面指纹的单元，用于沿用未变化页面的提取结果
+     * @param fileId 文件ID
+     * @return 文档单元，仅包含源页面指纹和内容 */
+    @Select("SELECT du.source_hash, du.content FROM document_unit du "
+            + "JOIN file_detail fd ON fd.id = du.file_id JOIN file_detail cur ON cur.id = #{fileId} "
+            + "WHERE fd.data_set_id = cur.data_set_id AND fd.original_filename = cur.original_filename "
+            + "AND fd.deleted_at IS NULL AND du.deleted_at IS NULL AND du.is_ocr = true "
+            + "AND du.source_hash IS NOT NULL AND du.content IS NOT NULL")
+    List<DocumentUnitEntity> selectExtractedBySource(@Param("fileId") String fileId);
+
+    /** 批量写入文档单元，一条多行插入语句完成新增与改写：ID已存在的记录整体改写内容、页码、指纹和状态，不存在的新增
+     * @param units 文档单元，须已分配ID
+     * @return 影响的行数 */
+    @Insert({"<script>",
+            "INSERT INTO document_unit (id, file_id, page, content, is_vector, is_ocr, source_hash, content_hash) VALUES ",
+            "<foreach collection='units' item='u' separator=','>",
+            "(#{u.id}, #{u.fileId}, #{u.page}, #{u.content}, #{u.isVector}, #{u.isOcr}, #{u.sourceHash}, #{u.contentHash})",
+            "</foreach>",
+            " ON CONFLICT (id) DO UPDATE SET page = EXCLUDED.page, content = EXCLUDED.content, is_vector = EXCLUDED.is_vector,",
+            " is_ocr = EXCLUDED.is_ocr, source_hash = EXCLUDED.source_hash, content_hash = EXCLUDED.content_hash,",
+            " updated_at = CURRENT_TIMESTAMP", "</script>"})
+    int upsertBatch(@Param("units") List<DocumentUnitEntity> units);
 }
@@ -0,0 +1,56 @@
+package org.xhy.domain.rag.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.xhy.domain.rag.model.EmbeddingCacheEntity;
+import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
+
+/** 嵌入向量缓存仓库接口
+ * @author zang */
+@Mapper
+public interface EmbeddingCacheRepository extends MyBatisPlusExtRepository<EmbeddingCacheEntity> {
+
+    /** 批量写入缓存向量，已存在的内容哈希保持不变
+     * @param entries 缓存条目
+     * @return 实际新增的条目数 */
+    @Insert({"<script>", "INSERT INTO embedding_cache (id, model_key, dimension, vector) VALUES ",
+            "<foreach collection='entries' item='e' separator=','>",
+            "(#{e.id}, #{e.modelKey}, #{e.dimension}, #{e.vector})", "</foreach>", " ON CONFLICT (id) DO NOTHING",
+            "</script>"})
+    int insertIgnoreBatch(@Param("entries") List<EmbeddingCacheEntity> entries);
+
+    /** 刷新命中条目的最近使用时间，一小时内已刷新过的条目跳过以减少写入
+     * @param ids 命中的缓存键
+     * @return 刷新的条目数 */
+    @Update({"<script>", "UPDATE embedding_cache SET last_used_at = NOW() WHERE id IN ",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            " AND last_used_at &lt; NOW() - INTERVAL '1 hour'", "</script>"})
+    int touch(@Param("ids") Collection<String> ids);
+
+    /** 统计缓存条目数 */
+    @Select("SELECT COUNT(*) FROM embedding_cache")
+    long countEntries();
+
+    /** 淘汰一批超过保留期未使用的条目
+     * @param retentionSeconds 保留期（秒）
+     * @param limit 本批最多淘汰的条目数
+     * @return 淘汰的条目数 */
+    @Delete({"DELETE FROM embedding_cache WHERE id IN (",
+            "    SELECT id FROM embedding_cache WHERE last_used_at < NOW() - #{retentionSeconds} * INTERVAL '1 second' ",
+            "    ORDER BY last_used_at LIMIT #{limit} FOR UPDATE SKIP LOCKED)"})
+    int evictIdle(@Param("retentionSeconds") long retentionSeconds, @Param("limit") int limit);
+
+    /** 淘汰一批最久未使用的条目
+     * @param limit 本批淘汰的条目数
+     * @return 淘汰的条目数 */
+    @Delete({"DELETE FROM embedding_cache WHERE id IN (",
+            "    SELECT id FROM embedding_cache ORDER BY last_used_at LIMIT #{limit} FOR UPDATE SKIP LOCKED)"})
+    int evictLeastRecentlyUsed(@Param("limit") int limit);
+}
@@ -1,6 +1,15 @@
 package org.xhy.domain.rag.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.xhy.domain.rag.model.EmbeddingProgressCounter;
 import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 
@@ -9,4 +18,62 @@ import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 @Mapper
 public interface FileDetailRepository extends MyBatisPlusExtRepository<FileDetailEntity> {
 
-}
\ No newline at end of file
+    /** 登记本批完成的段落并按新登记的段落原子累加完成数及向量缓存命中数，同步刷新进度，返回累加后的计数
+     * 已登记过的段落（消息重投、整批重试）不再累加完成数和命中数；未越过完成线前进度最多到99%，完成时由状态机置为100%
+     * @param fileId 文件ID
+     * @param segmentIds 本批完成的段落ID
+     * @param cacheHitIds 本次复用缓存向量的段落ID
+     * @param cacheMissIds 本次调用嵌入接口的段落ID
+     * @return 累加后的计数及本次新登记的段落数，文件不存在时为null */
+    @Select({"<script>",
+            "WITH counted AS (",
+            "    INSERT INTO file_embedding_segment (file_id, segment_id, created_at) VALUES ",
+            "    <foreach collection='segmentIds' item='segmentId' separator=','>(#{fileId}, #{segmentId}, NOW())</foreach>",
+            "    ON CONFLICT (file_id, segment_id) DO NOTHING RETURNING segment_id), ",
+            "n AS (SELECT COUNT(*)::int AS c, ",
+            "    <choose><when test='cacheHitIds != null and !cacheHitIds.isEmpty()'>",
+            "    COUNT(*) FILTER (WHERE segment_id IN ",
+            "    <foreach collection='cacheHitIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>)::int",
+            "    </when><otherwise>0</otherwise></choose> AS hits, ",
+            "    <choose><when test='cacheMissIds != null and !cacheMissIds.isEmpty()'>",
+            "    COUNT(*) FILTER (WHERE segment_id IN ",
+            "    <foreach collection='cacheMissIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>)::int",
+            "    </when><otherwise>0</otherwise></choose> AS misses ",
+            "    FROM counted) ",
+            "UPDATE file_detail SET ",
+            "    embedding_done_count = COALESCE(embedding_done_count, 0) + n.c, ",
+            "    embedding_cache_hits = COALESCE(embedding_cache_hits, 0) + n.hits, ",
+            "    embedding_cache_misses = COALESCE(embedding_cache_misses, 0) + n.misses, ",
+            "    embedding_process_progress = CASE ",
+            "        WHEN COALESCE(embedding_total_count, 0) &gt; COALESCE(embedding_done_count, 0) + n.c ",
+            "        THEN LEAST(99.0, (COALESCE(embedding_done_count, 0) + n.c) * 100.0 / embedding_total_count) ",
+            "        ELSE embedding_process_progress END, ",
+            "    current_embedding_page_number = CASE ",
+            "        WHEN COALESCE(embedding_total_count, 0) &gt; COALESCE(embedding_done_count, 0) + n.c ",
+            "        THEN COALESCE(file_page_size, 0) * (COALESCE(embedding_done_count, 0) + n.c) / embedding_total_count ",
+            "        ELSE current_embedding_page_number END ",
+            "FROM n WHERE id = #{fileId} AND deleted_at IS NULL ",
+            "RETURNING embedding_done_count AS done_count, embedding_total_count AS total_count, ",
+            "    embedding_cache_hits AS cache_hits, embedding_cache_misses AS cache_misses, n.c AS increment_count",
+            "</script>"})
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    EmbeddingProgressCounter incrementEmbeddingDone(@Param("fileId") String fileId,
+            @Param("segmentIds") List<String> segmentIds, @Param("cacheHitIds") Collection<String> cacheHitIds,
+            @Param("cacheMissIds") Collection<String> cacheMissIds);
+
+    /** 清空文件本轮已登记的完成段落
+     * @param fileId 文件ID
+     * @return 删除的登记数 */
+    @Delete("DELETE FROM file_embedding_segment WHERE file_id = #{fileId}")
+    int clearEmbeddedSegments(@Param("fileId") String fileId);
+
+    /** 以当前状态为条件切换文件处理状态，并发调用同一转换时只有一个能成功
+     * @param fileId 文件ID
+     * @param expectedStatus 转换前状态
+     * @param targetStatus 目标状态
+     * @return 受影响行数，0表示状态已被其他调用方改变 */
+    @Update("UPDATE file_detail SET processing_status = #{targetStatus} "
+            + "WHERE id = #{fileId} AND COALESCE(processing_status, 0) = #{expectedStatus} AND deleted_at IS NULL")
+    int compareAndSetProcessingStatus(@Param("fileId") String fileId, @Param("expectedStatus") Integer expectedStatus,
+            @Param("targetStatus") Integer targetStatus);
+}
@@ -0,0 +1,103 @@
+package org.xhy.domain.rag.repository;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.xhy.domain.rag.model.RagChunkEntity;
+import org.xhy.domain.rag.model.VectorStoreResult;
+import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
+
+/** RAG内容寻址分块仓储接口 版本检索只在版本文件引用的集合成员内计算，结果的DOCUMENT_ID为集合成员ID，
+ * 元数据字段与vector_store一致，另带PAGE
+ * @author zang */
+@Mapper
+public interface RagChunkRepository extends MyBatisPlusExtRepository<RagChunkEntity> {
+
+    /** 在版本引用的分块内做关键词检索，分词与排序同VectorStoreRepository#keywordSearch
+     * @param ragVersionId RAG版本ID
+     * @param userQuery 用户查询问题
+     * @param maxResults 最大返回结果数量
+     * @return 关键词检索结果列表，按相关性排序 */
+    @Select({"<script>",
+            "SELECT m.id AS embedding_id, c.content AS text, ",
+            "    json_build_object('DOCUMENT_ID', m.id, 'FILE_ID', vf.original_file_id, 'FILE_NAME', vf.file_name, ",
+            "        'DATA_SET_ID', v.original_rag_id, 'PAGE', m.page) AS metadata, ",
+            "    ts_rank_cd(to_tsvector('chinese_cfg', c.content), ",
+            "        to_tsquery('chinese_cfg', replace(plainto_tsquery('chinese_cfg', #{userQuery})::text, '&amp;', '|'))) AS score ",
+            "FROM rag_version_files vf ",
+            "JOIN rag_versions v ON v.id = vf.rag_version_id ",
+            "JOIN rag_chunk_set_member m ON m.chunk_set_id = vf.chunk_set_id ",
+            "JOIN rag_chunk c ON c.id = m.chunk_id ",
+            "WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL ",
+            "    AND to_tsvector('chinese_cfg', c.content) @@ ",
+            "        to_tsquery('chinese_cfg', replace(plainto_tsquery('chinese_cfg', #{userQuery})::text, '&amp;', '|')) ",
+            "ORDER BY score DESC LIMIT #{maxResults}",
+            "</script>"})
+    List<VectorStoreResult> keywordSearchInVersion(@Param("ragVersionId") String ragVersionId,
+            @Param("userQuery") String userQuery, @Param("maxResults") Integer maxResults);
+
+    /** 在版本引用的分块向量内做余弦检索，只比较同一嵌入模型生成的向量，分数换算同PgVectorEmbeddingStore
+     * @param ragVersionId RAG版本ID
+     * @param embeddingModel 查询向量所用的嵌入模型标识
+     * @param queryVector 查询向量的文本形式，如[0.1,0.2]
+     * @param minScore 最小相似度
+     * @param maxResults 最大返回结果数量
+     * @return 向量检索结果列表，按相似度降序 */
+    @Select({"<script>",
+            "SELECT * FROM (",
+            "    SELECT cv.id AS embedding_id, cv.text, ",
+            "        json_build_object('DOCUMENT_ID', m.id, 'FILE_ID', vf.original_file_id, 'FILE_NAME', vf.file_name, ",
+            "            'DATA_SET_ID', v.original_rag_id, 'PAGE', m.page) AS metadata, ",
+            "        (2 - (cv.embedding &lt;=&gt; CAST(#{queryVector} AS vector))) / 2 AS score ",
+            "    FROM rag_version_files vf ",
+            "    JOIN rag_versions v ON v.id = vf.rag_version_id ",
+            "    JOIN rag_chunk_set_member m ON m.chunk_set_id = vf.chunk_set_id ",
+            "    JOIN rag_chunk_vector cv ON cv.chunk_id = m.chunk_id AND cv.embedding_model = #{embeddingModel} ",
+            "    WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL) r ",
+            "WHERE r.score &gt;= #{minScore} ORDER BY r.score DESC LIMIT #{maxResults}",
+            "</script>"})
+    List<VectorStoreResult> vectorSearchInVersion(@Param("ragVersionId") String ragVersionId,
+            @Param("embeddingModel") String embeddingModel, @Param("queryVector") String queryVector, @Param("minScore") Double minScore,
+            @Param("maxResults") Integer maxResults);
+
+    /** 取版本引用的分块中位于给定文件页码区间内的成员，用于版本检索的查询扩展，结果形式同版本检索，不带分数
+     * @param ragVersionId RAG版本ID
+     * @param ranges 页码区间，每项含fileId（原始文件ID）、fromPage、toPage
+     * @return 区间内的成员，按文件和页码排序 */
+    @Select({"<script>",
+            "SELECT m.id AS embedding_id, c.content AS text, ",
+            "    json_build_object('DOCUMENT_ID', m.id, 'FILE_ID', vf.original_file_id, 'FILE_NAME', vf.file_name, ",
+            "        'DATA_SET_ID', v.original_rag_id, 'PAGE', m.page) AS metadata ",
+            "FROM rag_version_files vf ",
+            "JOIN rag_versions v ON v.id = vf.rag_version_id ",
+            "JOIN rag_chunk_set_member m ON m.chunk_set_id = vf.chunk_set_id ",
+            "JOIN rag_chunk c ON c.id = m.chunk_id ",
+            "WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL AND (",
+            "<foreach collection='ranges' item='range' separator=' OR '>",
+            "(vf.original_file_id = #{range.fileId} AND m.page BETWEEN #{range.fromPage} AND #{range.toPage})",
+            "</foreach>) ",
+            "ORDER BY vf.original_file_id, m.page",
+            "</script>"})
+    List<VectorStoreResult> selectVersionMembersInPageRanges(@Param("ragVersionId") String ragVersionId,
+            @Param("ranges") List<Map<String, Object>> ranges);
+
+    /** 回收一批引用数已归零且超过宽限期的分块及其向量，正被引用的分块加了行锁，跳过
+     * @param graceSeconds 宽限期（秒）
+     * @param limit 本批最多回收的分块数
+     * @return 回收的分块数 */
+    @Select({"WITH doomed AS (",
+            "    SELECT id FROM rag_chunk WHERE ref_count <= 0 ",
+            "        AND updated_at < NOW() - #{graceSeconds} * INTERVAL '1 second' ",
+            "    ORDER BY updated_at LIMIT #{limit} FOR UPDATE SKIP LOCKED), ",
+            "removed_vectors AS (",
+            "    DELETE FROM rag_chunk_vector cv USING doomed WHERE cv.chunk_id = doomed.id RETURNING 1), ",
+            "removed AS (",
+            "    DELETE FROM rag_chunk c USING doomed WHERE c.id = doomed.id RETURNING 1) ",
+            "SELECT COUNT(*) FROM removed"})
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    int collectChunks(@Param("graceSeconds") long graceSeconds, @Param("limit") int limit);
+}
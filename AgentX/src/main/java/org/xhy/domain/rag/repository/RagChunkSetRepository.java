@@ -0,0 +1,200 @@
+package org.xhy.domain.rag.repository;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.xhy.domain.rag.model.RagChunkSetEntity;
+import org.xhy.domain.rag.model.SnapshotCopyChunk;
+import org.xhy.domain.rag.model.SnapshotSourceCount;
+import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
+
+/** RAG分块集合仓储接口 版本文件和用户文件按集合ID引用分块，集合ID由文件文档单元按页码排序的（页码:内容SHA-256）序列计算，
+ * 内容为空的文档单元不计入集合，与迁移脚本V20251019010的回填规则一致
+ * @author zang */
+@Mapper
+public interface RagChunkSetRepository extends MyBatisPlusExtRepository<RagChunkSetEntity> {
+
+    /** 按源文件当前的文档单元为版本文件计算分块集合ID，没有文档的文件保持为空
+     * @param ragVersionId RAG版本ID
+     * @return 更新的版本文件数 */
+    @Update({"UPDATE rag_version_files vf SET chunk_set_id = s.chunk_set_id FROM (",
+            "    SELECT c.file_id, encode(sha256(convert_to(string_agg(COALESCE(c.page::text, '') || ':' || c.chunk_id, ',' ",
+            "        ORDER BY c.page NULLS FIRST, c.chunk_id), 'UTF8')), 'hex') AS chunk_set_id ",
+            "    FROM (SELECT d.file_id, d.page, encode(sha256(convert_to(d.content, 'UTF8')), 'hex') AS chunk_id ",
+            "          FROM document_unit d JOIN rag_version_files f ON f.original_file_id = d.file_id ",
+            "              AND f.rag_version_id = #{ragVersionId} AND f.deleted_at IS NULL ",
+            "          WHERE d.deleted_at IS NULL AND d.content IS NOT NULL) c ",
+            "    GROUP BY c.file_id) s ",
+            "WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL AND vf.original_file_id = s.file_id"})
+    int assignVersionChunkSets(@Param("ragVersionId") String ragVersionId);
+
+    /** 登记版本文件引用的分块集合，不存在的集合以未封存状态创建，已存在的累加引用数；按集合ID顺序加锁，
+     * 并发发布同一集合时后到者等待先到者提交后再判断是否需要封存
+     * @param ragVersionId RAG版本ID
+     * @return 影响的集合数 */
+    @Update({"INSERT INTO rag_chunk_set (id, document_count, ref_count, sealed, created_at, updated_at) ",
+            "SELECT chunk_set_id, 0, COUNT(*), FALSE, NOW(), NOW() FROM rag_version_files ",
+            "WHERE rag_version_id = #{ragVersionId} AND deleted_at IS NULL AND chunk_set_id IS NOT NULL ",
+            "GROUP BY chunk_set_id ORDER BY chunk_set_id ",
+            "ON CONFLICT (id) DO UPDATE SET ref_count = rag_chunk_set.ref_count + EXCLUDED.ref_count, updated_at = NOW()"})
+    int retainVersionChunkSets(@Param("ragVersionId") String ragVersionId);
+
+    /** 释放版本文件对分块集合的引用，需在删除版本文件之前调用
+     * @param ragVersionId RAG版本ID
+     * @return 影响的集合数 */
+    @Update({"UPDATE rag_chunk_set s SET ref_count = s.ref_count - r.ref_count, updated_at = NOW() ",
+            "FROM (SELECT chunk_set_id, COUNT(*) AS ref_count FROM rag_version_files ",
+            "      WHERE rag_version_id = #{ragVersionId} AND deleted_at IS NULL AND chunk_set_id IS NOT NULL ",
+            "      GROUP BY chunk_set_id) r ",
+            "WHERE s.id = r.chunk_set_id"})
+    int releaseVersionChunkSets(@Param("ragVersionId") String ragVersionId);
+
+    /** 登记用户文件引用的分块集合，集合由版本持有引用，必然存在
+     * @param userRagId 用户RAG安装记录ID
+     * @return 影响的集合数 */
+    @Update({"UPDATE rag_chunk_set s SET ref_count = s.ref_count + r.ref_count, updated_at = NOW() ",
+            "FROM (SELECT chunk_set_id, COUNT(*) AS ref_count FROM user_rag_files ",
+            "      WHERE user_rag_id = #{userRagId} AND deleted_at IS NULL AND chunk_set_id IS NOT NULL ",
+            "      GROUP BY chunk_set_id) r ",
+            "WHERE s.id = r.chunk_set_id"})
+    int retainUserRagChunkSets(@Param("userRagId") String userRagId);
+
+    /** 释放用户文件对分块集合的引用，需在删除用户文件之前调用
+     * @param userRagId 用户RAG安装记录ID
+     * @return 影响的集合数 */
+    @Update({"UPDATE rag_chunk_set s SET ref_count = s.ref_count - r.ref_count, updated_at = NOW() ",
+            "FROM (SELECT chunk_set_id, COUNT(*) AS ref_count FROM user_rag_files ",
+            "      WHERE user_rag_id = #{userRagId} AND deleted_at IS NULL AND chunk_set_id IS NOT NULL ",
+            "      GROUP BY chunk_set_id) r ",
+            "WHERE s.id = r.chunk_set_id"})
+    int releaseUserRagChunkSets(@Param("userRagId") String userRagId);
+
+    /** 统计版本文件引用的分块集合成员总数
+     * @param ragVersionId RAG版本ID
+     * @return 文档数 */
+    @Select({"SELECT COALESCE(SUM(s.document_count), 0) FROM rag_version_files vf ",
+            "JOIN rag_chunk_set s ON s.id = vf.chunk_set_id ",
+            "WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL"})
+    long sumVersionDocuments(@Param("ragVersionId") String ragVersionId);
+
+    /** 统计用户文件引用的分块集合成员总数
+     * @param userRagId 用户RAG安装记录ID
+     * @return 文档数 */
+    @Select({"SELECT COALESCE(SUM(s.document_count), 0) FROM user_rag_files uf ",
+            "JOIN rag_chunk_set s ON s.id = uf.chunk_set_id ",
+            "WHERE uf.user_rag_id = #{userRagId} AND uf.deleted_at IS NULL"})
+    long sumUserRagDocuments(@Param("userRagId") String userRagId);
+
+    /** 统计版本引用的未封存集合，每个集合只取一个代表源文件，内容相同的文件只写入一次成员
+     * @param ragVersionId RAG版本ID
+     * @return 按源文件ID排序的代表文件及其文档数 */
+    @Select({"SELECT r.source_file_id, COUNT(d.id) AS document_count FROM (",
+            "    SELECT MIN(vf.original_file_id) AS source_file_id FROM rag_version_files vf ",
+            "    JOIN rag_chunk_set s ON s.id = vf.chunk_set_id AND NOT s.sealed ",
+            "    WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL ",
+            "    GROUP BY vf.chunk_set_id) r ",
+            "JOIN document_unit d ON d.file_id = r.source_file_id AND d.deleted_at IS NULL AND d.content IS NOT NULL ",
+            "GROUP BY r.source_file_id ORDER BY r.source_file_id"})
+    List<SnapshotSourceCount> listUnsealedSources(@Param("ragVersionId") String ragVersionId);
+
+    /** 统计版本各源文件下的文档单元数
+     * @param ragVersionId RAG版本ID
+     * @return 按源文件ID排序的文档数 */
+    @Select({"SELECT vf.original_file_id AS source_file_id, COUNT(d.id) AS document_count ",
+            "FROM rag_version_files vf JOIN document_unit d ON d.file_id = vf.original_file_id AND d.deleted_at IS NULL ",
+            "    AND d.content IS NOT NULL ",
+            "WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL ",
+            "GROUP BY vf.original_file_id ORDER BY vf.original_file_id"})
+    List<SnapshotSourceCount> countSourceDocuments(@Param("ragVersionId") String ragVersionId);
+
+    /** 把若干代表源文件下ID大于游标的一块文档单元写入所属集合的成员，分块内容按SHA-256合并到分块表并累加引用数
+     * @param ragVersionId RAG版本ID
+     * @param sourceFileIds 代表源文件ID
+     * @param afterId 游标，只处理ID大于该值的文档单元
+     * @param limit 本块最多处理的文档数
+     * @return 本块最后一条源文档ID和写入的成员数 */
+    @Select({"<script>",
+            "WITH chunk AS (",
+            "    SELECT d.id, d.page, d.content, encode(sha256(convert_to(d.content, 'UTF8')), 'hex') AS chunk_id, ",
+            "        vf.chunk_set_id FROM document_unit d ",
+            "    JOIN rag_version_files vf ON vf.original_file_id = d.file_id AND vf.rag_version_id = #{ragVersionId} ",
+            "        AND vf.deleted_at IS NULL ",
+            "    WHERE d.file_id IN <foreach collection='sourceFileIds' item='fileId' open='(' separator=',' close=')'>#{fileId}</foreach>",
+            "        AND d.deleted_at IS NULL AND d.content IS NOT NULL AND d.id &gt; #{afterId} ",
+            "    ORDER BY d.id LIMIT #{limit}), ",
+            "members AS (",
+            "    INSERT INTO rag_chunk_set_member (id, chunk_set_id, chunk_id, page, original_document_id, created_at) ",
+            "    SELECT REPLACE(gen_random_uuid()::text, '-', ''), chunk_set_id, chunk_id, page, id, NOW() FROM chunk ",
+            "    RETURNING 1), ",
+            "interned AS (",
+            "    INSERT INTO rag_chunk (id, content, ref_count, created_at, updated_at) ",
+            "    SELECT chunk_id, MIN(content), COUNT(*), NOW(), NOW() FROM chunk GROUP BY chunk_id ORDER BY chunk_id ",
+            "    ON CONFLICT (id) DO UPDATE SET ref_count = rag_chunk.ref_count + EXCLUDED.ref_count, updated_at = NOW() ",
+            "    RETURNING 1) ",
+            "SELECT (SELECT MAX(id) FROM chunk) AS last_source_id, (SELECT COUNT(*) FROM members) AS copied_count",
+            "</script>"})
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    SnapshotCopyChunk sealChunk(@Param("ragVersionId") String ragVersionId,
+            @Param("sourceFileIds") List<String> sourceFileIds, @Param("afterId") String afterId,
+            @Param("limit") int limit);
+
+    /** 成员写入完成后封存版本引用的集合
+     * @param ragVersionId RAG版本ID
+     * @return 封存的集合数 */
+    @Update({"UPDATE rag_chunk_set s SET sealed = TRUE, updated_at = NOW(), ",
+            "    document_count = (SELECT COUNT(*) FROM rag_chunk_set_member m WHERE m.chunk_set_id = s.id) ",
+            "WHERE NOT s.sealed AND s.id IN (SELECT chunk_set_id FROM rag_version_files ",
+            "    WHERE rag_version_id = #{ragVersionId} AND deleted_at IS NULL)"})
+    int sealVersionChunkSets(@Param("ragVersionId") String ragVersionId);
+
+    /** 从数据集向量库取若干源文件下ID大于游标的一块文档单元的向量，按嵌入模型只补齐该模型下还没有向量的分块
+     * @param embeddingModel 数据集向量所用的嵌入模型标识
+     * @param sourceFileIds 源文件ID
+     * @param afterId 游标，只处理ID大于该值的文档单元
+     * @param limit 本块最多处理的文档数
+     * @return 本块最后一条源文档ID和处理的文档数 */
+    @Select({"<script>",
+            "WITH chunk AS (",
+            "    SELECT d.id, encode(sha256(convert_to(d.content, 'UTF8')), 'hex') AS chunk_id FROM document_unit d ",
+            "    WHERE d.file_id IN <foreach collection='sourceFileIds' item='fileId' open='(' separator=',' close=')'>#{fileId}</foreach>",
+            "        AND d.deleted_at IS NULL AND d.content IS NOT NULL AND d.id &gt; #{afterId} ",
+            "    ORDER BY d.id LIMIT #{limit}), ",
+            "interned AS (",
+            "    INSERT INTO rag_chunk_vector (id, chunk_id, embedding_model, text, embedding, created_at) ",
+            "    SELECT encode(sha256(convert_to(c.chunk_id || ':' || #{embeddingModel} || ':' || COALESCE(vs.text, ''), ",
+            "        'UTF8')), 'hex'), c.chunk_id, #{embeddingModel}, vs.text, vs.embedding, NOW() ",
+            "    FROM chunk c JOIN vector_store vs ON (vs.metadata ->> 'DOCUMENT_ID') = c.id ",
+            "    WHERE NOT EXISTS (SELECT 1 FROM rag_chunk_vector v WHERE v.chunk_id = c.chunk_id ",
+            "        AND v.embedding_model = #{embeddingModel}) ",
+            "    ON CONFLICT (id) DO NOTHING RETURNING 1) ",
+            "SELECT (SELECT MAX(id) FROM chunk) AS last_source_id, (SELECT COUNT(*) FROM chunk) AS copied_count",
+            "</script>"})
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    SnapshotCopyChunk internVectorChunk(@Param("embeddingModel") String embeddingModel,
+            @Param("sourceFileIds") List<String> sourceFileIds, @Param("afterId") String afterId,
+            @Param("limit") int limit);
+
+    /** 回收一批引用数已归零且超过宽限期的集合，同时删除其成员并扣减分块引用数；正被登记引用的集合加了行锁，跳过
+     * @param graceSeconds 宽限期（秒）
+     * @param limit 本批最多回收的集合数
+     * @return 回收的集合数 */
+    @Select({"WITH doomed AS (",
+            "    SELECT id FROM rag_chunk_set WHERE ref_count <= 0 ",
+            "        AND updated_at < NOW() - #{graceSeconds} * INTERVAL '1 second' ",
+            "    ORDER BY updated_at LIMIT #{limit} FOR UPDATE SKIP LOCKED), ",
+            "removed_members AS (",
+            "    DELETE FROM rag_chunk_set_member m USING doomed WHERE m.chunk_set_id = doomed.id RETURNING m.chunk_id), ",
+            "released AS (",
+            "    UPDATE rag_chunk c SET ref_count = c.ref_count - r.member_count, updated_at = NOW() ",
+            "    FROM (SELECT chunk_id, COUNT(*) AS member_count FROM removed_members GROUP BY chunk_id) r ",
+            "    WHERE c.id = r.chunk_id RETURNING 1), ",
+            "removed AS (",
+            "    DELETE FROM rag_chunk_set s USING doomed WHERE s.id = doomed.id RETURNING 1) ",
+            "SELECT COUNT(*) FROM removed"})
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    int collectChunkSets(@Param("graceSeconds") long graceSeconds, @Param("limit") int limit);
+}
@@ -0,0 +1,11 @@
+package org.xhy.domain.rag.repository;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.xhy.domain.rag.model.RagDeadLetterEntity;
+import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
+
+/** 入库死信消息仓库接口
+ * @author zang */
+@Mapper
+public interface RagDeadLetterRepository extends MyBatisPlusExtRepository<RagDeadLetterEntity> {
+}
@@ -0,0 +1,50 @@
+package org.xhy.domain.rag.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.xhy.domain.rag.model.IngestionQueueStats;
+import org.xhy.domain.rag.model.RagIngestionTaskEntity;
+import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
+
+/** 入库排队任务仓库接口
+ * @author zang */
+@Mapper
+public interface RagIngestionTaskRepository extends MyBatisPlusExtRepository<RagIngestionTaskEntity> {
+
+    /** 写入排队任务，同一文件已有排队中的任务时只更新消息体和链路追踪ID，依赖排队中任务按文件唯一的部分索引保证并发提交不会重复排队
+     * @param task 排队任务，需已设置ID
+     * @return 影响行数 */
+    @Insert({"INSERT INTO rag_ingestion_task (id, user_id, file_id, trace_id, payload, status) ",
+            "VALUES (#{task.id}, #{task.userId}, #{task.fileId}, #{task.traceId}, #{task.payload}, 0) ",
+            "ON CONFLICT (file_id) WHERE status = 0 AND deleted_at IS NULL ",
+            "DO UPDATE SET payload = EXCLUDED.payload, trace_id = EXCLUDED.trace_id, updated_at = NOW()"})
+    int upsertPending(@Param("task") RagIngestionTaskEntity task);
+
+    /** 查询每个用户最早排队的若干个任务，按入队时间排序，避免大量排队的用户占满候选集
+     * @param perUser 每个用户最多返回的任务数
+     * @return 候选任务 */
+    @Select({"SELECT * FROM (",
+            "    SELECT t.*, ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY created_at) AS rn ",
+            "    FROM rag_ingestion_task t WHERE status = 0 AND deleted_at IS NULL",
+            ") p WHERE rn <= #{perUser} ORDER BY created_at"})
+    List<RagIngestionTaskEntity> selectPendingHeads(@Param("perUser") int perUser);
+
+    /** 按用户统计排队、处理中的任务数以及统计窗口内放行任务的排队时间
+     * @param since 统计窗口起点
+     * @return 用户排队统计 */
+    @Select({"SELECT user_id, ",
+            "    COUNT(*) FILTER (WHERE status = 0) AS pending_count, ",
+            "    COUNT(*) FILTER (WHERE status = 1) AS in_flight_count, ",
+            "    MIN(created_at) FILTER (WHERE status = 0) AS oldest_pending_at, ",
+            "    COUNT(*) FILTER (WHERE dispatched_at >= #{since}) AS dispatched_count, ",
+            "    CAST(AVG(EXTRACT(EPOCH FROM (dispatched_at - created_at)) * 1000) FILTER (WHERE dispatched_at >= #{since}) AS BIGINT) AS avg_wait_millis, ",
+            "    CAST(MAX(EXTRACT(EPOCH FROM (dispatched_at - created_at)) * 1000) FILTER (WHERE dispatched_at >= #{since}) AS BIGINT) AS max_wait_millis ",
+            "FROM rag_ingestion_task WHERE deleted_at IS NULL AND (status IN (0, 1) OR dispatched_at >= #{since}) ",
+            "GROUP BY user_id ORDER BY pending_count DESC, user_id"})
+    List<IngestionQueueStats> selectQueueStats(@Param("since") LocalDateTime since);
+}
@@ -1,6 +1,10 @@
 package org.xhy.domain.rag.repository;
 
+import java.util.List;
+
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.xhy.domain.rag.model.RagVersionDocumentEntity;
 import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 
@@ -11,4 +15,15 @@ import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 @Mapper
 public interface RagVersionDocumentRepository extends MyBatisPlusExtRepository<RagVersionDocumentEntity> {
 
-}
\ No newline at end of file
+    /** 按版本文件引用的分块集合读取版本文档 文档ID为集合成员ID，内容取自分块
+     * @param ragVersionId RAG版本ID
+     * @return 按页码排序的版本文档 */
+    @Select({"SELECT m.id, vf.rag_version_id, vf.id AS rag_version_file_id, m.original_document_id, c.content, m.page, ",
+            "    m.created_at, m.created_at AS updated_at ",
+            "FROM rag_version_files vf ",
+            "JOIN rag_chunk_set_member m ON m.chunk_set_id = vf.chunk_set_id ",
+            "JOIN rag_chunk c ON c.id = m.chunk_id ",
+            "WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL ",
+            "ORDER BY m.page NULLS FIRST, vf.id, m.id"})
+    List<RagVersionDocumentEntity> selectVersionDocuments(@Param("ragVersionId") String ragVersionId);
+}
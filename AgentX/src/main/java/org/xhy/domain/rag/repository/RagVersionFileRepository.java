@@ -1,6 +1,8 @@
 package org.xhy.domain.rag.repository;
 
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.xhy.domain.rag.model.RagVersionFileEntity;
 import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 
@@ -11,4 +13,19 @@ import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 @Mapper
 public interface RagVersionFileRepository extends MyBatisPlusExtRepository<RagVersionFileEntity> {
 
-}
\ No newline at end of file
+    /** 一条语句把数据集下的文件复制为版本文件快照 处理状态、向量化状态按FileDetailEntity#getIsInitialize、getIsEmbedding的规则由统一状态换算，
+     * 快照行的original_file_id即原文件到快照文件的ID映射
+     * @param ragVersionId RAG版本ID
+     * @param ragId 原始RAG数据集ID
+     * @return 复制的文件数 */
+    @Insert({"INSERT INTO rag_version_files (id, rag_version_id, original_file_id, file_name, file_size, file_type, ",
+            "    file_path, process_status, embedding_status, file_page_size, created_at, updated_at) ",
+            "SELECT REPLACE(gen_random_uuid()::text, '-', ''), #{ragVersionId}, f.id, f.original_filename, f.size, f.ext, ",
+            "    f.path, ",
+            "    CASE COALESCE(f.processing_status, 0) WHEN 1 THEN 1 WHEN 2 THEN 2 WHEN 3 THEN 2 WHEN 4 THEN 2 ",
+            "        WHEN 6 THEN 2 WHEN 5 THEN 3 ELSE 0 END, ",
+            "    CASE COALESCE(f.processing_status, 0) WHEN 3 THEN 1 WHEN 4 THEN 2 WHEN 6 THEN 3 ELSE 0 END, ",
+            "    f.file_page_size, NOW(), NOW() ",
+            "FROM file_detail f WHERE f.data_set_id = #{ragId} AND f.deleted_at IS NULL"})
+    int insertFromDataset(@Param("ragVersionId") String ragVersionId, @Param("ragId") String ragId);
+}
@@ -1,6 +1,10 @@
 package org.xhy.domain.rag.repository;
 
+import java.util.List;
+
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.xhy.domain.rag.model.UserRagDocumentEntity;
 import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 
@@ -11,4 +15,27 @@ import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 @Mapper
 public interface UserRagDocumentRepository extends MyBatisPlusExtRepository<UserRagDocumentEntity> {
 
-}
\ No newline at end of file
+    /** 按用户文件引用的分块集合读取用户文档 文档ID为集合成员ID，内容取自分块
+     * @param userRagId 用户RAG安装记录ID
+     * @param userRagFileId 用户文件ID，为空时读取全部文件
+     * @return 按文件、页码排序的用户文档 */
+    @Select({"<script>",
+            "SELECT m.id, uf.user_rag_id, uf.id AS user_rag_file_id, m.original_document_id, c.content, m.page, ",
+            "    m.created_at, m.created_at AS updated_at ",
+            "FROM user_rag_files uf ",
+            "JOIN rag_chunk_set_member m ON m.chunk_set_id = uf.chunk_set_id ",
+            "JOIN rag_chunk c ON c.id = m.chunk_id ",
+            "WHERE uf.user_rag_id = #{userRagId} AND uf.deleted_at IS NULL ",
+            "<if test='userRagFileId != null'>AND uf.id = #{userRagFileId} </if>",
+            "ORDER BY uf.id, m.page NULLS FIRST, m.id",
+            "</script>"})
+    List<UserRagDocumentEntity> selectUserDocuments(@Param("userRagId") String userRagId,
+            @Param("userRagFileId") String userRagFileId);
+
+    /** 查询用户文件引用的分块集合中的最大页码
+     * @param userRagFileId 用户文件ID
+     * @return 最大页码，文件没有文档时为null */
+    @Select({"SELECT MAX(m.page) FROM user_rag_files uf JOIN rag_chunk_set_member m ON m.chunk_set_id = uf.chunk_set_id ",
+            "WHERE uf.id = #{userRagFileId} AND uf.deleted_at IS NULL"})
+    Integer selectMaxPage(@Param("userRagFileId") String userRagFileId);
+}
@@ -1,6 +1,8 @@
 package org.xhy.domain.rag.repository;
 
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.xhy.domain.rag.model.UserRagFileEntity;
 import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 
@@ -11,4 +13,15 @@ import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 @Mapper
 public interface UserRagFileRepository extends MyBatisPlusExtRepository<UserRagFileEntity> {
 
-}
\ No newline at end of file
+    /** 一条语句把版本文件快照复制为用户文件快照，沿用版本文件的创建和更新时间和分块集合引用，每条用户文件分配新ID
+     * @param userRagId 用户RAG安装记录ID
+     * @param ragVersionId RAG版本ID
+     * @return 复制的文件数 */
+    @Insert({"INSERT INTO user_rag_files (id, user_rag_id, original_file_id, file_name, file_size, file_type, file_path, ",
+            "    process_status, embedding_status, file_page_size, chunk_set_id, created_at, updated_at) ",
+            "SELECT REPLACE(gen_random_uuid()::text, '-', ''), #{userRagId}, vf.original_file_id, vf.file_name, ",
+            "    vf.file_size, vf.file_type, vf.file_path, vf.process_status, vf.embedding_status, vf.file_page_size, ",
+            "    vf.chunk_set_id, vf.created_at, vf.updated_at ",
+            "FROM rag_version_files vf WHERE vf.rag_version_id = #{ragVersionId} AND vf.deleted_at IS NULL"})
+    int insertFromVersion(@Param("userRagId") String userRagId, @Param("ragVersionId") String ragVersionId);
+}
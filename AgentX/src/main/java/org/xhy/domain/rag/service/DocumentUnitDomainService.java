@@ -3,15 +3,35 @@ package org.xhy.domain.rag.service;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import cn.hutool.crypto.digest.DigestUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.DocumentUnitFingerprints;
+import org.xhy.domain.rag.model.DocumentUnitSyncPlan;
+import org.xhy.domain.rag.model.DocumentUnitSyncResult;
 import org.xhy.domain.rag.repository.DocumentUnitRepository;
 import org.xhy.infrastructure.entity.Operator;
+import org.xhy.infrastructure.rag.config.RagDocumentUnitProperties;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /** 文档单元领域服务
  * 
@@ -19,10 +39,19 @@ import java.util.List;
 @Service
 public class DocumentUnitDomainService {
 
+    private static final Logger log = LoggerFactory.getLogger(DocumentUnitDomainService.class);
+
     private final DocumentUnitRepository documentUnitRepository;
 
-    public DocumentUnitDomainService(DocumentUnitRepository documentUnitRepository) {
+    private final EmbeddingDomainService embeddingDomainService;
+
+    private final RagDocumentUnitProperties properties;
+
+    public DocumentUnitDomainService(DocumentUnitRepository documentUnitRepository,
+            EmbeddingDomainService embeddingDomainService, RagDocumentUnitProperties properties) {
         this.documentUnitRepository = documentUnitRepository;
+        this.embeddingDomainService = embeddingDomainService;
+        this.properties = properties;
     }
 
     /** 分页查询文件的语料
@@ -150,4 +179,196 @@ public class DocumentUnitDomainService {
     public void updateDocumentUnitById(DocumentUnitEntity documentUnit) {
         documentUnitRepository.updateById(documentUnit);
     }
-}
\ No newline at end of file
+
+    /** 按源页面指纹查找文件及其历史版本中已提取的内容，源页面未变化时直接沿用
+     *
+     * @param fileId 文件ID
+     * @return 源页面指纹到提取内容的映射 */
+    public Map<String, String> findExtractedContentBySource(String fileId) {
+        Map<String, String> contents = new HashMap<>();
+        for (DocumentUnitEntity unit : documentUnitRepository.selectExtractedBySource(fileId)) {
+            contents.putIfAbsent(unit.getSourceHash(), unit.getContent());
+        }
+        return contents;
+    }
+
+    /** 将本轮提取的文档单元与文件上一轮的单元比对后增量落库 内容指纹相同的单元沿用原记录和向量（页码变化时只更新页码）；
+     * 内容变化的单元改写同页的原记录并删除其旧向量；多出的单元新增，消失的单元连同向量一起删除。
+     * 内容为空的单元表示该页本轮未能提取（如OCR失败或未配置OCR模型），该页已有的单元保持不变。
+     * 需要新增和改写的单元按批合并为多行写入语句，落库语句数与页数无关，只与批大小有关。
+     * 单元记录在同一事务内落库，旧向量在事务提交后删除，落库失败回滚时原有向量仍然可用。
+     *
+     * @param fileId 文件ID
+     * @param extracted 本轮提取的文档单元，按页码排列，sourceHash为空时以内容指纹代替
+     * @return 同步结果及需要向量化的单元 */
+    @Transactional
+    public DocumentUnitSyncResult syncFileUnits(String fileId, List<DocumentUnitEntity> extracted) {
+        DocumentUnitFingerprints fingerprints = new DocumentUnitFingerprints();
+        extracted.forEach(unit -> fingerprints.add(unit.getPage(), fingerprint(unit.getContent())));
+
+        DocumentUnitSyncPlan plan = planFileSync(fileId, fingerprints);
+        DocumentUnitSyncResult result = syncFileUnitBatch(plan, extracted);
+        result.addDeleted(finishFileSync(plan).getDeletedCount());
+        return result;
+    }
+
+    /** 开始分批增量同步 读取文件上一轮的单元，按本轮的内容指纹统计预先确定哪些原有单元按内容沿用，其余原有单元留给同页变化的单元改写。
+     * 与syncFileUnits的比对结果一致，但本轮提取的单元可以分批传入，调用方不必在内存中汇总整个文件
+     *
+     * @param fileId 文件ID
+     * @param extracted 本轮全部提取单元的内容指纹统计，须与随后分批传入的单元一致
+     * @return 同步状态，依次传给syncFileUnitBatch和finishFileSync */
+    public DocumentUnitSyncPlan planFileSync(String fileId, DocumentUnitFingerprints extracted) {
+        List<DocumentUnitEntity> previousUnits = listDocumentsByFileOrderByPage(fileId);
+
+        // 本轮未提取出内容的页面沿用原记录，不参与比对
+        Set<Integer> previousPages = previousUnits.stream().map(DocumentUnitEntity::getPage)
+                .collect(Collectors.toSet());
+        Set<Integer> keptPages = extracted.getEmptyPages().stream().filter(previousPages::contains)
+                .collect(Collectors.toSet());
+        Map<String, Integer> wanted = new HashMap<>(extracted.getCounts());
+        if (!keptPages.isEmpty()) {
+            log.info("文件{}有{}页本轮未提取出内容，沿用原有文档单元", fileId, keptPages.size());
+            wanted.merge("", -keptPages.size(), Integer::sum);
+        }
+
+        // 第k个内容相同的提取单元沿用第k个内容相同的原有单元，预先按出现次数划分出沿用的单元
+        Map<String, Deque<DocumentUnitEntity>> reusable = new HashMap<>();
+        Map<String, DocumentUnitEntity> leftovers = new LinkedHashMap<>();
+        Map<Integer, DocumentUnitEntity> leftoverByPage = new HashMap<>();
+        for (DocumentUnitEntity previous : previousUnits) {
+            if (keptPages.contains(previous.getPage())) {
+                continue;
+            }
+            // 按当前内容重新计算指纹，语料被手动编辑过时同样能识别出差异；比对只需指纹，不再保留原有内容
+            String key = Objects.toString(fingerprint(previous.getContent()), "");
+            previous.setContent(null);
+            int remaining = wanted.getOrDefault(key, 0);
+            if (remaining > 0) {
+                wanted.put(key, remaining - 1);
+                reusable.computeIfAbsent(key, k -> new ArrayDeque<>()).add(previous);
+            } else {
+                leftovers.put(previous.getId(), previous);
+                leftoverByPage.putIfAbsent(previous.getPage(), previous);
+            }
+        }
+        return new DocumentUnitSyncPlan(fileId, reusable, leftovers, leftoverByPage, keptPages);
+    }
+
+    /** 同步一批提取单元 内容不变的单元沿用原记录，变化的单元改写同页未被沿用的原记录并删除其旧向量，没有可改写的记录时新增
+     * 本批记录在一个事务内落库，旧向量在事务提交后删除
+     *
+     * @param plan 同步状态
+     * @param batch 本批提取单元，按页码排列
+     * @return 本批的同步结果及需要向量化的单元 */
+    @Transactional
+    public DocumentUnitSyncResult syncFileUnitBatch(DocumentUnitSyncPlan plan, List<DocumentUnitEntity> batch) {
+        DocumentUnitSyncResult result = new DocumentUnitSyncResult();
+        List<DocumentUnitEntity> writes = new ArrayList<>();
+        List<String> staleVectorIds = new ArrayList<>();
+        for (DocumentUnitEntity unit : batch) {
+            if (plan.getKeptPages().contains(unit.getPage())) {
+                continue;
+            }
+            unit.setFileId(plan.getFileId());
+            unit.setContentHash(fingerprint(unit.getContent()));
+            if (unit.getSourceHash() == null) {
+                unit.setSourceHash(unit.getContentHash());
+            }
+            Deque<DocumentUnitEntity> candidates = plan.getReusable()
+                    .get(Objects.toString(unit.getContentHash(), ""));
+            DocumentUnitEntity previous = candidates != null ? candidates.pollFirst() : null;
+            if (previous != null) {
+                unit.setId(previous.getId());
+                unit.setIsVector(Boolean.TRUE.equals(previous.getIsVector()));
+                if (!Objects.equals(unit.getPage(), previous.getPage())
+                        || !Objects.equals(unit.getSourceHash(), previous.getSourceHash())
+                        || !Objects.equals(unit.getContentHash(), previous.getContentHash())
+                        || !Objects.equals(unit.getIsOcr(), previous.getIsOcr())) {
+                    writes.add(unit);
+                }
+                result.addReused();
+                if (Boolean.TRUE.equals(unit.getIsOcr()) && !unit.getIsVector()) {
+                    result.addPending(unit);
+                }
+                continue;
+            }
+
+            unit.setIsVector(false);
+            previous = plan.getLeftoverByPage().remove(unit.getPage());
+            if (previous != null) {
+                plan.getLeftovers().remove(previous.getId());
+                unit.setId(previous.getId());
+                staleVectorIds.add(previous.getId());
+                result.addUpdated();
+            } else {
+                unit.setId(IdWorker.get32UUID());
+                result.addInserted();
+            }
+            writes.add(unit);
+            if (Boolean.TRUE.equals(unit.getIsOcr())) {
+                result.addPending(unit);
+            }
+        }
+
+        writeUnits(writes);
+        deleteEmbeddingsAfterCommit(plan.getFileId(), staleVectorIds);
+        plan.getTotals().addCounts(result);
+        return result;
+    }
+
+    /** 结束分批增量同步 删除本轮不再出现的原有单元，事务提交后删除其向量
+     *
+     * @param plan 同步状态
+     * @return 全部批次累计的同步计数，不含待向量化的单元 */
+    @Transactional
+    public DocumentUnitSyncResult finishFileSync(DocumentUnitSyncPlan plan) {
+        List<String> removedIds = new ArrayList<>(plan.getLeftovers().keySet());
+        // 分批传入的单元与指纹统计不一致时，预留给沿用却未被认领的原有单元同样视为消失
+        plan.getReusable().values().forEach(units -> units.forEach(unit -> removedIds.add(unit.getId())));
+        if (!removedIds.isEmpty()) {
+            documentUnitRepository.deleteByIds(removedIds);
+            deleteEmbeddingsAfterCommit(plan.getFileId(), removedIds);
+            plan.getTotals().addDeleted(removedIds.size());
+        }
+
+        log.info("文件{}的文档单元增量同步完成: {}", plan.getFileId(), plan.getTotals());
+        return plan.getTotals();
+    }
+
+    /** 向量库不参与数据库事务，在当前事务提交后删除向量；回滚时单元记录保持原状，其向量也不删除。没有事务时立即删除 */
+    private void deleteEmbeddingsAfterCommit(String fileId, List<String> documentIds) {
+        if (documentIds.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            embeddingDomainService.deleteEmbeddingByDocumentIds(fileId, documentIds);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                embeddingDomainService.deleteEmbeddingByDocumentIds(fileId, documentIds);
+            }
+        });
+    }
+
+    /** 内容指纹，内容为空时返回null */
+    public static String fingerprint(String content) {
+        return content == null ? null : DigestUtil.sha256Hex(content);
+    }
+
+    private List<DocumentUnitEntity> listDocumentsByFileOrderByPage(String fileId) {
+        LambdaQueryWrapper<DocumentUnitEntity> wrapper = Wrappers.<DocumentUnitEntity>lambdaQuery()
+                .eq(DocumentUnitEntity::getFileId, fileId).orderByAsc(DocumentUnitEntity::getPage);
+        return documentUnitRepository.selectList(wrapper);
+    }
+
+    /** 按本轮结果分批整体写入单元记录，已有记录改写、新记录新增，空内容同样写入 */
+    private void writeUnits(List<DocumentUnitEntity> units) {
+        int batchSize = properties.effectiveWriteBatchSize();
+        for (int from = 0; from < units.size(); from += batchSize) {
+            documentUnitRepository.upsertBatch(units.subList(from, Math.min(from + batchSize, units.size())));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.xhy.domain.rag.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.rag.message.RagDocSyncStorageBatchMessage;
+import org.xhy.domain.rag.message.RagDocSyncStorageMessage;
+import org.xhy.domain.rag.model.ModelConfig;
+import org.xhy.infrastructure.mq.core.MessageEnvelope;
+import org.xhy.infrastructure.mq.core.MessagePublisher;
+import org.xhy.infrastructure.mq.enums.EventType;
+import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
+import org.xhy.infrastructure.rag.config.RagEmbeddingBatchProperties;
+
+/** 向量化批次分发器 将待向量化段落按文件和嵌入模型分组，再按段落数和估算token上限切分为批次，每个批次发送一条消息；
+ * 发送前把段落数计入文件的向量化总数，供消费端原子计数判断完成 */
+@Component
+public class EmbeddingBatchDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingBatchDispatcher.class);
+
+    private final MessagePublisher messagePublisher;
+
+    private final RagEmbeddingBatchProperties properties;
+
+    private final FileDetailDomainService fileDetailDomainService;
+
+    public EmbeddingBatchDispatcher(MessagePublisher messagePublisher, RagEmbeddingBatchProperties properties,
+            FileDetailDomainService fileDetailDomainService) {
+        this.messagePublisher = messagePublisher;
+        this.properties = properties;
+        this.fileDetailDomainService = fileDetailDomainService;
+    }
+
+    /** 分组切批并发送向量化消息
+     *
+     * @param messages 待向量化段落
+     * @param description 消息描述
+     * @return 发送的批次数 */
+    public int dispatch(List<RagDocSyncStorageMessage> messages, String description) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, List<RagDocSyncStorageMessage>> groups = new LinkedHashMap<>();
+        for (RagDocSyncStorageMessage message : messages) {
+            groups.computeIfAbsent(groupKey(message), key -> new ArrayList<>()).add(message);
+        }
+
+        int batchCount = 0;
+        for (List<RagDocSyncStorageMessage> group : groups.values()) {
+            // 先累加待完成段落数再发送，避免消费者在总数登记前就越过完成线
+            fileDetailDomainService.addEmbeddingTotal(group.get(0).getFileId(), group.size());
+            for (List<RagDocSyncStorageMessage> batch : partition(group, properties.getBatchSize(),
+                    properties.getMaxTokens())) {
+                RagDocSyncStorageBatchMessage batchMessage = toBatchMessage(batch);
+                MessageEnvelope<RagDocSyncStorageBatchMessage> env = MessageEnvelope.builder(batchMessage)
+                        .addEventType(EventType.DOC_SYNC_RAG)
+                        .description(description + " - 批次 " + batchCount + "，" + batch.size() + "个段落").build();
+                messagePublisher.publish(RagDocSyncStorageEvent.route(), env);
+                batchCount++;
+            }
+        }
+
+        log.info("{}个待向量化段落分为{}个批次发送", messages.size(), batchCount);
+        return batchCount;
+    }
+
+    /** 按段落数和估算token上限顺序切分，单个段落超过token上限时独占一个批次 */
+    static List<List<RagDocSyncStorageMessage>> partition(List<RagDocSyncStorageMessage> messages, int batchSize,
+            int maxTokens) {
+        int size = Math.max(1, batchSize);
+        List<List<RagDocSyncStorageMessage>> batches = new ArrayList<>();
+        List<RagDocSyncStorageMessage> current = new ArrayList<>();
+        long currentTokens = 0;
+        for (RagDocSyncStorageMessage message : messages) {
+            long tokens = estimateTokens(message.getContent());
+            if (!current.isEmpty() && (current.size() >= size || currentTokens + tokens > maxTokens)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(message);
+            currentTokens += tokens;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    /** 估算token数：中日韩字符按1个token，其余字符按4个字符1个token */
+    static long estimateTokens(String text) {
+        if (text == null) {
+            return 0;
+        }
+        long cjk = 0;
+        long other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isIdeographic(text.charAt(i))) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    private static String groupKey(RagDocSyncStorageMessage message) {
+        ModelConfig config = message.getEmbeddingModelConfig();
+        String model = config == null ? "" : config.getBaseUrl() + "|" + config.getModelEndpoint();
+        return message.getFileId() + "|" + model;
+    }
+
+    private static RagDocSyncStorageBatchMessage toBatchMessage(List<RagDocSyncStorageMessage> batch) {
+        RagDocSyncStorageMessage first = batch.get(0);
+        RagDocSyncStorageBatchMessage batchMessage = new RagDocSyncStorageBatchMessage();
+        batchMessage.setFileId(first.getFileId());
+        batchMessage.setFileName(first.getFileName());
+        batchMessage.setDatasetId(first.getDatasetId());
+        batchMessage.setUserId(first.getUserId());
+        batchMessage.setEmbeddingModelConfig(first.getEmbeddingModelConfig());
+        batchMessage.setItems(new ArrayList<>(batch));
+        return batchMessage;
+    }
+}
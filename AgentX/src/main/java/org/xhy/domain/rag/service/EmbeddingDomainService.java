@@ -4,12 +4,15 @@ import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metad
 
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.xhy.domain.rag.constant.SearchType;
@@ -24,26 +27,31 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
+import org.xhy.domain.rag.message.RagDocSyncStorageBatchMessage;
 import org.xhy.domain.rag.message.RagDocSyncStorageMessage;
+import org.xhy.domain.rag.model.ModelConfig;
 import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
 import org.xhy.domain.rag.constant.MetadataConstant;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.repository.DocumentUnitRepository;
 import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.domain.rag.repository.RagChunkRepository;
 import org.xhy.infrastructure.exception.BusinessException;
 import org.xhy.infrastructure.mq.enums.EventType;
 import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
 
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 
-import cn.hutool.core.convert.Convert;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.StrUtil;
 import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import org.xhy.infrastructure.rag.embedding.BatchEmbeddingWriter;
+import org.xhy.infrastructure.rag.embedding.EmbeddingCache;
+import org.xhy.infrastructure.rag.embedding.EmbeddingWriteResult;
 import org.xhy.infrastructure.rag.factory.EmbeddingModelFactory;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
@@ -71,15 +79,29 @@ public class EmbeddingDomainService implements MetadataConstant {
 
     private final DocumentUnitRepository documentUnitRepository;
 
+    private final RagQaDatasetDomainService ragQaDatasetDomainService;
+
+    private final BatchEmbeddingWriter batchEmbeddingWriter;
+
+    private final FileDetailDomainService fileDetailDomainService;
+
+    private final RagChunkRepository ragChunkRepository;
+
     public EmbeddingDomainService(EmbeddingModelFactory embeddingModelFactory,
             @Qualifier("initEmbeddingStore") EmbeddingStore<TextSegment> embeddingStore,
             FileDetailRepository fileDetailRepository, MessagePublisher messagePublisher,
-            DocumentUnitRepository documentUnitRepository) {
+            DocumentUnitRepository documentUnitRepository, RagQaDatasetDomainService ragQaDatasetDomainService,
+            BatchEmbeddingWriter batchEmbeddingWriter, FileDetailDomainService fileDetailDomainService,
+            RagChunkRepository ragChunkRepository) {
         this.embeddingModelFactory = embeddingModelFactory;
         this.embeddingStore = embeddingStore;
         this.fileDetailRepository = fileDetailRepository;
         this.messagePublisher = messagePublisher;
         this.documentUnitRepository = documentUnitRepository;
+        this.ragQaDatasetDomainService = ragQaDatasetDomainService;
+        this.batchEmbeddingWriter = batchEmbeddingWriter;
+        this.fileDetailDomainService = fileDetailDomainService;
+        this.ragChunkRepository = ragChunkRepository;
     }
 
     /** 纯向量检索方法 专门负责向量检索算法，返回统一的VectorStoreResult格式
@@ -172,6 +194,51 @@ public class EmbeddingDomainService implements MetadataConstant {
         }
     }
 
+    /** 在RAG版本引用的分块向量内检索 向量随分块在发布时固化，不受原始数据集后续修改影响；只比较与查询同一嵌入模型的向量，
+     * 模型不一致时没有向量结果，由关键词检索兜底
+     *
+     * @param ragVersionId RAG版本ID
+     * @param question 查询问题
+     * @param maxResults 最大返回结果数量
+     * @param minScore 最小相似度阈值
+     * @param embeddingConfig 嵌入模型配置
+     * @return 向量检索结果列表，失败时返回空集合 */
+    public List<VectorStoreResult> vectorSearchInVersion(String ragVersionId, String question, Integer maxResults,
+            Double minScore, EmbeddingModelFactory.EmbeddingConfig embeddingConfig) {
+        if (!StringUtils.hasText(ragVersionId) || !StringUtils.hasText(question) || embeddingConfig == null) {
+            log.warn("版本ID、查询问题或嵌入模型配置为空，无法进行向量搜索");
+            return Collections.emptyList();
+        }
+
+        int finalMaxResults = maxResults != null ? Math.min(maxResults, 100) : 15;
+        double finalMinScore = minScore != null ? Math.max(0.0, Math.min(minScore, 1.0)) : 0.7;
+
+        long startTime = System.currentTimeMillis();
+        try {
+            OpenAiEmbeddingModel embeddingModel = embeddingModelFactory.createEmbeddingModel(embeddingConfig);
+            String queryVector = Arrays.toString(embeddingModel.embed(question).content().vector());
+
+            String embeddingModelKey = embeddingConfig.getModelEndpoint();
+            List<VectorStoreResult> results = ragChunkRepository.vectorSearchInVersion(ragVersionId,
+                    embeddingModelKey, queryVector, finalMinScore, finalMaxResults);
+
+            // 回退搜索（降低阈值）
+            if (results.isEmpty() && finalMinScore > 0.3) {
+                log.info("版本 [{}] 在最小分数{}下没有找到向量结果，尝试使用较低阈值重试", ragVersionId, finalMinScore);
+                results = ragChunkRepository.vectorSearchInVersion(ragVersionId, embeddingModelKey, queryVector,
+                        0.3, finalMaxResults);
+            }
+            results.forEach(result -> result.setSearchType(SearchType.VECTOR));
+
+            log.info("版本 [{}] 向量搜索完成，查询：'{}'，返回{}个文档，耗时{}ms", ragVersionId, question, results.size(),
+                    System.currentTimeMillis() - startTime);
+            return results;
+        } catch (Exception e) {
+            log.error("版本 [{}] 向量搜索过程中出现错误，问题：'{}'", ragVersionId, question, e);
+            return Collections.emptyList();
+        }
+    }
+
     /** 批量删除向量数据
      *
      * @param fileIds 文件id集合 */
@@ -180,6 +247,21 @@ public class EmbeddingDomainService implements MetadataConstant {
         embeddingStore.removeAll(metadataKey(MetadataConstant.FILE_ID).isIn(fileIds));
     }
 
+    /** 删除文档单元的向量数据，文档单元内容变化或被删除时调用，删除后递增数据集入库代次使检索缓存失效
+     *
+     * @param fileId 文件ID
+     * @param documentUnitIds 文档单元ID集合 */
+    public void deleteEmbeddingByDocumentIds(String fileId, Collection<String> documentUnitIds) {
+        if (documentUnitIds == null || documentUnitIds.isEmpty()) {
+            return;
+        }
+        embeddingStore.removeAll(metadataKey(MetadataConstant.DOCUMENT_ID).isIn(documentUnitIds));
+        FileDetailEntity fileDetailEntity = fileDetailRepository.selectById(fileId);
+        if (fileDetailEntity != null) {
+            ragQaDatasetDomainService.bumpIngestGeneration(fileDetailEntity.getDataSetId());
+        }
+    }
+
     /** 获取与文件关联的向量ID列表
      *
      * @param fileId 文件ID */
@@ -199,55 +281,98 @@ public class EmbeddingDomainService implements MetadataConstant {
 
     }
 
-    /** 文本向量化 */
+    /** 文本向量化（单个段落），按只含一个段落的批次处理 */
     public void syncStorage(RagDocSyncStorageMessage ragDocSyncStorageMessage) {
+        syncStorageBatch(toSingleBatch(ragDocSyncStorageMessage));
+    }
 
-        final String vectorId = ragDocSyncStorageMessage.getId();
-        final FileDetailEntity fileDetailEntity = fileDetailRepository.selectById(ragDocSyncStorageMessage.getFileId());
-
-        // 使用消息中的翻译后内容，而不是从数据库读取原文
-        final String content = ragDocSyncStorageMessage.getContent();
-
-        if (content == null || content.trim().isEmpty()) {
-            log.warn("存储消息{}中内容为空，跳过向量化", vectorId);
-            return;
+    /** 批量文本向量化 整个批次只调用一次embedAll并批量写入向量库，随后一次性更新原始DocumentUnit的向量化状态
+     *
+     * 只有写入成功和内容为空无需写入的段落计入完成数；有段落写入失败时在计数后抛出异常，由消费者整批重试，
+     * 已计数的段落按ID登记不会重复累加，重试耗尽后文件置为向量化失败
+     *
+     * @param batchMessage 批量向量化消息
+     * @return 成功写入的段落数 */
+    public int syncStorageBatch(RagDocSyncStorageBatchMessage batchMessage) {
+
+        List<String> segmentIds = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        List<String> processedIds = new ArrayList<>();
+        for (RagDocSyncStorageMessage item : batchMessage.getItems()) {
+            String segmentId = item.getId() != null ? item.getId() : UUID.randomUUID().toString();
+            // 使用消息中的翻译后内容，而不是从数据库读取原文
+            final String content = item.getContent();
+            if (content == null || content.trim().isEmpty()) {
+                log.warn("存储消息{}中内容为空，跳过向量化", item.getId());
+                processedIds.add(segmentId);
+                continue;
+            }
+            segmentIds.add(segmentId);
+            segments.add(new TextSegment(content, buildMetadata(batchMessage, item)));
+        }
+        EmbeddingWriteResult result = segments.isEmpty()
+                ? new EmbeddingWriteResult()
+                : storeSegments(batchMessage, segmentIds, segments);
+        Set<String> failedIds = result.getFailedIds();
+        segmentIds.stream().filter(id -> !failedIds.contains(id)).forEach(processedIds::add);
+
+        // 原子累加完成计数，只有越过完成线的那个批次会将文件置为完成
+        if (fileDetailDomainService.recordEmbeddingProcessed(batchMessage.getFileId(), processedIds,
+                result.getCacheHitIds(), result.getCacheMissIds())) {
+            log.info("文件{}的所有段落均已向量化，标记为完成", batchMessage.getFileId());
+            // 文件向量全部可检索后递增数据集入库代次，使检索缓存失效
+            final FileDetailEntity fileDetailEntity = fileDetailRepository.selectById(batchMessage.getFileId());
+            ragQaDatasetDomainService.bumpIngestGeneration(fileDetailEntity.getDataSetId());
         }
 
-        final Metadata documentMetadata = buildMetadata(ragDocSyncStorageMessage);
-
-        final TextSegment textSegment = new TextSegment(content, documentMetadata);
-
-        // 使用消息中配置的嵌入模型生成向量
-        OpenAiEmbeddingModel embeddingModel = createEmbeddingModelFromMessage(ragDocSyncStorageMessage);
-        Embedding embeddings = embeddingModel.embed(textSegment).content();
-
-        embeddingStore.add(embeddings, textSegment);
-
-        // 提取原始DocumentUnit ID（移除segment后缀）
-        String originalDocId = extractOriginalDocId(vectorId);
+        if (!failedIds.isEmpty()) {
+            throw new IllegalStateException(
+                    String.format("文件%s的批次中有%d个段落向量化失败，整批重试", batchMessage.getFileId(), failedIds.size()));
+        }
+        return segments.size();
+    }
 
-        // 更新原始DocumentUnit的向量化状态
-        if (originalDocId != null) {
+    /** 向量化并写入一个批次的段落，成功的原始文档单元批量标记为已向量化
+     * @return 写入失败的段落ID及向量缓存命中统计 */
+    private EmbeddingWriteResult storeSegments(RagDocSyncStorageBatchMessage batchMessage, List<String> segmentIds,
+            List<TextSegment> segments) {
+        // 使用消息中配置的嵌入模型生成向量，整个批次共用一个模型实例
+        OpenAiEmbeddingModel embeddingModel = createEmbeddingModel(batchMessage.getEmbeddingModelConfig(),
+                batchMessage.getUserId());
+        EmbeddingWriteResult result = batchEmbeddingWriter.write(embeddingModel,
+                EmbeddingCache.modelKey(batchMessage.getEmbeddingModelConfig()), segmentIds, segments);
+        Set<String> failedIds = result.getFailedIds();
+
+        // 提取原始DocumentUnit ID（移除segment后缀）并批量更新向量化状态
+        Set<String> originalDocIds = new LinkedHashSet<>();
+        for (String segmentId : segmentIds) {
+            if (!failedIds.contains(segmentId)) {
+                String originalDocId = extractOriginalDocId(segmentId);
+                if (originalDocId != null) {
+                    originalDocIds.add(originalDocId);
+                }
+            }
+        }
+        if (!originalDocIds.isEmpty()) {
             documentUnitRepository.update(Wrappers.lambdaUpdate(DocumentUnitEntity.class)
-                    .eq(DocumentUnitEntity::getId, originalDocId).set(DocumentUnitEntity::getIsVector, true));
+                    .in(DocumentUnitEntity::getId, originalDocIds).set(DocumentUnitEntity::getIsVector, true));
         }
-
-        // 修改文件状态
-        final Integer pageSize = fileDetailEntity.getFilePageSize();
-
-        final Long isVector = documentUnitRepository.selectCount(Wrappers.lambdaQuery(DocumentUnitEntity.class)
-                .eq(DocumentUnitEntity::getFileId, ragDocSyncStorageMessage.getFileId())
-                .eq(DocumentUnitEntity::getIsVector, true));
-
-        final Integer anInt = Convert.toInt(isVector);
-
-        if (anInt >= pageSize) {
-            // 使用状态机设置完成状态
-            fileDetailRepository.update(
-                    Wrappers.lambdaUpdate(FileDetailEntity.class).eq(FileDetailEntity::getId, fileDetailEntity.getId())
-                            .set(FileDetailEntity::getProcessingStatus, FileProcessingStatusEnum.COMPLETED.getCode()));
+        if (!failedIds.isEmpty()) {
+            log.error("文件{}的批次中有{}个段落向量化失败: {}", batchMessage.getFileId(), failedIds.size(), failedIds);
         }
+        return result;
+    }
 
+    /** 将单段落消息包装为批次 */
+    private static RagDocSyncStorageBatchMessage toSingleBatch(RagDocSyncStorageMessage message) {
+        RagDocSyncStorageBatchMessage batchMessage = new RagDocSyncStorageBatchMessage();
+        batchMessage.setFileId(message.getFileId());
+        batchMessage.setFileName(message.getFileName());
+        batchMessage.setDatasetId(message.getDatasetId());
+        batchMessage.setUserId(message.getUserId());
+        batchMessage.setEmbeddingModelConfig(message.getEmbeddingModelConfig());
+        batchMessage.setItems(new ArrayList<>(List.of(message)));
+        return batchMessage;
     }
 
     /** 从向量ID中提取原始DocumentUnit ID */
@@ -265,46 +390,44 @@ public class EmbeddingDomainService implements MetadataConstant {
         return vectorId;
     }
 
-    private Metadata buildMetadata(RagDocSyncStorageMessage ragDocSyncStorageMessage) {
+    private Metadata buildMetadata(RagDocSyncStorageBatchMessage batchMessage, RagDocSyncStorageMessage item) {
 
         final Metadata metadata = new Metadata();
-        metadata.put(FILE_ID, ragDocSyncStorageMessage.getFileId());
-        metadata.put(FILE_NAME, ragDocSyncStorageMessage.getFileName());
-        metadata.put(DOCUMENT_ID, extractOriginalDocId(ragDocSyncStorageMessage.getId()));
-        metadata.put(DATA_SET_ID, ragDocSyncStorageMessage.getDatasetId());
+        metadata.put(FILE_ID, batchMessage.getFileId());
+        metadata.put(FILE_NAME, item.getFileName() != null ? item.getFileName() : batchMessage.getFileName());
+        metadata.put(DOCUMENT_ID, extractOriginalDocId(item.getId()));
+        metadata.put(DATA_SET_ID, item.getDatasetId() != null ? item.getDatasetId() : batchMessage.getDatasetId());
         return metadata;
     }
 
-    /** 从消息中创建嵌入模型
+    /** 根据消息中的模型配置创建嵌入模型
      * 
-     * @param ragDocSyncStorageMessage 存储消息
+     * @param modelConfig 嵌入模型配置
+     * @param userId 用户ID
      * @return OpenAiEmbeddingModel实例
      * @throws RuntimeException 如果没有配置嵌入模型或创建失败 */
-    private OpenAiEmbeddingModel createEmbeddingModelFromMessage(RagDocSyncStorageMessage ragDocSyncStorageMessage) {
-        // 检查消息和模型配置是否存在
-        if (ragDocSyncStorageMessage == null || ragDocSyncStorageMessage.getEmbeddingModelConfig() == null) {
-            String errorMsg = String.format("用户 %s 未配置嵌入模型，无法进行向量化处理",
-                    ragDocSyncStorageMessage != null ? ragDocSyncStorageMessage.getUserId() : "unknown");
+    private OpenAiEmbeddingModel createEmbeddingModel(ModelConfig modelConfig, String userId) {
+        // 检查模型配置是否存在
+        if (modelConfig == null) {
+            String errorMsg = String.format("用户 %s 未配置嵌入模型，无法进行向量化处理", userId != null ? userId : "unknown");
             log.error(errorMsg);
             throw new BusinessException(errorMsg);
         }
 
         try {
-            var modelConfig = ragDocSyncStorageMessage.getEmbeddingModelConfig();
-
             // 使用工厂类创建嵌入模型
             EmbeddingModelFactory.EmbeddingConfig config = new EmbeddingModelFactory.EmbeddingConfig(
                     modelConfig.getApiKey(), modelConfig.getBaseUrl(), modelConfig.getModelEndpoint());
             OpenAiEmbeddingModel embeddingModel = embeddingModelFactory.createEmbeddingModel(config);
 
-            log.info("成功为用户{}创建嵌入模型: {}", ragDocSyncStorageMessage.getUserId(), modelConfig.getModelEndpoint());
+            log.info("成功为用户{}创建嵌入模型: {}", userId, modelConfig.getModelEndpoint());
             return embeddingModel;
 
         } catch (RuntimeException e) {
             // 重新抛出已知的业务异常
             throw e;
         } catch (Exception e) {
-            String errorMsg = String.format("用户 %s 创建嵌入模型失败: %s", ragDocSyncStorageMessage.getUserId(), e.getMessage());
+            String errorMsg = String.format("用户 %s 创建嵌入模型失败: %s", userId, e.getMessage());
             log.error(errorMsg, e);
             throw new BusinessException(errorMsg, e);
         }
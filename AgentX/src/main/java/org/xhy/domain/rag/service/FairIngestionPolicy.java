@@ -0,0 +1,80 @@
+package org.xhy.domain.rag.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.xhy.infrastructure.rag.config.RagFairQueueProperties;
+
+/** 入库公平调度策略 每个空闲名额分给"处理中文件数/权重"最小的排队用户，相同时分给排队最早的用户；
+ * 用户内部按入队顺序放行。大量排队的用户只能在其他用户没有排队时占用空闲名额，小批量上传的用户最多等待一个名额释放 */
+public class FairIngestionPolicy {
+
+    private final RagFairQueueProperties properties;
+
+    public FairIngestionPolicy(RagFairQueueProperties properties) {
+        this.properties = properties;
+    }
+
+    /** 从排队任务中选出本轮放行的任务
+     *
+     * @param pending 排队任务，按入队时间排序
+     * @param userOf 任务所属用户
+     * @param inFlight 各用户处理中的文件数
+     * @param <T> 任务类型
+     * @return 按放行顺序排列的任务 */
+    public <T> List<T> select(List<T> pending, Function<T, String> userOf, Map<String, Integer> inFlight) {
+        int total = inFlight.values().stream().mapToInt(Integer::intValue).sum();
+        int free = Math.max(1, properties.getMaxInFlight()) - total;
+        if (free <= 0 || pending.isEmpty()) {
+            return List.of();
+        }
+
+        // 保持用户首次出现的顺序，即各用户最早排队任务的先后
+        Map<String, Deque<T>> queues = new LinkedHashMap<>();
+        for (T task : pending) {
+            queues.computeIfAbsent(userOf.apply(task), k -> new ArrayDeque<>()).add(task);
+        }
+        Map<String, Integer> running = new HashMap<>(inFlight);
+
+        List<T> selected = new ArrayList<>();
+        while (free > 0) {
+            String next = null;
+            double nextShare = Double.MAX_VALUE;
+            for (Map.Entry<String, Deque<T>> entry : queues.entrySet()) {
+                String userId = entry.getKey();
+                int userRunning = running.getOrDefault(userId, 0);
+                if (entry.getValue().isEmpty() || userRunning >= capOf(userId)) {
+                    continue;
+                }
+                double share = (double) userRunning / properties.weightOf(userId);
+                if (share < nextShare) {
+                    next = userId;
+                    nextShare = share;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            selected.add(queues.get(next).poll());
+            running.merge(next, 1, Integer::sum);
+            free--;
+        }
+        return selected;
+    }
+
+    /** 用户并发上限：每用户上限乘以权重，不超过全局窗口 */
+    int capOf(String userId) {
+        int window = Math.max(1, properties.getMaxInFlight());
+        int perUser = properties.getMaxInFlightPerUser();
+        if (perUser <= 0) {
+            return window;
+        }
+        return (int) Math.min(window, (long) perUser * properties.weightOf(userId));
+    }
+}
@@ -7,15 +7,20 @@ import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.dromara.x.file.storage.core.FileInfo;
 import org.dromara.x.file.storage.core.FileStorageService;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.constant.FileProcessingEventEnum;
 import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
+import org.xhy.domain.rag.model.EmbeddingProgressCounter;
 import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.repository.FileDetailRepository;
 import org.xhy.infrastructure.exception.BusinessException;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /** 文件详情领域服务
@@ -26,6 +31,8 @@ import java.util.List;
 @Service
 public class FileDetailDomainService {
 
+    private static final Logger log = LoggerFactory.getLogger(FileDetailDomainService.class);
+
     private final FileStorageService fileStorageService;
     private final FileDetailRepository fileDetailRepository;
     private final FileProcessingStateMachineService stateMachineService;
@@ -179,6 +186,30 @@ public class FileDetailDomainService {
         return fileDetailRepository.selectList(wrapper);
     }
 
+    /** 批量获取文件（无用户权限检查，用于进度推送）
+     * @param fileIds 文件ID集合
+     * @return 文件列表 */
+    public List<FileDetailEntity> listFilesByIds(Collection<String> fileIds) {
+        if (fileIds == null || fileIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        LambdaQueryWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaQuery()
+                .in(FileDetailEntity::getId, fileIds);
+        return fileDetailRepository.selectList(wrapper);
+    }
+
+    /** 获取多个数据集下的所有文件（无用户权限检查，用于进度推送）
+     * @param datasetIds 数据集ID集合
+     * @return 文件列表 */
+    public List<FileDetailEntity> listFilesByDatasets(Collection<String> datasetIds) {
+        if (datasetIds == null || datasetIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        LambdaQueryWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaQuery()
+                .in(FileDetailEntity::getDataSetId, datasetIds);
+        return fileDetailRepository.selectList(wrapper);
+    }
+
     /** 统计数据集下的文件数量
      * @param datasetId 数据集ID
      * @param userId 用户ID
@@ -223,11 +254,7 @@ public class FileDetailDomainService {
      * @return 是否成功开始处理 */
     public boolean startFileOcrProcessing(String fileId, String userId) {
         FileDetailEntity fileEntity = getFile(fileId, userId);
-        boolean success = stateMachineService.handleEvent(fileEntity, FileProcessingEventEnum.START_OCR_PROCESSING);
-        if (success) {
-            updateFile(fileEntity);
-        }
-        return success;
+        return transition(fileEntity, FileProcessingEventEnum.START_OCR_PROCESSING);
     }
 
     /** 完成文件OCR处理
@@ -236,11 +263,7 @@ public class FileDetailDomainService {
      * @return 是否成功完成处理 */
     public boolean completeFileOcrProcessing(String fileId, String userId) {
         FileDetailEntity fileEntity = getFile(fileId, userId);
-        boolean success = stateMachineService.handleEvent(fileEntity, FileProcessingEventEnum.COMPLETE_OCR_PROCESSING);
-        if (success) {
-            updateFile(fileEntity);
-        }
-        return success;
+        return transition(fileEntity, FileProcessingEventEnum.COMPLETE_OCR_PROCESSING);
     }
 
     /** OCR处理失败
@@ -249,11 +272,7 @@ public class FileDetailDomainService {
      * @return 是否成功设置失败状态 */
     public boolean failFileOcrProcessing(String fileId, String userId) {
         FileDetailEntity fileEntity = getFile(fileId, userId);
-        boolean success = stateMachineService.handleEvent(fileEntity, FileProcessingEventEnum.FAIL_OCR_PROCESSING);
-        if (success) {
-            updateFile(fileEntity);
-        }
-        return success;
+        return transition(fileEntity, FileProcessingEventEnum.FAIL_OCR_PROCESSING);
     }
 
     /** 开始文件向量化处理
@@ -262,12 +281,7 @@ public class FileDetailDomainService {
      * @return 是否成功开始处理 */
     public boolean startFileEmbeddingProcessing(String fileId, String userId) {
         FileDetailEntity fileEntity = getFile(fileId, userId);
-        boolean success = stateMachineService.handleEvent(fileEntity,
-                FileProcessingEventEnum.START_EMBEDDING_PROCESSING);
-        if (success) {
-            updateFile(fileEntity);
-        }
-        return success;
+        return transition(fileEntity, FileProcessingEventEnum.START_EMBEDDING_PROCESSING);
     }
 
     /** 完成文件向量化处理
@@ -276,12 +290,7 @@ public class FileDetailDomainService {
      * @return 是否成功完成处理 */
     public boolean completeFileEmbeddingProcessing(String fileId, String userId) {
         FileDetailEntity fileEntity = getFile(fileId, userId);
-        boolean success = stateMachineService.handleEvent(fileEntity,
-                FileProcessingEventEnum.COMPLETE_EMBEDDING_PROCESSING);
-        if (success) {
-            updateFile(fileEntity);
-        }
-        return success;
+        return transition(fileEntity, FileProcessingEventEnum.COMPLETE_EMBEDDING_PROCESSING);
     }
 
     /** 向量化处理失败
@@ -290,12 +299,7 @@ public class FileDetailDomainService {
      * @return 是否成功设置失败状态 */
     public boolean failFileEmbeddingProcessing(String fileId, String userId) {
         FileDetailEntity fileEntity = getFile(fileId, userId);
-        boolean success = stateMachineService.handleEvent(fileEntity,
-                FileProcessingEventEnum.FAIL_EMBEDDING_PROCESSING);
-        if (success) {
-            updateFile(fileEntity);
-        }
-        return success;
+        return transition(fileEntity, FileProcessingEventEnum.FAIL_EMBEDDING_PROCESSING);
     }
 
     /** 重置文件处理状态
@@ -304,11 +308,105 @@ public class FileDetailDomainService {
      * @return 是否成功重置 */
     public boolean resetFileProcessing(String fileId, String userId) {
         FileDetailEntity fileEntity = getFile(fileId, userId);
-        boolean success = stateMachineService.handleEvent(fileEntity, FileProcessingEventEnum.RESET_PROCESSING);
-        if (success) {
-            updateFile(fileEntity);
+        return transition(fileEntity, FileProcessingEventEnum.RESET_PROCESSING);
+    }
+
+    /** 执行状态转换并以转换前状态为条件落库 并发消费者同时触发同一转换时只有一个能成功，其余返回false
+     * @param fileEntity 文件实体
+     * @param event 处理事件
+     * @return 是否由本次调用完成转换 */
+    private boolean transition(FileDetailEntity fileEntity, FileProcessingEventEnum event) {
+        Integer expectedStatus = fileEntity.getProcessingStatus() != null
+                ? fileEntity.getProcessingStatus()
+                : FileProcessingStatusEnum.UPLOADED.getCode();
+        if (!stateMachineService.handleEvent(fileEntity, event)) {
+            return false;
         }
-        return success;
+
+        int affected = fileDetailRepository.compareAndSetProcessingStatus(fileEntity.getId(), expectedStatus,
+                fileEntity.getProcessingStatus());
+        if (affected == 0) {
+            log.info("文件[{}]状态已被其他处理方改变，跳过事件[{}]", fileEntity.getId(), event);
+            fileEntity.setProcessingStatus(expectedStatus);
+            return false;
+        }
+        updateFile(fileEntity);
+        return true;
+    }
+
+    /** 开始新一轮向量化前清零进度计数
+     * @param fileId 文件ID */
+    public void resetEmbeddingProgress(String fileId) {
+        LambdaUpdateWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaUpdate()
+                .eq(FileDetailEntity::getId, fileId).set(FileDetailEntity::getEmbeddingTotalCount, 0)
+                .set(FileDetailEntity::getEmbeddingDoneCount, 0).set(FileDetailEntity::getCurrentEmbeddingPageNumber, 0)
+                .set(FileDetailEntity::getEmbeddingProcessProgress, 0.0).set(FileDetailEntity::getEmbeddingCacheHits, 0)
+                .set(FileDetailEntity::getEmbeddingCacheMisses, 0);
+        fileDetailRepository.update(wrapper);
+        fileDetailRepository.clearEmbeddedSegments(fileId);
+    }
+
+    /** 累加本轮已分发的段落数，须在消息发送前调用
+     * @param fileId 文件ID
+     * @param count 新分发的段落数 */
+    public void addEmbeddingTotal(String fileId, int count) {
+        LambdaUpdateWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaUpdate()
+                .eq(FileDetailEntity::getId, fileId)
+                .setSql("embedding_total_count = COALESCE(embedding_total_count, 0) + " + count);
+        fileDetailRepository.update(wrapper);
+    }
+
+    /** 记录一批段落处理完成，恰好越过完成线的那次调用负责完成向量化 段落按ID登记，重投的段落不重复计入完成数和缓存命中数
+     * @param fileId 文件ID
+     * @param segmentIds 本批已写入或无需写入的段落ID，不含写入失败的段落
+     * @param cacheHitIds 本批复用缓存向量的段落ID
+     * @param cacheMissIds 本批调用嵌入接口的段落ID
+     * @return 是否由本次调用将文件置为完成 */
+    public boolean recordEmbeddingProcessed(String fileId, List<String> segmentIds, Collection<String> cacheHitIds,
+            Collection<String> cacheMissIds) {
+        if (segmentIds == null || segmentIds.isEmpty()) {
+            return false;
+        }
+        EmbeddingProgressCounter counter = fileDetailRepository.incrementEmbeddingDone(fileId, segmentIds,
+                cacheHitIds, cacheMissIds);
+        int increment = counter != null && counter.getIncrementCount() != null ? counter.getIncrementCount() : 0;
+        if (increment == 0) {
+            return false;
+        }
+        stateMachineService.onEmbeddingCounted(fileId);
+        if (!counter.crossedCompletion(increment)) {
+            return false;
+        }
+        log.info("文件{}向量化计数已满，向量缓存命中{}，未命中{}，命中率{}%", fileId, counter.getCacheHits(),
+                counter.getCacheMisses(), String.format("%.1f", counter.cacheHitRatio() * 100));
+        return completeFileEmbeddingProcessing(fileId);
+    }
+
+    /** 计数已满时完成向量化 用于段落在进入向量化状态前就已处理完的场景（如Markdown在预处理阶段即分发向量化）
+     * @param fileId 文件ID
+     * @return 是否由本次调用将文件置为完成 */
+    public boolean completeEmbeddingIfFinished(String fileId) {
+        FileDetailEntity fileEntity = getFileByIdWithoutUserCheck(fileId);
+        EmbeddingProgressCounter counter = new EmbeddingProgressCounter();
+        counter.setDoneCount(fileEntity.getEmbeddingDoneCount());
+        counter.setTotalCount(fileEntity.getEmbeddingTotalCount());
+        return counter.isFinished() && completeEmbedding(fileEntity);
+    }
+
+    /** 完成文件向量化处理（无用户权限检查，用于MQ消费）
+     * @param fileId 文件ID
+     * @return 是否由本次调用完成转换 */
+    private boolean completeFileEmbeddingProcessing(String fileId) {
+        return completeEmbedding(getFileByIdWithoutUserCheck(fileId));
+    }
+
+    /** 完成向量化并清空本轮的段落登记，只有完成转换成功的调用负责清空 */
+    private boolean completeEmbedding(FileDetailEntity fileEntity) {
+        if (!transition(fileEntity, FileProcessingEventEnum.COMPLETE_EMBEDDING_PROCESSING)) {
+            return false;
+        }
+        fileDetailRepository.clearEmbeddedSegments(fileEntity.getId());
+        return true;
     }
 
     /** 根据文件ID获取文件详情
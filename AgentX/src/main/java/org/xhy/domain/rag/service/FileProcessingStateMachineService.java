@@ -2,9 +2,11 @@ package org.xhy.domain.rag.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.constant.FileProcessingEventEnum;
 import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
+import org.xhy.domain.rag.event.FileProgressChangedEvent;
 import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.service.state.FileProcessingStateProcessor;
 
@@ -23,7 +25,11 @@ public class FileProcessingStateMachineService {
 
     private final Map<Integer, FileProcessingStateProcessor> processorMap = new HashMap<>();
 
-    public FileProcessingStateMachineService(List<FileProcessingStateProcessor> processors) {
+    private final ApplicationEventPublisher eventPublisher;
+
+    public FileProcessingStateMachineService(List<FileProcessingStateProcessor> processors,
+            ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
         for (FileProcessingStateProcessor processor : processors) {
             processorMap.put(processor.getStatus(), processor);
         }
@@ -82,7 +88,18 @@ public class FileProcessingStateMachineService {
         }
 
         // 执行状态转换
-        return transitionTo(fileEntity, targetStatus, event);
+        boolean result = transitionTo(fileEntity, targetStatus, event);
+        if (result) {
+            eventPublisher.publishEvent(new FileProgressChangedEvent(fileEntity.getId(), fileEntity.getDataSetId()));
+        }
+        return result;
+    }
+
+    /** 向量化计数推进时发布进度事件 计数由原子自增语句直接落库，不经过状态转换
+     * 
+     * @param fileId 文件ID */
+    public void onEmbeddingCounted(String fileId) {
+        eventPublisher.publishEvent(new FileProgressChangedEvent(fileId, null));
     }
 
     /** 根据当前状态和事件确定目标状态
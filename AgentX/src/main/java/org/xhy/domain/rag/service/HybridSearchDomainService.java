@@ -4,19 +4,27 @@ import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.xhy.domain.rag.constant.SearchType;
 import org.xhy.domain.rag.dto.HybridSearchConfig;
+import org.xhy.domain.rag.model.DatasetSearchProfile;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.RerankResult;
 import org.xhy.domain.rag.model.VectorStoreResult;
 import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.domain.rag.repository.RagChunkRepository;
+import org.xhy.domain.rag.model.enums.FusionStrategy;
+import org.xhy.infrastructure.rag.cache.HybridSearchResultCache;
+import org.xhy.infrastructure.rag.config.RagFusionProperties;
 import org.xhy.infrastructure.rag.factory.EmbeddingModelFactory;
+import org.xhy.infrastructure.rag.fusion.TopKFusion;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-/** 混合检索领域服务 协调向量检索和关键词检索，实现RRF融合算法
+/** 混合检索领域服务 协调向量检索和关键词检索，按数据集配置的融合策略（默认RRF）融合结果
  * 
  * @author claude */
 @Service
@@ -24,29 +32,36 @@ public class HybridSearchDomainService {
 
     private static final Logger log = LoggerFactory.getLogger(HybridSearchDomainService.class);
 
-    /** RRF算法参数k，用于平衡不同检索方式的排序差异 */
-    private static final int RRF_K = 60;
-
     /** 并行检索的超时时间（秒） */
     private static final int SEARCH_TIMEOUT_SECONDS = 30;
 
     private final EmbeddingDomainService embeddingDomainService;
     private final KeywordSearchDomainService keywordSearchDomainService;
     private final DocumentUnitRepository documentUnitRepository;
+    private final RagChunkRepository ragChunkRepository;
     private final RerankDomainService rerankDomainService;
     private final HyDEDomainService hydeDomainService;
+    private final RagQaDatasetDomainService ragQaDatasetDomainService;
+    private final HybridSearchResultCache hybridSearchResultCache;
+    private final RagFusionProperties ragFusionProperties;
 
     public HybridSearchDomainService(EmbeddingDomainService embeddingDomainService,
             KeywordSearchDomainService keywordSearchDomainService, DocumentUnitRepository documentUnitRepository,
-            RerankDomainService rerankDomainService, HyDEDomainService hydeDomainService) {
+            RagChunkRepository ragChunkRepository, RerankDomainService rerankDomainService, HyDEDomainService hydeDomainService,
+            RagQaDatasetDomainService ragQaDatasetDomainService, HybridSearchResultCache hybridSearchResultCache,
+            RagFusionProperties ragFusionProperties) {
         this.embeddingDomainService = embeddingDomainService;
         this.keywordSearchDomainService = keywordSearchDomainService;
         this.documentUnitRepository = documentUnitRepository;
+        this.ragChunkRepository = ragChunkRepository;
         this.rerankDomainService = rerankDomainService;
         this.hydeDomainService = hydeDomainService;
+        this.ragQaDatasetDomainService = ragQaDatasetDomainService;
+        this.hybridSearchResultCache = hybridSearchResultCache;
+        this.ragFusionProperties = ragFusionProperties;
     }
 
-    /** 执行混合检索 并行执行向量检索和关键词检索，使用RRF算法融合结果
+    /** 执行混合检索 并行执行向量检索和关键词检索，按融合策略融合结果
      * 
      * @param config 混合检索配置对象
      * @return 混合检索结果列表 */
@@ -70,6 +85,21 @@ public class HybridSearchDomainService {
 
         long startTime = System.currentTimeMillis();
 
+        // 入库代次与融合策略一次查出，分别用于缓存键和融合算子
+        DatasetSearchProfile profile = loadSearchProfile(config.getDataSetIds());
+        TopKFusion fusion = resolveFusion(profile);
+
+        // 检索结果缓存：命中时跳过HyDE、向量检索、关键词检索、融合与重排序
+        String cacheKey = buildCacheKey(config, finalMaxResults, finalMinScore, fusion, profile);
+        if (cacheKey != null) {
+            List<DocumentUnitEntity> cached = hybridSearchResultCache.get(cacheKey);
+            if (cached != null) {
+                log.info("混合搜索命中缓存 查询: '{}', 数据集: {}, 返回{}个结果", config.getQuestion(), config.getDataSetIds().size(),
+                        cached.size());
+                return cached;
+            }
+        }
+
         try {
             log.info("开始混合搜索 查询: '{}', 数据集: {}, 最大结果数: {}, HyDE可用: {}", config.getQuestion(),
                     config.getDataSetIds().size(), finalMaxResults, config.hasValidChatModelConfig());
@@ -79,14 +109,22 @@ public class HybridSearchDomainService {
                     config.getChatModelConfig());
             config.setQuestion(hypotheticalDocument);
 
+            // 指定版本时只在版本引用的分块内检索
+            String ragVersionId = config.getRagVersionId();
             CompletableFuture<List<VectorStoreResult>> vectorSearchFuture = CompletableFuture
-                    .supplyAsync(() -> embeddingDomainService.vectorSearch(config.getDataSetIds(), config.getQuestion(),
-                            finalMaxResults * 2, finalMinScore, false, config.getCandidateMultiplier(),
-                            config.getEmbeddingConfig()));
+                    .supplyAsync(() -> ragVersionId != null
+                            ? embeddingDomainService.vectorSearchInVersion(ragVersionId, config.getQuestion(),
+                                    finalMaxResults * 2, finalMinScore, config.getEmbeddingConfig())
+                            : embeddingDomainService.vectorSearch(config.getDataSetIds(), config.getQuestion(),
+                                    finalMaxResults * 2, finalMinScore, false, config.getCandidateMultiplier(),
+                                    config.getEmbeddingConfig()));
 
             CompletableFuture<List<VectorStoreResult>> keywordSearchFuture = CompletableFuture
-                    .supplyAsync(() -> keywordSearchDomainService.keywordSearch(config.getDataSetIds(),
-                            config.getQuestion(), finalMaxResults * 2));
+                    .supplyAsync(() -> ragVersionId != null
+                            ? keywordSearchDomainService.keywordSearchInVersion(ragVersionId, config.getQuestion(),
+                                    finalMaxResults * 2)
+                            : keywordSearchDomainService.keywordSearch(config.getDataSetIds(), config.getQuestion(),
+                                    finalMaxResults * 2));
 
             // 等待两个检索任务完成
             List<VectorStoreResult> vectorResults = Collections.emptyList();
@@ -112,16 +150,30 @@ public class HybridSearchDomainService {
                 return Collections.emptyList();
             }
 
-            // 使用RRF算法融合结果
-            List<VectorStoreResult> fusedResults = fusionWithRRF(vectorResults, keywordResults, finalMaxResults);
+            // 按融合策略用Top-K堆融合结果
+            List<VectorStoreResult> fusedResults = fusion.fuse(vectorResults, keywordResults, finalMaxResults);
+            log.info("{}融合完成: 向量{}个, 关键词{}个, 选择前{}个", fusion.getStrategy(), vectorResults.size(),
+                    keywordResults.size(), fusedResults.size());
 
-            // RRF融合后进行重排序（如果启用）
+            // 融合后进行重排序（如果启用）
             List<VectorStoreResult> rerankedResults = fusedResults;
+            boolean rerankFellBack = false;
             if (Boolean.TRUE.equals(config.getEnableRerank()) && !fusedResults.isEmpty()) {
-                rerankedResults = applyRerankToFusedResults(fusedResults, config.getQuestion());
+                RerankResult rerankResult = applyRerankToFusedResults(fusedResults, config.getQuestion());
+                rerankedResults = rerankResult.getOrder().stream()
+                        .filter(index -> index >= 0 && index < fusedResults.size()) // 确保索引有效
+                        .map(fusedResults::get).collect(Collectors.toList());
+                rerankFellBack = rerankResult.isFallback();
             }
 
-            return convertToDocumentUnits(rerankedResults, config.getEnableQueryExpansion());
+            List<DocumentUnitEntity> documents = ragVersionId != null
+                    ? convertVersionResults(ragVersionId, rerankedResults, config.getEnableQueryExpansion())
+                    : convertToDocumentUnits(rerankedResults, config.getEnableQueryExpansion());
+            // 重排序回退时的兜底顺序不写缓存，避免在缓存有效期内持续返回降级结果
+            if (cacheKey != null && !rerankFellBack) {
+                hybridSearchResultCache.put(cacheKey, documents);
+            }
+            return documents;
 
         } catch (Exception e) {
             long totalTime = System.currentTimeMillis() - startTime;
@@ -147,78 +199,57 @@ public class HybridSearchDomainService {
         return hybridSearch(config);
     }
 
-    /** 使用RRF算法融合向量检索和关键词检索结果 RRF公式：RRF(d) = Σ(1/(k + rank_i(d)))，其中k=60
-     * 
-     * @param vectorResults 向量检索结果
-     * @param keywordResults 关键词检索结果
-     * @param maxResults 最大返回结果数量
-     * @return 融合后的结果列表 */
-    private List<VectorStoreResult> fusionWithRRF(List<VectorStoreResult> vectorResults,
-            List<VectorStoreResult> keywordResults, int maxResults) {
-
-        log.debug("开始RRF融合 向量: {}, 关键词: {} 结果", vectorResults.size(), keywordResults.size());
-
-        // 存储每个文档的RRF分数
-        Map<String, Double> rrfScores = new HashMap<>();
-        Map<String, VectorStoreResult> documentMap = new HashMap<>();
-
-        // 处理向量检索结果
-        for (int i = 0; i < vectorResults.size(); i++) {
-            VectorStoreResult result = vectorResults.get(i);
-            String documentId = result.getDocumentId();
-
-            if (documentId != null && !documentId.trim().isEmpty()) {
-                double rrfScore = 1.0 / (RRF_K + i + 1); // rank从1开始
-                rrfScores.put(documentId, rrfScores.getOrDefault(documentId, 0.0) + rrfScore);
-
-                // 保存文档信息（优先保留向量检索的结果）
-                if (!documentMap.containsKey(documentId)) {
-                    result.setSearchType(SearchType.HYBRID);
-                    documentMap.put(documentId, result);
-                }
-
-                log.debug("Vector result {}: docId={}, originalScore={}, rrfContribution={}", i + 1, documentId,
-                        result.getScore(), rrfScore);
-            }
+    /** 构建检索结果缓存键 包含数据集入库代次、归一化查询哈希和影响结果的检索参数
+     *
+     * @param config 混合检索配置
+     * @param maxResults 最终最大结果数
+     * @param minScore 最终最小相似度
+     * @param fusion 融合算子
+     * @param profile 数据集检索配置，为null时不使用缓存
+     * @return 缓存键，缓存未启用或构建失败时返回null */
+    private String buildCacheKey(HybridSearchConfig config, int maxResults, Double minScore, TopKFusion fusion,
+            DatasetSearchProfile profile) {
+        if (!hybridSearchResultCache.isEnabled() || profile == null) {
+            return null;
         }
-
-        // 处理关键词检索结果
-        for (int i = 0; i < keywordResults.size(); i++) {
-            VectorStoreResult result = keywordResults.get(i);
-            String documentId = result.getDocumentId();
-
-            if (documentId != null && !documentId.trim().isEmpty()) {
-                double rrfScore = 1.0 / (RRF_K + i + 1); // rank从1开始
-                rrfScores.put(documentId, rrfScores.getOrDefault(documentId, 0.0) + rrfScore);
-
-                // 如果向量检索中没有此文档，保存关键词检索的结果
-                if (!documentMap.containsKey(documentId)) {
-                    result.setSearchType(SearchType.HYBRID);
-                    documentMap.put(documentId, result);
-                }
-
-                log.debug("Keyword result {}: docId={}, originalScore={}, rrfContribution={}", i + 1, documentId,
-                        result.getScore(), rrfScore);
-            }
+        try {
+            String searchParams = String.join(",", String.valueOf(maxResults), String.valueOf(minScore),
+                    String.valueOf(config.getEnableRerank()), String.valueOf(config.getCandidateMultiplier()),
+                    String.valueOf(config.getEnableQueryExpansion()), config.getEmbeddingConfig().getModelEndpoint(),
+                    config.hasValidChatModelConfig() ? config.getChatModelConfig().getModelEndpoint() : "",
+                    fusion.signature(), String.valueOf(config.getRagVersionId()));
+            return hybridSearchResultCache.buildKey(profile.getIngestGenerations(), config.getQuestion(),
+                    searchParams);
+        } catch (Exception e) {
+            log.warn("构建混合检索缓存键失败，跳过缓存: {}", e.getMessage());
+            return null;
         }
+    }
 
-        // 按RRF分数排序并返回
-        List<VectorStoreResult> fusedResults = rrfScores.entrySet().stream()
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed()).limit(maxResults).map(entry -> {
-                    String documentId = entry.getKey();
-                    Double rrfScore = entry.getValue();
-                    VectorStoreResult result = documentMap.get(documentId);
-
-                    // 设置融合后的分数
-                    result.setScore(rrfScore);
-
-                    log.debug("Fused result: docId={}, finalRRFScore={}", documentId, rrfScore);
-                    return result;
-                }).collect(Collectors.toList());
-
-        log.info("RRF融合完成: {}个唯一文档，选择前{}个", documentMap.size(), fusedResults.size());
+    /** 查询数据集检索配置
+     *
+     * @param dataSetIds 数据集ID列表
+     * @return 数据集检索配置，查询失败时返回null，本次检索使用默认融合策略且不使用缓存 */
+    private DatasetSearchProfile loadSearchProfile(List<String> dataSetIds) {
+        try {
+            return ragQaDatasetDomainService.getSearchProfile(dataSetIds);
+        } catch (Exception e) {
+            log.warn("查询数据集检索配置失败，使用默认融合策略并跳过缓存: {}", e.getMessage());
+            return null;
+        }
+    }
 
-        return fusedResults;
+    /** 解析本次检索使用的融合算子 数据集统一指定了融合策略时使用该策略，否则使用全局默认策略
+     *
+     * @param profile 数据集检索配置，可能为null
+     * @return 融合算子 */
+    private TopKFusion resolveFusion(DatasetSearchProfile profile) {
+        FusionStrategy strategy = profile != null ? profile.getFusionStrategy() : null;
+        if (strategy == null) {
+            strategy = FusionStrategy.fromName(ragFusionProperties.getStrategy());
+        }
+        return new TopKFusion(strategy, ragFusionProperties.getRrfK(), ragFusionProperties.getVectorWeight(),
+                ragFusionProperties.getKeywordWeight());
     }
 
     /** 将VectorStoreResult转换为DocumentUnitEntity 包括查询扩展逻辑
@@ -266,7 +297,7 @@ public class HybridSearchDomainService {
 
         // 查询扩展处理
         if (Boolean.TRUE.equals(enableQueryExpansion)) {
-            documents = expandQueryResults(documents, scoreMap);
+            documents = expandQueryResults(documents, scoreMap, this::loadAdjacentDocuments);
         }
 
         // 按照原始RRF分数排序返回
@@ -285,13 +316,80 @@ public class HybridSearchDomainService {
         return documents;
     }
 
-    /** 查询扩展：添加相邻页面的文档片段
+    /** 将版本检索结果转换为DocumentUnitEntity 版本分块不可变，结果自带内容和位置，不回查文档单元表；
+     * 查询扩展在版本引用的分块成员内取相邻页，追加在命中结果之后。文档ID为分块集合成员ID，文件ID为原始文件ID
+     *
+     * @param ragVersionId RAG版本ID
+     * @param vectorStoreResults 版本检索结果，已按融合或重排序顺序排列
+     * @param enableQueryExpansion 是否启用查询扩展
+     * @return DocumentUnitEntity列表 */
+    private List<DocumentUnitEntity> convertVersionResults(String ragVersionId,
+            List<VectorStoreResult> vectorStoreResults, Boolean enableQueryExpansion) {
+        Map<String, DocumentUnitEntity> documents = new LinkedHashMap<>();
+        for (VectorStoreResult result : vectorStoreResults) {
+            if (result.getDocumentId() == null || documents.containsKey(result.getDocumentId())) {
+                continue;
+            }
+            documents.put(result.getDocumentId(), toVersionDocument(result));
+        }
+        List<DocumentUnitEntity> results = new ArrayList<>(documents.values());
+        if (Boolean.TRUE.equals(enableQueryExpansion) && !results.isEmpty()) {
+            Map<String, Double> scoreMap = new HashMap<>();
+            results.forEach(doc -> scoreMap.putIfAbsent(doc.getId(), doc.getSimilarityScore()));
+            results = expandQueryResults(results, scoreMap,
+                    pageRangesByFile -> loadAdjacentVersionMembers(ragVersionId, pageRangesByFile));
+        }
+        return results;
+    }
+
+    private static DocumentUnitEntity toVersionDocument(VectorStoreResult result) {
+        DocumentUnitEntity doc = new DocumentUnitEntity();
+        doc.setId(result.getDocumentId());
+        doc.setFileId(result.getFileId());
+        doc.setContent(result.getText());
+        Object page = result.getMetadata().get("PAGE");
+        if (page instanceof Number number) {
+            doc.setPage(number.intValue());
+        }
+        doc.setSimilarityScore(result.getScore());
+        return doc;
+    }
+
+    /** 批量取数据集文档单元中位于相邻页区间内的已向量化片段
+     *
+     * @param pageRangesByFile 文件ID到页码区间的映射
+     * @return 区间内的片段，按文件和页码排序 */
+    private List<DocumentUnitEntity> loadAdjacentDocuments(Map<String, List<int[]>> pageRangesByFile) {
+        return documentUnitRepository.selectList(Wrappers.<DocumentUnitEntity>lambdaQuery()
+                .eq(DocumentUnitEntity::getIsVector, true).and(wrapper -> pageRangesByFile
+                        .forEach((fileId, ranges) -> ranges.forEach(range -> wrapper.or(w -> w
+                                .eq(DocumentUnitEntity::getFileId, fileId)
+                                .between(DocumentUnitEntity::getPage, range[0], range[1])))))
+                .orderByAsc(DocumentUnitEntity::getFileId).orderByAsc(DocumentUnitEntity::getPage));
+    }
+
+    /** 批量取版本引用的分块成员中位于相邻页区间内的成员
+     *
+     * @param ragVersionId RAG版本ID
+     * @param pageRangesByFile 原始文件ID到页码区间的映射
+     * @return 区间内的成员，按文件和页码排序 */
+    private List<DocumentUnitEntity> loadAdjacentVersionMembers(String ragVersionId,
+            Map<String, List<int[]>> pageRangesByFile) {
+        List<Map<String, Object>> ranges = new ArrayList<>();
+        pageRangesByFile.forEach((fileId, fileRanges) -> fileRanges
+                .forEach(range -> ranges.add(Map.of("fileId", fileId, "fromPage", range[0], "toPage", range[1]))));
+        return ragChunkRepository.selectVersionMembersInPageRanges(ragVersionId, ranges).stream()
+                .map(HybridSearchDomainService::toVersionDocument).collect(Collectors.toList());
+    }
+
+    /** 查询扩展：添加相邻页面的文档片段 将所有命中文档的相邻页窗口按文件合并去重后，通过一次批量查询取回，再在内存中归并
      * 
      * @param documents 原始文档列表
      * @param scoreMap 分数映射
+     * @param adjacentLoader 按文件页码区间批量加载相邻片段
      * @return 扩展后的文档列表 */
     private List<DocumentUnitEntity> expandQueryResults(List<DocumentUnitEntity> documents,
-            Map<String, Double> scoreMap) {
+            Map<String, Double> scoreMap, Function<Map<String, List<int[]>>, List<DocumentUnitEntity>> adjacentLoader) {
 
         Set<String> expandedIds = new LinkedHashSet<>();
         List<DocumentUnitEntity> expandedDocuments = new ArrayList<>(documents);
@@ -299,30 +397,45 @@ public class HybridSearchDomainService {
         // 为原始结果添加ID
         documents.forEach(doc -> expandedIds.add(doc.getId()));
 
+        // 按文件合并相邻页窗口（前一页、当前页、后一页），重叠或相接的窗口合并为一个区间
+        Map<String, List<int[]>> pageRangesByFile = mergeAdjacentPageRanges(documents);
+        if (pageRangesByFile.isEmpty()) {
+            return expandedDocuments;
+        }
+
+        List<DocumentUnitEntity> adjacentChunks;
+        try {
+            adjacentChunks = adjacentLoader.apply(pageRangesByFile);
+        } catch (Exception e) {
+            log.warn("批量查询相邻页面片段失败，跳过查询扩展", e);
+            return expandedDocuments;
+        }
+
+        Map<String, List<DocumentUnitEntity>> chunksByFile = adjacentChunks.stream()
+                .collect(Collectors.groupingBy(DocumentUnitEntity::getFileId, LinkedHashMap::new, Collectors.toList()));
+
+        // 按原始文档顺序归并，相邻片段继承首个命中文档的分数
         for (DocumentUnitEntity doc : documents) {
-            try {
-                // 查询相邻页面片段（前一页、当前页、后一页）
-                List<DocumentUnitEntity> adjacentChunks = documentUnitRepository.selectList(
-                        Wrappers.<DocumentUnitEntity>lambdaQuery().eq(DocumentUnitEntity::getFileId, doc.getFileId())
-                                .between(DocumentUnitEntity::getPage, Math.max(1, doc.getPage() - 1), doc.getPage() + 1)
-                                .eq(DocumentUnitEntity::getIsVector, true));
-
-                for (DocumentUnitEntity chunk : adjacentChunks) {
-                    if (!expandedIds.contains(chunk.getId())) {
-                        // 为扩展片段设置较低的分数
-                        Double originalScore = scoreMap.get(doc.getId());
-                        if (originalScore != null) {
-                            chunk.setSimilarityScore(originalScore * 0.8);
-                        } else {
-                            chunk.setSimilarityScore(0.5);
-                        }
-
-                        expandedDocuments.add(chunk);
-                        expandedIds.add(chunk.getId());
-                    }
+            if (doc.getFileId() == null || doc.getPage() == null) {
+                continue;
+            }
+            int fromPage = Math.max(1, doc.getPage() - 1);
+            int toPage = doc.getPage() + 1;
+            for (DocumentUnitEntity chunk : chunksByFile.getOrDefault(doc.getFileId(), Collections.emptyList())) {
+                if (chunk.getPage() == null || chunk.getPage() < fromPage || chunk.getPage() > toPage
+                        || expandedIds.contains(chunk.getId())) {
+                    continue;
                 }
-            } catch (Exception e) {
-                log.warn("为文档{}扩展查询失败", doc.getId(), e);
+                // 为扩展片段设置较低的分数
+                Double originalScore = scoreMap.get(doc.getId());
+                if (originalScore != null) {
+                    chunk.setSimilarityScore(originalScore * 0.8);
+                } else {
+                    chunk.setSimilarityScore(0.5);
+                }
+
+                expandedDocuments.add(chunk);
+                expandedIds.add(chunk.getId());
             }
         }
 
@@ -331,40 +444,66 @@ public class HybridSearchDomainService {
         return expandedDocuments;
     }
 
+    /** 计算每个文件需要扩展的页码区间，并合并重叠或相接的区间
+     * 
+     * @param documents 原始文档列表
+     * @return 文件ID到有序、互不重叠页码区间的映射 */
+    static Map<String, List<int[]>> mergeAdjacentPageRanges(List<DocumentUnitEntity> documents) {
+        Map<String, List<int[]>> rawRanges = new LinkedHashMap<>();
+        for (DocumentUnitEntity doc : documents) {
+            if (doc.getFileId() == null || doc.getPage() == null) {
+                continue;
+            }
+            rawRanges.computeIfAbsent(doc.getFileId(), k -> new ArrayList<>())
+                    .add(new int[]{Math.max(1, doc.getPage() - 1), doc.getPage() + 1});
+        }
+
+        Map<String, List<int[]>> merged = new LinkedHashMap<>();
+        rawRanges.forEach((fileId, ranges) -> {
+            ranges.sort(Comparator.comparingInt(range -> range[0]));
+            List<int[]> fileRanges = new ArrayList<>();
+            for (int[] range : ranges) {
+                int[] last = fileRanges.isEmpty() ? null : fileRanges.get(fileRanges.size() - 1);
+                if (last != null && range[0] <= last[1] + 1) {
+                    last[1] = Math.max(last[1], range[1]);
+                } else {
+                    fileRanges.add(new int[]{range[0], range[1]});
+                }
+            }
+            merged.put(fileId, fileRanges);
+        });
+        return merged;
+    }
+
     /** 对RRF融合后的结果进行重排序
      * 
      * @param fusedResults RRF融合后的结果
      * @param question 查询问题
-     * @return 重排序后的结果 */
-    private List<VectorStoreResult> applyRerankToFusedResults(List<VectorStoreResult> fusedResults, String question) {
-        if (fusedResults.isEmpty()) {
-            return fusedResults;
-        }
-
+     * @return 重排序结果，重排序失败时为原始融合顺序并标记为回退 */
+    private RerankResult applyRerankToFusedResults(List<VectorStoreResult> fusedResults, String question) {
         long rerankStartTime = System.currentTimeMillis();
 
         try {
             // 提取文档文本列表
             List<String> texts = fusedResults.stream().map(VectorStoreResult::getText).collect(Collectors.toList());
 
-            // 调用重排序服务获取重排序后的索引
-            List<Integer> rerankedIndices = rerankDomainService.rerank(texts, question);
+            List<String> documentIds = fusedResults.stream().map(VectorStoreResult::getDocumentId)
+                    .collect(Collectors.toList());
 
-            // 根据重排序索引重新排列结果
-            List<VectorStoreResult> rerankedResults = rerankedIndices.stream()
-                    .filter(index -> index >= 0 && index < fusedResults.size()) // 确保索引有效
-                    .map(fusedResults::get).collect(Collectors.toList());
+            // 调用重排序服务获取重排序后的索引，已缓存分数的片段不会重复发送
+            RerankResult rerankResult = rerankDomainService.rerankWithResult(documentIds, texts, question);
 
             long rerankTime = System.currentTimeMillis() - rerankStartTime;
-            log.info("对查询'{}'的融合结果应用重排序，{}个结果，耗时{}ms", question, rerankedResults.size(), rerankTime);
+            log.info("对查询'{}'的融合结果应用重排序，{}个结果，耗时{}ms", question, rerankResult.getOrder().size(), rerankTime);
 
-            return rerankedResults;
+            return rerankResult;
 
         } catch (Exception e) {
             long rerankTime = System.currentTimeMillis() - rerankStartTime;
             log.error("对查询'{}'的融合结果重排序失败，耗时{}ms", question, rerankTime, e);
             // 重排序失败时返回原始融合结果
-            return fusedResults;
+            return new RerankResult(IntStream.range(0, fusedResults.size()).boxed().collect(Collectors.toList()),
+                    true);
         }
     }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.xhy.domain.rag.constant.SearchType;
 import org.xhy.domain.rag.model.VectorStoreResult;
+import org.xhy.domain.rag.repository.RagChunkRepository;
 import org.xhy.domain.rag.repository.VectorStoreRepository;
 
 import java.util.ArrayList;
@@ -22,8 +23,12 @@ public class KeywordSearchDomainService {
 
     private final VectorStoreRepository vectorStoreRepository;
 
-    public KeywordSearchDomainService(VectorStoreRepository vectorStoreRepository) {
+    private final RagChunkRepository ragChunkRepository;
+
+    public KeywordSearchDomainService(VectorStoreRepository vectorStoreRepository,
+            RagChunkRepository ragChunkRepository) {
         this.vectorStoreRepository = vectorStoreRepository;
+        this.ragChunkRepository = ragChunkRepository;
     }
 
     /** 执行关键词检索 基于PostgreSQL的中文全文搜索功能，使用ts_rank_cd进行相关性排序
@@ -76,4 +81,32 @@ public class KeywordSearchDomainService {
             return Collections.emptyList();
         }
     }
-}
\ No newline at end of file
+
+    /** 在RAG版本引用的分块内执行关键词检索 分词和排序与keywordSearch一致
+     *
+     * @param ragVersionId RAG版本ID
+     * @param userQuery 用户查询问题
+     * @param maxResults 最大返回结果数量
+     * @return 关键词检索结果列表，失败时返回空集合 */
+    public List<VectorStoreResult> keywordSearchInVersion(String ragVersionId, String userQuery, Integer maxResults) {
+        if (!StringUtils.hasText(ragVersionId) || !StringUtils.hasText(userQuery)) {
+            log.warn("版本ID或用户查询为空，无法进行关键词搜索");
+            return Collections.emptyList();
+        }
+        int finalMaxResults = maxResults == null || maxResults <= 0 ? 20 : maxResults;
+
+        long startTime = System.currentTimeMillis();
+        try {
+            List<VectorStoreResult> results = ragChunkRepository.keywordSearchInVersion(ragVersionId, userQuery,
+                    finalMaxResults);
+            results.forEach(result -> result.setSearchType(SearchType.KEYWORD));
+
+            log.info("版本 [{}] 关键词搜索完成，查询: '{}'，返回{}个文档，耗时{}ms", ragVersionId, userQuery, results.size(),
+                    System.currentTimeMillis() - startTime);
+            return results;
+        } catch (Exception e) {
+            log.error("版本 [{}] 关键词搜索过程中出现错误，查询: '{}'", ragVersionId, userQuery, e);
+            return Collections.emptyList();
+        }
+    }
+}
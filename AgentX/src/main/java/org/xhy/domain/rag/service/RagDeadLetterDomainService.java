@@ -0,0 +1,72 @@
+package org.xhy.domain.rag.service;
+
+import java.time.LocalDateTime;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+import org.xhy.domain.rag.constant.DeadLetterStatus;
+import org.xhy.domain.rag.model.RagDeadLetterEntity;
+import org.xhy.domain.rag.repository.RagDeadLetterRepository;
+import org.xhy.infrastructure.exception.BusinessException;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+
+/** 入库死信消息领域服务
+ * @author zang */
+@Service
+public class RagDeadLetterDomainService {
+
+    private final RagDeadLetterRepository ragDeadLetterRepository;
+
+    public RagDeadLetterDomainService(RagDeadLetterRepository ragDeadLetterRepository) {
+        this.ragDeadLetterRepository = ragDeadLetterRepository;
+    }
+
+    /** 记录一条死信消息
+     * @param deadLetter 死信消息 */
+    public void recordDeadLetter(RagDeadLetterEntity deadLetter) {
+        deadLetter.setStatus(DeadLetterStatus.PENDING.getCode());
+        ragDeadLetterRepository.checkInsert(deadLetter);
+    }
+
+    /** 分页查询死信消息
+     * @param page 页码
+     * @param pageSize 每页大小
+     * @param sourceQueue 原队列
+     * @param fileId 文件ID
+     * @param status 状态
+     * @return 死信消息分页 */
+    public IPage<RagDeadLetterEntity> listDeadLetters(Integer page, Integer pageSize, String sourceQueue,
+            String fileId, Integer status) {
+        LambdaQueryWrapper<RagDeadLetterEntity> wrapper = Wrappers.<RagDeadLetterEntity>lambdaQuery()
+                .eq(StringUtils.isNotBlank(sourceQueue), RagDeadLetterEntity::getSourceQueue, sourceQueue)
+                .eq(StringUtils.isNotBlank(fileId), RagDeadLetterEntity::getFileId, fileId)
+                .eq(status != null, RagDeadLetterEntity::getStatus, status)
+                .orderByDesc(RagDeadLetterEntity::getCreatedAt);
+        return ragDeadLetterRepository.selectPage(new Page<>(page, pageSize), wrapper);
+    }
+
+    /** 获取死信消息
+     * @param id 死信ID
+     * @return 死信消息 */
+    public RagDeadLetterEntity getDeadLetter(String id) {
+        RagDeadLetterEntity deadLetter = ragDeadLetterRepository.selectById(id);
+        if (deadLetter == null) {
+            throw new BusinessException("死信消息不存在");
+        }
+        return deadLetter;
+    }
+
+    /** 以待处理状态为条件标记为已重放，并发重放同一条死信时只有一个能成功
+     * @param id 死信ID
+     * @return 是否由本次调用完成标记 */
+    public boolean markReplayed(String id) {
+        return ragDeadLetterRepository.update(Wrappers.<RagDeadLetterEntity>lambdaUpdate()
+                .set(RagDeadLetterEntity::getStatus, DeadLetterStatus.REPLAYED.getCode())
+                .set(RagDeadLetterEntity::getReplayedAt, LocalDateTime.now()).eq(RagDeadLetterEntity::getId, id)
+                .eq(RagDeadLetterEntity::getStatus, DeadLetterStatus.PENDING.getCode())) > 0;
+    }
+}
@@ -0,0 +1,200 @@
+package org.xhy.domain.rag.service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.xhy.domain.rag.constant.IngestionTaskStatus;
+import org.xhy.domain.rag.model.IngestionQueueStats;
+import org.xhy.domain.rag.model.RagIngestionTaskEntity;
+import org.xhy.domain.rag.repository.RagIngestionTaskRepository;
+import org.xhy.infrastructure.mq.core.MessageEnvelope;
+import org.xhy.infrastructure.mq.core.MessageHeaders;
+import org.xhy.infrastructure.mq.core.MessagePublisher;
+import org.xhy.infrastructure.mq.events.RagDocSyncOcrEvent;
+import org.xhy.infrastructure.rag.config.RagFairQueueProperties;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+
+/** 入库公平排队领域服务
+ *
+ * 文件预处理消息先写入排队表，调度时按 {@link FairIngestionPolicy} 在全局并发窗口内轮流放行各用户的任务到预处理队列，
+ * 预处理结束后释放名额并立即调度下一批。预处理队列中最多只有窗口大小的消息，单个用户的大批量上传不会排在其他用户前面。
+ * 放行以排队状态为条件更新，多实例同时调度时同一任务只会放行一次
+ * @author zang */
+@Service
+public class RagIngestionQueueDomainService {
+
+    private static final Logger log = LoggerFactory.getLogger(RagIngestionQueueDomainService.class);
+
+    private final RagIngestionTaskRepository ragIngestionTaskRepository;
+
+    private final MessagePublisher messagePublisher;
+
+    private final RagFairQueueProperties properties;
+
+    private final FairIngestionPolicy policy;
+
+    /** 同一实例内只有一个线程在调度，其余触发直接跳过 */
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+
+    public RagIngestionQueueDomainService(RagIngestionTaskRepository ragIngestionTaskRepository,
+            MessagePublisher messagePublisher, RagFairQueueProperties properties) {
+        this.ragIngestionTaskRepository = ragIngestionTaskRepository;
+        this.messagePublisher = messagePublisher;
+        this.properties = properties;
+        this.policy = new FairIngestionPolicy(properties);
+    }
+
+    /** 提交文件预处理任务，同一文件已在排队时只更新消息体，查重与写入在一条语句内完成
+     * @param userId 用户ID
+     * @param fileId 文件ID
+     * @param envelope 预处理消息 */
+    public void submit(String userId, String fileId, MessageEnvelope<?> envelope) {
+        if (!properties.isEnabled()) {
+            messagePublisher.publish(RagDocSyncOcrEvent.route(), envelope);
+            return;
+        }
+
+        RagIngestionTaskEntity task = new RagIngestionTaskEntity();
+        task.setId(IdWorker.get32UUID());
+        task.setUserId(userId);
+        task.setFileId(fileId);
+        task.setTraceId(envelope.getTraceId());
+        task.setPayload(envelope.toJson());
+        ragIngestionTaskRepository.upsertPending(task);
+
+        try {
+            dispatch();
+        } catch (Exception e) {
+            // 任务已入队，由定时调度补发
+            log.warn("提交后立即调度失败，等待定时调度: {}", e.getMessage());
+        }
+    }
+
+    /** 文件预处理结束（成功或失败后进入死信队列）后释放并发名额并调度下一批，等待延迟重试期间名额保持占用
+     * @param fileId 文件ID */
+    public void release(String fileId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        int released = ragIngestionTaskRepository.update(Wrappers.<RagIngestionTaskEntity>lambdaUpdate()
+                .set(RagIngestionTaskEntity::getStatus, IngestionTaskStatus.FINISHED.getCode())
+                .set(RagIngestionTaskEntity::getFinishedAt, LocalDateTime.now())
+                .eq(RagIngestionTaskEntity::getFileId, fileId)
+                .eq(RagIngestionTaskEntity::getStatus, IngestionTaskStatus.DISPATCHED.getCode()));
+        if (released > 0) {
+            dispatch();
+        }
+    }
+
+    /** 定时回收超时名额并调度，防止提交或释放时的即时调度遗漏 */
+    @Scheduled(fixedDelayString = "${rag.fair-queue.dispatch-interval-millis:2000}")
+    public void dispatchPending() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            reclaimExpired();
+            dispatch();
+        } catch (Exception e) {
+            log.warn("入库排队调度失败: {}", e.getMessage());
+        }
+    }
+
+    /** 在并发窗口内按公平策略放行排队任务
+     * @return 本次放行的任务数 */
+    public int dispatch() {
+        if (!dispatchLock.tryLock()) {
+            return 0;
+        }
+        try {
+            Map<String, Integer> inFlight = new HashMap<>();
+            ragIngestionTaskRepository
+                    .selectList(Wrappers.<RagIngestionTaskEntity>lambdaQuery()
+                            .select(RagIngestionTaskEntity::getId, RagIngestionTaskEntity::getUserId)
+                            .eq(RagIngestionTaskEntity::getStatus, IngestionTaskStatus.DISPATCHED.getCode()))
+                    .forEach(task -> inFlight.merge(task.getUserId(), 1, Integer::sum));
+            int total = inFlight.values().stream().mapToInt(Integer::intValue).sum();
+            if (total >= Math.max(1, properties.getMaxInFlight())) {
+                return 0;
+            }
+
+            List<RagIngestionTaskEntity> candidates = ragIngestionTaskRepository
+                    .selectPendingHeads(Math.max(1, properties.getMaxInFlight()));
+            int dispatched = 0;
+            for (RagIngestionTaskEntity task : policy.select(candidates, RagIngestionTaskEntity::getUserId,
+                    inFlight)) {
+                LocalDateTime now = LocalDateTime.now();
+                if (!claim(task.getId(), now)) {
+                    // 已被其他实例放行
+                    continue;
+                }
+                try {
+                    publish(task);
+                } catch (RuntimeException e) {
+                    unclaim(task.getId());
+                    throw e;
+                }
+                dispatched++;
+                log.info("用户{}的文件{}排队{}ms后放行预处理", task.getUserId(), task.getFileId(),
+                        task.getCreatedAt() != null ? ChronoUnit.MILLIS.between(task.getCreatedAt(), now) : -1);
+            }
+            return dispatched;
+        } finally {
+            dispatchLock.unlock();
+        }
+    }
+
+    /** 按用户统计排队情况和统计窗口内的排队等待时间
+     * @return 用户排队统计 */
+    public List<IngestionQueueStats> listQueueStats() {
+        return ragIngestionTaskRepository
+                .selectQueueStats(LocalDateTime.now().minusMinutes(Math.max(1, properties.getStatsWindowMinutes())));
+    }
+
+    /** 放行后长时间未结束的任务只释放并发名额，不重新发布消息。
+     *
+     * 消费端在预处理结束时释放名额，超时未释放的通常是消息已确认但释放名额失败，文件处理已结束，重新发布会重复处理；
+     * 文件若需要重新处理，由用户重新提交 */
+    private void reclaimExpired() {
+        int reclaimed = ragIngestionTaskRepository.update(Wrappers.<RagIngestionTaskEntity>lambdaUpdate()
+                .set(RagIngestionTaskEntity::getStatus, IngestionTaskStatus.FINISHED.getCode())
+                .set(RagIngestionTaskEntity::getFinishedAt, LocalDateTime.now())
+                .eq(RagIngestionTaskEntity::getStatus, IngestionTaskStatus.DISPATCHED.getCode())
+                .lt(RagIngestionTaskEntity::getDispatchedAt,
+                        LocalDateTime.now().minusMinutes(properties.getDispatchTimeoutMinutes())));
+        if (reclaimed > 0) {
+            log.warn("{}个入库任务放行后超过{}分钟未结束，已释放并发名额", reclaimed, properties.getDispatchTimeoutMinutes());
+        }
+    }
+
+    private boolean claim(String taskId, LocalDateTime now) {
+        return ragIngestionTaskRepository.update(Wrappers.<RagIngestionTaskEntity>lambdaUpdate()
+                .set(RagIngestionTaskEntity::getStatus, IngestionTaskStatus.DISPATCHED.getCode())
+                .set(RagIngestionTaskEntity::getDispatchedAt, now).eq(RagIngestionTaskEntity::getId, taskId)
+                .eq(RagIngestionTaskEntity::getStatus, IngestionTaskStatus.PENDING.getCode())) > 0;
+    }
+
+    private void unclaim(String taskId) {
+        ragIngestionTaskRepository.update(Wrappers.<RagIngestionTaskEntity>lambdaUpdate()
+                .set(RagIngestionTaskEntity::getStatus, IngestionTaskStatus.PENDING.getCode())
+                .set(RagIngestionTaskEntity::getDispatchedAt, null).eq(RagIngestionTaskEntity::getId, taskId));
+    }
+
+    private void publish(RagIngestionTaskEntity task) {
+        Map<String, Object> headers = new HashMap<>();
+        if (task.getTraceId() != null) {
+            headers.put(MessageHeaders.TRACE_ID, task.getTraceId());
+        }
+        messagePublisher.publishRaw(RagDocSyncOcrEvent.route(), task.getPayload(), headers);
+    }
+}
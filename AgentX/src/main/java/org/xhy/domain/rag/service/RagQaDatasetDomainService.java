@@ -7,11 +7,17 @@ import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
+import org.xhy.domain.rag.model.DatasetSearchProfile;
 import org.xhy.domain.rag.model.RagQaDatasetEntity;
+import org.xhy.domain.rag.model.enums.FusionStrategy;
 import org.xhy.domain.rag.repository.RagQaDatasetRepository;
 import org.xhy.infrastructure.exception.BusinessException;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /** RAG知识库数据集领域服务
  * @author shilong.zang
@@ -89,6 +95,10 @@ public class RagQaDatasetDomainService {
      * @param dataset 数据集实体 */
     public void updateDataset(RagQaDatasetEntity dataset) {
         validateDatasetName(dataset.getName(), dataset.getUserId(), dataset.getId());
+        if (StringUtils.isNotBlank(dataset.getFusionStrategy())
+                && FusionStrategy.fromName(dataset.getFusionStrategy()) == null) {
+            throw new BusinessException("不支持的融合策略: " + dataset.getFusionStrategy());
+        }
         LambdaUpdateWrapper<RagQaDatasetEntity> wrapper = Wrappers.<RagQaDatasetEntity>lambdaUpdate()
                 .eq(RagQaDatasetEntity::getId, dataset.getId())
                 .eq(dataset.needCheckUserId(), RagQaDatasetEntity::getUserId, dataset.getUserId());
@@ -135,6 +145,43 @@ public class RagQaDatasetDomainService {
         return ragQaDatasetRepository.selectList(wrapper);
     }
 
+    /** 递增数据集入库代次 数据集内容（文件、语料、向量）发生变化时调用，使依赖代次的检索缓存失效
+     * @param datasetId 数据集ID */
+    public void bumpIngestGeneration(String datasetId) {
+        if (StringUtils.isBlank(datasetId)) {
+            return;
+        }
+        LambdaUpdateWrapper<RagQaDatasetEntity> wrapper = Wrappers.<RagQaDatasetEntity>lambdaUpdate()
+                .eq(RagQaDatasetEntity::getId, datasetId)
+                .setSql("ingest_generation = COALESCE(ingest_generation, 0) + 1");
+        ragQaDatasetRepository.update(wrapper);
+    }
+
+    /** 一次查询获取一组数据集的检索配置 包含各数据集当前入库代次，以及所有数据集指定了相同融合策略时的该策略
+     * （未指定或互相冲突时为null，由调用方使用默认策略）
+     *
+     * @param datasetIds 数据集ID列表
+     * @return 数据集检索配置 */
+    public DatasetSearchProfile getSearchProfile(List<String> datasetIds) {
+        Map<String, Long> generations = new HashMap<>();
+        if (datasetIds == null || datasetIds.isEmpty()) {
+            return new DatasetSearchProfile(generations, null);
+        }
+        datasetIds.forEach(id -> generations.put(id, 0L));
+        LambdaQueryWrapper<RagQaDatasetEntity> wrapper = Wrappers.<RagQaDatasetEntity>lambdaQuery()
+                .select(RagQaDatasetEntity::getId, RagQaDatasetEntity::getIngestGeneration,
+                        RagQaDatasetEntity::getFusionStrategy)
+                .in(RagQaDatasetEntity::getId, datasetIds);
+        Set<FusionStrategy> strategies = new HashSet<>();
+        for (RagQaDatasetEntity dataset : ragQaDatasetRepository.selectList(wrapper)) {
+            generations.put(dataset.getId(),
+                    dataset.getIngestGeneration() != null ? dataset.getIngestGeneration() : 0L);
+            strategies.add(FusionStrategy.fromName(dataset.getFusionStrategy()));
+        }
+        return new DatasetSearchProfile(generations,
+                strategies.size() == 1 ? strategies.iterator().next() : null);
+    }
+
     /** 校验数据集名称唯一性
      * @param name 数据集名称
      * @param userId 用户ID */
@@ -1,18 +1,37 @@
 package org.xhy.domain.rag.service;
 
+import cn.hutool.crypto.digest.DigestUtil;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
-import jakarta.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.dto.req.RerankRequest;
 import org.xhy.domain.rag.dto.resp.RerankResponse;
+import org.xhy.domain.rag.model.RerankResult;
 import org.xhy.infrastructure.rag.api.RerankForestApi;
+import org.xhy.infrastructure.rag.cache.RerankScoreCache;
 import org.xhy.infrastructure.rag.config.RerankProperties;
+import org.xhy.infrastructure.rag.rerank.LocalReranker;
 
 /** @author shilong.zang
  * @date 16:11 <br/>
@@ -20,11 +39,43 @@ import org.xhy.infrastructure.rag.config.RerankProperties;
 @Service
 public class RerankDomainService {
 
-    @Resource
-    private RerankProperties rerankProperties;
+    private static final Logger log = LoggerFactory.getLogger(RerankDomainService.class);
 
-    @Resource
-    private RerankForestApi rerankForestApi;
+    private final RerankProperties rerankProperties;
+
+    private final RerankForestApi rerankForestApi;
+
+    private final RerankScoreCache rerankScoreCache;
+
+    /** 本地重排序器，按名称索引 */
+    private final Map<String, LocalReranker> localRerankers;
+
+    /** 分批重排序请求线程池 */
+    private final ExecutorService rerankExecutor;
+
+    public RerankDomainService(RerankProperties rerankProperties, RerankForestApi rerankForestApi,
+            RerankScoreCache rerankScoreCache, List<LocalReranker> localRerankers) {
+        this.rerankProperties = rerankProperties;
+        this.rerankForestApi = rerankForestApi;
+        this.rerankScoreCache = rerankScoreCache;
+        this.localRerankers = localRerankers.stream()
+                .collect(Collectors.toMap(LocalReranker::getName, Function.identity()));
+
+        int parallelism = Math.max(1, rerankProperties.getParallelism());
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 有界队列：积压超过容量时拒绝批次，由检索线程走兜底排序，而不是在检索线程里发起不受超时约束的远程调用
+        this.rerankExecutor = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, rerankProperties.getQueueCapacity())), r -> {
+                    Thread t = new Thread(r, "rerank-batch-thread-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rerankExecutor.shutdownNow();
+    }
 
     /** 重排序文档列表
      * 
@@ -32,33 +83,243 @@ public class RerankDomainService {
      * @param query 查询问题
      * @return 重排序后的文档索引列表 */
     public List<Integer> rerank(List<String> documents, String query) {
+        return rerank(null, documents, query);
+    }
+
+    /** 重排序文档列表，已缓存分数的片段不再发送给重排序服务
+     *
+     * @param documentIds 文档片段ID列表，与documents一一对应；为null时不使用分数缓存
+     * @param documents 待重排序的文档文本列表
+     * @param query 查询问题
+     * @return 重排序后的文档索引列表，远程重排序失败或超时时使用本地重排序器，未配置本地重排序器时返回原始顺序 */
+    public List<Integer> rerank(List<String> documentIds, List<String> documents, String query) {
+        return rerankWithResult(documentIds, documents, query).getOrder();
+    }
+
+    /** 重排序文档列表，并返回是否回退为本地兜底排序，调用方可据此决定结果能否缓存
+     *
+     * @param documentIds 文档片段ID列表，与documents一一对应；为null时不使用分数缓存
+     * @param documents 待重排序的文档文本列表
+     * @param query 查询问题
+     * @return 重排序结果 */
+    public RerankResult rerankWithResult(List<String> documentIds, List<String> documents, String query) {
         if (documents == null || documents.isEmpty()) {
-            return new ArrayList<>();
+            return new RerankResult(new ArrayList<>(), false);
         }
 
         if (query == null || query.trim().isEmpty()) {
             // 如果查询为空，返回原始顺序索引
-            return documents.stream().map(documents::indexOf).collect(Collectors.toList());
+            return new RerankResult(originalOrder(documents.size()), false);
+        }
+
+        if (rerankProperties.isLocalOnly()) {
+            return new RerankResult(rerankLocally(documents, query), false);
+        }
+
+        boolean useCache = rerankScoreCache.isEnabled() && documentIds != null
+                && documentIds.size() == documents.size();
+        String queryHash = DigestUtil.sha256Hex(rerankProperties.getModel() + "\n" + query.trim());
+
+        Double[] scores = new Double[documents.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            scores[i] = useCache ? rerankScoreCache.get(queryHash, documentIds.get(i), documents.get(i)) : null;
+            if (scores[i] == null) {
+                pending.add(i);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            try {
+                scoreRemotely(pending, documents, query, scores, useCache ? documentIds : null, queryHash);
+            } catch (TimeoutException e) {
+                log.warn("重排序超时（{}ms），回退为本地重排序，待重排序候选{}个", rerankProperties.getTimeout(), pending.size());
+                return new RerankResult(fallbackOrder(documents, query, scores.clone()), true);
+            } catch (Exception e) {
+                // 远程重排序失败时使用本地重排序兜底
+                log.warn("重排序失败，回退为本地重排序: {}", e.getMessage());
+                return new RerankResult(fallbackOrder(documents, query, scores.clone()), true);
+            }
+        }
+        log.debug("重排序完成，候选{}个，缓存命中{}个", documents.size(), documents.size() - pending.size());
+
+        return new RerankResult(orderByScore(scores), false);
+    }
+
+    /** 远程重排序失败或超时时的兜底顺序：先按本地重排序器排序，已拿到远程分数（缓存命中或已完成批次，均已写入缓存）的候选
+     * 再在它们占据的位置之间按远程分数重排，其余候选保持本地顺序
+     *
+     * @param documents 待重排序的文档文本列表
+     * @param query 查询问题
+     * @param remoteScores 远程分数快照，没有分数的候选为null
+     * @return 重排序后的文档索引列表 */
+    private List<Integer> fallbackOrder(List<String> documents, String query, Double[] remoteScores) {
+        List<Integer> order = rerankLocally(documents, query);
+        List<Integer> slots = new ArrayList<>();
+        List<Integer> scored = new ArrayList<>();
+        for (int position = 0; position < order.size(); position++) {
+            if (remoteScores[order.get(position)] != null) {
+                slots.add(position);
+                scored.add(order.get(position));
+            }
+        }
+        scored.sort(Comparator.comparing((Integer i) -> -remoteScores[i]));
+        for (int k = 0; k < slots.size(); k++) {
+            order.set(slots.get(k), scored.get(k));
+        }
+        return order;
+    }
+
+    /** 使用配置的本地重排序器对候选打分排序，未配置时返回原始顺序
+     *
+     * @param documents 待重排序的文档文本列表
+     * @param query 查询问题
+     * @return 重排序后的文档索引列表 */
+    private List<Integer> rerankLocally(List<String> documents, String query) {
+        LocalReranker localReranker = localRerankers.get(rerankProperties.getLocalReranker());
+        if (localReranker == null) {
+            return originalOrder(documents.size());
+        }
+        double[] localScores = localReranker.score(query, documents);
+        Double[] scores = new Double[documents.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = localScores[i];
         }
+        return orderByScore(scores);
+    }
+
+    /** 按分数降序排列，没有分数的候选保持原始顺序排在末尾 */
+    private List<Integer> orderByScore(Double[] scores) {
+        return IntStream.range(0, scores.length).boxed()
+                .sorted(Comparator.comparing((Integer i) -> scores[i] == null)
+                        .thenComparing(i -> scores[i] == null ? 0d : -scores[i]))
+                .collect(Collectors.toList());
+    }
+
+    /** 将待评分候选按批次并行发送给重排序服务，各批次分数由批次结果返回，只在调用线程中写回scores
+     *
+     * 超时从提交第一个批次前开始计算；线程池队列已满而拒绝的批次不再提交，等已提交批次结束后抛出拒绝异常走兜底排序
+     *
+     * @param pending 待评分候选在documents中的下标
+     * @param documents 全部候选文本
+     * @param query 查询问题
+     * @param scores 分数数组，失败或超时时保留已完成批次的分数
+     * @param documentIds 文档片段ID列表，为null时不写缓存
+     * @param queryHash 查询哈希 */
+    private void scoreRemotely(List<Integer> pending, List<String> documents, String query, Double[] scores,
+            List<String> documentIds, String queryHash) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rerankProperties.getTimeout());
+        int batchSize = Math.max(1, rerankProperties.getBatchSize());
+        List<Future<Map<Integer, Double>>> futures = new ArrayList<>();
+        RejectedExecutionException rejected = null;
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<Integer> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+            try {
+                futures.add(rerankExecutor.submit(() -> scoreBatch(batch, documents, query, documentIds, queryHash)));
+            } catch (RejectedExecutionException e) {
+                log.warn("重排序线程池已满，{}个候选未提交", pending.size() - from);
+                rejected = e;
+                break;
+            }
+        }
+
+        try {
+            for (Future<Map<Integer, Double>> future : futures) {
+                Map<Integer, Double> batchScores = rerankProperties.getTimeout() > 0
+                        ? future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                        : future.get();
+                batchScores.forEach((index, score) -> scores[index] = score);
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (Exception e) {
+            // 超时或任一批次失败时取消其余批次：排队中的不再执行，执行中的线程被中断；已完成批次的分数仍然保留
+            futures.forEach(future -> future.cancel(true));
+            mergeCompleted(futures, scores);
+            throw e;
+        }
+        if (rejected != null) {
+            throw rejected;
+        }
+    }
 
+    /** 对一个批次调用重排序服务
+     *
+     * @return 候选下标与分数映射 */
+    private Map<Integer, Double> scoreBatch(List<Integer> batch, List<String> documents, String query,
+            List<String> documentIds, String queryHash) {
+        List<String> texts = batch.stream()
+                .map(i -> truncateToTokenBudget(documents.get(i), rerankProperties.getMaxDocumentTokens()))
+                .collect(Collectors.toList());
+        Map<Integer, Double> batchScores = new HashMap<>();
+        for (RerankResponse.SearchResult result : callRerank(texts, query)) {
+            Integer local = result.getIndex();
+            if (local == null || local < 0 || local >= batch.size()) {
+                continue;
+            }
+            int index = batch.get(local);
+            batchScores.put(index, result.getRelevanceScore());
+            // 在批次内写缓存，即使整体超时，已完成批次的分数也可供后续检索复用
+            if (documentIds != null) {
+                rerankScoreCache.put(queryHash, documentIds.get(index), documents.get(index),
+                        result.getRelevanceScore());
+            }
+        }
+        return batchScores;
+    }
+
+    /** 将已成功完成的批次分数写回scores，未完成、已取消或失败的批次跳过 */
+    private void mergeCompleted(List<Future<Map<Integer, Double>>> futures, Double[] scores) {
+        for (Future<Map<Integer, Double>> future : futures) {
+            if (!future.isDone() || future.isCancelled()) {
+                continue;
+            }
+            try {
+                future.get().forEach((index, score) -> scores[index] = score);
+            } catch (Exception ignored) {
+                // 失败的批次没有分数
+            }
+        }
+    }
+
+    private List<RerankResponse.SearchResult> callRerank(List<String> texts, String query) {
         final RerankRequest rerankRequest = new RerankRequest();
         rerankRequest.setModel(rerankProperties.getModel());
         rerankRequest.setQuery(query);
-        rerankRequest.setDocuments(documents);
-
-        try {
-            // 调用Forest接口调用Rerank API
-            final RerankResponse rerankResponse = rerankForestApi.rerank(rerankProperties.getApiUrl(),
-                    rerankProperties.getApiKey(), rerankRequest);
+        rerankRequest.setDocuments(texts);
 
-            final List<RerankResponse.SearchResult> results = rerankResponse.getResults();
+        // 调用Forest接口调用Rerank API
+        final RerankResponse rerankResponse = rerankForestApi.rerank(rerankProperties.getApiUrl(),
+                rerankProperties.getApiKey(), rerankRequest);
+        if (rerankResponse == null || rerankResponse.getResults() == null) {
+            return List.of();
+        }
+        return rerankResponse.getResults();
+    }
 
-            return results.stream().map(RerankResponse.SearchResult::getIndex).collect(Collectors.toList());
+    private List<Integer> originalOrder(int size) {
+        return IntStream.range(0, size).boxed().collect(Collectors.toList());
+    }
 
-        } catch (Exception e) {
-            // 重排序失败时返回原始顺序
-            return documents.stream().map(documents::indexOf).collect(Collectors.toList());
+    /** 按估算的token数截断文本：中日韩字符按1个token计，其他字符按4个字符1个token计
+     *
+     * @param text 原始文本
+     * @param maxTokens token预算，小于等于0时不截断
+     * @return 截断后的文本 */
+    static String truncateToTokenBudget(String text, int maxTokens) {
+        if (text == null || maxTokens <= 0) {
+            return text;
+        }
+        double budget = maxTokens;
+        for (int i = 0; i < text.length(); i++) {
+            budget -= Character.isIdeographic(text.charAt(i)) ? 1.0 : 0.25;
+            if (budget < 0) {
+                return text.substring(0, i);
+            }
         }
+        return text;
     }
 
     /** 重排序文档（已废弃）
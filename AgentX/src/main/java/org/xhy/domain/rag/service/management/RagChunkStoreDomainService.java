@@ -0,0 +1,137 @@
+package org.xhy.domain.rag.service.management;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.xhy.domain.rag.model.SnapshotSourceCount;
+import org.xhy.domain.rag.repository.RagChunkRepository;
+import org.xhy.domain.rag.repository.RagChunkSetRepository;
+import org.xhy.infrastructure.rag.config.RagSnapshotProperties;
+
+/** RAG内容寻址分块存储领域服务
+ *
+ * 版本文件和用户文件不再各自复制文档与向量，只引用不可变的分块集合：集合ID由文件按页码排序的（页码:内容SHA-256）序列计算，
+ * 内容未变的文件在新版本中直接复用旧集合，安装快照只复制文件行并累加集合引用数。新集合在发布时从数据集写入成员，
+ * 分块内容和向量按内容哈希在所有集合间共享。集合和分块各自维护引用数，归零且超过宽限期后由定时任务回收
+ * @author zang */
+@Service
+public class RagChunkStoreDomainService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RagChunkStoreDomainService.class);
+
+    private final RagChunkSetRepository ragChunkSetRepository;
+    private final RagChunkRepository ragChunkRepository;
+    private final RagSnapshotProperties snapshotProperties;
+
+    public RagChunkStoreDomainService(RagChunkSetRepository ragChunkSetRepository,
+            RagChunkRepository ragChunkRepository, RagSnapshotProperties snapshotProperties) {
+        this.ragChunkSetRepository = ragChunkSetRepository;
+        this.ragChunkRepository = ragChunkRepository;
+        this.snapshotProperties = snapshotProperties;
+    }
+
+    /** 为已复制文件行的版本引用分块集合 只有数据集中内容有变化的文件需要写入新集合，向量按嵌入模型只补齐该模型下还没有向量的分块
+     *
+     * @param ragVersionId RAG版本ID
+     * @param embeddingModel 数据集向量所用的嵌入模型标识，为空时不固化向量，版本只能按关键词检索 */
+    public void snapshotVersion(String ragVersionId, String embeddingModel) {
+        if (ragChunkSetRepository.assignVersionChunkSets(ragVersionId) == 0) {
+            return;
+        }
+        ragChunkSetRepository.retainVersionChunkSets(ragVersionId);
+
+        List<SnapshotSourceCount> unsealed = ragChunkSetRepository.listUnsealedSources(ragVersionId);
+        int batchSize = snapshotProperties.getCopyBatchSize();
+        long written = new SnapshotChunkCopier("版本 [" + ragVersionId + "] 新分块集合", batchSize).copy(unsealed,
+                (sourceFileIds, afterId, limit) -> ragChunkSetRepository.sealChunk(ragVersionId, sourceFileIds,
+                        afterId, limit));
+        int sealed = ragChunkSetRepository.sealVersionChunkSets(ragVersionId);
+
+        if (StringUtils.hasText(embeddingModel)) {
+            new SnapshotChunkCopier("版本 [" + ragVersionId + "] 分块向量", batchSize).copy(
+                    ragChunkSetRepository.countSourceDocuments(ragVersionId),
+                    (sourceFileIds, afterId, limit) -> ragChunkSetRepository.internVectorChunk(embeddingModel,
+                            sourceFileIds, afterId, limit));
+        } else {
+            logger.warn("版本 [{}] 无法确定数据集的嵌入模型，不固化分块向量", ragVersionId);
+        }
+
+        logger.info("版本 [{}] 分块集合引用完成，新写入 {} 个集合 {} 个成员", ragVersionId, sealed, written);
+    }
+
+    /** 释放版本文件对分块集合的引用，需在删除版本文件之前调用
+     *
+     * @param ragVersionId RAG版本ID */
+    public void releaseVersion(String ragVersionId) {
+        ragChunkSetRepository.releaseVersionChunkSets(ragVersionId);
+    }
+
+    /** 登记用户快照文件对分块集合的引用，需在复制用户文件之后调用
+     *
+     * @param userRagId 用户RAG安装记录ID */
+    public void retainUserRag(String userRagId) {
+        ragChunkSetRepository.retainUserRagChunkSets(userRagId);
+    }
+
+    /** 释放用户快照文件对分块集合的引用，需在删除用户文件之前调用
+     *
+     * @param userRagId 用户RAG安装记录ID */
+    public void releaseUserRag(String userRagId) {
+        ragChunkSetRepository.releaseUserRagChunkSets(userRagId);
+    }
+
+    /** 统计版本引用的文档数
+     *
+     * @param ragVersionId RAG版本ID
+     * @return 文档数 */
+    public long countVersionDocuments(String ragVersionId) {
+        return ragChunkSetRepository.sumVersionDocuments(ragVersionId);
+    }
+
+    /** 统计用户快照引用的文档数
+     *
+     * @param userRagId 用户RAG安装记录ID
+     * @return 文档数 */
+    public long countUserRagDocuments(String userRagId) {
+        return ragChunkSetRepository.sumUserRagDocuments(userRagId);
+    }
+
+    /** 定时回收无引用的分块集合和分块 */
+    @Scheduled(fixedDelayString = "${rag.snapshot.gc-interval-millis:600000}",
+            initialDelayString = "${rag.snapshot.gc-interval-millis:600000}")
+    public void collectGarbagePeriodically() {
+        try {
+            collectGarbage(snapshotProperties.getGcGraceSeconds());
+        } catch (Exception e) {
+            logger.warn("回收无引用分块失败: {}", e.getMessage());
+        }
+    }
+
+    /** 分批回收引用数归零且超过宽限期的分块集合，再回收引用数归零且超过宽限期的分块及其向量
+     *
+     * @param graceSeconds 宽限期（秒） */
+    public void collectGarbage(long graceSeconds) {
+        int batchSize = Math.max(1, snapshotProperties.getGcBatchSize());
+        long sets = 0;
+        int removed;
+        do {
+            removed = ragChunkSetRepository.collectChunkSets(graceSeconds, batchSize);
+            sets += removed;
+        } while (removed >= batchSize);
+
+        // 随集合回收归零的分块在下一个宽限期后回收
+        long chunks = 0;
+        do {
+            removed = ragChunkRepository.collectChunks(graceSeconds, batchSize);
+            chunks += removed;
+        } while (removed >= batchSize);
+
+        if (sets > 0 || chunks > 0) {
+            logger.info("回收无引用分块集合 {} 个，分块 {} 个", sets, chunks);
+        }
+    }
+}
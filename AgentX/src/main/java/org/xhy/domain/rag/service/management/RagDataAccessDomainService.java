@@ -191,10 +191,7 @@ public class RagDataAccessDomainService {
 
     /** 获取用户快照文档（从用户快照表） */
     private List<DocumentUnitEntity> getUserSnapshotDocuments(String userRagId) {
-        LambdaQueryWrapper<UserRagDocumentEntity> wrapper = Wrappers.<UserRagDocumentEntity>lambdaQuery()
-                .eq(UserRagDocumentEntity::getUserRagId, userRagId).orderByDesc(UserRagDocumentEntity::getCreatedAt);
-
-        List<UserRagDocumentEntity> userDocs = userRagDocumentRepository.selectList(wrapper);
+        List<UserRagDocumentEntity> userDocs = userRagDocumentRepository.selectUserDocuments(userRagId, null);
 
         // 转换为DocumentUnitEntity格式（用于兼容现有接口）
         return userDocs.stream().map(this::convertToDocumentUnitEntity).collect(java.util.stream.Collectors.toList());
@@ -225,12 +222,8 @@ public class RagDataAccessDomainService {
         }
 
         // 动态计算实际页数 - 查询最大页码
-        LambdaQueryWrapper<UserRagDocumentEntity> docWrapper = Wrappers.<UserRagDocumentEntity>lambdaQuery()
-                .eq(UserRagDocumentEntity::getUserRagFileId, userFileId).select(UserRagDocumentEntity::getPage)
-                .orderByDesc(UserRagDocumentEntity::getPage).last("LIMIT 1");
-
-        List<UserRagDocumentEntity> docs = userRagDocumentRepository.selectList(docWrapper);
-        int actualPageSize = docs.isEmpty() ? 0 : docs.get(0).getPage() + 1;
+        Integer maxPage = userRagDocumentRepository.selectMaxPage(userFileId);
+        int actualPageSize = maxPage == null ? 0 : maxPage + 1;
 
         // 转换为FileDetailEntity并修正页数
         FileDetailEntity file = convertToFileDetailEntity(userFile);
@@ -258,12 +251,7 @@ public class RagDataAccessDomainService {
         }
 
         // 查询对应的文档快照
-        LambdaQueryWrapper<UserRagDocumentEntity> docWrapper = Wrappers.<UserRagDocumentEntity>lambdaQuery()
-                .eq(UserRagDocumentEntity::getUserRagId, userRagId)
-                .eq(UserRagDocumentEntity::getUserRagFileId, userFileId)
-                .orderByDesc(UserRagDocumentEntity::getCreatedAt);
-
-        List<UserRagDocumentEntity> userDocs = userRagDocumentRepository.selectList(docWrapper);
+        List<UserRagDocumentEntity> userDocs = userRagDocumentRepository.selectUserDocuments(userRagId, userFileId);
 
         // 转换为DocumentUnitEntity格式
         return userDocs.stream().map(this::convertToDocumentUnitEntity).collect(java.util.stream.Collectors.toList());
@@ -282,12 +270,8 @@ public class RagDataAccessDomainService {
         }
 
         // 再查询对应的文档快照
-        LambdaQueryWrapper<UserRagDocumentEntity> docWrapper = Wrappers.<UserRagDocumentEntity>lambdaQuery()
-                .eq(UserRagDocumentEntity::getUserRagId, userRagId)
-                .eq(UserRagDocumentEntity::getUserRagFileId, userFile.getId())
-                .orderByDesc(UserRagDocumentEntity::getCreatedAt);
-
-        List<UserRagDocumentEntity> userDocs = userRagDocumentRepository.selectList(docWrapper);
+        List<UserRagDocumentEntity> userDocs = userRagDocumentRepository.selectUserDocuments(userRagId,
+                userFile.getId());
 
         // 转换为DocumentUnitEntity格式
         return userDocs.stream().map(this::convertToDocumentUnitEntity).collect(java.util.stream.Collectors.toList());
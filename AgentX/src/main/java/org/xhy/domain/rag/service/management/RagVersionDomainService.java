@@ -9,8 +9,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.constant.RagPublishStatus;
-import org.xhy.domain.rag.model.DocumentUnitEntity;
-import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.model.RagQaDatasetEntity;
 import org.xhy.domain.rag.model.RagVersionDocumentEntity;
 import org.xhy.domain.rag.model.RagVersionEntity;
@@ -19,16 +17,17 @@ import org.xhy.application.rag.dto.RagStatisticsDTO;
 import org.xhy.application.rag.dto.RagContentPreviewDTO;
 import org.xhy.application.rag.dto.RagVersionFileDTO;
 import org.xhy.application.rag.dto.RagVersionDocumentDTO;
-import org.xhy.domain.rag.repository.DocumentUnitRepository;
-import org.xhy.domain.rag.repository.FileDetailRepository;
 import org.xhy.domain.rag.repository.RagVersionDocumentRepository;
 import org.xhy.domain.rag.repository.RagVersionFileRepository;
 import org.xhy.domain.rag.repository.RagVersionRepository;
 import org.xhy.domain.rag.service.RagQaDatasetDomainService;
 import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.rag.service.UserModelConfigResolver;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /** RAG版本领域服务
@@ -42,20 +41,20 @@ public class RagVersionDomainService {
     private final RagVersionFileRepository ragVersionFileRepository;
     private final RagVersionDocumentRepository ragVersionDocumentRepository;
     private final RagQaDatasetDomainService ragQaDatasetDomainService;
-    private final FileDetailRepository fileDetailRepository;
-    private final DocumentUnitRepository documentUnitRepository;
+    private final RagChunkStoreDomainService ragChunkStoreDomainService;
+    private final UserModelConfigResolver userModelConfigResolver;
 
     public RagVersionDomainService(RagVersionRepository ragVersionRepository,
             RagVersionFileRepository ragVersionFileRepository,
             RagVersionDocumentRepository ragVersionDocumentRepository,
-            RagQaDatasetDomainService ragQaDatasetDomainService, FileDetailRepository fileDetailRepository,
-            DocumentUnitRepository documentUnitRepository) {
+            RagQaDatasetDomainService ragQaDatasetDomainService,
+            RagChunkStoreDomainService ragChunkStoreDomainService, UserModelConfigResolver userModelConfigResolver) {
         this.ragVersionRepository = ragVersionRepository;
         this.ragVersionFileRepository = ragVersionFileRepository;
         this.ragVersionDocumentRepository = ragVersionDocumentRepository;
         this.ragQaDatasetDomainService = ragQaDatasetDomainService;
-        this.fileDetailRepository = fileDetailRepository;
-        this.documentUnitRepository = documentUnitRepository;
+        this.ragChunkStoreDomainService = ragChunkStoreDomainService;
+        this.userModelConfigResolver = userModelConfigResolver;
     }
 
     /** 创建RAG版本快照
@@ -86,7 +85,7 @@ public class RagVersionDomainService {
         ragVersionRepository.insert(ragVersion);
 
         // 复制文件和文档数据
-        copyFilesAndDocuments(ragId, ragVersion.getId());
+        copyFilesAndDocuments(ragId, ragVersion.getId(), userId);
 
         // 更新统计信息
         updateVersionStatistics(ragVersion.getId());
@@ -94,56 +93,27 @@ public class RagVersionDomainService {
         return ragVersion;
     }
 
-    /** 复制文件和文档数据到版本快照
+    /** 复制文件数据到版本快照并引用文档所在的分块集合
+     *
+     * 文件快照一条语句整体复制；文档不再复制，版本文件按内容引用分块集合，内容未变的文件复用已有集合。
+     * 数据集向量由创建者的嵌入模型生成，分块向量按该模型标识固化
      * 
      * @param ragId 原始RAG数据集ID
-     * @param ragVersionId RAG版本ID */
-    private void copyFilesAndDocuments(String ragId, String ragVersionId) {
-        // 获取原始文件列表
-        LambdaQueryWrapper<FileDetailEntity> fileWrapper = Wrappers.<FileDetailEntity>lambdaQuery()
-                .eq(FileDetailEntity::getDataSetId, ragId);
-        List<FileDetailEntity> originalFiles = fileDetailRepository.selectList(fileWrapper);
-
-        for (FileDetailEntity originalFile : originalFiles) {
-            // 创建文件快照
-            RagVersionFileEntity versionFile = new RagVersionFileEntity();
-            versionFile.setRagVersionId(ragVersionId);
-            versionFile.setOriginalFileId(originalFile.getId());
-            versionFile.setFileName(originalFile.getOriginalFilename());
-            versionFile.setFileSize(originalFile.getSize());
-            versionFile.setFilePageSize(originalFile.getFilePageSize());
-            versionFile.setFileType(originalFile.getExt());
-            versionFile.setFilePath(originalFile.getPath());
-            versionFile.setProcessStatus(originalFile.getIsInitialize());
-            versionFile.setEmbeddingStatus(originalFile.getIsEmbedding());
-            ragVersionFileRepository.insert(versionFile);
-
-            // 复制文档单元
-            copyDocumentUnits(originalFile.getId(), ragVersionId, versionFile.getId());
+     * @param ragVersionId RAG版本ID
+     * @param userId 数据集创建者ID */
+    private void copyFilesAndDocuments(String ragId, String ragVersionId, String userId) {
+        int fileCount = ragVersionFileRepository.insertFromDataset(ragVersionId, ragId);
+        if (fileCount == 0) {
+            return;
         }
-    }
 
-    /** 复制文档单元到版本快照
-     * 
-     * @param originalFileId 原始文件ID
-     * @param ragVersionId RAG版本ID
-     * @param ragVersionFileId RAG版本文件ID */
-    private void copyDocumentUnits(String originalFileId, String ragVersionId, String ragVersionFileId) {
-        LambdaQueryWrapper<DocumentUnitEntity> docWrapper = Wrappers.<DocumentUnitEntity>lambdaQuery()
-                .eq(DocumentUnitEntity::getFileId, originalFileId).orderByAsc(DocumentUnitEntity::getPage)
-                .orderByAsc(DocumentUnitEntity::getCreatedAt);
-        List<DocumentUnitEntity> documents = documentUnitRepository.selectList(docWrapper);
-
-        for (DocumentUnitEntity doc : documents) {
-            RagVersionDocumentEntity versionDoc = new RagVersionDocumentEntity();
-            versionDoc.setRagVersionId(ragVersionId);
-            versionDoc.setRagVersionFileId(ragVersionFileId);
-            versionDoc.setOriginalDocumentId(doc.getId());
-            versionDoc.setContent(doc.getContent());
-            versionDoc.setPage(doc.getPage());
-            // vectorId 将在向量复制时设置
-            ragVersionDocumentRepository.insert(versionDoc);
+        String embeddingModel = null;
+        try {
+            embeddingModel = userModelConfigResolver.getUserEmbeddingModelConfig(userId).getModelEndpoint();
+        } catch (BusinessException e) {
+            // 创建者未配置嵌入模型时数据集也没有向量，版本只按关键词检索
         }
+        ragChunkStoreDomainService.snapshotVersion(ragVersionId, embeddingModel);
     }
 
     /** 更新版本统计信息
@@ -159,9 +129,7 @@ public class RagVersionDomainService {
         long totalSize = files.stream().mapToLong(RagVersionFileEntity::getFileSize).sum();
 
         // 统计文档数量
-        LambdaQueryWrapper<RagVersionDocumentEntity> docWrapper = Wrappers.<RagVersionDocumentEntity>lambdaQuery()
-                .eq(RagVersionDocumentEntity::getRagVersionId, ragVersionId);
-        long documentCount = ragVersionDocumentRepository.selectCount(docWrapper);
+        long documentCount = ragChunkStoreDomainService.countVersionDocuments(ragVersionId);
 
         // 更新版本记录
         RagVersionEntity update = new RagVersionEntity();
@@ -463,18 +431,17 @@ public class RagVersionDomainService {
         }).collect(Collectors.toList());
         preview.setFiles(fileDTOs);
 
-        // 获取所有文档内容（用于审核）
-        LambdaQueryWrapper<RagVersionDocumentEntity> docWrapper = Wrappers.<RagVersionDocumentEntity>lambdaQuery()
-                .eq(RagVersionDocumentEntity::getRagVersionId, versionId).orderByAsc(RagVersionDocumentEntity::getPage)
-                .orderByAsc(RagVersionDocumentEntity::getCreatedAt);
-        List<RagVersionDocumentEntity> allDocs = ragVersionDocumentRepository.selectList(docWrapper);
+        // 获取所有文档内容（用于审核），文档由版本文件引用的分块集合组成
+        List<RagVersionDocumentEntity> allDocs = ragVersionDocumentRepository.selectVersionDocuments(versionId);
+        Map<String, RagVersionFileEntity> fileMap = files.stream()
+                .collect(Collectors.toMap(RagVersionFileEntity::getId, Function.identity()));
 
         List<RagVersionDocumentDTO> docDTOs = allDocs.stream().map(doc -> {
             RagVersionDocumentDTO dto = new RagVersionDocumentDTO();
             BeanUtils.copyProperties(doc, dto);
 
             // 获取文件名
-            RagVersionFileEntity file = ragVersionFileRepository.selectById(doc.getRagVersionFileId());
+            RagVersionFileEntity file = fileMap.get(doc.getRagVersionFileId());
             if (file != null) {
                 dto.setFileName(file.getFileName());
             }
@@ -513,12 +480,15 @@ public class RagVersionDomainService {
             throw new BusinessException("无权限删除该RAG版本");
         }
 
+        // 释放分块集合引用，需在删除版本文件之前
+        ragChunkStoreDomainService.releaseVersion(versionId);
+
         // 删除版本文件关联
         LambdaQueryWrapper<RagVersionFileEntity> fileWrapper = Wrappers.<RagVersionFileEntity>lambdaQuery()
                 .eq(RagVersionFileEntity::getRagVersionId, versionId);
         ragVersionFileRepository.delete(fileWrapper);
 
-        // 删除版本文档关联
+        // 删除历史遗留的版本文档关联
         LambdaQueryWrapper<RagVersionDocumentEntity> docWrapper = Wrappers.<RagVersionDocumentEntity>lambdaQuery()
                 .eq(RagVersionDocumentEntity::getRagVersionId, versionId);
         ragVersionDocumentRepository.delete(docWrapper);
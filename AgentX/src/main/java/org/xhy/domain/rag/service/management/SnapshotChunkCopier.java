@@ -0,0 +1,107 @@
+package org.xhy.domain.rag.service.management;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhy.domain.rag.model.SnapshotCopyChunk;
+import org.xhy.domain.rag.model.SnapshotSourceCount;
+
+/** 快照文档分块复制器
+ *
+ * 文档快照由数据库内的INSERT ... SELECT整块复制，不经过应用内存。源文件按文档数装箱，每组文档数不超过块大小，
+ * 一组只需一条语句；超过块大小的大文件单独成组，按文档ID游标逐块复制。每块结束后按百分比输出进度 */
+class SnapshotChunkCopier {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotChunkCopier.class);
+
+    /** 进度日志的间隔（百分比） */
+    private static final int PROGRESS_STEP_PERCENT = 10;
+
+    /** 复制一块文档的语句 */
+    @FunctionalInterface
+    interface ChunkStatement {
+
+        /** 复制若干源文件下ID大于游标的至多limit条文档
+         * @param sourceFileIds 源文件ID
+         * @param afterId 游标
+         * @param limit 本块最多复制的文档数
+         * @return 本块最后一条源文档ID和复制数 */
+        SnapshotCopyChunk copy(List<String> sourceFileIds, String afterId, int limit);
+    }
+
+    private final String target;
+
+    private final int batchSize;
+
+    /** @param target 复制目标，用于日志
+     * @param batchSize 每条语句最多复制的文档数 */
+    SnapshotChunkCopier(String target, int batchSize) {
+        this.target = target;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /** 复制所有源文件下的文档
+     * @param sources 各源文件的文档数
+     * @param statement 复制一块文档的语句
+     * @return 实际复制的文档数 */
+    long copy(List<SnapshotSourceCount> sources, ChunkStatement statement) {
+        long total = sources.stream().mapToLong(source -> source.getDocumentCount()).sum();
+        if (total == 0) {
+            return 0;
+        }
+        logger.info("开始复制{}，共 {} 个文件 {} 个文档，每块 {} 个", target, sources.size(), total, batchSize);
+
+        long copied = 0;
+        int reportedPercent = 0;
+        for (List<String> group : pack(sources)) {
+            String afterId = "";
+            SnapshotCopyChunk chunk;
+            do {
+                chunk = statement.copy(group, afterId, batchSize);
+                int count = chunk.getCopiedCount() != null ? chunk.getCopiedCount() : 0;
+                copied += count;
+                afterId = chunk.getLastSourceId();
+
+                int percent = (int) (copied * 100 / total);
+                if (percent >= reportedPercent + PROGRESS_STEP_PERCENT || copied >= total) {
+                    reportedPercent = percent - percent % PROGRESS_STEP_PERCENT;
+                    logger.info("{}复制进度 {}/{} ({}%)", target, copied, total, percent);
+                }
+                if (count < batchSize) {
+                    break;
+                }
+            } while (afterId != null);
+        }
+
+        if (copied != total) {
+            logger.warn("{}复制数 {} 与复制前统计的 {} 不一致，复制期间源数据可能有变更", target, copied, total);
+        }
+        return copied;
+    }
+
+    /** 按文档数把源文件装箱，每组不超过块大小，大文件单独成组 */
+    List<List<String>> pack(List<SnapshotSourceCount> sources) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        long currentCount = 0;
+        for (SnapshotSourceCount source : sources) {
+            int count = source.getDocumentCount() != null ? source.getDocumentCount() : 0;
+            if (count == 0) {
+                continue;
+            }
+            if (!current.isEmpty() && currentCount + count > batchSize) {
+                groups.add(current);
+                current = new ArrayList<>();
+                currentCount = 0;
+            }
+            current.add(source.getSourceFileId());
+            currentCount += count;
+        }
+        if (!current.isEmpty()) {
+            groups.add(current);
+        }
+        return groups;
+    }
+}
@@ -5,23 +5,14 @@ import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
-import org.xhy.domain.rag.model.RagVersionDocumentEntity;
-import org.xhy.domain.rag.model.RagVersionFileEntity;
 import org.xhy.domain.rag.model.UserRagDocumentEntity;
 import org.xhy.domain.rag.model.UserRagFileEntity;
-import org.xhy.domain.rag.repository.RagVersionDocumentRepository;
-import org.xhy.domain.rag.repository.RagVersionFileRepository;
 import org.xhy.domain.rag.repository.UserRagDocumentRepository;
 import org.xhy.domain.rag.repository.UserRagFileRepository;
 import org.xhy.infrastructure.exception.BusinessException;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-/** 用户RAG快照服务 - 负责SNAPSHOT类型RAG的数据复制和管理
+/** 用户RAG快照服务 - 负责SNAPSHOT类型RAG的数据复制和管理 用户快照只复制文件行，文档通过版本文件的分块集合引用共享
  * @author xhy
  * @date 2025-07-22 <br/>
  */
@@ -32,16 +23,14 @@ public class UserRagSnapshotDomainService {
 
     private final UserRagFileRepository userRagFileRepository;
     private final UserRagDocumentRepository userRagDocumentRepository;
-    private final RagVersionFileRepository ragVersionFileRepository;
-    private final RagVersionDocumentRepository ragVersionDocumentRepository;
+    private final RagChunkStoreDomainService ragChunkStoreDomainService;
 
     public UserRagSnapshotDomainService(UserRagFileRepository userRagFileRepository,
-            UserRagDocumentRepository userRagDocumentRepository, RagVersionFileRepository ragVersionFileRepository,
-            RagVersionDocumentRepository ragVersionDocumentRepository) {
+            UserRagDocumentRepository userRagDocumentRepository,
+            RagChunkStoreDomainService ragChunkStoreDomainService) {
         this.userRagFileRepository = userRagFileRepository;
         this.userRagDocumentRepository = userRagDocumentRepository;
-        this.ragVersionFileRepository = ragVersionFileRepository;
-        this.ragVersionDocumentRepository = ragVersionDocumentRepository;
+        this.ragChunkStoreDomainService = ragChunkStoreDomainService;
     }
 
     /** 为用户安装创建完整快照
@@ -52,12 +41,9 @@ public class UserRagSnapshotDomainService {
         logger.info("开始为用户RAG [{}] 创建版本 [{}] 的完整快照", userRagId, ragVersionId);
 
         try {
-            // 复制文件快照
+            // 复制文件快照，文档随文件的分块集合引用共享
             copyVersionFilesToUser(userRagId, ragVersionId);
 
-            // 复制文档快照
-            copyVersionDocumentsToUser(userRagId, ragVersionId);
-
             logger.info("用户RAG [{}] 快照创建完成", userRagId);
         } catch (Exception e) {
             logger.error("用户RAG [{}] 快照创建失败", userRagId, e);
@@ -67,63 +53,19 @@ public class UserRagSnapshotDomainService {
         }
     }
 
-    /** 复制版本文件快照到用户快照
+    /** 复制版本文件快照到用户快照 一条语句整体复制，每个用户文件分配新ID，并登记对分块集合的引用
      * 
      * @param userRagId 用户RAG安装记录ID
      * @param ragVersionId RAG版本ID */
     public void copyVersionFilesToUser(String userRagId, String ragVersionId) {
-        // 查询版本文件快照
-        LambdaQueryWrapper<RagVersionFileEntity> wrapper = Wrappers.<RagVersionFileEntity>lambdaQuery()
-                .eq(RagVersionFileEntity::getRagVersionId, ragVersionId)
-                .orderByDesc(RagVersionFileEntity::getCreatedAt);
-
-        List<RagVersionFileEntity> versionFiles = ragVersionFileRepository.selectList(wrapper);
-
-        if (versionFiles.isEmpty()) {
+        int fileCount = userRagFileRepository.insertFromVersion(userRagId, ragVersionId);
+        if (fileCount == 0) {
             logger.warn("版本 [{}] 没有找到文件快照", ragVersionId);
             return;
         }
+        ragChunkStoreDomainService.retainUserRag(userRagId);
 
-        logger.info("开始复制 {} 个文件快照到用户RAG [{}]", versionFiles.size(), userRagId);
-
-        // 转换并保存为用户文件快照
-        for (RagVersionFileEntity versionFile : versionFiles) {
-            UserRagFileEntity userFile = convertToUserRagFile(versionFile, userRagId);
-            userRagFileRepository.insert(userFile);
-        }
-
-        logger.info("文件快照复制完成，共复制 {} 个文件", versionFiles.size());
-    }
-
-    /** 复制版本文档快照到用户快照
-     * 
-     * @param userRagId 用户RAG安装记录ID
-     * @param ragVersionId RAG版本ID */
-    public void copyVersionDocumentsToUser(String userRagId, String ragVersionId) {
-        // 查询版本文档快照
-        LambdaQueryWrapper<RagVersionDocumentEntity> wrapper = Wrappers.<RagVersionDocumentEntity>lambdaQuery()
-                .eq(RagVersionDocumentEntity::getRagVersionId, ragVersionId)
-                .orderByDesc(RagVersionDocumentEntity::getCreatedAt);
-
-        List<RagVersionDocumentEntity> versionDocuments = ragVersionDocumentRepository.selectList(wrapper);
-
-        if (versionDocuments.isEmpty()) {
-            logger.warn("版本 [{}] 没有找到文档快照", ragVersionId);
-            return;
-        }
-
-        logger.info("开始复制 {} 个文档快照到用户RAG [{}]", versionDocuments.size(), userRagId);
-
-        // 建立文件ID映射关系：版本文件ID -> 用户文件ID
-        Map<String, String> fileIdMapping = buildFileIdMapping(userRagId, ragVersionId);
-
-        // 转换并保存为用户文档快照
-        for (RagVersionDocumentEntity versionDoc : versionDocuments) {
-            UserRagDocumentEntity userDoc = convertToUserRagDocument(versionDoc, userRagId, fileIdMapping);
-            userRagDocumentRepository.insert(userDoc);
-        }
-
-        logger.info("文档快照复制完成，共复制 {} 个文档", versionDocuments.size());
+        logger.info("文件快照复制完成，共复制 {} 个文件到用户RAG [{}]", fileCount, userRagId);
     }
 
     /** 删除用户RAG的所有快照数据
@@ -132,7 +74,10 @@ public class UserRagSnapshotDomainService {
     public void deleteUserSnapshot(String userRagId) {
         logger.info("开始删除用户RAG [{}] 的所有快照数据", userRagId);
 
-        // 删除文档快照
+        // 释放分块集合引用，需在删除文件快照之前
+        ragChunkStoreDomainService.releaseUserRag(userRagId);
+
+        // 删除历史遗留的文档快照
         LambdaUpdateWrapper<UserRagDocumentEntity> docDeleteWrapper = Wrappers.<UserRagDocumentEntity>lambdaUpdate()
                 .eq(UserRagDocumentEntity::getUserRagId, userRagId);
         userRagDocumentRepository.delete(docDeleteWrapper);
@@ -160,9 +105,7 @@ public class UserRagSnapshotDomainService {
      * @param userRagId 用户RAG安装记录ID
      * @return 文档数量 */
     public Integer getUserRagDocumentCount(String userRagId) {
-        LambdaQueryWrapper<UserRagDocumentEntity> wrapper = Wrappers.<UserRagDocumentEntity>lambdaQuery()
-                .eq(UserRagDocumentEntity::getUserRagId, userRagId);
-        return Math.toIntExact(userRagDocumentRepository.selectCount(wrapper));
+        return Math.toIntExact(ragChunkStoreDomainService.countUserRagDocuments(userRagId));
     }
 
     // ========== 私有辅助方法 ==========
@@ -175,66 +118,4 @@ public class UserRagSnapshotDomainService {
             logger.error("回滚用户RAG [{}] 快照数据失败", userRagId, e);
         }
     }
-
-    /** 转换版本文件为用户文件 */
-    private UserRagFileEntity convertToUserRagFile(RagVersionFileEntity versionFile, String userRagId) {
-        UserRagFileEntity userFile = new UserRagFileEntity();
-        BeanUtils.copyProperties(versionFile, userFile);
-        userFile.setUserRagId(userRagId);
-        return userFile;
-    }
-
-    /** 转换版本文档为用户文档 */
-    private UserRagDocumentEntity convertToUserRagDocument(RagVersionDocumentEntity versionDoc, String userRagId,
-            Map<String, String> fileIdMapping) {
-        UserRagDocumentEntity userDoc = new UserRagDocumentEntity();
-        userDoc.setUserRagId(userRagId);
-
-        // 根据映射关系设置用户文件ID
-        String userRagFileId = fileIdMapping.get(versionDoc.getRagVersionFileId());
-        if (userRagFileId == null) {
-            logger.warn("未找到版本文件 [{}] 对应的用户文件ID", versionDoc.getRagVersionFileId());
-        }
-        userDoc.setUserRagFileId(userRagFileId);
-
-        userDoc.setOriginalDocumentId(versionDoc.getOriginalDocumentId());
-        userDoc.setContent(versionDoc.getContent());
-        userDoc.setPage(versionDoc.getPage());
-        userDoc.setVectorId(versionDoc.getVectorId());
-
-        return userDoc;
-    }
-
-    /** 建立文件ID映射关系：版本文件ID -> 用户文件ID */
-    private Map<String, String> buildFileIdMapping(String userRagId, String ragVersionId) {
-        // 获取版本文件列表
-        LambdaQueryWrapper<RagVersionFileEntity> versionWrapper = Wrappers.<RagVersionFileEntity>lambdaQuery()
-                .eq(RagVersionFileEntity::getRagVersionId, ragVersionId)
-                .orderByDesc(RagVersionFileEntity::getCreatedAt);
-        List<RagVersionFileEntity> versionFiles = ragVersionFileRepository.selectList(versionWrapper);
-
-        // 获取对应的用户文件列表
-        LambdaQueryWrapper<UserRagFileEntity> userWrapper = Wrappers.<UserRagFileEntity>lambdaQuery()
-                .eq(UserRagFileEntity::getUserRagId, userRagId).orderByDesc(UserRagFileEntity::getCreatedAt);
-        List<UserRagFileEntity> userFiles = userRagFileRepository.selectList(userWrapper);
-
-        // 建立映射关系（基于originalFileId）
-        Map<String, String> fileIdMapping = new HashMap<>();
-        Map<String, String> originalToUserMap = new HashMap<>();
-
-        // 先建立原始文件ID到用户文件ID的映射
-        for (UserRagFileEntity userFile : userFiles) {
-            originalToUserMap.put(userFile.getOriginalFileId(), userFile.getId());
-        }
-
-        // 再建立版本文件ID到用户文件ID的映射
-        for (RagVersionFileEntity versionFile : versionFiles) {
-            String userFileId = originalToUserMap.get(versionFile.getOriginalFileId());
-            if (userFileId != null) {
-                fileIdMapping.put(versionFile.getId(), userFileId);
-            }
-        }
-
-        return fileIdMapping;
-    }
 }
\ No newline at end of file
@@ -5,7 +5,9 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xhy.domain.rag.message.RagDocMessage;
+import org.xhy.domain.rag.model.ExtractedPages;
 import org.xhy.domain.rag.strategy.DocumentProcessingStrategy;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
 
 public abstract class AbstractDocumentProcessingStrategy implements DocumentProcessingStrategy {
 
@@ -17,42 +19,63 @@ public abstract class AbstractDocumentProcessingStrategy implements DocumentProc
     @Override
     public void handle(RagDocMessage ragDocMessage, String strategy) throws Exception {
 
-        final byte[] fileData = getFileData(ragDocMessage, strategy);
-        pushPageSize(fileData, ragDocMessage);
-        if (fileData == null) {
-            LOG.error("文件数据为空");
-            return;
-        }
+        // 文件下载到临时文件后流式解析，处理结束时删除临时文件
+        try (SpooledDocument fileData = getFileData(ragDocMessage, strategy)) {
+            if (fileData == null || fileData.isEmpty()) {
+                LOG.error("文件数据为空");
+                return;
+            }
+            pushPageSize(fileData, ragDocMessage);
 
-        Integer pageSize = ragDocMessage.getPageSize();
-        if (pageSize == null) {
-            LOG.warn("页面大小为空，使用默认值1用于txt/word文件");
-            pageSize = 1;
+            Integer pageSize = ragDocMessage.getPageSize();
+            if (pageSize == null) {
+                LOG.warn("页面大小为空，使用默认值1用于txt/word文件");
+                pageSize = 1;
+            }
+            insertPages(fileData, pageSize, ragDocMessage);
         }
-        final Map<Integer, String> data = processFile(fileData, pageSize, ragDocMessage);
-
-        LOG.info("成功从当前文件获取 {} 页数据", data.size());
-
-        insertData(ragDocMessage, data);
 
     };
 
     /** 获取文件页数 */
-    abstract public void pushPageSize(byte[] bytes, RagDocMessage ragDocSyncOcrMessage);
+    abstract public void pushPageSize(SpooledDocument file, RagDocMessage ragDocSyncOcrMessage);
 
     /** 获取文件
      * @param ragDocSyncOcrMessage 消息数据
-     * @param strategy 当前策略 */
-    abstract public byte[] getFileData(RagDocMessage ragDocSyncOcrMessage, String strategy);
+     * @param strategy 当前策略
+     * @return 落盘的文件，文件不存在时返回null */
+    abstract public SpooledDocument getFileData(RagDocMessage ragDocSyncOcrMessage, String strategy);
 
     /** ocr数据 */
-    abstract public Map<Integer, String> processFile(byte[] fileBytes, int totalPages);
+    abstract public Map<Integer, String> processFile(SpooledDocument file, int totalPages);
 
     /** ocr数据 (带消息参数，子类可选择性重写此方法) */
-    public Map<Integer, String> processFile(byte[] fileBytes, int totalPages, RagDocMessage ragDocSyncOcrMessage) {
-        return processFile(fileBytes, totalPages);
+    public Map<Integer, String> processFile(SpooledDocument file, int totalPages, RagDocMessage ragDocSyncOcrMessage) {
+        return processFile(file, totalPages);
     }
 
     /** 保存数据 */
     abstract public void insertData(RagDocMessage ragDocSyncOcrMessage, Map<Integer, String> ocrData) throws Exception;
+
+    /** 提取并保存文件内容，默认整体提取后一次保存；可按段落流式提取的子类重写为分批保存
+     * @param file 落盘的文件
+     * @param totalPages 总页数
+     * @param ragDocMessage 消息数据 */
+    protected void insertPages(SpooledDocument file, int totalPages, RagDocMessage ragDocMessage) throws Exception {
+        final ExtractedPages pages = extractPages(file, totalPages, ragDocMessage);
+
+        LOG.info("成功从当前文件获取 {} 页数据", pages.getTexts().size());
+
+        insertData(ragDocMessage, pages);
+    }
+
+    /** 按页提取文件内容，默认只有文本；需要随页面保存源指纹的子类重写此方法，结果沿调用链传给insertData */
+    protected ExtractedPages extractPages(SpooledDocument file, int totalPages, RagDocMessage ragDocSyncOcrMessage) {
+        return new ExtractedPages(processFile(file, totalPages, ragDocSyncOcrMessage), Map.of());
+    }
+
+    /** 保存按页提取的结果，默认只保存文本 */
+    protected void insertData(RagDocMessage ragDocSyncOcrMessage, ExtractedPages pages) throws Exception {
+        insertData(ragDocSyncOcrMessage, pages.getTexts());
+    }
 }
@@ -0,0 +1,168 @@
+package org.xhy.domain.rag.strategy.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhy.domain.rag.message.RagDocMessage;
+import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.DocumentUnitFingerprints;
+import org.xhy.domain.rag.model.DocumentUnitSyncPlan;
+import org.xhy.domain.rag.model.DocumentUnitSyncResult;
+import org.xhy.domain.rag.service.DocumentUnitDomainService;
+import org.xhy.infrastructure.rag.config.RagDocumentUnitProperties;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
+
+/** 按段落切分的文档处理策略基类 段落在全文中的序号即页码；段落按批流式提取并增量落库，内存中只保留当前一批段落 */
+public abstract class AbstractSegmentDocumentProcessingStrategy extends AbstractDocumentProcessingStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractSegmentDocumentProcessingStrategy.class);
+
+    protected final DocumentUnitDomainService documentUnitDomainService;
+
+    private final RagDocumentUnitProperties documentUnitProperties;
+
+    protected AbstractSegmentDocumentProcessingStrategy(DocumentUnitDomainService documentUnitDomainService,
+            RagDocumentUnitProperties documentUnitProperties) {
+        this.documentUnitDomainService = documentUnitDomainService;
+        this.documentUnitProperties = documentUnitProperties;
+    }
+
+    /** 流式切分全文段落，按出现顺序回调
+     * @param file 落盘的文件
+     * @param consumer 段落回调 */
+    protected abstract void forEachSegment(SpooledDocument file, Consumer<String> consumer) throws IOException;
+
+    /** 按批流式提取段落
+     *
+     * @param file 落盘的文件
+     * @param batchSize 每批最多的段落数
+     * @param batchConsumer 批次回调，键为段落在全文中的序号
+     * @return 段落总数 */
+    public int processFile(SpooledDocument file, int batchSize, Consumer<Map<Integer, String>> batchConsumer)
+            throws IOException {
+        SegmentBatcher batcher = new SegmentBatcher(batchSize, batchConsumer);
+        forEachSegment(file, batcher);
+        return batcher.flush();
+    }
+
+    /** 一次性提取全部段落，入库走分批流式提取，不经过此方法
+     *
+     * @param file 落盘的文件
+     * @param totalPages 总页数
+     * @return 段落序号到内容的映射 */
+    @Override
+    public Map<Integer, String> processFile(SpooledDocument file, int totalPages) {
+        Map<Integer, String> segments = new HashMap<>();
+        try {
+            processFile(file, Integer.MAX_VALUE, segments::putAll);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return segments;
+    }
+
+    /** 分批提取并保存段落 第一遍只统计内容指纹以确定按内容沿用的原有单元，第二遍每凑满一批即与上一轮结果比对后落库
+     *
+     * @param file 落盘的文件
+     * @param totalPages 总页数
+     * @param ragDocMessage 消息数据 */
+    @Override
+    protected void insertPages(SpooledDocument file, int totalPages, RagDocMessage ragDocMessage) throws Exception {
+        log.info("当前类型为非PDF文件，直接提取文本 ——————> 不包含页码，页码概念为索引");
+        int batchSize = documentUnitProperties.effectiveWriteBatchSize();
+
+        DocumentUnitFingerprints fingerprints = new DocumentUnitFingerprints();
+        processFile(file, batchSize, batch -> batch
+                .forEach((index, text) -> fingerprints.add(index, DocumentUnitDomainService.fingerprint(text))));
+
+        DocumentUnitSyncPlan plan = documentUnitDomainService.planFileSync(ragDocMessage.getFileId(), fingerprints);
+        int segmentCount = processFile(file, batchSize, batch -> insertData(plan, batch));
+        DocumentUnitSyncResult syncResult = documentUnitDomainService.finishFileSync(plan);
+
+        log.info("文档内容分批保存完成，共{}个段落，待向量化{}段", segmentCount, syncResult.getPendingCount());
+    }
+
+    /** 保存一批段落
+     *
+     * @param plan 分批同步状态
+     * @param batch 段落序号到内容的映射 */
+    private void insertData(DocumentUnitSyncPlan plan, Map<Integer, String> batch) {
+        documentUnitDomainService.syncFileUnitBatch(plan, toUnits(plan.getFileId(), batch));
+    }
+
+    /** 一次性保存全部段落
+     *
+     * @param ragDocSyncOcrMessage 消息数据
+     * @param ocrData 段落序号到内容的映射 */
+    @Override
+    public void insertData(RagDocMessage ragDocSyncOcrMessage, Map<Integer, String> ocrData) throws Exception {
+        DocumentUnitSyncResult syncResult = documentUnitDomainService
+                .syncFileUnits(ragDocSyncOcrMessage.getFileId(), toUnits(ragDocSyncOcrMessage.getFileId(), ocrData));
+
+        log.info("文档内容保存完成，待向量化{}段", syncResult.getPendingUnits().size());
+    }
+
+    /** 段落攒批回调 凑满一批即交出，当前批次之外不保留段落 */
+    private static class SegmentBatcher implements Consumer<String> {
+
+        private final int batchSize;
+
+        private final Consumer<Map<Integer, String>> batchConsumer;
+
+        private Map<Integer, String> batch = new HashMap<>();
+
+        private int index;
+
+        SegmentBatcher(int batchSize, Consumer<Map<Integer, String>> batchConsumer) {
+            this.batchSize = batchSize;
+            this.batchConsumer = batchConsumer;
+        }
+
+        @Override
+        public void accept(String text) {
+            batch.put(index++, text);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        /** 交出未满的最后一批，返回段落总数 */
+        int flush() {
+            if (!batch.isEmpty()) {
+                Map<Integer, String> full = batch;
+                batch = new HashMap<>();
+                batchConsumer.accept(full);
+            }
+            return index;
+        }
+    }
+
+    private static List<DocumentUnitEntity> toUnits(String fileId, Map<Integer, String> segments) {
+        List<DocumentUnitEntity> units = new ArrayList<>(segments.size());
+        segments.keySet().stream().sorted().forEach(index -> {
+            String content = segments.get(index);
+
+            DocumentUnitEntity documentUnitEntity = new DocumentUnitEntity();
+            documentUnitEntity.setContent(content);
+            documentUnitEntity.setPage(index);
+            documentUnitEntity.setFileId(fileId);
+            documentUnitEntity.setIsVector(false);
+            documentUnitEntity.setIsOcr(true);
+
+            if (content == null) {
+                documentUnitEntity.setIsOcr(false);
+                log.warn("第{}页为空", index + 1);
+            }
+
+            units.add(documentUnitEntity);
+        });
+        return units;
+    }
+}
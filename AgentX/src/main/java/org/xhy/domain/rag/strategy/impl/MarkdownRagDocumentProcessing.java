@@ -2,17 +2,19 @@ package org.xhy.domain.rag.strategy.impl;
 
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
-import org.dromara.x.file.storage.core.FileStorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.message.RagDocMessage;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.DocumentUnitSyncResult;
 import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.model.ProcessedSegment;
-import org.xhy.domain.rag.repository.DocumentUnitRepository;
 import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.domain.rag.service.DocumentUnitDomainService;
 import org.xhy.domain.rag.strategy.context.ProcessingContext;
+import org.xhy.infrastructure.rag.file.DocumentSpooler;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
 import org.xhy.infrastructure.rag.processor.StructuralMarkdownProcessor;
 import org.xhy.infrastructure.rag.processor.DocumentVectorizationOrchestrator;
 import org.xhy.infrastructure.rag.service.UserModelConfigResolver;
@@ -30,43 +32,39 @@ public class MarkdownRagDocumentProcessing extends AbstractDocumentProcessingStr
 
     private final StructuralMarkdownProcessor structuralMarkdownProcessor;
     private final DocumentVectorizationOrchestrator vectorSegmentProcessor;
-    private final DocumentUnitRepository documentUnitRepository;
+    private final DocumentUnitDomainService documentUnitDomainService;
     private final FileDetailRepository fileDetailRepository;
-    private final FileStorageService fileStorageService;
+    private final DocumentSpooler documentSpooler;
     private final UserModelConfigResolver userModelConfigResolver;
 
-    // 用于存储当前处理的文件ID
-    private String currentProcessingFileId;
 
     public MarkdownRagDocumentProcessing(StructuralMarkdownProcessor structuralMarkdownProcessor,
-            DocumentVectorizationOrchestrator vectorSegmentProcessor, DocumentUnitRepository documentUnitRepository,
-            FileDetailRepository fileDetailRepository, FileStorageService fileStorageService,
+            DocumentVectorizationOrchestrator vectorSegmentProcessor, DocumentUnitDomainService documentUnitDomainService,
+            FileDetailRepository fileDetailRepository, DocumentSpooler documentSpooler,
             UserModelConfigResolver userModelConfigResolver) {
         this.structuralMarkdownProcessor = structuralMarkdownProcessor;
         this.vectorSegmentProcessor = vectorSegmentProcessor;
-        this.documentUnitRepository = documentUnitRepository;
+        this.documentUnitDomainService = documentUnitDomainService;
         this.fileDetailRepository = fileDetailRepository;
-        this.fileStorageService = fileStorageService;
+        this.documentSpooler = documentSpooler;
         this.userModelConfigResolver = userModelConfigResolver;
     }
 
     @Override
     public void handle(RagDocMessage ragDocMessage, String strategy) throws Exception {
-        // 设置当前处理的文件ID
-        this.currentProcessingFileId = ragDocMessage.getFileId();
-
-        log.info("开始Markdown文档处理 文件: {}", currentProcessingFileId);
+        log.info("开始Markdown文档处理 文件: {}", ragDocMessage.getFileId());
 
         // 调用父类处理逻辑
         super.handle(ragDocMessage, strategy);
 
-        log.info("完成Markdown文档处理 文件: {}", currentProcessingFileId);
+        log.info("完成Markdown文档处理 文件: {}", ragDocMessage.getFileId());
     }
 
     @Override
-    public void pushPageSize(byte[] bytes, RagDocMessage ragDocSyncOcrMessage) {
+    public void pushPageSize(SpooledDocument file, RagDocMessage ragDocSyncOcrMessage) {
         try {
-            String markdown = new String(bytes, StandardCharsets.UTF_8);
+            // Markdown需要整体解析语法树，读入时受单任务内存上限约束
+            String markdown = file.readString(StandardCharsets.UTF_8);
 
             // 构建处理上下文
             ProcessingContext context = ProcessingContext.from(ragDocSyncOcrMessage, userModelConfigResolver);
@@ -80,13 +78,14 @@ public class MarkdownRagDocumentProcessing extends AbstractDocumentProcessingStr
             log.info("Markdown文档已分割为 {} 个原始段落", segmentCount);
 
             // 更新数据库中的总页数
-            if (currentProcessingFileId != null) {
+            final String fileId = ragDocSyncOcrMessage.getFileId();
+            if (fileId != null) {
                 LambdaUpdateWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaUpdate()
-                        .eq(FileDetailEntity::getId, currentProcessingFileId)
+                        .eq(FileDetailEntity::getId, fileId)
                         .set(FileDetailEntity::getFilePageSize, segmentCount);
                 fileDetailRepository.update(wrapper);
 
-                log.info("更新Markdown文件 {} 的总页数: {} 个段落", currentProcessingFileId, segmentCount);
+                log.info("更新Markdown文件 {} 的总页数: {} 个段落", fileId, segmentCount);
             }
 
         } catch (Exception e) {
@@ -96,37 +95,37 @@ public class MarkdownRagDocumentProcessing extends AbstractDocumentProcessingStr
     }
 
     @Override
-    public byte[] getFileData(RagDocMessage ragDocSyncOcrMessage, String strategy) {
+    public SpooledDocument getFileData(RagDocMessage ragDocSyncOcrMessage, String strategy) {
         try {
             // 从数据库中获取文件详情
             FileDetailEntity fileDetailEntity = fileDetailRepository.selectById(ragDocSyncOcrMessage.getFileId());
             if (fileDetailEntity == null) {
                 log.error("文件不存在: {}", ragDocSyncOcrMessage.getFileId());
-                return new byte[0];
+                return null;
             }
 
             // 下载文件内容
             log.info("下载Markdown文档: {}", fileDetailEntity.getFilename());
-            return fileStorageService.download(fileDetailEntity.getUrl()).bytes();
+            return documentSpooler.spool(fileDetailEntity.getUrl(), fileDetailEntity.getExt());
 
         } catch (Exception e) {
             log.error("下载Markdown文件失败: {}", ragDocSyncOcrMessage.getFileId(), e);
-            return new byte[0];
+            return null;
         }
     }
 
     @Override
-    public Map<Integer, String> processFile(byte[] fileBytes, int totalPages) {
+    public Map<Integer, String> processFile(SpooledDocument file, int totalPages) {
         return new HashMap<>(); // 使用带消息参数的重载方法
     }
 
     @Override
-    public Map<Integer, String> processFile(byte[] fileBytes, int totalPages, RagDocMessage ragDocSyncOcrMessage) {
+    public Map<Integer, String> processFile(SpooledDocument file, int totalPages, RagDocMessage ragDocSyncOcrMessage) {
 
         log.info("使用两阶段方法处理Markdown文档");
 
         try {
-            String markdown = new String(fileBytes, StandardCharsets.UTF_8);
+            String markdown = file.readString(StandardCharsets.UTF_8);
 
             // 构建处理上下文
             ProcessingContext context = ProcessingContext.from(ragDocSyncOcrMessage, userModelConfigResolver);
@@ -158,10 +157,13 @@ public class MarkdownRagDocumentProcessing extends AbstractDocumentProcessingStr
         } catch (Exception e) {
             log.error("处理Markdown文档失败", e);
 
-            // 回退方案：将整个文档作为一个页面
-            String fallbackContent = new String(fileBytes, StandardCharsets.UTF_8);
+            // 回退方案：将整个文档作为一个页面，文件超出内存上限时不再读取
             Map<Integer, String> fallbackData = new HashMap<>();
-            fallbackData.put(0, "Markdown文档：" + fallbackContent);
+            try {
+                fallbackData.put(0, "Markdown文档：" + file.readString(StandardCharsets.UTF_8));
+            } catch (Exception readError) {
+                log.error("读取Markdown文件失败: {}", readError.getMessage());
+            }
             return fallbackData;
         }
     }
@@ -173,7 +175,7 @@ public class MarkdownRagDocumentProcessing extends AbstractDocumentProcessingStr
 
         List<DocumentUnitEntity> savedUnits = new ArrayList<>();
 
-        // 遍历每个段落，将纯原文内容保存到数据库
+        // 遍历每个段落，纯原文内容与上一轮结果比对后增量保存到数据库
         for (int pageIndex = 0; pageIndex < ocrData.size(); pageIndex++) {
             String content = ocrData.get(pageIndex);
 
@@ -189,13 +191,14 @@ public class MarkdownRagDocumentProcessing extends AbstractDocumentProcessingStr
                 log.warn("段落 {} 为空", pageIndex + 1);
             }
 
-            // 保存到数据库
-            documentUnitRepository.checkInsert(documentUnitEntity);
             savedUnits.add(documentUnitEntity);
-            log.debug("保存段落 {} 原始内容", pageIndex + 1);
         }
 
-        log.info("阶段1完成: {} 个原始段落已保存到DocumentUnitEntity", savedUnits.size());
+        DocumentUnitSyncResult syncResult = documentUnitDomainService
+                .syncFileUnits(ragDocSyncOcrMessage.getFileId(), savedUnits);
+
+        log.info("阶段1完成: {} 个原始段落已保存到DocumentUnitEntity，{} 个需要重新处理", savedUnits.size(),
+                syncResult.getPendingUnits().size());
 
         // 第二阶段：触发向量处理（翻译 + 二次分割 + 向量化）
         try {
@@ -204,8 +207,8 @@ public class MarkdownRagDocumentProcessing extends AbstractDocumentProcessingStr
             // 构建处理上下文
             ProcessingContext context = ProcessingContext.from(ragDocSyncOcrMessage, userModelConfigResolver);
 
-            // 使用VectorSegmentProcessor处理所有原文段落
-            vectorSegmentProcessor.processDocumentUnits(savedUnits, context);
+            // 只翻译和向量化变化或尚未向量化的原文段落，未变化的段落沿用已有向量
+            vectorSegmentProcessor.processDocumentUnits(syncResult.getPendingUnits(), context);
 
             log.info("阶段2完成: 向量段落处理结束");
 
@@ -1,89 +1,78 @@
 package org.xhy.domain.rag.strategy.impl;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import dev.langchain4j.model.chat.ChatModel;
-import org.dromara.x.file.storage.core.FileStorageService;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.message.RagDocMessage;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.DocumentUnitSyncResult;
+import org.xhy.domain.rag.model.ExtractedPages;
 import org.xhy.domain.rag.model.FileDetailEntity;
-import org.xhy.domain.rag.repository.DocumentUnitRepository;
 import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.domain.rag.service.DocumentUnitDomainService;
 import org.xhy.domain.rag.strategy.context.RAGSystemPrompt;
 import org.xhy.infrastructure.exception.BusinessException;
 import org.xhy.infrastructure.llm.LLMProviderService;
 import org.xhy.infrastructure.llm.config.ProviderConfig;
 import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
-import org.xhy.infrastructure.rag.detector.TikaFileTypeDetector;
-import org.xhy.infrastructure.rag.utils.PdfToBase64Converter;
-
-import cn.hutool.core.codec.Base64;
-import dev.langchain4j.data.message.ImageContent;
-import dev.langchain4j.data.message.TextContent;
-import dev.langchain4j.data.message.UserMessage;
-import dev.langchain4j.model.chat.response.ChatResponse;
-import jakarta.annotation.Resource;
-
-import static org.xhy.domain.rag.strategy.context.RAGSystemPrompt.OCR_PROMPT;
+import org.xhy.infrastructure.rag.file.DocumentSpooler;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
+import org.xhy.infrastructure.rag.ocr.ParallelPdfOcrProcessor;
+import org.xhy.infrastructure.rag.ocr.PdfExtractionResult;
+import org.xhy.infrastructure.utils.JsonUtils;
 
 @Service("pdf")
 public class PDFRagDocDocumentProcessing extends AbstractDocumentProcessingStrategy {
 
     private static final Logger log = LoggerFactory.getLogger(PDFRagDocDocumentProcessing.class);
 
-    private final DocumentUnitRepository documentUnitRepository;
+    private final DocumentUnitDomainService documentUnitDomainService;
 
     private final FileDetailRepository fileDetailRepository;
 
-    @Resource
-    private FileStorageService fileStorageService;
+    private final ParallelPdfOcrProcessor parallelPdfOcrProcessor;
 
-    // 用于存储当前处理的文件ID，以便更新进度
-    private String currentProcessingFileId;
+    private final DocumentSpooler documentSpooler;
 
-    public PDFRagDocDocumentProcessing(DocumentUnitRepository documentUnitRepository,
-            FileDetailRepository fileDetailRepository) {
-        this.documentUnitRepository = documentUnitRepository;
-        this.fileDetailRepository = fileDetailRepository;
-    }
 
-    /** 处理消息，增加进度更新功能
-     * @param ragDocMessage 消息数据
-     * @param strategy 当前策略 */
-    @Override
-    public void handle(RagDocMessage ragDocMessage, String strategy) throws Exception {
-        // 设置当前处理的文件ID，用于进度更新
-        this.currentProcessingFileId = ragDocMessage.getFileId();
-
-        // 调用父类处理逻辑
-        super.handle(ragDocMessage, strategy);
+    public PDFRagDocDocumentProcessing(DocumentUnitDomainService documentUnitDomainService,
+            FileDetailRepository fileDetailRepository, ParallelPdfOcrProcessor parallelPdfOcrProcessor,
+            DocumentSpooler documentSpooler) {
+        this.documentUnitDomainService = documentUnitDomainService;
+        this.fileDetailRepository = fileDetailRepository;
+        this.parallelPdfOcrProcessor = parallelPdfOcrProcessor;
+        this.documentSpooler = documentSpooler;
     }
 
     /** 获取文件页数 */
     @Override
-    public void pushPageSize(byte[] bytes, RagDocMessage ragDocSyncOcrMessage) {
+    public void pushPageSize(SpooledDocument file, RagDocMessage ragDocSyncOcrMessage) {
 
-        try {
-            final int pdfPageCount = PdfToBase64Converter.getPdfPageCount(bytes);
+        try (PDDocument document = file.loadPdf()) {
+            final int pdfPageCount = document.getNumberOfPages();
             ragDocSyncOcrMessage.setPageSize(pdfPageCount);
 
             // 更新数据库中的总页数
-            if (currentProcessingFileId != null) {
+            final String fileId = ragDocSyncOcrMessage.getFileId();
+            if (fileId != null) {
                 LambdaUpdateWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaUpdate()
-                        .eq(FileDetailEntity::getId, currentProcessingFileId)
+                        .eq(FileDetailEntity::getId, fileId)
                         .set(FileDetailEntity::getFilePageSize, pdfPageCount);
                 fileDetailRepository.update(wrapper);
 
-                log.info("更新文件{}的总页数: {}页", currentProcessingFileId, pdfPageCount);
+                log.info("更新文件{}的总页数: {}页", fileId, pdfPageCount);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -96,74 +85,82 @@ public class PDFRagDocDocumentProcessing extends AbstractDocumentProcessingStrat
      * @param ragDocSyncOcrMessage 消息数据
      * @param strategy 当前策略 */
     @Override
-    public byte[] getFileData(RagDocMessage ragDocSyncOcrMessage, String strategy) {
+    public SpooledDocument getFileData(RagDocMessage ragDocSyncOcrMessage, String strategy) {
 
         final FileDetailEntity fileDetailEntity = fileDetailRepository.selectById(ragDocSyncOcrMessage.getFileId());
+        if (fileDetailEntity == null) {
+            log.error("文件不存在: {}", ragDocSyncOcrMessage.getFileId());
+            return null;
+        }
 
-        return fileStorageService.download(fileDetailEntity.getUrl()).bytes();
+        return documentSpooler.spool(fileDetailEntity.getUrl(), fileDetailEntity.getExt());
     }
 
     /** 处理PDF文件 - 按页处理逻辑 */
     @Override
-    public Map<Integer, String> processFile(byte[] fileBytes, int totalPages) {
-        return processFile(fileBytes, totalPages, null);
+    public Map<Integer, String> processFile(SpooledDocument file, int totalPages) {
+        return processFile(file, totalPages, null);
     }
 
     /** 处理PDF文件 - 按页处理逻辑（带消息参数） */
     @Override
-    public Map<Integer, String> processFile(byte[] fileBytes, int totalPages, RagDocMessage ragDocSyncOcrMessage) {
-
-        final HashMap<Integer, String> ocrData = new HashMap<>();
-        for (int pageIndex = 0; pageIndex < totalPages; pageIndex++) {
-            try {
-                // 单独处理每一页以减少内存使用
-                String base64 = PdfToBase64Converter.processPdfPageToBase64(fileBytes, pageIndex, "jpg");
-
-                final UserMessage userMessage = UserMessage.userMessage(
-                        ImageContent.from(base64, TikaFileTypeDetector.detectFileType(Base64.decode(base64))),
-                        TextContent.from(OCR_PROMPT));
-
-                /** 创建OCR处理的模型配置 - 从消息中获取用户配置的OCR模型 */
-                ChatModel ocrModel = createOcrModelFromMessage(ragDocSyncOcrMessage);
-
-                final ChatResponse chat = ocrModel.chat(userMessage);
-
-                ocrData.put(pageIndex, processText(chat.aiMessage().text()));
-
-                // 实时更新处理进度
-                updateProcessProgress(pageIndex + 1, totalPages);
-
-                log.info("处理第{}/{}页，当前内存使用: {} MB", (pageIndex + 1), totalPages,
-                        (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024));
+    public Map<Integer, String> processFile(SpooledDocument file, int totalPages, RagDocMessage ragDocSyncOcrMessage) {
+        return extractPages(file, totalPages, ragDocSyncOcrMessage).getTexts();
+    }
 
-                if ((pageIndex + 1) % 10 == 0) {
-                    System.gc();
-                }
+    /** 按页提取PDF文本，页面指纹随结果一起返回，由insertData写入各页的source_hash */
+    @Override
+    protected ExtractedPages extractPages(SpooledDocument file, int totalPages, RagDocMessage ragDocSyncOcrMessage) {
 
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+        final Map<Integer, String> ocrData = new TreeMap<>();
+        final String fileId = ragDocSyncOcrMessage != null ? ragDocSyncOcrMessage.getFileId() : null;
 
-                log.info("第{}页处理完成", (pageIndex + 1));
-            } catch (Exception e) {
-                log.error("处理PDF第{}页时出错: {}", (pageIndex + 1), e.getMessage());
-                // 继续处理下一页，不中断整个流程
-            }
+        ChatModel ocrModel;
+        try {
+            // 创建OCR处理的模型配置 - 从消息中获取用户配置的OCR模型，所有页面共用同一个模型实例
+            ocrModel = createOcrModelFromMessage(ragDocSyncOcrMessage);
+        } catch (Exception e) {
+            // 文本层照常提取，只跳过需要OCR的页面，这些页面已有的文档单元保持不变
+            log.warn("创建OCR模型失败，文件{}只提取文本层: {}", fileId, e.getMessage());
+            ocrModel = null;
         }
+        final String providerKey = ocrModel != null ? ragDocSyncOcrMessage.getOcrModelConfig().getBaseUrl() : null;
+
+        // 文档只加载一次，页面指纹与上一轮（含同名历史版本）相同的页面沿用上一轮结果，文本层合格的页面直接使用文本层，
+        // 其余页面并行渲染并按服务商并发上限并行OCR，结果按页码重组
+        Map<String, String> previousTexts = documentUnitDomainService.findExtractedContentBySource(fileId);
+        PdfExtractionResult result = parallelPdfOcrProcessor.process(file, totalPages, ocrModel, providerKey,
+                previousTexts::get,
+                completedPages -> updateProcessProgress(fileId, completedPages, totalPages));
+        result.getTexts().forEach((pageIndex, text) -> {
+            if (text != null) {
+                ocrData.put(pageIndex, processText(text));
+            }
+        });
+        updateExtractionStats(fileId, result);
 
-        return ocrData;
+        return new ExtractedPages(ocrData, result.getPageFingerprints());
 
     }
 
-    /** 保存数据
+    /** 保存数据 与上一轮结果比对后增量落库，内容不变的页面沿用已有向量
      *
      * @param ragDocSyncOcrMessage 消息数据
      * @param ocrData ocr数据 */
     @Override
     public void insertData(RagDocMessage ragDocSyncOcrMessage, Map<Integer, String> ocrData) {
+        insertData(ragDocSyncOcrMessage, new ExtractedPages(ocrData, Map.of()));
+    }
+
+    /** 保存数据并写入各页的页面指纹
+     *
+     * @param ragDocSyncOcrMessage 消息数据
+     * @param pages 按页提取结果 */
+    @Override
+    protected void insertData(RagDocMessage ragDocSyncOcrMessage, ExtractedPages pages) {
 
+        Map<Integer, String> ocrData = pages.getTexts();
+        List<DocumentUnitEntity> units = new ArrayList<>(ragDocSyncOcrMessage.getPageSize());
         for (int pageIndex = 0; pageIndex < ragDocSyncOcrMessage.getPageSize(); pageIndex++) {
 
             String content = ocrData.getOrDefault(pageIndex, null);
@@ -175,14 +172,19 @@ public class PDFRagDocDocumentProcessing extends AbstractDocumentProcessingStrat
             documentUnitDO.setFileId(ragDocSyncOcrMessage.getFileId());
             documentUnitDO.setIsVector(false);
             documentUnitDO.setIsOcr(true);
+            documentUnitDO.setSourceHash(pages.getSourceHashes().get(pageIndex));
 
             if (content == null) {
                 documentUnitDO.setIsOcr(false);
             }
 
-            documentUnitRepository.checkInsert(documentUnitDO);
-
+            units.add(documentUnitDO);
         }
+
+        DocumentUnitSyncResult syncResult = documentUnitDomainService
+                .syncFileUnits(ragDocSyncOcrMessage.getFileId(), units);
+        log.info("文件{}共{}页，待向量化{}页", ragDocSyncOcrMessage.getFileId(), units.size(),
+                syncResult.getPendingUnits().size());
     }
 
     private static final Pattern[] PATTERNS = {Pattern.compile("\\\\（"), Pattern.compile("\\\\）"),
@@ -201,11 +203,33 @@ public class PDFRagDocDocumentProcessing extends AbstractDocumentProcessingStrat
         return result.trim();
     }
 
+    /** 记录每页提取方式及节省的OCR调用次数
+     * @param fileId 文件ID
+     * @param result 提取结果 */
+    private void updateExtractionStats(String fileId, PdfExtractionResult result) {
+        if (fileId == null) {
+            return;
+        }
+
+        try {
+            LambdaUpdateWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaUpdate()
+                    .eq(FileDetailEntity::getId, fileId)
+                    .set(FileDetailEntity::getTextLayerPageCount, result.getTextLayerPageCount())
+                    .set(FileDetailEntity::getOcrPageCount, result.getOcrPageCount())
+                    .set(FileDetailEntity::getPageExtractionStats, JsonUtils.toJsonString(result.getPageStats()));
+
+            fileDetailRepository.update(wrapper);
+        } catch (Exception e) {
+            log.warn("更新文件{}的提取统计失败: {}", fileId, e.getMessage());
+        }
+    }
+
     /** 更新处理进度
-     * @param currentPage 当前页数
+     * @param fileId 文件ID
+     * @param currentPage 已完成页数
      * @param totalPages 总页数 */
-    private void updateProcessProgress(int currentPage, int totalPages) {
-        if (currentProcessingFileId == null) {
+    private void updateProcessProgress(String fileId, int currentPage, int totalPages) {
+        if (fileId == null) {
             return;
         }
 
@@ -214,16 +238,16 @@ public class PDFRagDocDocumentProcessing extends AbstractDocumentProcessingStrat
 
             // 使用新的OCR专用进度字段
             LambdaUpdateWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaUpdate()
-                    .eq(FileDetailEntity::getId, currentProcessingFileId)
+                    .eq(FileDetailEntity::getId, fileId)
                     .set(FileDetailEntity::getCurrentOcrPageNumber, currentPage)
                     .set(FileDetailEntity::getOcrProcessProgress, progress);
 
             fileDetailRepository.update(wrapper);
 
-            log.debug("更新文件{}OCR进度: {}/{}页 ({}%)", currentProcessingFileId, currentPage, totalPages,
+            log.debug("更新文件{}OCR进度: {}/{}页 ({}%)", fileId, currentPage, totalPages,
                     String.format("%.1f", progress));
         } catch (Exception e) {
-            log.warn("更新文件{}OCR进度失败: {}", currentProcessingFileId, e.getMessage());
+            log.warn("更新文件{}OCR进度失败: {}", fileId, e.getMessage());
         }
     }
 
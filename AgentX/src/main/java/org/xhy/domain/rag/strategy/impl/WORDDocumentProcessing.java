@@ -1,94 +1,77 @@
 package org.xhy.domain.rag.strategy.impl;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
 
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
-import org.dromara.streamquery.stream.core.stream.Steam;
-import org.dromara.x.file.storage.core.FileStorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.message.RagDocMessage;
-import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.domain.rag.model.FileDetailEntity;
-import org.xhy.domain.rag.repository.DocumentUnitRepository;
 import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.domain.rag.service.DocumentUnitDomainService;
+import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.rag.config.RagDocumentUnitProperties;
+import org.xhy.infrastructure.rag.file.DocumentSpooler;
+import org.xhy.infrastructure.rag.file.OfficeStreamingExtractor;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
 
 import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
 import dev.langchain4j.data.document.parser.apache.poi.ApachePoiDocumentParser;
 import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
 import dev.langchain4j.data.segment.TextSegment;
-import jakarta.annotation.Resource;
 
 @Service("word")
-public class WORDDocumentProcessing extends AbstractDocumentProcessingStrategy {
+public class WORDDocumentProcessing extends AbstractSegmentDocumentProcessingStrategy {
 
     private static final Logger log = LoggerFactory.getLogger(WORDDocumentProcessing.class);
 
-    private final DocumentUnitRepository documentUnitRepository;
-
     private final FileDetailRepository fileDetailRepository;
 
-    @Resource
-    private FileStorageService fileStorageService;
-
-    // 用于存储当前处理的文件ID，以便更新页数
-    private String currentProcessingFileId;
+    private final DocumentSpooler documentSpooler;
 
-    public WORDDocumentProcessing(DocumentUnitRepository documentUnitRepository,
-            FileDetailRepository fileDetailRepository) {
-        this.documentUnitRepository = documentUnitRepository;
+    public WORDDocumentProcessing(DocumentUnitDomainService documentUnitDomainService,
+            RagDocumentUnitProperties documentUnitProperties, FileDetailRepository fileDetailRepository,
+            DocumentSpooler documentSpooler) {
+        super(documentUnitDomainService, documentUnitProperties);
         this.fileDetailRepository = fileDetailRepository;
-    }
-
-    /** 处理消息，设置当前处理的文件ID
-     * @param ragDocMessage 消息数据
-     * @param strategy 当前策略 */
-    @Override
-    public void handle(RagDocMessage ragDocMessage, String strategy) throws Exception {
-        // 设置当前处理的文件ID，用于更新页数
-        this.currentProcessingFileId = ragDocMessage.getFileId();
-
-        // 调用父类处理逻辑
-        super.handle(ragDocMessage, strategy);
+        this.documentSpooler = documentSpooler;
     }
 
     /** 获取文件页数
      *
-     * @param bytes Word文档字节数组
+     * @param file 落盘的Word文档
      * @param ragDocMessage 消息数据 */
     @Override
-    public void pushPageSize(byte[] bytes, RagDocMessage ragDocMessage) {
+    public void pushPageSize(SpooledDocument file, RagDocMessage ragDocMessage) {
         try {
-            DocumentParser parser = new ApachePoiDocumentParser();
-            InputStream inputStream = new ByteArrayInputStream(bytes);
-            Document document = parser.parse(inputStream);
-
-            final DocumentBySentenceSplitter documentByCharacterSplitter = new DocumentBySentenceSplitter(500, 0);
-            final List<TextSegment> split = documentByCharacterSplitter.split(document);
+            // 只计数不保留段落内容
+            int[] counter = new int[1];
+            splitSegments(file, documentSpooler.getTextWindowChars(), text -> counter[0]++);
 
-            int segmentCount = split.size();
+            int segmentCount = counter[0];
             ragDocMessage.setPageSize(segmentCount);
             log.info("Word document split into {} segments", segmentCount);
 
             // 更新数据库中的总页数
-            if (currentProcessingFileId != null) {
+            final String fileId = ragDocMessage.getFileId();
+            if (fileId != null) {
                 LambdaUpdateWrapper<FileDetailEntity> wrapper = Wrappers.<FileDetailEntity>lambdaUpdate()
-                        .eq(FileDetailEntity::getId, currentProcessingFileId)
+                        .eq(FileDetailEntity::getId, fileId)
                         .set(FileDetailEntity::getFilePageSize, segmentCount);
                 fileDetailRepository.update(wrapper);
 
-                log.info("Updated total pages for Word file {}: {} segments", currentProcessingFileId, segmentCount);
+                log.info("Updated total pages for Word file {}: {} segments", fileId, segmentCount);
             }
-
-            inputStream.close();
+        } catch (BusinessException e) {
+            // 超过单任务内存上限等业务错误交由上层将文件置为失败
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         } catch (Exception e) {
             log.error("Failed to calculate page size for Word document", e);
             ragDocMessage.setPageSize(0);
@@ -99,95 +82,49 @@ public class WORDDocumentProcessing extends AbstractDocumentProcessingStrategy {
      *
      * @param ragDocSyncOcrMessage 消息数据
      * @param strategy 当前策略
-     * @return Word文档字节数组 */
+     * @return 落盘的Word文档 */
     @Override
-    public byte[] getFileData(RagDocMessage ragDocSyncOcrMessage, String strategy) {
+    public SpooledDocument getFileData(RagDocMessage ragDocSyncOcrMessage, String strategy) {
         // 从数据库中获取文件详情
         FileDetailEntity fileDetailEntity = fileDetailRepository.selectById(ragDocSyncOcrMessage.getFileId());
         if (fileDetailEntity == null) {
             log.error("File not found: {}", ragDocSyncOcrMessage.getFileId());
-            return new byte[0];
+            return null;
         }
 
         log.info("Preparing to download Word document: {}", fileDetailEntity.getFilename());
-        return fileStorageService.download(fileDetailEntity.getUrl()).bytes();
+        return documentSpooler.spool(fileDetailEntity.getUrl(), fileDetailEntity.getExt());
     }
 
-    /** 处理Word文件 - 提取文本内容
-     *
-     * @param fileBytes Word文档字节数组
-     * @param totalPages 总页数
-     * @return 按页索引分组的内容Map */
     @Override
-    public Map<Integer, String> processFile(byte[] fileBytes, int totalPages) {
-        log.info(
-                "Current file type is non-PDF, text is extracted directly ——————> Does not contain page numbers; the concept of page numbers serves as an index.");
-
-        DocumentParser parser = new ApachePoiDocumentParser();
-        // 使用ByteArrayInputStream将字节数组转换为输入流
-        InputStream inputStream = new ByteArrayInputStream(fileBytes);
-
-        Document document;
-
-        final HashMap<Integer, String> ocrData = new HashMap<>();
-
-        try {
-            document = parser.parse(inputStream);
-
-            final DocumentBySentenceSplitter documentByCharacterSplitter = new DocumentBySentenceSplitter(500, 0);
-            final List<TextSegment> split = documentByCharacterSplitter.split(document);
-
-            Steam.of(split).forEachIdx((textSegment, index) -> {
-                final String text = textSegment.text();
-
-                ocrData.put(index, text);
-
-            });
-
-            return ocrData;
-
-        } catch (Exception e) {
-            log.error("Failed to process document", e);
-        } finally {
-            try {
-                inputStream.close();
-            } catch (IOException e) {
-                log.error("Failed to close the input stream", e);
-            }
-        }
-
-        return ocrData;
+    protected void forEachSegment(SpooledDocument file, Consumer<String> consumer) throws IOException {
+        splitSegments(file, documentSpooler.getTextWindowChars(), consumer);
     }
 
-    /** 保存数据
+    /** 切分文档段落 docx和xlsx按段落、表格行流式提取后逐窗口按句切分，不加载整篇文档模型；
+     * doc、xls、ppt、pptx等其余格式仍整体解析后切分
      *
-     * @param ragDocSyncOcrMessage 消息数据
-     * @param ocrData 按页索引分组的内容Map */
-    @Override
-    public void insertData(RagDocMessage ragDocSyncOcrMessage, Map<Integer, String> ocrData) throws Exception {
-        log.info("开始保存文档内容，共拆分{}段", ocrData.size());
-
-        // 遍历每一页，将内容保存到数据库
-        for (int pageIndex = 0; pageIndex < ocrData.size(); pageIndex++) {
-            String content = ocrData.getOrDefault(pageIndex, null);
-
-            DocumentUnitEntity documentUnitEntity = new DocumentUnitEntity();
-            documentUnitEntity.setContent(content);
-            documentUnitEntity.setPage(pageIndex);
-            documentUnitEntity.setFileId(ragDocSyncOcrMessage.getFileId());
-            documentUnitEntity.setIsVector(false);
-            documentUnitEntity.setIsOcr(true);
-
-            if (content == null) {
-                documentUnitEntity.setIsOcr(false);
-                log.warn("第{}页内容为空", pageIndex + 1);
+     * @param file 落盘的Office文档
+     * @param windowChars 窗口字符数
+     * @param consumer 段落回调 */
+    static void splitSegments(SpooledDocument file, int windowChars, Consumer<String> consumer) throws IOException {
+        final DocumentBySentenceSplitter splitter = new DocumentBySentenceSplitter(500, 0);
+        Consumer<String> splitWindow = window -> {
+            if (window.isBlank()) {
+                return;
+            }
+            for (TextSegment segment : splitter.split(Document.from(window))) {
+                consumer.accept(segment.text());
             }
+        };
 
-            // 保存或更新数据
-            documentUnitRepository.checkInsert(documentUnitEntity);
-            log.debug("保存第{}页内容完成", pageIndex + 1);
+        if (OfficeStreamingExtractor.forEachWindow(file, windowChars, splitWindow)) {
+            return;
         }
 
-        log.info("Word文档内容保存完成");
+        // 直接从临时文件读取，不再复制一份字节数组
+        try (InputStream inputStream = file.openStream()) {
+            splitWindow.accept(new ApachePoiDocumentParser().parse(inputStream).text());
+        }
     }
 }
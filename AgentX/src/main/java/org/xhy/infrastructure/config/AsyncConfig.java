@@ -21,8 +21,25 @@ public class AsyncConfig {
         executor.setQueueCapacity(200);
         executor.setKeepAliveSeconds(60);
         executor.setThreadNamePrefix("memory-async-");
-        // 繁忙时在调用线程执行，确保不丢任务
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        // 队列满时拒绝，由抽取服务把会话窗口留在缓冲中稍后重试，不占用对话线程
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        // 停机时等待已提交的抽取完成
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /** 专用于对话轮次记忆召回的线程池，调用方只等待召回耗时预算；繁忙时拒绝并跳过本轮召回，不占用对话线程 */
+    @Bean(name = "memoryRecallExecutor")
+    public ThreadPoolTaskExecutor memoryRecallExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(100);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("memory-recall-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
         executor.initialize();
         return executor;
     }
@@ -0,0 +1,76 @@
+package org.xhy.infrastructure.memory.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 记忆抽取合并配置属性类 用于配置按会话累积用户发言、攒够轮数或空闲一段时间后合并为一次抽取的阈值和缓冲上限 */
+@Configuration
+@ConfigurationProperties(prefix = "memory.extraction")
+public class MemoryExtractionProperties {
+
+    /** 会话累积到该轮数立即抽取，设为1即每轮抽取一次 */
+    private int debounceTurns = 5;
+
+    /** 会话最后一轮发言后空闲该时长（毫秒）即抽取已累积的发言 */
+    private long idleMillis = 30000;
+
+    /** 检查空闲会话的间隔（毫秒） */
+    private long flushIntervalMillis = 1000;
+
+    /** 单个会话最多保留的待抽取发言数，超出丢弃最早的发言 */
+    private int maxWindowTurns = 20;
+
+    /** 最多同时累积的会话数，超出时新会话的发言直接丢弃 */
+    private int maxPendingSessions = 10000;
+
+    /** 抽取统计输出间隔（毫秒） */
+    private long statsLogIntervalMillis = 300000;
+
+    public int getDebounceTurns() {
+        return debounceTurns;
+    }
+
+    public void setDebounceTurns(int debounceTurns) {
+        this.debounceTurns = debounceTurns;
+    }
+
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    public void setIdleMillis(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public int getMaxWindowTurns() {
+        return maxWindowTurns;
+    }
+
+    public void setMaxWindowTurns(int maxWindowTurns) {
+        this.maxWindowTurns = maxWindowTurns;
+    }
+
+    public int getMaxPendingSessions() {
+        return maxPendingSessions;
+    }
+
+    public void setMaxPendingSessions(int maxPendingSessions) {
+        this.maxPendingSessions = maxPendingSessions;
+    }
+
+    public long getStatsLogIntervalMillis() {
+        return statsLogIntervalMillis;
+    }
+
+    public void setStatsLogIntervalMillis(long statsLogIntervalMillis) {
+        this.statsLogIntervalMillis = statsLogIntervalMillis;
+    }
+}
@@ -0,0 +1,115 @@
+package org.xhy.infrastructure.memory.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** 记忆召回门控配置属性类 用于配置对话轮次召回记忆前的低信息消息过滤、会话级召回缓存、召回冷却和耗时预算 */
+@Configuration
+@ConfigurationProperties(prefix = "memory.recall")
+public class MemoryRecallProperties {
+
+    /** 是否启用召回门控，关闭时每轮都直接召回 */
+    private boolean enabled = true;
+
+    /** 去掉空白和标点后少于该字符数的消息不召回 */
+    private int minQueryLength = 3;
+
+    /** 不召回的寒暄/确认短语，比较时忽略大小写、空白和标点 */
+    private List<String> stopPhrases = new ArrayList<>(List.of("ok", "okay", "k", "thanks", "thank you", "thx",
+            "ty", "continue", "go on", "yes", "no", "sure", "got it", "cool", "nice", "great", "good", "hi", "hello",
+            "bye", "好", "好的", "好吧", "嗯", "嗯嗯", "哦", "对", "对的", "是的", "不是", "可以", "行", "收到", "谢谢", "多谢",
+            "感谢", "继续", "继续吧", "接着说", "你好", "再见", "明白", "明白了", "知道了", "没问题"));
+
+    /** 与上次召回消息的字二元组相似度不低于该值时视为同一话题，复用上次召回结果 */
+    private double topicSimilarity = 0.5;
+
+    /** 同一会话两次实际召回的最小间隔（毫秒），冷却期内的新话题本轮不召回 */
+    private long cooldownMillis = 10000;
+
+    /** 单次召回耗时预算（毫秒），超时则本轮跳过召回，结果到达后写入会话缓存 */
+    private long timeoutMillis = 500;
+
+    /** 会话召回结果最长复用时间（秒），从召回完成时算起，到期后重新召回 */
+    private long cacheTtlSeconds = 1800;
+
+    /** 会话召回缓存最大会话数 */
+    private long cacheMaxSessions = 10000;
+
+    /** 召回统计输出间隔（毫秒） */
+    private long statsLogIntervalMillis = 300000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMinQueryLength() {
+        return minQueryLength;
+    }
+
+    public void setMinQueryLength(int minQueryLength) {
+        this.minQueryLength = minQueryLength;
+    }
+
+    public List<String> getStopPhrases() {
+        return stopPhrases;
+    }
+
+    public void setStopPhrases(List<String> stopPhrases) {
+        this.stopPhrases = stopPhrases;
+    }
+
+    public double getTopicSimilarity() {
+        return topicSimilarity;
+    }
+
+    public void setTopicSimilarity(double topicSimilarity) {
+        this.topicSimilarity = topicSimilarity;
+    }
+
+    public long getCooldownMillis() {
+        return cooldownMillis;
+    }
+
+    public void setCooldownMillis(long cooldownMillis) {
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public long getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    public void setCacheTtlSeconds(long cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+
+    public long getCacheMaxSessions() {
+        return cacheMaxSessions;
+    }
+
+    public void setCacheMaxSessions(long cacheMaxSessions) {
+        this.cacheMaxSessions = cacheMaxSessions;
+    }
+
+    public long getStatsLogIntervalMillis() {
+        return statsLogIntervalMillis;
+    }
+
+    public void setStatsLogIntervalMillis(long statsLogIntervalMillis) {
+        this.statsLogIntervalMillis = statsLogIntervalMillis;
+    }
+}
@@ -0,0 +1,27 @@
+package org.xhy.infrastructure.mq.core;
+
+import java.util.function.DoubleSupplier;
+
+/** Reports how close a dependency called by a queue's consumers is to its concurrency limit. */
+public interface DownstreamSaturation {
+
+    /** Queue whose consumers call this dependency. */
+    String queue();
+
+    /** Fraction of the dependency's limit currently in use, between 0 and 1. */
+    double saturation();
+
+    static DownstreamSaturation of(String queue, DoubleSupplier saturation) {
+        return new DownstreamSaturation() {
+            @Override
+            public String queue() {
+                return queue;
+            }
+
+            @Override
+            public double saturation() {
+                return saturation.getAsDouble();
+            }
+        };
+    }
+}
@@ -8,4 +8,22 @@ public final class MessageHeaders {
 
     /** Trace id header used across the system. */
     public static final String TRACE_ID = "seqId";
+
+    /** Number of delayed retries already scheduled for the message. */
+    public static final String RETRY_COUNT = "x-retry-count";
+
+    /** Error message of the most recent failed attempt. */
+    public static final String LAST_ERROR = "x-last-error";
+
+    /** Exchange the message was originally published to. */
+    public static final String ORIGINAL_EXCHANGE = "x-original-exchange";
+
+    /** Routing key the message was originally published with. */
+    public static final String ORIGINAL_ROUTING_KEY = "x-original-routing-key";
+
+    /** Queue the message was consumed from when it failed. */
+    public static final String ORIGINAL_QUEUE = "x-original-queue";
+
+    /** Epoch millis of the final failure, set when the message is dead-lettered. */
+    public static final String FAILED_AT = "x-failed-at";
 }
@@ -1,5 +1,7 @@
 package org.xhy.infrastructure.mq.core;
 
+import java.util.Map;
+
 /** Publisher abstraction for outbound messages. */
 public interface MessagePublisher {
 
@@ -8,4 +10,7 @@ public interface MessagePublisher {
     default void publish(MessageRoute route, MessageEnvelope<?> envelope, Long ttlMillis) {
         publish(route, envelope); // TTL optional; implementations may override
     }
+
+    /** Publish an already serialized envelope as is, e.g. when replaying a dead-lettered message. */
+    void publishRaw(MessageRoute route, String body, Map<String, Object> headers);
 }
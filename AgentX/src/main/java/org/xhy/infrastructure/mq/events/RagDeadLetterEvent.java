@@ -0,0 +1,28 @@
+package org.xhy.infrastructure.mq.events;
+
+import org.xhy.infrastructure.mq.core.MessageRoute;
+
+/** Route constants for delayed retries and dead-lettered RAG ingestion messages. */
+public final class RagDeadLetterEvent {
+
+    private RagDeadLetterEvent() {
+    }
+
+    /** Direct exchange feeding the per-level delayed retry queues. */
+    public static final String RETRY_EXCHANGE_NAME = "rag.doc.task.retry.exchange";
+
+    public static final String EXCHANGE_NAME = "rag.doc.task.deadLetter.exchange";
+    public static final String QUEUE_NAME = "rag.doc.task.deadLetter.queue";
+    public static final String ROUTE_KEY = "rag.doc.task.deadLetter";
+
+    public static MessageRoute route() {
+        return MessageRoute.topic(EXCHANGE_NAME, ROUTE_KEY, QUEUE_NAME);
+    }
+
+    /** Name of the delayed retry queue for a source queue, retry level (1-based) and delay. The delay is part of the
+     * name because it is fixed by the queue's x-message-ttl argument; a changed backoff declares a new queue instead
+     * of failing the redeclare with PRECONDITION_FAILED. */
+    public static String retryQueue(String sourceQueue, int level, long delayMillis) {
+        return sourceQueue + ".retry." + level + "." + delayMillis + "ms";
+    }
+}
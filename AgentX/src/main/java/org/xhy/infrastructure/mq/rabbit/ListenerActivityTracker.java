@@ -0,0 +1,123 @@
+package org.xhy.infrastructure.mq.rabbit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.core.Message;
+import org.springframework.stereotype.Component;
+
+/** 监听器忙碌度统计 作为监听器容器的通知链记录每个队列的在途消息和处理耗时，按采样区间计算消费者忙碌比例；
+ * 处理中的长耗时消息（如整本PDF的OCR）按已经过的时间计入当前区间，不会等到处理完成才体现 */
+@Component
+public class ListenerActivityTracker implements MethodInterceptor {
+
+    private final Map<String, QueueActivity> activities = new ConcurrentHashMap<>();
+
+    private final LongSupplier nanoClock;
+
+    public ListenerActivityTracker() {
+        this(System::nanoTime);
+    }
+
+    ListenerActivityTracker(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String queue = consumerQueue(invocation.getArguments());
+        if (queue == null) {
+            return invocation.proceed();
+        }
+        QueueActivity activity = activityOf(queue);
+        long token = activity.begin(nanoClock.getAsLong());
+        try {
+            return invocation.proceed();
+        } finally {
+            activity.end(token, nanoClock.getAsLong());
+        }
+    }
+
+    /** 计算自上次采样以来队列消费者的忙碌比例，并开始新的采样区间
+     *
+     * @param queue 队列名
+     * @param consumers 区间内的消费者数
+     * @return 0到1之间的忙碌比例 */
+    public double sampleUtilization(String queue, int consumers) {
+        return activityOf(queue).sample(consumers, nanoClock.getAsLong());
+    }
+
+    /** 队列当前正在处理的消息数 */
+    public int inFlight(String queue) {
+        return activityOf(queue).running.size();
+    }
+
+    private QueueActivity activityOf(String queue) {
+        return activities.computeIfAbsent(queue, k -> new QueueActivity(nanoClock.getAsLong()));
+    }
+
+    /** 监听器调用参数中的消息（批量监听时为消息列表）所属的消费队列 */
+    private static String consumerQueue(Object[] arguments) {
+        for (Object argument : arguments) {
+            Message message = null;
+            if (argument instanceof Message m) {
+                message = m;
+            } else if (argument instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof Message m) {
+                message = m;
+            }
+            if (message != null) {
+                return message.getMessageProperties().getConsumerQueue();
+            }
+        }
+        return null;
+    }
+
+    private static class QueueActivity {
+
+        private final AtomicLong tokens = new AtomicLong();
+
+        /** 在途调用 -> 开始时间 */
+        private final Map<Long, Long> running = new ConcurrentHashMap<>();
+
+        /** 当前区间内已完成调用的忙碌时间 */
+        private final LongAdder busyNanos = new LongAdder();
+
+        private volatile long intervalStart;
+
+        QueueActivity(long now) {
+            this.intervalStart = now;
+        }
+
+        long begin(long now) {
+            long token = tokens.incrementAndGet();
+            running.put(token, now);
+            return token;
+        }
+
+        void end(long token, long now) {
+            Long start = running.remove(token);
+            if (start != null) {
+                busyNanos.add(now - Math.max(start, intervalStart));
+            }
+        }
+
+        synchronized double sample(int consumers, long now) {
+            long elapsed = now - intervalStart;
+            long busy = busyNanos.sumThenReset();
+            for (Long start : running.values()) {
+                busy += now - Math.max(start, intervalStart);
+            }
+            intervalStart = now;
+            if (elapsed <= 0 || consumers <= 0) {
+                return running.isEmpty() ? 0.0 : 1.0;
+            }
+            return Math.min(1.0, (double) busy / ((double) elapsed * consumers));
+        }
+    }
+}
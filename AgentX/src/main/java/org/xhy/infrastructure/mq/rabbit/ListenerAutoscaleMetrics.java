@@ -0,0 +1,106 @@
+package org.xhy.infrastructure.mq.rabbit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** 单个队列的自动伸缩指标 最近一次采样的积压、忙碌比例、下游饱和度、消费者数和预取数，以及累计的扩容、缩容、退让次数 */
+public class ListenerAutoscaleMetrics {
+
+    private final LongAdder scaleUps = new LongAdder();
+
+    private final LongAdder scaleDowns = new LongAdder();
+
+    private final LongAdder backpressures = new LongAdder();
+
+    private volatile long queueDepth;
+
+    private volatile double utilization;
+
+    private volatile double downstreamSaturation;
+
+    private volatile int consumers;
+
+    private volatile int prefetch;
+
+    private volatile String lastAction;
+
+    private volatile String lastReason;
+
+    private volatile long lastSampledAt;
+
+    void record(long depth, double utilization, double saturation, ListenerScalingPolicy.ScaleDecision decision,
+            boolean changed) {
+        this.queueDepth = depth;
+        this.utilization = utilization;
+        this.downstreamSaturation = saturation;
+        this.consumers = decision.getConsumers();
+        this.prefetch = decision.getPrefetch();
+        this.lastAction = decision.getAction().name();
+        this.lastReason = decision.getReason();
+        this.lastSampledAt = System.currentTimeMillis();
+        if (!changed) {
+            return;
+        }
+        switch (decision.getAction()) {
+            case SCALE_UP -> scaleUps.increment();
+            case SCALE_DOWN -> scaleDowns.increment();
+            case BACKPRESSURE -> backpressures.increment();
+            default -> {
+            }
+        }
+    }
+
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    public double getUtilization() {
+        return utilization;
+    }
+
+    public double getDownstreamSaturation() {
+        return downstreamSaturation;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public String getLastAction() {
+        return lastAction;
+    }
+
+    public String getLastReason() {
+        return lastReason;
+    }
+
+    public long getLastSampledAt() {
+        return lastSampledAt;
+    }
+
+    /** 实际发生扩容的次数 */
+    public long getScaleUps() {
+        return scaleUps.sum();
+    }
+
+    /** 实际发生缩容的次数 */
+    public long getScaleDowns() {
+        return scaleDowns.sum();
+    }
+
+    /** 因下游饱和减少消费者或预取数的次数 */
+    public long getBackpressures() {
+        return backpressures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "depth=%d, utilization=%.2f, saturation=%.2f, consumers=%d, prefetch=%d, scaleUps=%d, scaleDowns=%d, backpressures=%d",
+                getQueueDepth(), getUtilization(), getDownstreamSaturation(), getConsumers(), getPrefetch(),
+                getScaleUps(), getScaleDowns(), getBackpressures());
+    }
+}
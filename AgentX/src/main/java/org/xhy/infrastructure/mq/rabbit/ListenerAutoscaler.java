@@ -0,0 +1,146 @@
+package org.xhy.infrastructure.mq.rabbit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.mq.core.DownstreamSaturation;
+import org.xhy.infrastructure.mq.core.MessageRoute;
+import org.xhy.infrastructure.rag.config.RagListenerAutoscaleProperties;
+
+/** RAG入库监听器自动伸缩器
+ *
+ * 定时采样预处理、向量化队列的积压消息数、消费者忙碌比例和下游并发许可占用，在配置范围内调整监听器容器的消费者数和预取数。
+ * 预取数只对之后启动的消费者生效，RabbitMQ不支持修改已有消费者的预取数；调整决策记录日志并保存在各队列的指标中 */
+@Component
+public class ListenerAutoscaler {
+
+    private static final Logger log = LoggerFactory.getLogger(ListenerAutoscaler.class);
+
+    private final RabbitListenerEndpointRegistry registry;
+
+    private final AmqpAdmin amqpAdmin;
+
+    private final ListenerActivityTracker activityTracker;
+
+    private final List<DownstreamSaturation> saturations;
+
+    private final RagListenerAutoscaleProperties properties;
+
+    private final ListenerScalingPolicy policy;
+
+    private final Map<String, ListenerAutoscaleMetrics> metrics = new ConcurrentHashMap<>();
+
+    public ListenerAutoscaler(RabbitListenerEndpointRegistry registry, AmqpAdmin amqpAdmin,
+            ListenerActivityTracker activityTracker, List<DownstreamSaturation> saturations,
+            RagListenerAutoscaleProperties properties) {
+        this.registry = registry;
+        this.amqpAdmin = amqpAdmin;
+        this.activityTracker = activityTracker;
+        this.saturations = saturations;
+        this.properties = properties;
+        this.policy = new ListenerScalingPolicy(properties);
+    }
+
+    /** 按采样间隔调整所有入库队列的监听器 */
+    @Scheduled(fixedDelayString = "${rag.listener-autoscale.interval-millis:10000}", initialDelayString = "${rag.listener-autoscale.interval-millis:10000}")
+    public void adjustAll() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (MessageRoute route : RagIngestionRetryConfig.sourceRoutes()) {
+            SimpleMessageListenerContainer container = containerOf(route.getQueue());
+            if (container == null || !container.isRunning()) {
+                continue;
+            }
+            try {
+                adjust(route.getQueue(), container);
+            } catch (Exception e) {
+                log.warn("队列{}自动伸缩采样失败: {}", route.getQueue(), e.getMessage());
+            }
+        }
+    }
+
+    /** 采样一个队列并应用伸缩决策 */
+    void adjust(String queue, SimpleMessageListenerContainer container) {
+        QueueInformation info = amqpAdmin.getQueueInfo(queue);
+        long depth = info != null ? info.getMessageCount() : 0;
+        ListenerAutoscaleMetrics queueMetrics = metrics.get(queue);
+        int consumers = queueMetrics != null ? queueMetrics.getConsumers() : container.getActiveConsumerCount();
+        int prefetch = queueMetrics != null ? queueMetrics.getPrefetch() : properties.getMinPrefetch();
+        double utilization = activityTracker.sampleUtilization(queue, Math.max(1, consumers));
+        double saturation = saturationOf(queue);
+
+        ListenerScalingPolicy.ScaleDecision decision = policy.decide(queue, consumers, prefetch, depth, utilization,
+                saturation);
+        // 首次采样时强制应用，使容器与伸缩范围一致
+        boolean changed = queueMetrics == null || decision.getConsumers() != consumers
+                || decision.getPrefetch() != prefetch;
+        if (changed) {
+            apply(container, consumers, decision);
+            log.info("队列{}监听器调整 [{}] 消费者 {} -> {}，预取 {} -> {}：{}", queue, decision.getAction(), consumers,
+                    decision.getConsumers(), prefetch, decision.getPrefetch(), decision.getReason());
+        } else {
+            log.debug("队列{}监听器保持 [{}] 消费者 {}，预取 {}：{}", queue, decision.getAction(), consumers, prefetch,
+                    decision.getReason());
+        }
+        metrics.computeIfAbsent(queue, k -> new ListenerAutoscaleMetrics()).record(depth, utilization, saturation,
+                decision, changed && queueMetrics != null);
+    }
+
+    private void apply(SimpleMessageListenerContainer container, int currentConsumers,
+            ListenerScalingPolicy.ScaleDecision decision) {
+        // 先设置预取数，本次新增的消费者即使用新的预取数
+        container.setPrefetchCount(decision.getPrefetch());
+        int target = decision.getConsumers();
+        // 固定并发（最大值等于目标值），关闭容器自带的按空闲伸缩，避免与本伸缩器相互干扰
+        if (target >= currentConsumers) {
+            container.setMaxConcurrentConsumers(target);
+            container.setConcurrentConsumers(target);
+        } else {
+            container.setConcurrentConsumers(target);
+            container.setMaxConcurrentConsumers(target);
+        }
+    }
+
+    private double saturationOf(String queue) {
+        double saturation = 0.0;
+        for (DownstreamSaturation downstream : saturations) {
+            if (queue.equals(downstream.queue())) {
+                try {
+                    saturation = Math.max(saturation, downstream.saturation());
+                } catch (Exception e) {
+                    log.debug("读取队列{}下游饱和度失败: {}", queue, e.getMessage());
+                }
+            }
+        }
+        return saturation;
+    }
+
+    private SimpleMessageListenerContainer containerOf(String queue) {
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if (container instanceof SimpleMessageListenerContainer simple
+                    && Arrays.asList(simple.getQueueNames()).contains(queue)) {
+                return simple;
+            }
+        }
+        return null;
+    }
+
+    /** 获取各入库队列的自动伸缩指标
+     *
+     * @return 队列名与指标 */
+    public Map<String, ListenerAutoscaleMetrics> getMetrics() {
+        return Map.copyOf(metrics);
+    }
+}
@@ -0,0 +1,139 @@
+package org.xhy.infrastructure.mq.rabbit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xhy.infrastructure.rag.config.RagListenerAutoscaleProperties;
+
+/** 监听器伸缩策略 根据队列积压、消费者忙碌比例和下游饱和度计算目标消费者数与预取数：
+ * 下游饱和时优先退让；积压超过消费者承担量时按步长扩容；负载持续偏低若干周期后才按步长缩容；
+ * 只有积压超过目标消费者的承担量时才提高预取数，平时保持最小预取以便长耗时消息公平分发 */
+public class ListenerScalingPolicy {
+
+    /** 调整动作 */
+    public enum Action {
+        /** 扩容 */
+        SCALE_UP,
+        /** 缩容 */
+        SCALE_DOWN,
+        /** 下游饱和，退让 */
+        BACKPRESSURE,
+        /** 保持 */
+        HOLD
+    }
+
+    private final RagListenerAutoscaleProperties properties;
+
+    /** 队列 -> 连续满足缩容条件的周期数 */
+    private final Map<String, Integer> lowLoadCycles = new ConcurrentHashMap<>();
+
+    public ListenerScalingPolicy(RagListenerAutoscaleProperties properties) {
+        this.properties = properties;
+    }
+
+    /** 计算一次伸缩决策
+     *
+     * @param queue 队列名
+     * @param consumers 当前消费者数
+     * @param prefetch 当前预取数
+     * @param depth 队列积压消息数
+     * @param utilization 采样区间内消费者忙碌比例
+     * @param saturation 下游并发许可占用比例
+     * @return 伸缩决策 */
+    public ScaleDecision decide(String queue, int consumers, int prefetch, long depth, double utilization,
+            double saturation) {
+        int min = Math.max(1, properties.getMinConsumers());
+        int max = Math.max(min, properties.getMaxConsumers());
+        int minPrefetch = Math.max(1, properties.getMinPrefetch());
+        int maxPrefetch = Math.max(minPrefetch, properties.getMaxPrefetch());
+        int current = clamp(consumers, min, max);
+
+        if (saturation >= properties.getSaturationThreshold()) {
+            lowLoadCycles.remove(queue);
+            int target = Math.max(min, current - Math.max(1, properties.getScaleDownStep()));
+            return new ScaleDecision(Action.BACKPRESSURE, target, minPrefetch,
+                    String.format("downstream saturation %.2f >= %.2f", saturation,
+                            properties.getSaturationThreshold()));
+        }
+
+        int perConsumer = Math.max(1, properties.getMessagesPerConsumer());
+        int desired = clamp((int) Math.min(Integer.MAX_VALUE, ceilDiv(depth, perConsumer)), min, max);
+        if (depth > 0 && utilization >= properties.getScaleUpUtilization()) {
+            desired = Math.max(desired, Math.min(max, current + 1));
+        }
+
+        Action action = Action.HOLD;
+        int target = current;
+        String reason;
+        if (desired > current) {
+            lowLoadCycles.remove(queue);
+            target = Math.min(desired, current + Math.max(1, properties.getScaleUpStep()));
+            action = Action.SCALE_UP;
+            reason = String.format("depth %d, utilization %.2f, desired %d consumers", depth, utilization, desired);
+        } else if (desired < current && utilization < properties.getScaleDownUtilization()) {
+            int cycles = lowLoadCycles.merge(queue, 1, Integer::sum);
+            if (cycles >= Math.max(1, properties.getScaleDownDelayCycles())) {
+                lowLoadCycles.remove(queue);
+                target = Math.max(desired, current - Math.max(1, properties.getScaleDownStep()));
+                action = Action.SCALE_DOWN;
+                reason = String.format("depth %d, utilization %.2f for %d cycles", depth, utilization, cycles);
+            } else {
+                reason = String.format("low load cycle %d/%d", cycles, properties.getScaleDownDelayCycles());
+            }
+        } else {
+            lowLoadCycles.remove(queue);
+            reason = String.format("depth %d, utilization %.2f", depth, utilization);
+        }
+
+        // 目标消费者承担不了的积压才通过预取数分摊
+        int targetPrefetch = clamp((int) Math.min(Integer.MAX_VALUE, ceilDiv(depth, (long) target * perConsumer)),
+                minPrefetch, maxPrefetch);
+        if (action == Action.HOLD && targetPrefetch != prefetch) {
+            reason = reason + ", prefetch " + prefetch + " -> " + targetPrefetch;
+        }
+        return new ScaleDecision(action, target, targetPrefetch, reason);
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return value <= 0 ? 0 : (value + divisor - 1) / divisor;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /** 伸缩决策 */
+    public static class ScaleDecision {
+
+        private final Action action;
+
+        private final int consumers;
+
+        private final int prefetch;
+
+        private final String reason;
+
+        public ScaleDecision(Action action, int consumers, int prefetch, String reason) {
+            this.action = action;
+            this.consumers = consumers;
+            this.prefetch = prefetch;
+            this.reason = reason;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public int getConsumers() {
+            return consumers;
+        }
+
+        public int getPrefetch() {
+            return prefetch;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
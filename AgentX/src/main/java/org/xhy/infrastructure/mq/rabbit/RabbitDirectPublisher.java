@@ -35,6 +35,19 @@ public final class RabbitDirectPublisher implements MessagePublisher {
 
     @Override
     public void publish(MessageRoute route, MessageEnvelope<?> envelope, Long ttlMillis) {
+        Map<String, Object> headers = new HashMap<>();
+        if (envelope.getTraceId() != null) {
+            headers.put(MessageHeaders.TRACE_ID, envelope.getTraceId());
+        }
+        send(route, envelope.toJson(), headers, ttlMillis);
+    }
+
+    @Override
+    public void publishRaw(MessageRoute route, String body, Map<String, Object> headers) {
+        send(route, body, headers != null ? headers : new HashMap<>(), null);
+    }
+
+    private void send(MessageRoute route, String body, Map<String, Object> headers, Long ttlMillis) {
         try (Channel channel = connection.createChannel()) {
             // idempotent declare
             BuiltinExchangeType type = BuiltinExchangeType.valueOf(route.getType().toUpperCase());
@@ -42,18 +55,12 @@ public final class RabbitDirectPublisher implements MessagePublisher {
             channel.queueDeclare(route.getQueue(), true, false, false, null);
             channel.queueBind(route.getQueue(), route.getExchange(), route.getRoutingKey());
 
-            Map<String, Object> headers = new HashMap<>();
-            if (envelope.getTraceId() != null) {
-                headers.put(MessageHeaders.TRACE_ID, envelope.getTraceId());
-            }
-
             AMQP.BasicProperties.Builder builder = new AMQP.BasicProperties.Builder().contentType("application/json")
                     .deliveryMode(2).headers(headers);
             if (ttlMillis != null && ttlMillis > 0) {
                 builder.expiration(Long.toString(ttlMillis));
             }
 
-            String body = envelope.toJson();
             channel.basicPublish(route.getExchange(), route.getRoutingKey(), builder.build(),
                     body.getBytes(StandardCharsets.UTF_8));
             log.debug("Published message to {}:{} -> {}", route.getExchange(), route.getRoutingKey(), route.getQueue());
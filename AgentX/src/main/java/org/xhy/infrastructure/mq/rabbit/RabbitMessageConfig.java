@@ -5,6 +5,7 @@ import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFacto
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -34,14 +35,21 @@ public class RabbitMessageConfig {
         return new Jackson2JsonMessageConverter(objectMapper);
     }
 
-    /** 配置监听器容器工厂
+    /** 配置监听器容器工厂 沿用 spring.rabbitmq.listener.simple 配置（手动确认、预取数、并发数），消费者自行确认或转入重试队列；
+     * 并发数和预取数为初始值，运行时由自动伸缩器（rag.listener-autoscale）调整
      *
+     * @param configurer Spring Boot 监听器容器配置器
      * @param connectionFactory RabbitMQ 连接工厂
+     * @param activityTracker 监听器忙碌度统计
      * @return 监听器容器工厂 */
     @Bean
-    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            ListenerActivityTracker activityTracker) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
-        factory.setConnectionFactory(connectionFactory);
+        configurer.configure(factory, connectionFactory);
+        // 统计各队列消费者的忙碌时间，供自动伸缩采样
+        factory.setAdviceChain(activityTracker);
         // 设置 JSON 消息转换器
         factory.setMessageConverter(jsonMessageConverter());
         return factory;
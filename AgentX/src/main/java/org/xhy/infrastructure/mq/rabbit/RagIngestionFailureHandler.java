@@ -0,0 +1,177 @@
+package org.xhy.infrastructure.mq.rabbit;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.mq.core.MessageHeaders;
+import org.xhy.infrastructure.mq.core.MessageRoute;
+import org.xhy.infrastructure.mq.events.RagDeadLetterEvent;
+import org.xhy.infrastructure.rag.config.RagIngestionRetryProperties;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+/** RAG入库消息失败处理器
+ *
+ * 消费失败的消息按重试次数头发往对应级别的延迟重试队列，超过次数或不可重试的失败（业务校验、消息格式错误）发往死信交换机；
+ * 转发在独立的确认模式通道上以mandatory方式发布，代理确认且消息已路由到队列后才确认原消息，
+ * 代理拒绝、无法路由或确认超时都视为转发失败，原消息拒绝并重新入队，保证消息不丢失 */
+@Component
+public class RagIngestionFailureHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(RagIngestionFailureHandler.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final RagIngestionRetryProperties properties;
+
+    public RagIngestionFailureHandler(RagIngestionRetryProperties properties) {
+        this.properties = properties;
+    }
+
+    /** 失败处理结果 */
+    public enum Outcome {
+        /** 已转入延迟重试队列 */
+        RETRY_SCHEDULED,
+        /** 已转入死信队列，不再自动重试 */
+        DEAD_LETTERED,
+        /** 转发失败，原消息重新入队 */
+        REQUEUED
+    }
+
+    /** 处理一次消费失败，调用后原消息已被确认或拒绝，调用方不得再次确认
+     *
+     * @param message 原消息
+     * @param channel 消费通道
+     * @param route 原消息的路由
+     * @param error 消费异常
+     * @return 处理结果 */
+    public Outcome handleFailure(Message message, Channel channel, MessageRoute route, Exception error) {
+        MessageProperties messageProperties = message.getMessageProperties();
+        long deliveryTag = messageProperties.getDeliveryTag();
+        int retries = retryCount(messageProperties);
+
+        try {
+            if (isRetryable(error) && retries < properties.getMaxRetries()) {
+                int level = retries + 1;
+                String retryQueue = RagDeadLetterEvent.retryQueue(route.getQueue(), level, properties.backoffMillis(level));
+                publish(channel, RagDeadLetterEvent.RETRY_EXCHANGE_NAME, retryQueue, message,
+                        headers(messageProperties, route, error, level, false));
+                channel.basicAck(deliveryTag, false);
+                log.warn("队列{}的消息第{}次处理失败，{}ms后重试: {}", route.getQueue(), level,
+                        properties.backoffMillis(level), error.getMessage());
+                return Outcome.RETRY_SCHEDULED;
+            }
+
+            publish(channel, RagDeadLetterEvent.EXCHANGE_NAME, RagDeadLetterEvent.ROUTE_KEY, message,
+                    headers(messageProperties, route, error, retries, true));
+            channel.basicAck(deliveryTag, false);
+            log.error("队列{}的消息在{}次重试后仍处理失败，已转入死信队列: {}", route.getQueue(), retries, error.getMessage());
+            return Outcome.DEAD_LETTERED;
+        } catch (IOException | RuntimeException e) {
+            log.error("队列{}的失败消息转发失败，重新入队", route.getQueue(), e);
+            try {
+                channel.basicNack(deliveryTag, false, true);
+            } catch (IOException ex) {
+                log.error("拒绝消息失败，deliveryTag: {}", deliveryTag, ex);
+            }
+            return Outcome.REQUEUED;
+        }
+    }
+
+    /** 业务校验失败和消息无法解析时重试没有意义，直接进入死信队列 */
+    static boolean isRetryable(Exception error) {
+        return !(error instanceof BusinessException) && !(error instanceof IllegalArgumentException);
+    }
+
+    /** 读取消息已经历的重试次数 */
+    public static int retryCount(MessageProperties messageProperties) {
+        Object value = messageProperties.getHeaders().get(MessageHeaders.RETRY_COUNT);
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString());
+            } catch (NumberFormatException ignored) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    private Map<String, Object> headers(MessageProperties messageProperties, MessageRoute route, Exception error,
+            int retryCount, boolean deadLetter) {
+        Map<String, Object> headers = messageProperties.getHeaders();
+        headers.put(MessageHeaders.RETRY_COUNT, retryCount);
+        headers.put(MessageHeaders.LAST_ERROR, errorMessage(error));
+        headers.put(MessageHeaders.ORIGINAL_EXCHANGE, route.getExchange());
+        headers.put(MessageHeaders.ORIGINAL_ROUTING_KEY, route.getRoutingKey());
+        headers.put(MessageHeaders.ORIGINAL_QUEUE, route.getQueue());
+        if (deadLetter) {
+            headers.put(MessageHeaders.FAILED_AT, System.currentTimeMillis());
+        }
+        return headers;
+    }
+
+    private void publish(Channel channel, String exchange, String routingKey, Message message,
+            Map<String, Object> headers) throws IOException {
+        MessageProperties messageProperties = message.getMessageProperties();
+        messageProperties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        // 延迟由重试队列的TTL决定，清除消息级过期时间
+        messageProperties.setExpiration(null);
+        AMQP.BasicProperties basicProperties = propertiesConverter.fromMessageProperties(messageProperties, "UTF-8")
+                .builder().headers(headers).build();
+
+        // 监听通道不切换为确认模式，转发使用同一连接上的临时通道
+        Channel publishChannel = channel.getConnection().createChannel();
+        try {
+            AtomicBoolean returned = new AtomicBoolean();
+            publishChannel.addReturnListener(returnMessage -> returned.set(true));
+            publishChannel.confirmSelect();
+            publishChannel.basicPublish(exchange, routingKey, true, basicProperties, message.getBody());
+            // 代理在确认之前退回无法路由的消息，确认返回时退回回调已执行
+            if (!publishChannel.waitForConfirms(properties.getConfirmTimeoutMillis())) {
+                throw new IOException("代理拒绝了转发的消息: " + exchange + "/" + routingKey);
+            }
+            if (returned.get()) {
+                throw new IOException("转发的消息无法路由: " + exchange + "/" + routingKey);
+            }
+        } catch (TimeoutException e) {
+            throw new IOException("等待代理确认超时: " + exchange + "/" + routingKey, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待代理确认被中断", e);
+        } finally {
+            closeQuietly(publishChannel);
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            log.debug("关闭转发通道失败: {}", e.getMessage());
+        }
+    }
+
+    private static String errorMessage(Exception error) {
+        String message = error.getClass().getSimpleName() + ": " + error.getMessage();
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
@@ -0,0 +1,50 @@
+package org.xhy.infrastructure.mq.rabbit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xhy.infrastructure.mq.core.MessageRoute;
+import org.xhy.infrastructure.mq.events.RagDeadLetterEvent;
+import org.xhy.infrastructure.mq.events.RagDocSyncOcrEvent;
+import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
+import org.xhy.infrastructure.rag.config.RagIngestionRetryProperties;
+
+/** RAG入库消息重试拓扑配置
+ *
+ * 每个入库队列按重试次数各有一个延迟队列，队列级TTL到期后经死信路由回原交换机，避免消息级TTL的队头阻塞； 超过重试次数的消息发往死信交换机，由死信队列持久化后供管理员重放。
+ * 延迟时长写在延迟队列名中，调整退避配置时声明新队列，不会因队列参数不一致导致声明失败；原入库队列不增加参数，已部署的队列声明保持兼容 */
+@Configuration
+public class RagIngestionRetryConfig {
+
+    /** 需要重试和死信处理的入库路由 */
+    public static List<MessageRoute> sourceRoutes() {
+        return List.of(RagDocSyncOcrEvent.route(), RagDocSyncStorageEvent.route());
+    }
+
+    @Bean
+    public Declarables ragIngestionRetryDeclarables(RagIngestionRetryProperties properties) {
+        List<Declarable> declarables = new ArrayList<>();
+        DirectExchange retryExchange = new DirectExchange(RagDeadLetterEvent.RETRY_EXCHANGE_NAME, true, false);
+        declarables.add(retryExchange);
+
+        for (MessageRoute route : sourceRoutes()) {
+            for (int level = 1; level <= Math.max(1, properties.getMaxRetries()); level++) {
+                long delayMillis = properties.backoffMillis(level);
+                String queueName = RagDeadLetterEvent.retryQueue(route.getQueue(), level, delayMillis);
+                Queue retryQueue = QueueBuilder.durable(queueName).ttl((int) delayMillis)
+                        .deadLetterExchange(route.getExchange()).deadLetterRoutingKey(route.getRoutingKey()).build();
+                declarables.add(retryQueue);
+                declarables.add(BindingBuilder.bind(retryQueue).to(retryExchange).with(queueName));
+            }
+        }
+        return new Declarables(declarables);
+    }
+}
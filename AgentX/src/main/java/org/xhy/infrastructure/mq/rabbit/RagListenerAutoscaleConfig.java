@@ -0,0 +1,24 @@
+package org.xhy.infrastructure.mq.rabbit;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xhy.infrastructure.mq.core.DownstreamSaturation;
+import org.xhy.infrastructure.mq.events.RagDocSyncOcrEvent;
+import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
+import org.xhy.infrastructure.rag.embedding.BatchEmbeddingWriter;
+import org.xhy.infrastructure.rag.ocr.ParallelPdfOcrProcessor;
+
+/** RAG入库监听器自动伸缩配置 预处理队列的下游为OCR服务商并发许可，向量化队列的下游为嵌入接口并发许可 */
+@Configuration
+public class RagListenerAutoscaleConfig {
+
+    @Bean
+    public DownstreamSaturation ocrDownstreamSaturation(ParallelPdfOcrProcessor ocrProcessor) {
+        return DownstreamSaturation.of(RagDocSyncOcrEvent.QUEUE_NAME, ocrProcessor::saturation);
+    }
+
+    @Bean
+    public DownstreamSaturation embeddingDownstreamSaturation(BatchEmbeddingWriter embeddingWriter) {
+        return DownstreamSaturation.of(RagDocSyncStorageEvent.QUEUE_NAME, embeddingWriter::saturation);
+    }
+}
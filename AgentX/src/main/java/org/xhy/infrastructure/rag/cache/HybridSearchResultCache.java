@@ -0,0 +1,108 @@
+package org.xhy.infrastructure.rag.cache;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.infrastructure.rag.config.RagSearchCacheProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** 混合检索结果缓存 缓存键由数据集ID及其当前入库代次、归一化查询的哈希和检索参数组成。 数据集内文件新增、重新处理或删除时入库代次递增，旧键自然失效，无需显式清理。 */
+@Component
+public class HybridSearchResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(HybridSearchResultCache.class);
+
+    private final RagSearchCacheProperties properties;
+
+    private final Cache<String, List<DocumentUnitEntity>> cache;
+
+    public HybridSearchResultCache(RagSearchCacheProperties properties) {
+        this.properties = properties;
+        this.cache = CacheBuilder.newBuilder().maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtlSeconds(), TimeUnit.SECONDS).recordStats().build();
+    }
+
+    /** 是否启用缓存 */
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /** 构建缓存键
+     *
+     * @param datasetGenerations 数据集ID与入库代次映射
+     * @param question 原始查询问题
+     * @param searchParams 检索参数签名
+     * @return 缓存键 */
+    public String buildKey(Map<String, Long> datasetGenerations, String question, String searchParams) {
+        StringBuilder sb = new StringBuilder();
+        // 按数据集ID排序，保证相同数据集组合得到相同的键
+        new TreeMap<>(datasetGenerations).forEach((id, generation) -> sb.append(id).append('@').append(generation)
+                .append(';'));
+        sb.append('|').append(DigestUtil.sha256Hex(normalizeQuery(question)));
+        sb.append('|').append(searchParams);
+        return sb.toString();
+    }
+
+    /** 查询缓存
+     *
+     * @param key 缓存键
+     * @return 缓存的检索结果，未命中返回null */
+    public List<DocumentUnitEntity> get(String key) {
+        List<DocumentUnitEntity> cached = cache.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+        log.debug("混合检索缓存命中，key: {}", key);
+        // 返回副本，调用方修改结果不会影响缓存中的快照
+        List<DocumentUnitEntity> copies = new ArrayList<>(cached.size());
+        cached.forEach(document -> copies.add(snapshot(document)));
+        return copies;
+    }
+
+    /** 写入缓存
+     *
+     * @param key 缓存键
+     * @param results 检索结果 */
+    public void put(String key, List<DocumentUnitEntity> results) {
+        if (results == null || results.isEmpty()) {
+            return;
+        }
+        // 存入副本快照，调用方之后修改结果对象不会污染缓存
+        cache.put(key, results.stream().map(HybridSearchResultCache::snapshot).toList());
+    }
+
+    /** 复制文档单元，包括非持久化的相似度分数 */
+    private static DocumentUnitEntity snapshot(DocumentUnitEntity document) {
+        DocumentUnitEntity copy = new DocumentUnitEntity();
+        BeanUtils.copyProperties(document, copy);
+        return copy;
+    }
+
+    /** 获取缓存统计信息 */
+    public String stats() {
+        return cache.stats().toString();
+    }
+
+    /** 查询归一化：去除首尾空白、合并连续空白、统一小写并去掉末尾标点，使近似相同的问题命中同一缓存
+     *
+     * @param question 原始查询
+     * @return 归一化后的查询 */
+    static String normalizeQuery(String question) {
+        if (question == null) {
+            return "";
+        }
+        String normalized = question.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return normalized.replaceAll("[\\p{Punct}，。？！；：、\\s]+$", "");
+    }
+}
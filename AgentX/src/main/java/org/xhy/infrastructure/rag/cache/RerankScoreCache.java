@@ -0,0 +1,65 @@
+package org.xhy.infrastructure.rag.cache;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.rag.config.RerankProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/** 重排序分数缓存 以(查询哈希, 文档片段ID, 片段内容哈希)为键缓存重排序模型给出的相关性分数。 交叉编码器的分数只取决于查询与片段本身，同一查询再次检索时只需为新出现的候选请求重排序服务；
+ * 片段内容被编辑后内容哈希随之变化，旧分数不再命中。 */
+@Component
+public class RerankScoreCache {
+
+    private final RerankProperties properties;
+
+    private final Cache<String, Double> cache;
+
+    public RerankScoreCache(RerankProperties properties) {
+        this.properties = properties;
+        this.cache = CacheBuilder.newBuilder().maximumSize(properties.getCacheMaxSize())
+                .expireAfterWrite(properties.getCacheTtlSeconds(), TimeUnit.SECONDS).recordStats().build();
+    }
+
+    /** 是否启用缓存 */
+    public boolean isEnabled() {
+        return properties.isCacheEnabled();
+    }
+
+    /** 查询缓存的分数
+     *
+     * @param queryHash 查询哈希
+     * @param documentId 文档片段ID
+     * @param content 片段内容
+     * @return 缓存的分数，未命中返回null */
+    public Double get(String queryHash, String documentId, String content) {
+        if (documentId == null) {
+            return null;
+        }
+        return cache.getIfPresent(buildKey(queryHash, documentId, content));
+    }
+
+    /** 写入分数
+     *
+     * @param queryHash 查询哈希
+     * @param documentId 文档片段ID
+     * @param content 片段内容
+     * @param score 相关性分数 */
+    public void put(String queryHash, String documentId, String content, Double score) {
+        if (documentId == null || score == null) {
+            return;
+        }
+        cache.put(buildKey(queryHash, documentId, content), score);
+    }
+
+    /** 获取缓存统计信息 */
+    public String stats() {
+        return cache.stats().toString();
+    }
+
+    private String buildKey(String queryHash, String documentId, String content) {
+        return queryHash + ':' + documentId + ':' + DigestUtil.sha256Hex(content == null ? "" : content);
+    }
+}
@@ -1,5 +1,6 @@
 package org.xhy.infrastructure.rag.config;
 
+import org.postgresql.ds.PGSimpleDataSource;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -25,17 +26,23 @@ public class EmbeddingConfig {
         this.embeddingProperties = embeddingProperties;
     }
 
-    /** 向量化存储配置
+    /** 向量化存储配置 开启reWriteBatchedInserts，批量写入向量时驱动将JDBC批处理改写为多行INSERT，一个批次只需一次往返
      * @return PgVectorEmbeddingStore实例 */
     @Bean
     public EmbeddingStore<TextSegment> initEmbeddingStore() {
         EmbeddingProperties.VectorStore vectorStoreConfig = embeddingProperties.getVectorStore();
 
-        return PgVectorEmbeddingStore.builder().table(vectorStoreConfig.getTable())
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setServerNames(new String[]{vectorStoreConfig.getHost()});
+        dataSource.setPortNumbers(new int[]{vectorStoreConfig.getPort()});
+        dataSource.setDatabaseName(vectorStoreConfig.getDatabase());
+        dataSource.setUser(vectorStoreConfig.getUser());
+        dataSource.setPassword(vectorStoreConfig.getPassword());
+        dataSource.setReWriteBatchedInserts(true);
+
+        return PgVectorEmbeddingStore.datasourceBuilder().datasource(dataSource).table(vectorStoreConfig.getTable())
                 .dropTableFirst(vectorStoreConfig.isDropTableFirst()).createTable(vectorStoreConfig.isCreateTable())
-                .host(vectorStoreConfig.getHost()).port(vectorStoreConfig.getPort()).user(vectorStoreConfig.getUser())
-                .password(vectorStoreConfig.getPassword()).dimension(vectorStoreConfig.getDimension())
-                .database(vectorStoreConfig.getDatabase()).build();
+                .dimension(vectorStoreConfig.getDimension()).build();
     }
 
 }
@@ -31,6 +31,9 @@ public class MarkdownProcessorProperties {
         /** 重叠区域大小 */
         private int overlapSize = 50;
 
+        /** 是否使用单遍流式分段，关闭时构建完整文档树后递归分段，两者结果一致 */
+        private boolean streaming = true;
+
         public int getMaxLength() {
             return maxLength;
         }
@@ -78,6 +81,14 @@ public class MarkdownProcessorProperties {
         public void setOverlapSize(int overlapSize) {
             this.overlapSize = overlapSize;
         }
+
+        public boolean isStreaming() {
+            return streaming;
+        }
+
+        public void setStreaming(boolean streaming) {
+            this.streaming = streaming;
+        }
     }
 
     public SegmentSplit getSegmentSplit() {
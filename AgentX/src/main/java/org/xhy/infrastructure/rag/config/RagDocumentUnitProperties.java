@@ -0,0 +1,29 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG文档单元配置属性类 用于配置文档单元落库时每条多行写入语句包含的单元数 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.document-unit")
+public class RagDocumentUnitProperties {
+
+    /** 单条语句的绑定参数上限为32767，每个单元占8个参数 */
+    private static final int MAX_WRITE_BATCH_SIZE = 4000;
+
+    /** 每条写入语句最多包含的单元数 */
+    private int writeBatchSize = 500;
+
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    public void setWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+    }
+
+    /** 实际使用的批大小，限制在1到绑定参数上限之间 */
+    public int effectiveWriteBatchSize() {
+        return Math.max(1, Math.min(writeBatchSize, MAX_WRITE_BATCH_SIZE));
+    }
+}
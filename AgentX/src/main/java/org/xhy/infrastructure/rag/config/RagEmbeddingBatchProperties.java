@@ -0,0 +1,109 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG批量向量化配置属性类 用于配置每个向量化批次的段落数量、估算token上限、批次失败后的重试策略、嵌入接口并发上限以及向量缓存的开关和淘汰策略 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.embedding-batch")
+public class RagEmbeddingBatchProperties {
+
+    /** 每批最多段落数 */
+    private int batchSize = 32;
+
+    /** 每批估算token上限，超出时提前切分新批次 */
+    private int maxTokens = 8192;
+
+    /** 整批失败后的重试次数，重试耗尽后二分拆批以隔离失败段落 */
+    private int maxRetries = 2;
+
+    /** 重试初始退避时间（毫秒），每次重试翻倍 */
+    private long retryBackoffMillis = 500;
+
+    /** 是否按内容哈希复用已有向量，只对新内容调用嵌入接口 */
+    private boolean cacheEnabled = true;
+
+    /** 同时进行的最大嵌入请求数，所有向量化消费者共享 */
+    private int maxConcurrentRequests = 8;
+
+    /** 向量缓存最大条目数，超出时淘汰最久未使用的条目 */
+    private long cacheMaxEntries = 1_000_000;
+
+    /** 向量缓存条目的保留期（秒），超过该时间未命中的条目被淘汰 */
+    private long cacheRetentionSeconds = 30L * 24 * 3600;
+
+    /** 向量缓存淘汰任务每批删除的条目数 */
+    private int cacheEvictBatchSize = 1000;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public void setMaxTokens(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public long getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(long cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public long getCacheRetentionSeconds() {
+        return cacheRetentionSeconds;
+    }
+
+    public void setCacheRetentionSeconds(long cacheRetentionSeconds) {
+        this.cacheRetentionSeconds = cacheRetentionSeconds;
+    }
+
+    public int getCacheEvictBatchSize() {
+        return cacheEvictBatchSize;
+    }
+
+    public void setCacheEvictBatchSize(int cacheEvictBatchSize) {
+        this.cacheEvictBatchSize = cacheEvictBatchSize;
+    }
+}
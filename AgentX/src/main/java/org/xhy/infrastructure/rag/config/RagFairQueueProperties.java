@@ -0,0 +1,96 @@
+package org.xhy.infrastructure.rag.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG入库公平排队配置属性类 用于配置预处理任务放行的全局并发窗口、每个用户的并发上限与权重、调度间隔和超时回收 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.fair-queue")
+public class RagFairQueueProperties {
+
+    /** 是否启用公平排队，关闭时预处理消息直接发送到预处理队列 */
+    private boolean enabled = true;
+
+    /** 同时放行到预处理队列的最大文件数，应不小于预处理消费者数 */
+    private int maxInFlight = 8;
+
+    /** 每个用户同时处理的最大文件数（乘以用户权重），为其他用户保留名额；0表示不限制 */
+    private int maxInFlightPerUser = 6;
+
+    /** 用户权重，未配置的用户权重为1；权重越高分得的并发名额越多 */
+    private Map<String, Integer> userWeights = new HashMap<>();
+
+    /** 调度间隔（毫秒），提交和处理结束时也会立即触发调度 */
+    private long dispatchIntervalMillis = 2000;
+
+    /** 放行后超过该时间（分钟）仍未结束的任务视为丢失并释放名额 */
+    private long dispatchTimeoutMinutes = 120;
+
+    /** 排队时间统计窗口（分钟） */
+    private long statsWindowMinutes = 60;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxInFlightPerUser() {
+        return maxInFlightPerUser;
+    }
+
+    public void setMaxInFlightPerUser(int maxInFlightPerUser) {
+        this.maxInFlightPerUser = maxInFlightPerUser;
+    }
+
+    public Map<String, Integer> getUserWeights() {
+        return userWeights;
+    }
+
+    public void setUserWeights(Map<String, Integer> userWeights) {
+        this.userWeights = userWeights;
+    }
+
+    public long getDispatchIntervalMillis() {
+        return dispatchIntervalMillis;
+    }
+
+    public void setDispatchIntervalMillis(long dispatchIntervalMillis) {
+        this.dispatchIntervalMillis = dispatchIntervalMillis;
+    }
+
+    public long getDispatchTimeoutMinutes() {
+        return dispatchTimeoutMinutes;
+    }
+
+    public void setDispatchTimeoutMinutes(long dispatchTimeoutMinutes) {
+        this.dispatchTimeoutMinutes = dispatchTimeoutMinutes;
+    }
+
+    public long getStatsWindowMinutes() {
+        return statsWindowMinutes;
+    }
+
+    public void setStatsWindowMinutes(long statsWindowMinutes) {
+        this.statsWindowMinutes = statsWindowMinutes;
+    }
+
+    /** 用户权重，至少为1 */
+    public int weightOf(String userId) {
+        Integer weight = userId != null ? userWeights.get(userId) : null;
+        return weight != null && weight > 0 ? weight : 1;
+    }
+}
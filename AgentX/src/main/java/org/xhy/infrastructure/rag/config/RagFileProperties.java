@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG文件读取配置属性类 用于配置下载文件的临时落盘目录以及单个处理任务解析文件时可占用的内存上限 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.file")
+public class RagFileProperties {
+
+    /** 临时文件目录，为空时使用系统临时目录 */
+    private String tempDir;
+
+    /** 单个任务解析文件时可占用的内存上限（字节），PDF解析缓存超出部分落盘，需整体读入内存的文件超出时拒绝处理 */
+    private long maxMemoryBytes = 64L * 1024 * 1024;
+
+    /** 纯文本按窗口流式切分时每个窗口的字符数 */
+    private int textWindowChars = 256 * 1024;
+
+    public String getTempDir() {
+        return tempDir;
+    }
+
+    public void setTempDir(String tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    public void setMaxMemoryBytes(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    public int getTextWindowChars() {
+        return textWindowChars;
+    }
+
+    public void setTextWindowChars(int textWindowChars) {
+        this.textWindowChars = textWindowChars;
+    }
+}
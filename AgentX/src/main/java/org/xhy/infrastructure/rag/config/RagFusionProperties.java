@@ -0,0 +1,54 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG混合检索融合配置属性类 数据集未单独指定融合策略时使用此处的默认策略与权重 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.fusion")
+public class RagFusionProperties {
+
+    /** 默认融合策略：RRF/WEIGHTED_RRF/MIN_MAX/Z_SCORE/DBSF */
+    private String strategy = "RRF";
+
+    /** RRF算法参数k，用于平衡不同检索方式的排序差异 */
+    private int rrfK = 60;
+
+    /** 向量检索结果权重 */
+    private double vectorWeight = 1.0;
+
+    /** 关键词检索结果权重 */
+    private double keywordWeight = 1.0;
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(String strategy) {
+        this.strategy = strategy;
+    }
+
+    public int getRrfK() {
+        return rrfK;
+    }
+
+    public void setRrfK(int rrfK) {
+        this.rrfK = rrfK;
+    }
+
+    public double getVectorWeight() {
+        return vectorWeight;
+    }
+
+    public void setVectorWeight(double vectorWeight) {
+        this.vectorWeight = vectorWeight;
+    }
+
+    public double getKeywordWeight() {
+        return keywordWeight;
+    }
+
+    public void setKeywordWeight(double keywordWeight) {
+        this.keywordWeight = keywordWeight;
+    }
+}
@@ -0,0 +1,71 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG入库消息重试配置属性类 用于配置预处理和向量化消息失败后的延迟重试次数与退避时间，超过次数的消息进入死信队列 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.ingestion-retry")
+public class RagIngestionRetryProperties {
+
+    /** 最大重试次数，每次重试对应一个固定延迟的重试队列 */
+    private int maxRetries = 3;
+
+    /** 第一次重试前的等待时间（毫秒） */
+    private long initialBackoffMillis = 10000;
+
+    /** 每次重试等待时间的放大倍数 */
+    private double multiplier = 3.0;
+
+    /** 重试等待时间上限（毫秒） */
+    private long maxBackoffMillis = 300000;
+
+    /** 转发失败消息后等待代理确认的超时时间（毫秒），超时视为转发失败，原消息重新入队 */
+    private long confirmTimeoutMillis = 5000;
+
+    /** 第level次重试（从1开始）前的等待时间 */
+    public long backoffMillis(int level) {
+        double backoff = initialBackoffMillis * Math.pow(multiplier, Math.max(0, level - 1));
+        return (long) Math.min(backoff, maxBackoffMillis);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public long getConfirmTimeoutMillis() {
+        return confirmTimeoutMillis;
+    }
+
+    public void setConfirmTimeoutMillis(long confirmTimeoutMillis) {
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+    }
+}
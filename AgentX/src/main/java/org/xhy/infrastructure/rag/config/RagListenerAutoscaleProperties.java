@@ -0,0 +1,153 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG入库监听器自动伸缩配置属性类 用于配置预处理、向量化队列消费者数量和预取数的调整范围、采样间隔以及下游饱和时的退让阈值 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.listener-autoscale")
+public class RagListenerAutoscaleProperties {
+
+    /** 是否启用自动伸缩，关闭时沿用 spring.rabbitmq.listener.simple 的固定并发 */
+    private boolean enabled = true;
+
+    /** 采样间隔（毫秒） */
+    private long intervalMillis = 10000;
+
+    /** 每个队列最少消费者数 */
+    private int minConsumers = 2;
+
+    /** 每个队列最多消费者数 */
+    private int maxConsumers = 19;
+
+    /** 最小预取数 */
+    private int minPrefetch = 1;
+
+    /** 最大预取数，积压超过最多消费者的处理能力时逐步提高 */
+    private int maxPrefetch = 5;
+
+    /** 每个消费者期望承担的积压消息数，积压除以该值即目标消费者数 */
+    private int messagesPerConsumer = 10;
+
+    /** 每次扩容最多增加的消费者数 */
+    private int scaleUpStep = 4;
+
+    /** 每次缩容或退让最多减少的消费者数 */
+    private int scaleDownStep = 2;
+
+    /** 消费者忙碌比例达到该值且仍有积压时至少扩容一个消费者 */
+    private double scaleUpUtilization = 0.8;
+
+    /** 消费者忙碌比例低于该值时才允许缩容 */
+    private double scaleDownUtilization = 0.5;
+
+    /** 连续多少个采样周期满足缩容条件后才缩容，避免抖动 */
+    private int scaleDownDelayCycles = 3;
+
+    /** 下游（OCR、嵌入接口）并发许可占用比例达到该值时视为饱和，减少消费者并降到最小预取数 */
+    private double saturationThreshold = 0.9;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public int getMinConsumers() {
+        return minConsumers;
+    }
+
+    public void setMinConsumers(int minConsumers) {
+        this.minConsumers = minConsumers;
+    }
+
+    public int getMaxConsumers() {
+        return maxConsumers;
+    }
+
+    public void setMaxConsumers(int maxConsumers) {
+        this.maxConsumers = maxConsumers;
+    }
+
+    public int getMinPrefetch() {
+        return minPrefetch;
+    }
+
+    public void setMinPrefetch(int minPrefetch) {
+        this.minPrefetch = minPrefetch;
+    }
+
+    public int getMaxPrefetch() {
+        return maxPrefetch;
+    }
+
+    public void setMaxPrefetch(int maxPrefetch) {
+        this.maxPrefetch = maxPrefetch;
+    }
+
+    public int getMessagesPerConsumer() {
+        return messagesPerConsumer;
+    }
+
+    public void setMessagesPerConsumer(int messagesPerConsumer) {
+        this.messagesPerConsumer = messagesPerConsumer;
+    }
+
+    public int getScaleUpStep() {
+        return scaleUpStep;
+    }
+
+    public void setScaleUpStep(int scaleUpStep) {
+        this.scaleUpStep = scaleUpStep;
+    }
+
+    public int getScaleDownStep() {
+        return scaleDownStep;
+    }
+
+    public void setScaleDownStep(int scaleDownStep) {
+        this.scaleDownStep = scaleDownStep;
+    }
+
+    public double getScaleUpUtilization() {
+        return scaleUpUtilization;
+    }
+
+    public void setScaleUpUtilization(double scaleUpUtilization) {
+        this.scaleUpUtilization = scaleUpUtilization;
+    }
+
+    public double getScaleDownUtilization() {
+        return scaleDownUtilization;
+    }
+
+    public void setScaleDownUtilization(double scaleDownUtilization) {
+        this.scaleDownUtilization = scaleDownUtilization;
+    }
+
+    public int getScaleDownDelayCycles() {
+        return scaleDownDelayCycles;
+    }
+
+    public void setScaleDownDelayCycles(int scaleDownDelayCycles) {
+        this.scaleDownDelayCycles = scaleDownDelayCycles;
+    }
+
+    public double getSaturationThreshold() {
+        return saturationThreshold;
+    }
+
+    public void setSaturationThreshold(double saturationThreshold) {
+        this.saturationThreshold = saturationThreshold;
+    }
+}
@@ -0,0 +1,120 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG文档OCR配置属性类 用于配置PDF文本层判定阈值、页面渲染并发度、单个OCR服务商的并发上限以及失败重试策略 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.ocr")
+public class RagOcrProperties {
+
+    /** 是否优先使用PDF文本层，文本层质量合格的页面不再OCR */
+    private boolean textLayerEnabled = true;
+
+    /** 文本层可用的最少非空白字符数 */
+    private int textLayerMinChars = 50;
+
+    /** 含内嵌图片的页面文本层可用的最少非空白字符数，低于此值视为以图片为主的页面 */
+    private int imagePageMinChars = 200;
+
+    /** 文本层中无法映射为Unicode的字形最大占比 */
+    private double textLayerMaxUnmappedRatio = 0.05;
+
+    /** 单个PDF任务的页面渲染线程数，每个渲染线程只加载一次PDF；同时也是所有任务同时渲染的页面数上限 */
+    private int renderThreads = 2;
+
+    /** 单个OCR服务商（按baseUrl区分）同时进行的最大请求数 */
+    private int maxConcurrentRequests = 4;
+
+    /** OCR请求线程池大小，所有服务商共享 */
+    private int requestThreads = 16;
+
+    /** 单页OCR失败后的最大重试次数 */
+    private int maxRetries = 3;
+
+    /** 首次重试前的等待时间（毫秒），之后按指数递增 */
+    private long initialBackoffMillis = 1000;
+
+    /** 重试等待时间上限（毫秒） */
+    private long maxBackoffMillis = 15000;
+
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    public void setRenderThreads(int renderThreads) {
+        this.renderThreads = renderThreads;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public int getRequestThreads() {
+        return requestThreads;
+    }
+
+    public void setRequestThreads(int requestThreads) {
+        this.requestThreads = requestThreads;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public boolean isTextLayerEnabled() {
+        return textLayerEnabled;
+    }
+
+    public void setTextLayerEnabled(boolean textLayerEnabled) {
+        this.textLayerEnabled = textLayerEnabled;
+    }
+
+    public int getTextLayerMinChars() {
+        return textLayerMinChars;
+    }
+
+    public void setTextLayerMinChars(int textLayerMinChars) {
+        this.textLayerMinChars = textLayerMinChars;
+    }
+
+    public int getImagePageMinChars() {
+        return imagePageMinChars;
+    }
+
+    public void setImagePageMinChars(int imagePageMinChars) {
+        this.imagePageMinChars = imagePageMinChars;
+    }
+
+    public double getTextLayerMaxUnmappedRatio() {
+        return textLayerMaxUnmappedRatio;
+    }
+
+    public void setTextLayerMaxUnmappedRatio(double textLayerMaxUnmappedRatio) {
+        this.textLayerMaxUnmappedRatio = textLayerMaxUnmappedRatio;
+    }
+}
@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG文件处理进度推送配置属性类 用于配置进度合并推送的周期、兜底全量对账周期和SSE连接超时 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.progress-push")
+public class RagProgressPushProperties {
+
+    /** 合并推送周期（毫秒），同一文件在一个周期内的多次变更只推送一次 */
+    private long intervalMillis = 500;
+
+    /** 对订阅中的数据集全量对账的周期（毫秒），补齐其他实例处理的文件和遗漏的事件 */
+    private long resyncIntervalMillis = 15000;
+
+    /** SSE连接超时（毫秒），超时后前端重新订阅 */
+    private long emitterTimeoutMillis = 1800000;
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public long getResyncIntervalMillis() {
+        return resyncIntervalMillis;
+    }
+
+    public void setResyncIntervalMillis(long resyncIntervalMillis) {
+        this.resyncIntervalMillis = resyncIntervalMillis;
+    }
+
+    public long getEmitterTimeoutMillis() {
+        return emitterTimeoutMillis;
+    }
+
+    public void setEmitterTimeoutMillis(long emitterTimeoutMillis) {
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+    }
+}
@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG检索结果缓存配置属性类 用于配置混合检索结果缓存的容量和过期时间 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.search-cache")
+public class RagSearchCacheProperties {
+
+    /** 是否启用检索结果缓存 */
+    private boolean enabled = true;
+
+    /** 最大缓存条目数 */
+    private long maxSize = 10000;
+
+    /** 缓存过期时间（秒），数据集版本变化时缓存键会自动失效，过期时间仅用于兜底回收 */
+    private long ttlSeconds = 1800;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+}
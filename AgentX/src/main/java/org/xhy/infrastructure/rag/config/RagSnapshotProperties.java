@@ -0,0 +1,54 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG快照配置属性类 用于配置发布版本时分块集合按块写入的大小，以及无引用分块集合和分块的回收周期 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.snapshot")
+public class RagSnapshotProperties {
+
+    /** 每条INSERT ... SELECT语句最多处理的文档数，过大会让单条语句持锁和生成WAL过多 */
+    private int copyBatchSize = 2000;
+
+    /** 回收无引用分块集合和分块的周期（毫秒） */
+    private long gcIntervalMillis = 600000;
+
+    /** 引用数归零后保留的宽限期（秒），期间重新发布相同内容可直接复用 */
+    private long gcGraceSeconds = 3600;
+
+    /** 每条回收语句最多删除的集合或分块数 */
+    private int gcBatchSize = 500;
+
+    public int getCopyBatchSize() {
+        return copyBatchSize;
+    }
+
+    public void setCopyBatchSize(int copyBatchSize) {
+        this.copyBatchSize = copyBatchSize;
+    }
+
+    public long getGcIntervalMillis() {
+        return gcIntervalMillis;
+    }
+
+    public void setGcIntervalMillis(long gcIntervalMillis) {
+        this.gcIntervalMillis = gcIntervalMillis;
+    }
+
+    public long getGcGraceSeconds() {
+        return gcGraceSeconds;
+    }
+
+    public void setGcGraceSeconds(long gcGraceSeconds) {
+        this.gcGraceSeconds = gcGraceSeconds;
+    }
+
+    public int getGcBatchSize() {
+        return gcBatchSize;
+    }
+
+    public void setGcBatchSize(int gcBatchSize) {
+        this.gcBatchSize = gcBatchSize;
+    }
+}
@@ -0,0 +1,54 @@
+package org.xhy.infrastructure.rag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** RAG特殊节点翻译配置属性类 用于配置代码、表格、图片、公式节点翻译的并发上限和翻译结果缓存 */
+@Configuration
+@ConfigurationProperties(prefix = "rag.translation")
+public class RagTranslationProperties {
+
+    /** 同时进行的最大翻译请求数，所有文档共享 */
+    private int maxConcurrentRequests = 8;
+
+    /** 是否启用翻译结果缓存 */
+    private boolean cacheEnabled = true;
+
+    /** 最大缓存条目数 */
+    private long cacheMaxSize = 10000;
+
+    /** 缓存过期时间（秒） */
+    private long cacheTtlSeconds = 86400;
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public long getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(long cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public long getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    public void setCacheTtlSeconds(long cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+}
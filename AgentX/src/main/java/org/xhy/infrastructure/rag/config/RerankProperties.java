@@ -22,9 +22,36 @@ public class RerankProperties {
     /** 使用的模型名称 */
     private String model;
 
-    /** 请求超时时间(毫秒) */
+    /** 请求超时时间(毫秒)，超时后回退为RRF融合顺序 */
     private int timeout;
 
+    /** 单个候选文档的token预算，超出部分截断后再发送 */
+    private int maxDocumentTokens = 512;
+
+    /** 单次请求的最大候选数量，超出时拆分为多个批次并行请求 */
+    private int batchSize = 16;
+
+    /** 并行请求的最大线程数 */
+    private int parallelism = 4;
+
+    /** 等待执行的批次队列容量，队列满时由提交请求的线程直接执行批次 */
+    private int queueCapacity = 64;
+
+    /** 本地重排序器名称（bm25/proximity），远程重排序失败或超时时用于兜底，设为none时回退为RRF融合顺序 */
+    private String localReranker = "bm25";
+
+    /** 是否直接使用本地重排序器，不调用远程重排序服务 */
+    private boolean localOnly = false;
+
+    /** 是否启用重排序分数缓存 */
+    private boolean cacheEnabled = true;
+
+    /** 分数缓存最大条目数 */
+    private long cacheMaxSize = 50000;
+
+    /** 分数缓存过期时间（秒） */
+    private long cacheTtlSeconds = 3600;
+
     public String getName() {
         return name;
     }
@@ -64,4 +91,76 @@ public class RerankProperties {
     public void setTimeout(int timeout) {
         this.timeout = timeout;
     }
+
+    public int getMaxDocumentTokens() {
+        return maxDocumentTokens;
+    }
+
+    public void setMaxDocumentTokens(int maxDocumentTokens) {
+        this.maxDocumentTokens = maxDocumentTokens;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public String getLocalReranker() {
+        return localReranker;
+    }
+
+    public void setLocalReranker(String localReranker) {
+        this.localReranker = localReranker;
+    }
+
+    public boolean isLocalOnly() {
+        return localOnly;
+    }
+
+    public void setLocalOnly(boolean localOnly) {
+        this.localOnly = localOnly;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public long getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(long cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    public long getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    public void setCacheTtlSeconds(long cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
 }
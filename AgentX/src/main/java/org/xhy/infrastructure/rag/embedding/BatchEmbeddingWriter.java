@@ -0,0 +1,189 @@
+package org.xhy.infrastructure.rag.embedding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.rag.config.RagEmbeddingBatchProperties;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+/** 批量向量写入器 一个批次只调用一次embedAll，并通过一次批量upsert写入向量库。 向量ID由段落ID确定性生成，重试或消息重投时覆盖写入而不会产生重复向量；
+ * 整批重试耗尽后二分拆批，只放弃真正失败的段落。内容已在向量缓存中的段落直接复用向量，只对新内容调用嵌入接口。
+ * 嵌入接口的在途请求数由共享的信号量限制，许可占用比例作为向量化队列自动伸缩的下游饱和度。 */
+@Component
+public class BatchEmbeddingWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchEmbeddingWriter.class);
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+
+    private final EmbeddingCache embeddingCache;
+
+    private final RagEmbeddingBatchProperties properties;
+
+    private final Semaphore permits;
+
+    private final int maxPermits;
+
+    public BatchEmbeddingWriter(@Qualifier("initEmbeddingStore") EmbeddingStore<TextSegment> embeddingStore,
+            EmbeddingCache embeddingCache, RagEmbeddingBatchProperties properties) {
+        this.embeddingStore = embeddingStore;
+        this.embeddingCache = embeddingCache;
+        this.properties = properties;
+        this.maxPermits = Math.max(1, properties.getMaxConcurrentRequests());
+        this.permits = new Semaphore(maxPermits, true);
+    }
+
+    /** 嵌入接口并发许可的占用比例 */
+    public double saturation() {
+        return 1.0 - (double) permits.availablePermits() / maxPermits;
+    }
+
+    /** 向量化并写入一个批次
+     *
+     * @param embeddingModel 嵌入模型
+     * @param modelKey 嵌入模型标识，用于向量缓存
+     * @param segmentIds 段落ID，与segments一一对应
+     * @param segments 段落
+     * @return 失败段落及缓存命中统计 */
+    public EmbeddingWriteResult write(EmbeddingModel embeddingModel, String modelKey, List<String> segmentIds,
+            List<TextSegment> segments) {
+        EmbeddingWriteResult result = new EmbeddingWriteResult();
+        if (segments.isEmpty()) {
+            return result;
+        }
+        RuntimeException error = null;
+        long backoff = Math.max(1, properties.getRetryBackoffMillis());
+        for (int attempt = 0; attempt <= properties.getMaxRetries(); attempt++) {
+            try {
+                embedAndStore(embeddingModel, modelKey, segmentIds, segments, result);
+                return result;
+            } catch (RuntimeException e) {
+                error = e;
+                if (attempt < properties.getMaxRetries()) {
+                    log.warn("{}个段落的批次第{}次向量化失败，{}ms后重试: {}", segments.size(), attempt + 1, backoff,
+                            e.getMessage());
+                    if (!sleep(backoff)) {
+                        break;
+                    }
+                    backoff *= 2;
+                }
+            }
+        }
+        log.warn("{}个段落的批次重试耗尽，拆分批次定位失败段落: {}", segments.size(), error.getMessage());
+        bisect(embeddingModel, modelKey, segmentIds, segments, result);
+        return result;
+    }
+
+    /** 二分拆批逐段尝试，每个子批次只尝试一次 */
+    private void bisect(EmbeddingModel embeddingModel, String modelKey, List<String> segmentIds,
+            List<TextSegment> segments, EmbeddingWriteResult result) {
+        if (segments.size() == 1) {
+            result.getFailedIds().add(segmentIds.get(0));
+            return;
+        }
+        int middle = segments.size() / 2;
+        for (int[] range : new int[][]{{0, middle}, {middle, segments.size()}}) {
+            List<String> ids = segmentIds.subList(range[0], range[1]);
+            List<TextSegment> part = segments.subList(range[0], range[1]);
+            try {
+                embedAndStore(embeddingModel, modelKey, ids, part, result);
+            } catch (RuntimeException e) {
+                if (part.size() == 1) {
+                    log.error("段落{}向量化失败: {}", ids.get(0), e.getMessage());
+                }
+                bisect(embeddingModel, modelKey, ids, part, result);
+            }
+        }
+    }
+
+    /** 先按内容哈希查缓存，批次内相同文本只向嵌入接口请求一次，新生成的向量写回缓存后整批写入向量库 */
+    private void embedAndStore(EmbeddingModel embeddingModel, String modelKey, List<String> segmentIds,
+            List<TextSegment> segments, EmbeddingWriteResult result) {
+        List<String> keys = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            keys.add(EmbeddingCache.key(modelKey, segment.text()));
+        }
+        Map<String, Embedding> vectors = embeddingCache.lookup(new LinkedHashSet<>(keys));
+
+        Map<String, TextSegment> missing = new LinkedHashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            if (!vectors.containsKey(keys.get(i))) {
+                missing.putIfAbsent(keys.get(i), segments.get(i));
+            }
+        }
+
+        Map<String, Embedding> generated = new LinkedHashMap<>();
+        if (!missing.isEmpty()) {
+            List<TextSegment> toEmbed = new ArrayList<>(missing.values());
+            List<Embedding> embeddings = embedAll(embeddingModel, toEmbed);
+            if (embeddings == null || embeddings.size() != toEmbed.size()) {
+                throw new IllegalStateException("嵌入模型返回的向量数量与段落数量不一致");
+            }
+            int index = 0;
+            for (String key : missing.keySet()) {
+                generated.put(key, embeddings.get(index++));
+            }
+            vectors.putAll(generated);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        List<String> vectorIds = new ArrayList<>(segmentIds.size());
+        for (int i = 0; i < segments.size(); i++) {
+            embeddings.add(vectors.get(keys.get(i)));
+            vectorIds.add(vectorId(segmentIds.get(i)));
+        }
+        embeddingStore.addAll(vectorIds, embeddings, segments);
+
+        embeddingCache.put(modelKey, generated);
+        // 每个新生成的向量只算作首个使用它的段落未命中，批次内其余相同文本算作命中
+        Set<String> generatedKeys = new HashSet<>(generated.keySet());
+        for (int i = 0; i < segments.size(); i++) {
+            result.record(segmentIds.get(i), !generatedKeys.remove(keys.get(i)));
+        }
+    }
+
+    private List<Embedding> embedAll(EmbeddingModel embeddingModel, List<TextSegment> segments) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待嵌入请求许可时被中断", e);
+        }
+        try {
+            return embeddingModel.embedAll(segments).content();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** 由段落ID生成确定性的向量ID */
+    public static String vectorId(String segmentId) {
+        return UUID.nameUUIDFromBytes(segmentId.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.xhy.infrastructure.rag.embedding;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.rag.model.EmbeddingCacheEntity;
+import org.xhy.domain.rag.model.ModelConfig;
+import org.xhy.domain.rag.repository.EmbeddingCacheRepository;
+import org.xhy.infrastructure.rag.config.RagEmbeddingBatchProperties;
+
+import dev.langchain4j.data.embedding.Embedding;
+
+/** 内容寻址的嵌入向量缓存 以嵌入模型标识加规范化文本的SHA-256为键持久化在Postgres中，
+ * 重复上传、配置变更后重新处理以及公共模板文本都直接复用已有向量。缓存只是加速手段，读写失败时按未命中处理。
+ * 命中时刷新条目的最近使用时间，定时淘汰超过保留期未使用的条目，条目数超过上限时再淘汰最久未使用的条目。 */
+@Component
+public class EmbeddingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingCache.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingCacheRepository embeddingCacheRepository;
+
+    private final RagEmbeddingBatchProperties properties;
+
+    public EmbeddingCache(EmbeddingCacheRepository embeddingCacheRepository, RagEmbeddingBatchProperties properties) {
+        this.embeddingCacheRepository = embeddingCacheRepository;
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isCacheEnabled();
+    }
+
+    /** 批量查找缓存向量
+     * @param keys 缓存键
+     * @return 命中的缓存键与向量 */
+    public Map<String, Embedding> lookup(Collection<String> keys) {
+        Map<String, Embedding> hits = new HashMap<>();
+        if (!isEnabled() || keys.isEmpty()) {
+            return hits;
+        }
+        try {
+            for (EmbeddingCacheEntity entry : embeddingCacheRepository.selectBatchIds(keys)) {
+                hits.put(entry.getId(), Embedding.from(decode(entry.getVector(), entry.getDimension())));
+            }
+        } catch (Exception e) {
+            log.warn("查询向量缓存失败，按未命中处理: {}", e.getMessage());
+            return hits;
+        }
+        if (!hits.isEmpty()) {
+            try {
+                embeddingCacheRepository.touch(hits.keySet());
+            } catch (Exception e) {
+                log.warn("刷新向量缓存使用时间失败: {}", e.getMessage());
+            }
+        }
+        return hits;
+    }
+
+    /** 写入新生成的向量，已存在的键保持不变
+     * @param modelKey 嵌入模型标识
+     * @param embeddings 缓存键与向量 */
+    public void put(String modelKey, Map<String, Embedding> embeddings) {
+        if (!isEnabled() || embeddings.isEmpty()) {
+            return;
+        }
+        List<EmbeddingCacheEntity> entries = new ArrayList<>(embeddings.size());
+        embeddings.forEach((key, embedding) -> {
+            EmbeddingCacheEntity entry = new EmbeddingCacheEntity();
+            entry.setId(key);
+            entry.setModelKey(modelKey);
+            entry.setDimension(embedding.dimension());
+            entry.setVector(encode(embedding.vector()));
+            entries.add(entry);
+        });
+        try {
+            embeddingCacheRepository.insertIgnoreBatch(entries);
+        } catch (Exception e) {
+            log.warn("写入向量缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /** 定时淘汰向量缓存条目 */
+    @Scheduled(fixedDelayString = "${rag.embedding-batch.cache-evict-interval-millis:3600000}",
+            initialDelayString = "${rag.embedding-batch.cache-evict-interval-millis:3600000}")
+    public void evictPeriodically() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            evict();
+        } catch (Exception e) {
+            log.warn("淘汰向量缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /** 分批淘汰超过保留期未使用的条目，剩余条目数仍超过上限时分批淘汰最久未使用的条目
+     * @return 淘汰的条目数 */
+    public long evict() {
+        int batchSize = Math.max(1, properties.getCacheEvictBatchSize());
+        long evicted = 0;
+        int removed;
+        do {
+            removed = embeddingCacheRepository.evictIdle(properties.getCacheRetentionSeconds(), batchSize);
+            evicted += removed;
+        } while (removed >= batchSize);
+
+        long overflow = embeddingCacheRepository.countEntries() - properties.getCacheMaxEntries();
+        while (overflow > 0) {
+            removed = embeddingCacheRepository.evictLeastRecentlyUsed((int) Math.min(batchSize, overflow));
+            if (removed == 0) {
+                break;
+            }
+            evicted += removed;
+            overflow -= removed;
+        }
+
+        if (evicted > 0) {
+            log.info("淘汰向量缓存条目 {} 个", evicted);
+        }
+        return evicted;
+    }
+
+    /** 嵌入模型标识，同一服务地址下的同名模型共享缓存 */
+    public static String modelKey(ModelConfig modelConfig) {
+        if (modelConfig == null) {
+            return "";
+        }
+        return modelConfig.getBaseUrl() + "|" + modelConfig.getModelEndpoint();
+    }
+
+    /** 缓存键：嵌入模型标识与规范化文本的SHA-256 */
+    public static String key(String modelKey, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelKey.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalize(text).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** 规范化文本：Unicode NFC，连续空白折叠为一个空格并去掉首尾空白 */
+    static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] decode(byte[] bytes, int dimension) {
+        float[] vector = new float[dimension];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,41 @@
+package org.xhy.infrastructure.rag.embedding;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/** 批量向量写入结果 */
+public class EmbeddingWriteResult {
+
+    /** 最终写入失败的段落ID */
+    private final Set<String> failedIds = new LinkedHashSet<>();
+
+    /** 复用缓存向量的段落ID（含批次内重复文本） */
+    private final Set<String> cacheHitIds = new LinkedHashSet<>();
+
+    /** 调用嵌入接口生成向量的段落ID */
+    private final Set<String> cacheMissIds = new LinkedHashSet<>();
+
+    public Set<String> getFailedIds() {
+        return failedIds;
+    }
+
+    public Set<String> getCacheHitIds() {
+        return cacheHitIds;
+    }
+
+    public Set<String> getCacheMissIds() {
+        return cacheMissIds;
+    }
+
+    public int getCacheHits() {
+        return cacheHitIds.size();
+    }
+
+    public int getCacheMisses() {
+        return cacheMissIds.size();
+    }
+
+    void record(String segmentId, boolean cacheHit) {
+        (cacheHit ? cacheHitIds : cacheMissIds).add(segmentId);
+    }
+}
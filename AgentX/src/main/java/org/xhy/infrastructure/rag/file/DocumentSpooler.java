@@ -0,0 +1,89 @@
+package org.xhy.infrastructure.rag.file;
+
+import org.dromara.x.file.storage.core.FileStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.xhy.infrastructure.rag.config.RagFileProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/** 文件落盘器 将存储中的文件直接下载到临时文件，避免把整个文件读入字节数组，处理完成后由调用方关闭删除 */
+@Component
+public class DocumentSpooler {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentSpooler.class);
+
+    private static final String PREFIX = "rag-doc-";
+
+    private final RagFileProperties properties;
+
+    private final FileStorageService fileStorageService;
+
+    public DocumentSpooler(RagFileProperties properties, FileStorageService fileStorageService) {
+        this.properties = properties;
+        this.fileStorageService = fileStorageService;
+    }
+
+    /** 下载存储中的文件到临时文件
+     *
+     * @param url 文件访问地址
+     * @param ext 文件扩展名，可为空
+     * @return 落盘文件，使用完毕后需关闭 */
+    public SpooledDocument spool(String url, String ext) {
+        Path path = createTempFile(ext);
+        try {
+            fileStorageService.download(url).file(path.toFile());
+        } catch (RuntimeException e) {
+            deleteQuietly(path);
+            throw e;
+        }
+        log.info("文件已下载到临时文件 {}", path);
+        return new SpooledDocument(path, properties.getMaxMemoryBytes(), true);
+    }
+
+    /** 将输入流写入临时文件，输入流由调用方关闭 */
+    public SpooledDocument spool(InputStream inputStream, String ext) throws IOException {
+        Path path = createTempFile(ext);
+        try {
+            Files.copy(inputStream, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteQuietly(path);
+            throw e;
+        }
+        return new SpooledDocument(path, properties.getMaxMemoryBytes(), true);
+    }
+
+    public int getTextWindowChars() {
+        return properties.getTextWindowChars();
+    }
+
+    private Path createTempFile(String ext) {
+        String suffix = StringUtils.hasText(ext) ? "." + ext.replaceFirst("^\\.", "") : ".tmp";
+        try {
+            if (StringUtils.hasText(properties.getTempDir())) {
+                Path dir = Paths.get(properties.getTempDir());
+                Files.createDirectories(dir);
+                return Files.createTempFile(dir, PREFIX, suffix);
+            }
+            return Files.createTempFile(PREFIX, suffix);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建临时文件失败", e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除临时文件{}失败: {}", path, e.getMessage());
+        }
+    }
+}
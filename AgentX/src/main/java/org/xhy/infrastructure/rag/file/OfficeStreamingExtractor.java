@@ -0,0 +1,333 @@
+package org.xhy.infrastructure.rag.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xhy.infrastructure.exception.BusinessException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/** Office文档流式提取器 docx按SAX逐个元素解析正文XML，xlsx按XSSF事件模型逐行解析工作表，不构建POI的整篇文档对象模型。
+ * 段落、表格行、工作表名依次作为文本块回调，文本与XWPFWordExtractor/XSSFExcelExtractor的正文一致：
+ * 每块占一行，单元格以制表符分隔，工作表以表名开头。常驻内存的只有当前文本块和xlsx的共享字符串表，二者都受单任务内存上限约束 */
+public final class OfficeStreamingExtractor {
+
+    private OfficeStreamingExtractor() {
+    }
+
+    /** 按窗口聚合文本块后依次回调，窗口只在块边界截断
+     *
+     * @param file 落盘的文档
+     * @param windowChars 窗口字符数
+     * @param consumer 窗口回调
+     * @return 文档不是docx或xlsx时返回false，不回调任何内容 */
+    public static boolean forEachWindow(SpooledDocument file, int windowChars, Consumer<String> consumer)
+            throws IOException {
+        int capacity = Math.max(1024, windowChars);
+        StringBuilder window = new StringBuilder();
+        boolean supported = forEachBlock(file, block -> {
+            window.append(block).append('\n');
+            if (window.length() >= capacity) {
+                consumer.accept(window.toString());
+                window.setLength(0);
+            }
+        });
+        if (window.length() > 0) {
+            consumer.accept(window.toString());
+        }
+        return supported;
+    }
+
+    /** 依次回调文档的每个文本块
+     *
+     * @param file 落盘的文档
+     * @param consumer 文本块回调
+     * @return 文档不是docx或xlsx时返回false，不回调任何内容 */
+    public static boolean forEachBlock(SpooledDocument file, Consumer<String> consumer) throws IOException {
+        try (InputStream in = file.openStream()) {
+            if (FileMagic.valueOf(in) != FileMagic.OOXML) {
+                return false;
+            }
+        }
+
+        try (OPCPackage pkg = OPCPackage.open(file.getFile(), PackageAccess.READ)) {
+            PackagePart main = mainPart(pkg);
+            String contentType = main != null ? main.getContentType() : "";
+            long maxBlockChars = Math.max(1, file.getMaxMemoryBytes() / 2);
+            if (contentType.contains("wordprocessingml") || contentType.contains("ms-word")) {
+                extractDocx(main, maxBlockChars, consumer);
+                return true;
+            }
+            if ((contentType.contains("spreadsheetml") || contentType.contains("ms-excel"))
+                    && !contentType.contains("binary")) {
+                checkSharedStrings(file);
+                extractXlsx(pkg, maxBlockChars, consumer);
+                return true;
+            }
+            return false;
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("解析Office文档失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static PackagePart mainPart(OPCPackage pkg) throws OpenXML4JException {
+        PackageRelationshipCollection rels = pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+        if (rels.size() == 0) {
+            rels = pkg.getRelationshipsByType(PackageRelationshipTypes.STRICT_CORE_DOCUMENT);
+        }
+        return rels.size() == 0 ? null : pkg.getPart(rels.getRelationship(0));
+    }
+
+    private static void extractDocx(PackagePart main, long maxBlockChars, Consumer<String> consumer)
+            throws IOException, SAXException, ParserConfigurationException {
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new DocxBodyHandler(maxBlockChars, consumer));
+        try (InputStream in = main.getInputStream()) {
+            parser.parse(new InputSource(in));
+        }
+    }
+
+    private static void extractXlsx(OPCPackage pkg, long maxBlockChars, Consumer<String> consumer)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+        XSSFReader reader = new XSSFReader(pkg);
+        StylesTable styles = reader.getStylesTable();
+        DataFormatter formatter = new DataFormatter();
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext()) {
+            try (InputStream sheet = sheets.next()) {
+                consumer.accept(sheets.getSheetName());
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings,
+                        new SheetRowHandler(maxBlockChars, consumer), formatter, false));
+                parser.parse(new InputSource(sheet));
+            }
+        }
+    }
+
+    /** 共享字符串表需整体载入内存，解压后大小超过单任务内存上限时拒绝处理 */
+    private static void checkSharedStrings(SpooledDocument file) throws IOException {
+        long size = 0;
+        try (ZipFile zip = new ZipFile(file.getFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().endsWith("sharedStrings.xml")) {
+                    size += Math.max(0, entry.getSize());
+                }
+            }
+        }
+        if (size > file.getMaxMemoryBytes()) {
+            throw new BusinessException("表格共享字符串" + size + "字节超过单任务内存上限" + file.getMaxMemoryBytes() + "字节");
+        }
+    }
+
+    private static void checkBlock(CharSequence block, long maxBlockChars) {
+        if (block.length() > maxBlockChars) {
+            throw new BusinessException("单个段落或表格行超过单任务内存上限");
+        }
+    }
+
+    /** docx正文处理器 段落结束时回调段落文本；表格按行回调，单元格以制表符分隔，单元格内多个段落也以制表符分隔，嵌套表格并入所在单元格。
+     * 文本框内容与XWPF段落文本一样不提取 */
+    static class DocxBodyHandler extends DefaultHandler {
+
+        private static final String TEXT_BOX = "txbxContent";
+
+        private final long maxBlockChars;
+
+        private final Consumer<String> consumer;
+
+        private final StringBuilder paragraph = new StringBuilder();
+
+        private final List<String> rowCells = new ArrayList<>();
+
+        private final StringBuilder cell = new StringBuilder();
+
+        private int tableDepth;
+
+        private int cellParagraphs;
+
+        private boolean inRun;
+
+        private boolean inText;
+
+        /** 所在文本框的嵌套层数 */
+        private int textBoxDepth;
+
+        DocxBodyHandler(long maxBlockChars, Consumer<String> consumer) {
+            this.maxBlockChars = maxBlockChars;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = localName(localName, qName);
+            if (TEXT_BOX.equals(name)) {
+                textBoxDepth++;
+            }
+            if (textBoxDepth > 0) {
+                return;
+            }
+            switch (name) {
+                case "tbl" -> tableDepth++;
+                case "tr" -> {
+                    if (tableDepth == 1) {
+                        rowCells.clear();
+                    }
+                }
+                case "tc" -> {
+                    if (tableDepth == 1) {
+                        cell.setLength(0);
+                        cellParagraphs = 0;
+                    }
+                }
+                case "p" -> paragraph.setLength(0);
+                case "r" -> inRun = true;
+                case "t" -> inText = inRun;
+                case "tab" -> appendInRun("\t");
+                case "br", "cr" -> appendInRun("\n");
+                case "noBreakHyphen" -> appendInRun("‑");
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String name = localName(localName, qName);
+            if (textBoxDepth > 0) {
+                if (TEXT_BOX.equals(name)) {
+                    textBoxDepth--;
+                }
+                return;
+            }
+            switch (name) {
+                case "t" -> inText = false;
+                case "r" -> inRun = false;
+                case "p" -> {
+                    if (tableDepth == 0) {
+                        consumer.accept(paragraph.toString());
+                    } else {
+                        if (cellParagraphs++ > 0) {
+                            cell.append('\t');
+                        }
+                        cell.append(paragraph);
+                        checkBlock(cell, maxBlockChars);
+                    }
+                    paragraph.setLength(0);
+                }
+                case "tc" -> {
+                    if (tableDepth == 1) {
+                        rowCells.add(cell.toString());
+                    }
+                }
+                case "tr" -> {
+                    if (tableDepth == 1) {
+                        consumer.accept(String.join("\t", rowCells));
+                        rowCells.clear();
+                    } else {
+                        cell.append('\n');
+                    }
+                }
+                case "tbl" -> tableDepth--;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText && textBoxDepth == 0) {
+                paragraph.append(ch, start, length);
+                checkBlock(paragraph, maxBlockChars);
+            }
+        }
+
+        private void appendInRun(String text) {
+            if (inRun) {
+                paragraph.append(text);
+            }
+        }
+
+        private static String localName(String localName, String qName) {
+            if (localName != null && !localName.isEmpty()) {
+                return localName;
+            }
+            int colon = qName.indexOf(':');
+            return colon < 0 ? qName : qName.substring(colon + 1);
+        }
+    }
+
+    /** 工作表行处理器 每行回调一次，单元格按格式化后的显示值以制表符分隔，页眉页脚在表尾回调 */
+    static class SheetRowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final long maxBlockChars;
+
+        private final Consumer<String> consumer;
+
+        private final StringBuilder row = new StringBuilder();
+
+        private boolean firstCell;
+
+        SheetRowHandler(long maxBlockChars, Consumer<String> consumer) {
+            this.maxBlockChars = maxBlockChars;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            row.setLength(0);
+            firstCell = true;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            consumer.accept(row.toString());
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (!firstCell) {
+                row.append('\t');
+            }
+            firstCell = false;
+            if (formattedValue != null) {
+                row.append(formattedValue);
+            }
+            checkBlock(row, maxBlockChars);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            if (text != null && !text.isEmpty()) {
+                consumer.accept(text);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.xhy.infrastructure.rag.file;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.xhy.infrastructure.exception.BusinessException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** 落盘的待处理文件 文件内容保存在临时文件中，解析时按需流式读取，关闭时删除临时文件。 内存上限用于约束解析过程中常驻内存的数据量。 */
+public class SpooledDocument implements AutoCloseable {
+
+    private final Path path;
+
+    private final long maxMemoryBytes;
+
+    private final boolean deleteOnClose;
+
+    public SpooledDocument(Path path, long maxMemoryBytes, boolean deleteOnClose) {
+        this.path = path;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.deleteOnClose = deleteOnClose;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public File getFile() {
+        return path.toFile();
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    public long size() throws IOException {
+        return Files.size(path);
+    }
+
+    public boolean isEmpty() throws IOException {
+        return size() == 0;
+    }
+
+    /** 打开带缓冲的输入流，由调用方负责关闭 */
+    public InputStream openStream() throws IOException {
+        return new BufferedInputStream(Files.newInputStream(path));
+    }
+
+    /** 打开带缓冲的字符流，由调用方负责关闭 */
+    public Reader openReader(Charset charset) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(path), charset));
+    }
+
+    /** 将整个文件读为字符串，仅用于必须整体解析的格式，文件超过内存上限时拒绝读取 */
+    public String readString(Charset charset) throws IOException {
+        long size = size();
+        if (size > maxMemoryBytes) {
+            throw new BusinessException("文件大小" + size + "字节超过单任务内存上限" + maxMemoryBytes + "字节");
+        }
+        return Files.readString(path, charset);
+    }
+
+    /** 以随机访问方式加载PDF，不把整个文件读入内存
+     *
+     * @param maxMainMemoryBytes 解析缓存可占用的内存，超出部分写入临时文件 */
+    public PDDocument loadPdf(long maxMainMemoryBytes) throws IOException {
+        MemoryUsageSetting memoryUsage = MemoryUsageSetting.setupMixed(Math.max(1, maxMainMemoryBytes))
+                .setTempDir(path.getParent() != null ? path.getParent().toFile() : null);
+        return Loader.loadPDF(new RandomAccessReadBufferedFile(path.toFile()), memoryUsage.streamCache);
+    }
+
+    /** 以全部内存上限加载PDF */
+    public PDDocument loadPdf() throws IOException {
+        return loadPdf(maxMemoryBytes);
+    }
+
+    @Override
+    public void close() {
+        if (!deleteOnClose) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
+}
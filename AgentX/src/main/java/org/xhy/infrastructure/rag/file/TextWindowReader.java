@@ -0,0 +1,57 @@
+package org.xhy.infrastructure.rag.file;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/** 文本窗口读取器 按固定字符数分窗口流式读取文本，窗口尽量在换行或句末标点处截断，保证句子不被拆开，内存中同时只保留一个窗口 */
+public final class TextWindowReader {
+
+    private TextWindowReader() {
+    }
+
+    /** 依次回调每个文本窗口
+     *
+     * @param reader 字符流，由调用方关闭
+     * @param windowChars 窗口字符数
+     * @param consumer 窗口回调 */
+    public static void forEachWindow(Reader reader, int windowChars, Consumer<String> consumer) throws IOException {
+        int capacity = Math.max(1024, windowChars);
+        char[] buffer = new char[capacity];
+        int length = 0;
+        while (true) {
+            int read = reader.read(buffer, length, capacity - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+            if (length < capacity) {
+                continue;
+            }
+            int cut = findBoundary(buffer, length);
+            consumer.accept(new String(buffer, 0, cut));
+            System.arraycopy(buffer, cut, buffer, 0, length - cut);
+            length -= cut;
+        }
+        if (length > 0) {
+            consumer.accept(new String(buffer, 0, length));
+        }
+    }
+
+    /** 在窗口后半段中从后往前寻找换行，其次是句末标点，都没有时在窗口末尾截断；末尾是代理对的高位时少截一个字符，不拆开代理对 */
+    static int findBoundary(char[] buffer, int length) {
+        int floor = length / 2;
+        for (int i = length - 1; i >= floor; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        for (int i = length - 1; i >= floor; i--) {
+            char c = buffer[i];
+            if (c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?') {
+                return i + 1;
+            }
+        }
+        return Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+    }
+}
@@ -0,0 +1,206 @@
+package org.xhy.infrastructure.rag.fusion;
+
+import org.xhy.domain.rag.constant.SearchType;
+import org.xhy.domain.rag.model.VectorStoreResult;
+import org.xhy.domain.rag.model.enums.FusionStrategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** 混合检索Top-K融合算子 每个文档ID只在入槽时做一次哈希查找，之后分数按槽位累加到double数组中；
+ * 排序阶段用大小为K的最小堆筛选，复杂度为O(n log K)，候选池放大到每路数百条时也只需维护K个元素。 分数相同的文档按首次出现的先后排序（向量检索结果优先），保证结果稳定。 */
+public final class TopKFusion {
+
+    private final FusionStrategy strategy;
+
+    private final int rrfK;
+
+    private final double vectorWeight;
+
+    private final double keywordWeight;
+
+    public TopKFusion(FusionStrategy strategy, int rrfK, double vectorWeight, double keywordWeight) {
+        this.strategy = strategy != null ? strategy : FusionStrategy.RRF;
+        this.rrfK = rrfK;
+        // 普通RRF不加权，其余策略使用配置的权重
+        boolean weighted = this.strategy != FusionStrategy.RRF;
+        this.vectorWeight = weighted ? vectorWeight : 1.0;
+        this.keywordWeight = weighted ? keywordWeight : 1.0;
+    }
+
+    public FusionStrategy getStrategy() {
+        return strategy;
+    }
+
+    /** 融合两路检索结果并返回分数最高的K个
+     *
+     * @param vectorResults 向量检索结果（按相关度降序）
+     * @param keywordResults 关键词检索结果（按相关度降序）
+     * @param topK 返回数量
+     * @return 融合后按分数降序排列的结果，score被替换为融合分数，searchType为HYBRID */
+    public List<VectorStoreResult> fuse(List<VectorStoreResult> vectorResults, List<VectorStoreResult> keywordResults,
+            int topK) {
+        int capacity = vectorResults.size() + keywordResults.size();
+        Map<String, Integer> slots = new HashMap<>(capacity * 4 / 3 + 1);
+        VectorStoreResult[] documents = new VectorStoreResult[capacity];
+        double[] scores = new double[capacity];
+
+        int size = accumulate(vectorResults, vectorWeight, slots, documents, scores, 0);
+        size = accumulate(keywordResults, keywordWeight, slots, documents, scores, size);
+
+        int[] top = selectTopK(scores, size, topK);
+        List<VectorStoreResult> fused = new ArrayList<>(top.length);
+        for (int slot : top) {
+            VectorStoreResult result = documents[slot];
+            result.setSearchType(SearchType.HYBRID);
+            result.setScore(scores[slot]);
+            fused.add(result);
+        }
+        return fused;
+    }
+
+    /** 将一路检索结果的贡献分数累加到槽位上
+     *
+     * @return 累加后已占用的槽位数 */
+    private int accumulate(List<VectorStoreResult> results, double weight, Map<String, Integer> slots,
+            VectorStoreResult[] documents, double[] scores, int size) {
+        double[] contributions = contributions(results);
+        for (int i = 0; i < results.size(); i++) {
+            VectorStoreResult result = results.get(i);
+            String documentId = result.getDocumentId();
+            if (documentId == null || documentId.trim().isEmpty()) {
+                continue;
+            }
+            Integer slot = slots.get(documentId);
+            if (slot == null) {
+                slot = size++;
+                slots.put(documentId, slot);
+                // 先出现的结果（向量检索优先）作为融合结果的载体
+                documents[slot] = result;
+            }
+            scores[slot] += weight * contributions[i];
+        }
+        return size;
+    }
+
+    /** 按融合策略计算一路结果中每个位置的贡献分数（未加权） */
+    private double[] contributions(List<VectorStoreResult> results) {
+        int n = results.size();
+        double[] contributions = new double[n];
+        if (n == 0) {
+            return contributions;
+        }
+        if (strategy == FusionStrategy.RRF || strategy == FusionStrategy.WEIGHTED_RRF) {
+            for (int i = 0; i < n; i++) {
+                // rank从1开始
+                contributions[i] = 1.0 / (rrfK + i + 1);
+            }
+            return contributions;
+        }
+
+        double[] raw = new double[n];
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            Double score = results.get(i).getScore();
+            raw[i] = score != null ? score : 0.0;
+            min = Math.min(min, raw[i]);
+            max = Math.max(max, raw[i]);
+            sum += raw[i];
+        }
+        double mean = sum / n;
+        double variance = 0;
+        for (double value : raw) {
+            variance += (value - mean) * (value - mean);
+        }
+        double std = Math.sqrt(variance / n);
+
+        for (int i = 0; i < n; i++) {
+            contributions[i] = switch (strategy) {
+                case MIN_MAX -> max > min ? (raw[i] - min) / (max - min) : 1.0;
+                case Z_SCORE -> std > 0 ? (raw[i] - mean) / std : 0.0;
+                case DBSF -> std > 0 ? clamp((raw[i] - (mean - 3 * std)) / (6 * std)) : 1.0;
+                default -> raw[i];
+            };
+        }
+        return contributions;
+    }
+
+    /** 用大小为K的最小堆选出分数最高的K个槽位，返回按分数降序（同分按槽位升序）排列的槽位 */
+    static int[] selectTopK(double[] scores, int size, int topK) {
+        int k = Math.max(0, Math.min(topK, size));
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (heapSize < k) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++, scores);
+            } else if (k > 0 && better(slot, heap[0], scores)) {
+                heap[0] = slot;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+        // 依次弹出堆顶（当前最差）从后往前填充，得到降序结果
+        int[] sorted = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            sorted[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, scores);
+        }
+        return sorted;
+    }
+
+    /** a是否比b排序更靠前：分数更高，或分数相同且更早出现 */
+    private static boolean better(int a, int b, double[] scores) {
+        int cmp = Double.compare(scores[a], scores[b]);
+        return cmp > 0 || (cmp == 0 && a < b);
+    }
+
+    private static void siftUp(int[] heap, int index, double[] scores) {
+        int node = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(heap[parent], node, scores)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = node;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int index = 0;
+        int node = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!better(node, heap[child], scores)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = node;
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0.0, Math.min(1.0, value));
+    }
+
+    /** 融合参数签名，用于区分不同融合配置下的检索缓存 */
+    public String signature() {
+        return strategy + ":" + rrfK + ":" + vectorWeight + ":" + keywordWeight;
+    }
+}
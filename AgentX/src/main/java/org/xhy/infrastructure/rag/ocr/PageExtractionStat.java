@@ -0,0 +1,87 @@
+package org.xhy.infrastructure.rag.ocr;
+
+/** PDF单页提取统计 记录该页采用的提取方式以及文本层质量指标 */
+public class PageExtractionStat {
+
+    /** 提取方式 */
+    public enum Mode {
+        /** 页面指纹未变，沿用上一轮的提取结果 */
+        REUSED,
+        /** 直接使用PDF文本层 */
+        TEXT_LAYER,
+        /** 渲染为图片后OCR */
+        OCR,
+        /** 渲染或OCR失败 */
+        FAILED,
+        /** 需要OCR但未配置OCR模型，本轮未提取 */
+        SKIPPED
+    }
+
+    /** 页码（从0开始） */
+    private int page;
+
+    /** 提取方式 */
+    private Mode mode;
+
+    /** 文本层非空白字符数 */
+    private int charCount;
+
+    /** 文本层中无法映射为Unicode的字形占比 */
+    private double unmappedRatio;
+
+    /** 页面内嵌图片数量 */
+    private int imageCount;
+
+    public PageExtractionStat() {
+    }
+
+    public PageExtractionStat(int page, Mode mode, PdfTextLayer textLayer) {
+        this.page = page;
+        this.mode = mode;
+        if (textLayer != null) {
+            this.charCount = textLayer.getCharCount();
+            this.unmappedRatio = textLayer.getUnmappedRatio();
+            this.imageCount = textLayer.getImageCount();
+        }
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public int getCharCount() {
+        return charCount;
+    }
+
+    public void setCharCount(int charCount) {
+        this.charCount = charCount;
+    }
+
+    public double getUnmappedRatio() {
+        return unmappedRatio;
+    }
+
+    public void setUnmappedRatio(double unmappedRatio) {
+        this.unmappedRatio = unmappedRatio;
+    }
+
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    public void setImageCount(int imageCount) {
+        this.imageCount = imageCount;
+    }
+}
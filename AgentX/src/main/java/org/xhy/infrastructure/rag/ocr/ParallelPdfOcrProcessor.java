@@ -0,0 +1,286 @@
+package org.xhy.infrastructure.rag.ocr;
+
+import cn.hutool.core.codec.Base64;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.rag.config.RagOcrProperties;
+import org.xhy.infrastructure.rag.detector.TikaFileTypeDetector;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
+import org.xhy.infrastructure.rag.utils.PdfToBase64Converter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+import static org.xhy.domain.rag.strategy.context.RAGSystemPrompt.OCR_PROMPT;
+
+/** PDF并行提取处理器 每个渲染线程以随机访问方式只加载一次落盘的PDF，并按步长处理各自负责的页面：页面指纹与上一轮相同的页面沿用上一轮结果，
+ * 文本层质量合格的页面直接使用文本层，扫描件或以图片为主的页面才渲染后交给OCR线程池并发识别。
+ * 同一OCR服务商的在途请求数由信号量限制，渲染线程在取得许可后才渲染下一页，内存中最多只有许可数量的页面图像。
+ * 渲染线程按任务单独创建，等待服务商许可时只阻塞本任务；各任务同时渲染的页面总数由全局渲染许可限制。 */
+@Component
+public class ParallelPdfOcrProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelPdfOcrProcessor.class);
+
+    private static final String IMAGE_FORMAT = "jpg";
+
+    private final RagOcrProperties properties;
+
+    /** 按服务商区分的并发许可 */
+    private final Map<String, Semaphore> providerPermits = new ConcurrentHashMap<>();
+
+    /** 全局渲染许可，限制所有任务同时渲染的页面数 */
+    private final Semaphore renderSlots;
+
+    private final AtomicInteger renderThreadIndex = new AtomicInteger();
+
+    private final ExecutorService requestExecutor;
+
+    public ParallelPdfOcrProcessor(RagOcrProperties properties) {
+        this.properties = properties;
+        this.renderSlots = new Semaphore(Math.max(1, properties.getRenderThreads()), true);
+        this.requestExecutor = newPool(Math.max(1, properties.getRequestThreads()), "pdf-ocr-request-thread",
+                new AtomicInteger());
+    }
+
+    /** 各OCR服务商并发许可中最高的占用比例 */
+    public double saturation() {
+        int max = Math.max(1, properties.getMaxConcurrentRequests());
+        return providerPermits.values().stream().mapToDouble(p -> 1.0 - (double) p.availablePermits() / max).max()
+                .orElse(0.0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdownNow();
+    }
+
+    /** 并行提取整个PDF的文本，文本层优先，仅对文本层不可用的页面OCR
+     *
+     * @param pdfFile 落盘的PDF文件，各渲染线程平分其内存上限
+     * @param totalPages 总页数
+     * @param ocrModel OCR视觉模型，所有页面共用；为null时只使用文本层和上一轮结果，需要OCR的页面跳过
+     * @param providerKey 服务商标识（如baseUrl），用于共享并发上限
+     * @param onPageCompleted 每完成一页（无论成功与否）回调已完成页数，回调按完成顺序串行执行
+     * @return 按页码排序的提取结果及每页提取统计 */
+    public PdfExtractionResult process(SpooledDocument pdfFile, int totalPages, ChatModel ocrModel, String providerKey,
+            IntConsumer onPageCompleted) {
+        return process(pdfFile, totalPages, ocrModel, providerKey, fingerprint -> null, onPageCompleted);
+    }
+
+    /** 并行提取整个PDF的文本，页面指纹命中上一轮结果的页面不再提取
+     *
+     * @param pdfFile 落盘的PDF文件，各渲染线程平分其内存上限
+     * @param totalPages 总页数
+     * @param ocrModel OCR视觉模型，所有页面共用；为null时只使用文本层和上一轮结果，需要OCR的页面跳过
+     * @param providerKey 服务商标识（如baseUrl），用于共享并发上限
+     * @param previousTexts 按页面指纹查找上一轮提取的文本，未找到时返回null，会被多个渲染线程并发调用
+     * @param onPageCompleted 每完成一页（无论成功与否）回调已完成页数，回调按完成顺序串行执行
+     * @return 按页码排序的提取结果、每页提取统计及页面指纹 */
+    public PdfExtractionResult process(SpooledDocument pdfFile, int totalPages, ChatModel ocrModel, String providerKey,
+            Function<String, String> previousTexts, IntConsumer onPageCompleted) {
+        Map<Integer, String> results = new ConcurrentHashMap<>();
+        Map<Integer, PageExtractionStat> stats = new ConcurrentHashMap<>();
+        Map<Integer, String> fingerprints = new ConcurrentHashMap<>();
+        if (totalPages <= 0) {
+            return new PdfExtractionResult(results, List.of());
+        }
+
+        Semaphore permits = providerPermits.computeIfAbsent(providerKey == null ? "" : providerKey,
+                key -> new Semaphore(Math.max(1, properties.getMaxConcurrentRequests()), true));
+        AtomicInteger completed = new AtomicInteger();
+        Runnable pageDone = () -> {
+            synchronized (completed) {
+                onPageCompleted.accept(completed.incrementAndGet());
+            }
+        };
+
+        int workers = Math.max(1, Math.min(properties.getRenderThreads(), totalPages));
+        // 本任务专用的渲染线程：等待服务商许可时不占用其他任务的渲染线程
+        ExecutorService renderExecutor = newPool(workers, "pdf-render-thread", renderThreadIndex);
+        List<CompletableFuture<Void>> requestFutures = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Void>> renderFutures = new ArrayList<>();
+        try {
+            for (int worker = 0; worker < workers; worker++) {
+                int offset = worker;
+                renderFutures.add(CompletableFuture.runAsync(() -> renderAndSubmit(pdfFile, offset, workers,
+                        totalPages, ocrModel, permits, previousTexts, results, stats, fingerprints, requestFutures,
+                        pageDone), renderExecutor));
+            }
+            CompletableFuture.allOf(renderFutures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            renderExecutor.shutdown();
+        }
+        CompletableFuture.allOf(requestFutures.toArray(new CompletableFuture[0])).join();
+
+        PdfExtractionResult result = new PdfExtractionResult(results, new ArrayList<>(stats.values()), fingerprints);
+        log.info("PDF提取完成，成功{}/{}页，其中沿用上一轮{}页，文本层{}页，OCR{}页", results.size(), totalPages,
+                result.getReusedPageCount(), result.getTextLayerPageCount(), result.getOcrPageCount());
+        return result;
+    }
+
+    /** 渲染线程：加载一次文档，处理 offset, offset+stride, ... 页，页面未变化时沿用上一轮结果，文本层不可用时渲染并提交OCR请求 */
+    private void renderAndSubmit(SpooledDocument pdfFile, int offset, int stride, int totalPages, ChatModel ocrModel,
+            Semaphore permits, Function<String, String> previousTexts, Map<Integer, String> results,
+            Map<Integer, PageExtractionStat> stats, Map<Integer, String> fingerprints,
+            List<CompletableFuture<Void>> requestFutures, Runnable pageDone) {
+        try (PDDocument document = pdfFile.loadPdf(pdfFile.getMaxMemoryBytes() / stride)) {
+            PDFRenderer renderer = new PDFRenderer(document);
+            int pageCount = Math.min(totalPages, document.getNumberOfPages());
+            for (int pageIndex = offset; pageIndex < pageCount; pageIndex += stride) {
+                String previousText = reusePreviousText(document, pageIndex, previousTexts, fingerprints);
+                if (previousText != null) {
+                    results.put(pageIndex, previousText);
+                    stats.put(pageIndex, new PageExtractionStat(pageIndex, PageExtractionStat.Mode.REUSED, null));
+                    pageDone.run();
+                    continue;
+                }
+
+                PdfTextLayer textLayer = analyzeTextLayer(document, pageIndex);
+                if (textLayer != null && isTextLayerUsable(textLayer)) {
+                    results.put(pageIndex, textLayer.getText());
+                    stats.put(pageIndex, new PageExtractionStat(pageIndex, PageExtractionStat.Mode.TEXT_LAYER, textLayer));
+                    pageDone.run();
+                    continue;
+                }
+
+                if (ocrModel == null) {
+                    stats.put(pageIndex, new PageExtractionStat(pageIndex, PageExtractionStat.Mode.SKIPPED, textLayer));
+                    pageDone.run();
+                    continue;
+                }
+
+                permits.acquire();
+                try {
+                    renderSlots.acquire();
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+                String base64;
+                try {
+                    base64 = PdfToBase64Converter.renderPageToBase64(renderer, pageIndex, IMAGE_FORMAT);
+                } catch (Exception e) {
+                    permits.release();
+                    log.error("渲染PDF第{}页失败: {}", pageIndex + 1, e.getMessage());
+                    stats.put(pageIndex, new PageExtractionStat(pageIndex, PageExtractionStat.Mode.FAILED, textLayer));
+                    pageDone.run();
+                    continue;
+                } finally {
+                    renderSlots.release();
+                }
+
+                int page = pageIndex;
+                requestFutures.add(CompletableFuture.runAsync(() -> {
+                    PageExtractionStat.Mode mode = PageExtractionStat.Mode.FAILED;
+                    try {
+                        results.put(page, ocrWithRetry(ocrModel, base64, page));
+                        mode = PageExtractionStat.Mode.OCR;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        log.error("处理PDF第{}页时出错: {}", page + 1, e.getMessage());
+                    } finally {
+                        stats.put(page, new PageExtractionStat(page, mode, textLayer));
+                        permits.release();
+                        pageDone.run();
+                    }
+                }, requestExecutor));
+            }
+            // 文档页数少于预期时，未渲染的页面同样计入进度
+            for (int pageIndex = pageCount + offset; pageIndex < totalPages; pageIndex += stride) {
+                pageDone.run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("加载PDF失败: {}", e.getMessage());
+        }
+    }
+
+    /** 计算页面指纹并查找上一轮的提取结果，指纹计算失败时按新页面处理 */
+    private String reusePreviousText(PDDocument document, int pageIndex, Function<String, String> previousTexts,
+            Map<Integer, String> fingerprints) {
+        try {
+            String fingerprint = PdfPageFingerprint.of(document.getPage(pageIndex));
+            fingerprints.put(pageIndex, fingerprint);
+            return previousTexts.apply(fingerprint);
+        } catch (Exception e) {
+            log.warn("计算PDF第{}页指纹失败，重新提取: {}", pageIndex + 1, e.getMessage());
+            return null;
+        }
+    }
+
+    /** 提取页面文本层，未启用或提取失败时返回null */
+    private PdfTextLayer analyzeTextLayer(PDDocument document, int pageIndex) {
+        if (!properties.isTextLayerEnabled()) {
+            return null;
+        }
+        try {
+            return PdfTextLayer.extract(document, pageIndex);
+        } catch (Exception e) {
+            log.warn("提取PDF第{}页文本层失败，改用OCR: {}", pageIndex + 1, e.getMessage());
+            return null;
+        }
+    }
+
+    /** 文本层是否可直接使用：字符数足够、无法映射的字形占比低，且含图片的页面需要有更多文字才认为图片不是主体内容 */
+    boolean isTextLayerUsable(PdfTextLayer textLayer) {
+        int minChars = textLayer.getImageCount() > 0 ? properties.getImagePageMinChars()
+                : properties.getTextLayerMinChars();
+        return textLayer.getCharCount() >= minChars
+                && textLayer.getUnmappedRatio() <= properties.getTextLayerMaxUnmappedRatio();
+    }
+
+    /** 识别单页，失败时按指数退避加随机抖动重试 */
+    private String ocrWithRetry(ChatModel ocrModel, String base64, int pageIndex) throws InterruptedException {
+        UserMessage userMessage = UserMessage.userMessage(
+                ImageContent.from(base64, TikaFileTypeDetector.detectFileType(Base64.decode(base64))),
+                TextContent.from(OCR_PROMPT));
+        long backoff = Math.max(1, properties.getInitialBackoffMillis());
+        for (int attempt = 1;; attempt++) {
+            try {
+                return ocrModel.chat(userMessage).aiMessage().text();
+            } catch (RuntimeException e) {
+                if (attempt > properties.getMaxRetries()) {
+                    throw e;
+                }
+                long delay = Math.min(backoff, properties.getMaxBackoffMillis());
+                delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+                log.warn("PDF第{}页OCR第{}次失败，{}ms后重试: {}", pageIndex + 1, attempt, delay, e.getMessage());
+                Thread.sleep(delay);
+                backoff *= 2;
+            }
+        }
+    }
+
+    private static ExecutorService newPool(int threads, String name, AtomicInteger threadIndex) {
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, name + "-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package org.xhy.infrastructure.rag.ocr;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** PDF提取结果 包含按页码排序的文本、每页的提取统计和页面指纹 */
+public class PdfExtractionResult {
+
+    private final Map<Integer, String> texts;
+
+    private final List<PageExtractionStat> pageStats;
+
+    private final Map<Integer, String> pageFingerprints;
+
+    public PdfExtractionResult(Map<Integer, String> texts, List<PageExtractionStat> pageStats) {
+        this(texts, pageStats, Map.of());
+    }
+
+    public PdfExtractionResult(Map<Integer, String> texts, List<PageExtractionStat> pageStats,
+            Map<Integer, String> pageFingerprints) {
+        this.texts = new TreeMap<>(texts);
+        this.pageStats = new ArrayList<>(pageStats);
+        this.pageStats.sort(Comparator.comparingInt(PageExtractionStat::getPage));
+        this.pageFingerprints = new TreeMap<>(pageFingerprints);
+    }
+
+    /** 按页码排序的提取文本，失败的页面不包含在内 */
+    public Map<Integer, String> getTexts() {
+        return texts;
+    }
+
+    /** 按页码排序的每页提取统计 */
+    public List<PageExtractionStat> getPageStats() {
+        return pageStats;
+    }
+
+    /** 按页码排序的页面指纹，指纹计算失败的页面不包含在内 */
+    public Map<Integer, String> getPageFingerprints() {
+        return pageFingerprints;
+    }
+
+    /** 沿用上一轮提取结果的页数 */
+    public int getReusedPageCount() {
+        return count(PageExtractionStat.Mode.REUSED);
+    }
+
+    /** 直接使用文本层的页数，即节省的OCR调用次数 */
+    public int getTextLayerPageCount() {
+        return count(PageExtractionStat.Mode.TEXT_LAYER);
+    }
+
+    /** 走OCR的页数（含失败） */
+    public int getOcrPageCount() {
+        return count(PageExtractionStat.Mode.OCR) + count(PageExtractionStat.Mode.FAILED);
+    }
+
+    private int count(PageExtractionStat.Mode mode) {
+        return (int) pageStats.stream().filter(stat -> stat.getMode() == mode).count();
+    }
+}
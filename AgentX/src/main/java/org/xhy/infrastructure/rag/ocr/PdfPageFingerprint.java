@@ -0,0 +1,69 @@
+package org.xhy.infrastructure.rag.ocr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/** PDF页面指纹 对页面尺寸、旋转角度、内容流以及引用的图片和表单资源的原始字节做SHA-256，
+ * 不解码、不渲染页面即可判断两次上传的同一页是否变化。页面在文档中的位置不参与计算，插入或删除页面后其余页面指纹不变。 */
+public final class PdfPageFingerprint {
+
+    private PdfPageFingerprint() {
+    }
+
+    /** 计算页面指纹
+     *
+     * @param page 页面
+     * @return 十六进制SHA-256 */
+    public static String of(PDPage page) throws IOException {
+        MessageDigest digest = sha256();
+        PDRectangle mediaBox = page.getMediaBox();
+        digest.update((mediaBox.getLowerLeftX() + "," + mediaBox.getLowerLeftY() + "," + mediaBox.getUpperRightX()
+                + "," + mediaBox.getUpperRightY() + "," + page.getRotation()).getBytes(StandardCharsets.UTF_8));
+        try (InputStream contents = page.getContents()) {
+            update(digest, contents);
+        }
+        PDResources resources = page.getResources();
+        if (resources != null) {
+            for (COSName name : resources.getXObjectNames()) {
+                digest.update(name.getName().getBytes(StandardCharsets.UTF_8));
+                COSBase xObject = resources.getCOSObject().getCOSDictionary(COSName.XOBJECT).getDictionaryObject(name);
+                if (xObject instanceof COSStream stream) {
+                    try (InputStream raw = stream.createRawInputStream()) {
+                        update(digest, raw);
+                    }
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, InputStream input) throws IOException {
+        if (input == null) {
+            return;
+        }
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
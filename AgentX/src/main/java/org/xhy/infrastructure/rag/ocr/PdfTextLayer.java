@@ -0,0 +1,115 @@
+package org.xhy.infrastructure.rag.ocr;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import java.io.IOException;
+import java.util.List;
+
+/** PDF单页文本层 使用PDFBox提取页面文本，同时统计字形总数、无法映射为Unicode的字形数以及内嵌图片数，用于判断文本层是否可信 */
+public class PdfTextLayer {
+
+    private final String text;
+
+    private final int charCount;
+
+    private final int glyphCount;
+
+    private final int unmappedGlyphCount;
+
+    private final int imageCount;
+
+    private PdfTextLayer(String text, int glyphCount, int unmappedGlyphCount, int imageCount) {
+        this.text = text;
+        this.charCount = (int) text.chars().filter(c -> !Character.isWhitespace(c)).count();
+        this.glyphCount = glyphCount;
+        this.unmappedGlyphCount = unmappedGlyphCount;
+        this.imageCount = imageCount;
+    }
+
+    /** 提取指定页的文本层
+     *
+     * @param document 已加载的文档
+     * @param pageIndex 页码（从0开始）
+     * @return 文本层及质量指标 */
+    public static PdfTextLayer extract(PDDocument document, int pageIndex) throws IOException {
+        GlyphCountingStripper stripper = new GlyphCountingStripper();
+        stripper.setStartPage(pageIndex + 1);
+        stripper.setEndPage(pageIndex + 1);
+        String text = stripper.getText(document);
+        return new PdfTextLayer(text == null ? "" : text.trim(), stripper.glyphs, stripper.unmapped,
+                countImages(document.getPage(pageIndex)));
+    }
+
+    private static int countImages(PDPage page) throws IOException {
+        PDResources resources = page.getResources();
+        if (resources == null) {
+            return 0;
+        }
+        int images = 0;
+        for (COSName name : resources.getXObjectNames()) {
+            if (resources.isImageXObject(name)) {
+                images++;
+            }
+        }
+        return images;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getCharCount() {
+        return charCount;
+    }
+
+    public int getGlyphCount() {
+        return glyphCount;
+    }
+
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /** 无法映射为Unicode的字形占比，没有字形时为1 */
+    public double getUnmappedRatio() {
+        return glyphCount == 0 ? 1.0 : (double) unmappedGlyphCount / glyphCount;
+    }
+
+    /** 统计字形映射情况的文本提取器：缺少ToUnicode映射的字形会被提取为空、替换字符或私用区字符 */
+    private static final class GlyphCountingStripper extends PDFTextStripper {
+
+        private int glyphs;
+
+        private int unmapped;
+
+        @Override
+        protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
+            for (TextPosition position : textPositions) {
+                glyphs++;
+                if (isUnmapped(position.getUnicode())) {
+                    unmapped++;
+                }
+            }
+            super.writeString(text, textPositions);
+        }
+
+        private static boolean isUnmapped(String unicode) {
+            if (unicode == null || unicode.isEmpty()) {
+                return true;
+            }
+            for (int i = 0; i < unicode.length(); i++) {
+                char c = unicode.charAt(i);
+                if (c == '\uFFFD' || Character.getType(c) == Character.PRIVATE_USE
+                        || (Character.isISOControl(c) && !Character.isWhitespace(c))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
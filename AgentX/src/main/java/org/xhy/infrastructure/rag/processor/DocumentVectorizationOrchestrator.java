@@ -2,25 +2,26 @@ package org.xhy.infrastructure.rag.processor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xhy.infrastructure.mq.core.MessageEnvelope;
-import org.xhy.infrastructure.mq.core.MessagePublisher;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.message.RagDocMessage;
 import org.xhy.domain.rag.message.RagDocSyncStorageMessage;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.model.ModelConfig;
 import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.domain.rag.service.EmbeddingBatchDispatcher;
 import org.xhy.domain.rag.service.FileDetailDomainService;
 import org.xhy.domain.rag.strategy.context.ProcessingContext;
-import org.xhy.infrastructure.mq.enums.EventType;
-import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
 import org.xhy.infrastructure.rag.service.UserModelConfigResolver;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** 向量段落处理器
  * 
- * 负责翻译+分割+向量化的完整处理链： 1. 读取DocumentUnitEntity原文 2. 翻译特殊节点（内存处理） 3. 检查翻译后长度 4. 如超限则二次分割 5. 触发向量化处理 */
+ * 负责翻译+分割+向量化的完整处理链： 1. 读取DocumentUnitEntity原文 2. 翻译特殊节点（内存处理） 3. 检查翻译后长度 4. 如超限则二次分割 5. 按批次触发向量化处理 */
 @Service
 public class DocumentVectorizationOrchestrator {
 
@@ -29,22 +30,22 @@ public class DocumentVectorizationOrchestrator {
     private final MarkdownAstRewriter translator;
     private final MarkdownContentSplitter splitter;
     private final DocumentUnitRepository documentUnitRepository;
-    private final MessagePublisher messagePublisher;
     private final FileDetailDomainService fileDetailDomainService;
     private final UserModelConfigResolver userModelConfigResolver;
+    private final EmbeddingBatchDispatcher batchDispatcher;
 
     public DocumentVectorizationOrchestrator(MarkdownAstRewriter translator, MarkdownContentSplitter splitter,
-            DocumentUnitRepository documentUnitRepository, MessagePublisher messagePublisher,
-            FileDetailDomainService fileDetailDomainService, UserModelConfigResolver userModelConfigResolver) {
+            DocumentUnitRepository documentUnitRepository, FileDetailDomainService fileDetailDomainService,
+            UserModelConfigResolver userModelConfigResolver, EmbeddingBatchDispatcher batchDispatcher) {
         this.translator = translator;
         this.splitter = splitter;
         this.documentUnitRepository = documentUnitRepository;
-        this.messagePublisher = messagePublisher;
         this.fileDetailDomainService = fileDetailDomainService;
         this.userModelConfigResolver = userModelConfigResolver;
+        this.batchDispatcher = batchDispatcher;
     }
 
-    /** 批量处理文档单元
+    /** 批量处理文档单元 所有单元的向量化段落收集后统一按文件和模型切批发送
      * 
      * @param units 文档单元列表
      * @param context 处理上下文 */
@@ -58,18 +59,29 @@ public class DocumentVectorizationOrchestrator {
 
         int successCount = 0;
         int errorCount = 0;
+        VectorizationTarget target = new VectorizationTarget(context);
+        List<RagDocSyncStorageMessage> storageMessages = new ArrayList<>();
 
-        for (DocumentUnitEntity unit : units) {
+        // 所有单元的特殊节点一起并发翻译，避免逐个单元串行等待模型
+        List<String> translatedContents = translator.translateSpecialNodes(
+                units.stream().map(unit -> unit == null ? null : unit.getContent()).toList(), context);
+
+        for (int i = 0; i < units.size(); i++) {
+            DocumentUnitEntity unit = units.get(i);
             try {
-                processSingleUnit(unit, context);
+                storageMessages.addAll(buildVectorMessages(unit, translatedContents.get(i), target));
                 successCount++;
             } catch (Exception e) {
-                log.error("Failed to process document unit {}: {}", unit.getId(), e.getMessage(), e);
+                log.error("Failed to process document unit {}: {}", unit == null ? null : unit.getId(), e.getMessage(),
+                        e);
                 errorCount++;
             }
         }
 
-        log.info("Vector segment processing completed. Success: {}, Error: {}", successCount, errorCount);
+        batchDispatcher.dispatch(storageMessages, "二次分割后的向量化处理任务");
+
+        log.info("Vector segment processing completed. Success: {}, Error: {}, Segments: {}", successCount,
+                errorCount, storageMessages.size());
     }
 
     /** 处理单个文档单元
@@ -77,9 +89,17 @@ public class DocumentVectorizationOrchestrator {
      * @param unit 文档单元
      * @param context 处理上下文 */
     public void processSingleUnit(DocumentUnitEntity unit, ProcessingContext context) {
+        String translatedContent = unit == null ? null : translator.translateSpecialNodes(unit.getContent(), context);
+        batchDispatcher.dispatch(buildVectorMessages(unit, translatedContent, new VectorizationTarget(context)),
+                "二次分割后的向量化处理任务");
+    }
+
+    /** 二次分割已翻译的文档单元，生成待向量化的段落消息 */
+    private List<RagDocSyncStorageMessage> buildVectorMessages(DocumentUnitEntity unit, String translatedContent,
+            VectorizationTarget target) {
         if (unit == null || unit.getContent() == null) {
             log.warn("Document unit or content is null, skipping");
-            return;
+            return List.of();
         }
 
         String unitId = unit.getId();
@@ -88,9 +108,7 @@ public class DocumentVectorizationOrchestrator {
         log.debug("Processing document unit {}: content length = {}", unitId, originalContent.length());
 
         try {
-            // 第1步：翻译特殊节点（内存中处理）
-            String translatedContent = translator.translateSpecialNodes(originalContent, context);
-
+            // 第1步：特殊节点已在内存中翻译完成
             if (translatedContent.equals(originalContent)) {
                 log.debug("No special nodes translated for unit {}", unitId);
             } else {
@@ -105,8 +123,8 @@ public class DocumentVectorizationOrchestrator {
             log.debug("Split result for unit {}: {} chunks. {}", unitId, vectorTexts.size(),
                     splitter.getSplitStatistics(translatedContent, vectorTexts));
 
-            // 第3步：为每个分割片段创建DocumentUnitEntity并触发向量化
-            createVectorSegments(unit, vectorTexts, context);
+            // 第3步：为每个分割片段构建向量化消息
+            return createVectorSegments(unit, vectorTexts, target);
 
         } catch (Exception e) {
             log.error("Error processing document unit {}: {}", unitId, e.getMessage(), e);
@@ -114,23 +132,23 @@ public class DocumentVectorizationOrchestrator {
         }
     }
 
-    /** 为分割片段触发向量化处理 - 保持原文不变 */
-    private void createVectorSegments(DocumentUnitEntity originalUnit, List<String> vectorTexts,
-            ProcessingContext context) {
+    /** 为分割片段构建向量化消息 - 保持原文不变 */
+    private List<RagDocSyncStorageMessage> createVectorSegments(DocumentUnitEntity originalUnit,
+            List<String> vectorTexts, VectorizationTarget target) {
         String originalUnitId = originalUnit.getId();
 
         log.info("Processing {} vector segments for unit {}", vectorTexts.size(), originalUnitId);
 
         // 🎯 核心原则：原文永不修改，翻译后内容通过消息传递
+        List<RagDocSyncStorageMessage> messages = new ArrayList<>(vectorTexts.size());
         for (int i = 0; i < vectorTexts.size(); i++) {
-            String vectorText = vectorTexts.get(i);
-            triggerVectorization(originalUnit, vectorText, i, context);
+            messages.add(buildStorageMessage(originalUnit, vectorTexts.get(i), i, target));
         }
 
         // 仅更新向量化状态，不修改原文内容
         updateVectorStatus(originalUnit);
 
-        log.debug("Triggered vectorization for {} segments from unit {}", vectorTexts.size(), originalUnitId);
+        return messages;
     }
 
     /** 更新向量化状态 - 绝不修改原文内容 */
@@ -144,56 +162,69 @@ public class DocumentVectorizationOrchestrator {
                 unit.getId());
     }
 
-    /** 触发向量化处理 - 传递翻译后内容 */
-    private void triggerVectorization(DocumentUnitEntity originalUnit, String vectorText, int segmentIndex,
-            ProcessingContext context) {
-        try {
-            // 获取文件详情来构建完整的向量化消息
-            FileDetailEntity fileEntity = fileDetailDomainService.getFileByIdWithoutUserCheck(originalUnit.getFileId());
+    /** 构建向量化消息 - 传递翻译后内容 */
+    private RagDocSyncStorageMessage buildStorageMessage(DocumentUnitEntity originalUnit, String vectorText,
+            int segmentIndex, VectorizationTarget target) {
+        // 获取文件详情来构建完整的向量化消息
+        FileDetailEntity fileEntity = target.file(originalUnit.getFileId());
 
-            // 构建完整的RagDocSyncStorageMessage
-            RagDocSyncStorageMessage storageMessage = new RagDocSyncStorageMessage();
+        // 构建完整的RagDocSyncStorageMessage
+        RagDocSyncStorageMessage storageMessage = new RagDocSyncStorageMessage();
 
-            // 生成唯一ID：原单元ID + 段落索引
-            String vectorId = originalUnit.getId() + "_segment_" + segmentIndex;
-            storageMessage.setId(vectorId);
+        // 生成唯一ID：原单元ID + 段落索引
+        String vectorId = originalUnit.getId() + "_segment_" + segmentIndex;
+        storageMessage.setId(vectorId);
 
-            storageMessage.setFileId(originalUnit.getFileId());
-            storageMessage.setFileName(fileEntity.getOriginalFilename());
+        storageMessage.setFileId(originalUnit.getFileId());
+        storageMessage.setFileName(fileEntity.getOriginalFilename());
 
-            // 生成新页码避免冲突：原页码 * 1000 + 段落索引
-            int vectorPage = originalUnit.getPage() * 1000 + segmentIndex;
-            storageMessage.setPage(vectorPage);
+        // 生成新页码避免冲突：原页码 * 1000 + 段落索引
+        int vectorPage = originalUnit.getPage() * 1000 + segmentIndex;
+        storageMessage.setPage(vectorPage);
 
-            // 🎯 核心：传递翻译后的内容而不是原文
-            storageMessage.setContent(vectorText);
+        // 🎯 核心：传递翻译后的内容而不是原文
+        storageMessage.setContent(vectorText);
 
-            storageMessage.setVector(false); // 待向量化
-            storageMessage.setUserId(context.getUserId());
-            storageMessage.setDatasetId(fileEntity.getDataSetId());
+        storageMessage.setVector(false); // 待向量化
+        storageMessage.setUserId(target.userId);
+        storageMessage.setDatasetId(fileEntity.getDataSetId());
 
-            // 设置嵌入模型配置
-            try {
-                storageMessage.setEmbeddingModelConfig(
-                        userModelConfigResolver.getUserEmbeddingModelConfig(context.getUserId()));
-            } catch (Exception e) {
-                log.warn("Failed to get embedding model config for user {}: {}", context.getUserId(), e.getMessage());
-                // 继续处理，让后续流程处理模型配置问题
-            }
+        // 设置嵌入模型配置
+        storageMessage.setEmbeddingModelConfig(target.embeddingModelConfig());
+
+        return storageMessage;
+    }
 
-            // 发送向量化消息到消息队列
-            MessageEnvelope<RagDocSyncStorageMessage> env = MessageEnvelope.builder(storageMessage)
-                    .addEventType(EventType.DOC_SYNC_RAG)
-                    .description("二次分割后的向量化处理任务 - 段落 " + segmentIndex + " 页面 " + vectorPage).build();
-            messagePublisher.publish(RagDocSyncStorageEvent.route(), env);
+    /** 一次批处理内共享的文件详情和嵌入模型配置，避免每个段落重复查询 */
+    private final class VectorizationTarget {
 
-            log.debug("Triggered vectorization for segment {} from unit {} with fileName: {}", segmentIndex,
-                    originalUnit.getId(), fileEntity.getOriginalFilename());
+        private final String userId;
 
-        } catch (Exception e) {
-            log.error("Failed to trigger vectorization for segment {} of unit {}: {}", segmentIndex,
-                    originalUnit.getId(), e.getMessage(), e);
-            throw new RuntimeException("Failed to trigger vectorization for segment " + segmentIndex, e);
+        private final Map<String, FileDetailEntity> files = new HashMap<>();
+
+        private ModelConfig embeddingModelConfig;
+
+        private boolean embeddingModelResolved;
+
+        private VectorizationTarget(ProcessingContext context) {
+            this.userId = context.getUserId();
+        }
+
+        private FileDetailEntity file(String fileId) {
+            return files.computeIfAbsent(fileId, fileDetailDomainService::getFileByIdWithoutUserCheck);
+        }
+
+        private ModelConfig embeddingModelConfig() {
+            if (!embeddingModelResolved) {
+                embeddingModelResolved = true;
+                try {
+                    embeddingModelConfig = userModelConfigResolver.getUserEmbeddingModelConfig(userId);
+                } catch (Exception e) {
+                    log.warn("Failed to get embedding model config for user {}: {}", userId, e.getMessage());
+                    // 继续处理，让后续流程处理模型配置问题
+                }
+            }
+            return embeddingModelConfig;
         }
     }
 
@@ -12,11 +12,16 @@ import org.springframework.stereotype.Component;
 import org.xhy.domain.rag.strategy.context.ProcessingContext;
 import org.xhy.infrastructure.rag.translator.NodeTranslatorService;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 /** Markdown AST 重写器
  * 
  * 使用 Flexmark AST 重写 markdown 文档，翻译特殊节点： - 代码块 -> 自然语言描述 - 表格 -> 结构化文本描述 - 图片 -> OCR文本识别 - 公式 -> 数学表达式描述
  * 
- * 设计原则： - 基于 AST 的文档重写，保持结构和位置的准确性 - 直接输出翻译后的完整文本，不使用占位符 - 集成 NodeTranslatorService 进行实际的翻译工作 - 递归处理嵌套节点，保持格式完整性 */
+ * 设计原则： - 基于 AST 的文档重写，保持结构和位置的准确性 - 直接输出翻译后的完整文本，不使用占位符 - 先收集全部特殊节点再交给 NodeTranslatorService 并发翻译，结果按文档顺序拼回 - 递归处理嵌套节点，保持格式完整性 */
 @Component
 public class MarkdownAstRewriter {
 
@@ -30,7 +35,7 @@ public class MarkdownAstRewriter {
 
         // 配置与 StructuralMarkdownProcessor 一致的 Flexmark 解析器
         MutableDataSet options = new MutableDataSet();
-        options.set(Parser.EXTENSIONS, java.util.List.of(TablesExtension.create()));
+        options.set(Parser.EXTENSIONS, List.of(TablesExtension.create()));
         this.parser = Parser.builder(options).build();
 
         log.info("MarkdownAstRewriter initialized with translator service: {}", translatorService.getTranslatorInfo());
@@ -47,14 +52,81 @@ public class MarkdownAstRewriter {
         if (originalContent == null || originalContent.trim().isEmpty()) {
             return originalContent;
         }
+        return translateSpecialNodes(List.of(originalContent), context).get(0);
+    }
 
-        try {
-            // 解析 markdown 为 AST
-            Node document = parser.parse(originalContent);
+    /** 批量翻译多段内容中的特殊节点
+     * 
+     * 先解析所有内容并按文档顺序收集特殊节点，一次性交给翻译服务去重、查缓存并发翻译，再把结果按原位置拼回各自的文档
+     * 
+     * @param originalContents 原始 markdown 内容列表
+     * @param context 处理上下文
+     * @return 与输入顺序一致的翻译后文本 */
+    public List<String> translateSpecialNodes(List<String> originalContents, ProcessingContext context) {
+        List<Node> documents = new ArrayList<>(originalContents.size());
+        List<Node> specialNodes = new ArrayList<>();
+        for (String originalContent : originalContents) {
+            Node document = null;
+            if (originalContent != null && !originalContent.trim().isEmpty()) {
+                try {
+                    // 解析 markdown 为 AST
+                    document = parser.parse(originalContent);
+                    collectSpecialNodes(document, specialNodes);
+                } catch (Exception e) {
+                    log.error("Error parsing document for rewrite: {}", e.getMessage(), e);
+                }
+            }
+            documents.add(document);
+        }
+
+        Map<Node, String> translations = new IdentityHashMap<>();
+        if (!specialNodes.isEmpty()) {
+            try {
+                List<String> translated = translatorService.translateAll(specialNodes, context);
+                for (int i = 0; i < specialNodes.size(); i++) {
+                    translations.put(specialNodes.get(i), translated.get(i));
+                }
+            } catch (Exception e) {
+                log.warn("Failed to translate {} special nodes: {}", specialNodes.size(), e.getMessage());
+            }
+            log.debug("Translated {} special nodes in {} documents. Translator metrics: {}", specialNodes.size(),
+                    originalContents.size(), translatorService.getMetrics());
+        }
+
+        List<String> results = new ArrayList<>(originalContents.size());
+        for (int i = 0; i < originalContents.size(); i++) {
+            results.add(rewriteDocument(documents.get(i), originalContents.get(i), translations));
+        }
+        return results;
+    }
+
+    /** 按文档顺序收集需要翻译的特殊节点，遍历方式与重写时一致 */
+    private void collectSpecialNodes(Node node, List<Node> specialNodes) {
+        for (Node child : node.getChildren()) {
+            if (isSpecialNode(child)) {
+                specialNodes.add(child);
+            } else if (!(child instanceof Text)) {
+                collectSpecialNodes(child, specialNodes);
+            }
+        }
+    }
+
+    /** 重写整个文档，出错时返回原文
+     * 
+     * @param document AST 文档根节点
+     * @param originalContent 原始 markdown 内容
+     * @param translations 特殊节点的翻译结果 */
+    private String rewriteDocument(Node document, String originalContent, Map<Node, String> translations) {
+        if (document == null) {
+            return originalContent;
+        }
 
+        try {
             // 使用文档重写器处理所有节点
             StringBuilder result = new StringBuilder();
-            rewriteDocument(document, result, context);
+            for (Node child : document.getChildren()) {
+                rewriteNode(child, result, translations);
+            }
 
             String translatedContent = result.toString();
 
@@ -73,27 +145,15 @@ public class MarkdownAstRewriter {
         }
     }
 
-    /** 重写整个文档，递归处理所有节点
-     * 
-     * @param document AST 文档根节点
-     * @param result 结果构建器
-     * @param context 处理上下文 */
-    private void rewriteDocument(Node document, StringBuilder result, ProcessingContext context) {
-        // 递归处理文档的所有子节点
-        for (Node child : document.getChildren()) {
-            rewriteNode(child, result, context);
-        }
-    }
-
     /** 重写单个节点
      * 
      * @param node 当前节点
      * @param result 结果构建器
-     * @param context 处理上下文 */
-    private void rewriteNode(Node node, StringBuilder result, ProcessingContext context) {
+     * @param translations 特殊节点的翻译结果 */
+    private void rewriteNode(Node node, StringBuilder result, Map<Node, String> translations) {
         if (isSpecialNode(node)) {
             // 特殊节点：翻译后替换
-            String translatedContent = translateSpecialNode(node, context);
+            String translatedContent = translatedSpecialNode(node, translations);
             result.append(translatedContent);
 
         } else if (node instanceof Text) {
@@ -107,7 +167,7 @@ public class MarkdownAstRewriter {
 
             result.append(startMarkup);
             for (Node child : node.getChildren()) {
-                rewriteNode(child, result, context);
+                rewriteNode(child, result, translations);
             }
             result.append(endMarkup);
 
@@ -122,7 +182,7 @@ public class MarkdownAstRewriter {
         } else {
             // 其他节点：递归处理子节点
             for (Node child : node.getChildren()) {
-                rewriteNode(child, result, context);
+                rewriteNode(child, result, translations);
             }
         }
     }
@@ -150,27 +210,18 @@ public class MarkdownAstRewriter {
                 || node instanceof BlockQuote;
     }
 
-    /** 翻译特殊节点 */
-    private String translateSpecialNode(Node node, ProcessingContext context) {
-        try {
-            String originalContent = node.getChars().toString();
-
-            // 直接传递AST节点给翻译服务
-            String translatedContent = translatorService.translate(node, context);
-
-            if (translatedContent != null && !translatedContent.equals(originalContent)) {
-                log.debug("{} node translated: {} chars -> {} chars", node.getClass().getSimpleName(),
-                        originalContent.length(), translatedContent.length());
-                return translatedContent;
-            } else {
-                log.debug("No translation for {} node, using original content", node.getClass().getSimpleName());
-                return originalContent;
-            }
+    /** 取特殊节点的翻译结果 */
+    private String translatedSpecialNode(Node node, Map<Node, String> translations) {
+        String originalContent = node.getChars().toString();
+        String translatedContent = translations.get(node);
 
-        } catch (Exception e) {
-            log.warn("Failed to translate {} node: {}", node.getClass().getSimpleName(), e.getMessage());
-            return node.getChars().toString(); // 返回原内容
+        if (translatedContent != null && !translatedContent.equals(originalContent)) {
+            log.debug("{} node translated: {} chars -> {} chars", node.getClass().getSimpleName(),
+                    originalContent.length(), translatedContent.length());
+            return translatedContent;
         }
+        log.debug("No translation for {} node, using original content", node.getClass().getSimpleName());
+        return originalContent;
     }
 
     /** 获取节点开始标记 */
@@ -0,0 +1,273 @@
+package org.xhy.infrastructure.rag.processor;
+
+import com.vladsch.flexmark.ast.Heading;
+import com.vladsch.flexmark.util.ast.Node;
+import org.xhy.domain.rag.model.ProcessedSegment;
+import org.xhy.domain.rag.model.enums.SegmentType;
+import org.xhy.infrastructure.rag.config.MarkdownProcessorProperties;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/** 单遍流式Markdown分段器
+ *
+ * 只遍历一次文档的顶层节点，用标题栈增量维护标题路径和各级标题下累计的内容长度，分段结果与 {@link DocumentTree#performHierarchicalSplit()} 一致：
+ * 一节的总长度不超过上限时整节作为一个段落；超过上限时先输出该节的直接内容，再依次处理各子节；没有子节的超长节按段落拆分。
+ * 长度只增不减，一节超长在内容增长的当下即可确定，已确定拆分的节随遍历输出段落，只有未超长的节暂存已拼好的内容， 不再构建整篇文档树，也不反复递归拼接标题路径和子节内容 */
+public class StreamingMarkdownSplitter {
+
+    private static final String SEPARATOR = "\n\n";
+
+    /** 首个标题之前的内容归入的虚拟标题 */
+    private static final String VIRTUAL_ROOT_TITLE = "文档内容";
+
+    private final MarkdownProcessorProperties.SegmentSplit config;
+
+    private final Function<Node, String> headingText;
+
+    private final Function<Node, String> contentText;
+
+    /** @param config 分割配置
+     * @param headingText 标题文本提取
+     * @param contentText 非标题节点的内容提取，原文模式取节点原始Markdown，常规模式取纯文本 */
+    public StreamingMarkdownSplitter(MarkdownProcessorProperties.SegmentSplit config,
+            Function<Node, String> headingText, Function<Node, String> contentText) {
+        this.config = config;
+        this.headingText = headingText;
+        this.contentText = contentText;
+    }
+
+    /** 遍历文档顶层节点并分段
+     *
+     * @param document AST根节点
+     * @return 按文档顺序排列的段落 */
+    public List<ProcessedSegment> split(Node document) {
+        SplitPass pass = new SplitPass();
+        for (Node child : document.getChildren()) {
+            if (child instanceof Heading heading) {
+                pass.heading(heading);
+            } else {
+                pass.content(child);
+            }
+        }
+        pass.finish();
+        return pass.segments;
+    }
+
+    /** 一节标题及其下的内容 */
+    private static final class Section {
+
+        private final int level;
+
+        /** 带#前缀的标题 */
+        private final String title;
+
+        /** 从根到当前节的标题路径 */
+        private final String path;
+
+        /** 第一个子节之前的直接内容 */
+        private final StringBuilder direct = new StringBuilder();
+
+        /** 尚未输出的子节完整内容，只在本节未超长时暂存 */
+        private final List<String> children = new ArrayList<>();
+
+        /** 本节及所有子节的累计长度，与HeadingNode#getTotalContentLength计法相同 */
+        private int total;
+
+        private boolean hasChildren;
+
+        private boolean oversized;
+
+        private Section(int level, String title, Section parent) {
+            this.level = level;
+            this.title = "#".repeat(level) + " " + title;
+            this.path = parent == null ? this.title : parent.path + SEPARATOR + this.title;
+        }
+    }
+
+    /** 单次分段的遍历状态 */
+    private final class SplitPass {
+
+        /** 当前标题栈，栈顶为最近的标题 */
+        private final Deque<Section> stack = new ArrayDeque<>();
+
+        private final List<ProcessedSegment> segments = new ArrayList<>();
+
+        private void heading(Heading heading) {
+            while (!stack.isEmpty() && stack.peek().level >= heading.getLevel()) {
+                close(stack.pop());
+            }
+            open(heading.getLevel(), headingText.apply(heading));
+        }
+
+        private void content(Node node) {
+            if (stack.isEmpty()) {
+                open(1, VIRTUAL_ROOT_TITLE);
+            }
+            String text = contentText.apply(node);
+            if (text == null || text.trim().isEmpty()) {
+                return;
+            }
+            String trimmed = text.trim();
+            Section current = stack.peek();
+            if (current.direct.length() > 0) {
+                current.direct.append(SEPARATOR);
+            }
+            current.direct.append(trimmed);
+            grow(trimmed.length() + 2);
+        }
+
+        private void finish() {
+            while (!stack.isEmpty()) {
+                close(stack.pop());
+            }
+        }
+
+        private void open(int level, String title) {
+            Section parent = stack.peek();
+            Section section = new Section(level, title, parent);
+            if (parent != null && !parent.hasChildren) {
+                parent.hasChildren = true;
+                // 直接内容到第一个子节为止，已超长的父节此时输出
+                if (parent.oversized) {
+                    emitDirect(parent);
+                }
+            }
+            stack.push(section);
+            grow(section.title.length() + 2);
+        }
+
+        /** 当前节及所有上级节累计长度增加，由外向内检查是否超长，保证上级的段落先于下级输出 */
+        private void grow(int delta) {
+            Iterator<Section> outward = stack.descendingIterator();
+            while (outward.hasNext()) {
+                Section section = outward.next();
+                section.total += delta;
+                if (!section.oversized && section.total > config.getMaxLength()) {
+                    section.oversized = true;
+                    if (section.hasChildren) {
+                        emitDirect(section);
+                        section.children.forEach(this::emit);
+                        section.children.clear();
+                    }
+                }
+            }
+        }
+
+        private void close(Section section) {
+            Section parent = stack.peek();
+            if (!section.oversized) {
+                String full = fullContent(section);
+                if (parent != null && !parent.oversized) {
+                    parent.children.add(full);
+                } else {
+                    emit(full);
+                }
+            } else if (!section.hasChildren) {
+                splitByParagraphs(fullContent(section), section.path);
+            }
+        }
+
+        private String fullContent(Section section) {
+            StringBuilder content = new StringBuilder(section.total);
+            content.append(section.title).append(SEPARATOR);
+            if (section.direct.length() > 0) {
+                content.append(section.direct).append(SEPARATOR);
+            }
+            for (String child : section.children) {
+                content.append(child).append(SEPARATOR);
+            }
+            return content.toString().trim();
+        }
+
+        private void emitDirect(Section section) {
+            if (section.direct.length() == 0) {
+                return;
+            }
+            String content = (section.path + SEPARATOR + section.direct).trim();
+            if (content.length() <= config.getMaxLength()) {
+                emit(content);
+            } else {
+                splitByParagraphs(content, section.path);
+            }
+        }
+
+        private void emit(String content) {
+            segments.add(new ProcessedSegment(content, SegmentType.SECTION, null));
+        }
+
+        /** 超长内容按段落拆分，每段加标题路径前缀，规则与DocumentTree一致 */
+        private void splitByParagraphs(String content, String titlePath) {
+            String body = stripTitle(content, titlePath);
+            int availableLength = config.getMaxLength() - (titlePath.length() + 2) - config.getBufferSize();
+
+            if (availableLength <= config.getMinLength()) {
+                // 标题太长，直接截断
+                emit(content.substring(0, Math.min(content.length(), config.getMaxLength() - config.getBufferSize())));
+                return;
+            }
+
+            int emitted = segments.size();
+            String prefix = titlePath.trim().isEmpty() ? "" : titlePath + SEPARATOR;
+            StringBuilder current = new StringBuilder();
+            int currentLength = 0;
+            int from = 0;
+            while (from <= body.length()) {
+                int end = body.indexOf(SEPARATOR, from);
+                if (end < 0) {
+                    end = body.length();
+                }
+                String paragraph = body.substring(from, end).trim();
+                from = end + SEPARATOR.length();
+                if (paragraph.isEmpty()) {
+                    continue;
+                }
+
+                int paragraphLength = paragraph.length() + 2;
+                if (currentLength + paragraphLength <= availableLength) {
+                    if (current.length() > 0) {
+                        current.append(SEPARATOR);
+                    }
+                    current.append(paragraph);
+                    currentLength += paragraphLength;
+                    continue;
+                }
+                if (current.length() > 0) {
+                    emit(prefix + current);
+                    current.setLength(0);
+                    currentLength = 0;
+                }
+                if (paragraphLength <= availableLength) {
+                    current.append(paragraph);
+                    currentLength = paragraphLength;
+                } else {
+                    // 单个段落超长，截断处理
+                    emit(prefix + paragraph.substring(0, availableLength - config.getBufferSize()));
+                }
+            }
+            if (current.length() > 0) {
+                emit(prefix + current);
+            }
+
+            if (segments.size() == emitted) {
+                emit(content.substring(0, Math.min(content.length(), config.getMaxLength() - config.getBufferSize())));
+            }
+        }
+
+        /** 内容开头恰为完整标题路径时去掉标题 */
+        private String stripTitle(String content, String titlePath) {
+            if (titlePath.trim().isEmpty()) {
+                return content;
+            }
+            int titleEnd = content.indexOf(SEPARATOR);
+            if (titleEnd > 0 && content.substring(0, titleEnd).trim().equals(titlePath.trim())) {
+                return content.substring(titleEnd + 2).trim();
+            }
+            return content;
+        }
+    }
+}
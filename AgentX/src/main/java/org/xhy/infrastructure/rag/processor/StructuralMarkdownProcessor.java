@@ -84,11 +84,19 @@ public class StructuralMarkdownProcessor implements MarkdownProcessor {
         // 解析Markdown为AST
         Node document = astParser.parse(markdown);
 
-        // 构建保持原始内容的文档树
-        DocumentTree documentTree = treeBuilder.buildRawDocumentTree(document, markdownProperties.getSegmentSplit());
-
-        // 执行基于真实内容长度的分割
-        List<ProcessedSegment> segments = documentTree.performHierarchicalSplit();
+        List<ProcessedSegment> segments;
+        if (markdownProperties.getSegmentSplit().isStreaming()) {
+            // 单遍遍历顶层节点直接分段
+            segments = new StreamingMarkdownSplitter(markdownProperties.getSegmentSplit(),
+                    textExtractor::extractTextContent, textExtractor::extractRawContent).split(document);
+        } else {
+            // 构建保持原始内容的文档树
+            DocumentTree documentTree = treeBuilder.buildRawDocumentTree(document,
+                    markdownProperties.getSegmentSplit());
+
+            // 执行基于真实内容长度的分割
+            segments = documentTree.performHierarchicalSplit();
+        }
 
         // 设置段落顺序
         for (int i = 0; i < segments.size(); i++) {
@@ -127,14 +135,21 @@ public class StructuralMarkdownProcessor implements MarkdownProcessor {
         return rawMode;
     }
 
-    /** 语义结构处理 - 构建文档树并执行层次化分割 */
+    /** 语义结构处理 - 单遍流式分段，或构建文档树并执行层次化分割 */
     private int processSemanticStructure(Node document, List<ProcessedSegment> segments, int order) {
-        // 构建文档树
-        DocumentTree documentTree = treeBuilder.buildDocumentTree(document, markdownProperties.getSegmentSplit());
-        log.debug("构建文档树: {}", documentTree.getTreeStatistics());
-
-        // 执行层次化分割
-        List<ProcessedSegment> hierarchicalSegments = documentTree.performHierarchicalSplit();
+        List<ProcessedSegment> hierarchicalSegments;
+        if (markdownProperties.getSegmentSplit().isStreaming()) {
+            hierarchicalSegments = new StreamingMarkdownSplitter(markdownProperties.getSegmentSplit(),
+                    textExtractor::extractTextContent, textExtractor::extractTextContent).split(document);
+        } else {
+            // 构建文档树
+            DocumentTree documentTree = treeBuilder.buildDocumentTree(document,
+                    markdownProperties.getSegmentSplit());
+            log.debug("构建文档树: {}", documentTree.getTreeStatistics());
+
+            // 执行层次化分割
+            hierarchicalSegments = documentTree.performHierarchicalSplit();
+        }
 
         // 设置段落顺序并添加到结果列表
         int currentOrder = order;
@@ -0,0 +1,63 @@
+package org.xhy.infrastructure.rag.rerank;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** BM25本地重排序器 以候选集本身作为语料统计文档频率和平均长度，对每个候选计算BM25分数 */
+@Component
+public class Bm25LocalReranker implements LocalReranker {
+
+    public static final String NAME = "bm25";
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public double[] score(String query, List<String> documents) {
+        double[] scores = new double[documents.size()];
+        Set<String> queryTerms = new LinkedHashSet<>(RerankTextTokenizer.tokenize(query));
+        if (queryTerms.isEmpty() || documents.isEmpty()) {
+            return scores;
+        }
+
+        // 统计每个候选的词频和候选集内的文档频率
+        List<Map<String, Integer>> termFrequencies = documents.stream().map(document -> {
+            Map<String, Integer> tf = new HashMap<>();
+            RerankTextTokenizer.tokenize(document).forEach(token -> tf.merge(token, 1, Integer::sum));
+            return tf;
+        }).toList();
+        int[] lengths = termFrequencies.stream()
+                .mapToInt(tf -> tf.values().stream().mapToInt(Integer::intValue).sum()).toArray();
+        double averageLength = Math.max(1.0, Arrays.stream(lengths).average().orElse(1.0));
+
+        int n = documents.size();
+        for (String term : queryTerms) {
+            long df = termFrequencies.stream().filter(tf -> tf.containsKey(term)).count();
+            if (df == 0) {
+                continue;
+            }
+            double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            for (int i = 0; i < n; i++) {
+                Integer tf = termFrequencies.get(i).get(term);
+                if (tf == null) {
+                    continue;
+                }
+                double norm = K1 * (1 - B + B * lengths[i] / averageLength);
+                scores[i] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,17 @@
+package org.xhy.infrastructure.rag.rerank;
+
+import java.util.List;
+
+/** 本地重排序器 进程内对候选集打分，不依赖GPU和网络，用于远程重排序服务不可用时兜底或按配置直接使用 */
+public interface LocalReranker {
+
+    /** 重排序器名称，对应配置项 rerank.local-reranker */
+    String getName();
+
+    /** 为候选文档打分，分数越高越相关
+     *
+     * @param query 查询问题
+     * @param documents 候选文档文本列表
+     * @return 与documents一一对应的分数 */
+    double[] score(String query, List<String> documents);
+}
@@ -0,0 +1,52 @@
+package org.xhy.infrastructure.rag.rerank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** 本地重排序分词器 英文和数字按连续字母数字切词，中日韩文字无空格分隔，按单字和相邻二元组切分，兼顾召回和短语匹配 */
+final class RerankTextTokenizer {
+
+    private RerankTextTokenizer() {
+    }
+
+    /** 切分文本，返回按出现位置排列的词项
+     *
+     * @param text 原始文本
+     * @return 词项列表 */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        char previousIdeograph = 0;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isIdeographic(c)) {
+                flush(word, tokens);
+                tokens.add(String.valueOf(c));
+                if (previousIdeograph != 0) {
+                    tokens.add(new String(new char[]{previousIdeograph, c}));
+                }
+                previousIdeograph = c;
+            } else if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+                previousIdeograph = 0;
+            } else {
+                flush(word, tokens);
+                previousIdeograph = 0;
+            }
+        }
+        flush(word, tokens);
+        return tokens;
+    }
+
+    private static void flush(StringBuilder word, List<String> tokens) {
+        if (!word.isEmpty()) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.xhy.infrastructure.rag.rerank;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** 词项邻近度本地重排序器 以查询词覆盖率为主分，命中词项在文中越集中（最小覆盖窗口越短）加分越多，适合短问题匹配短语式答案 */
+@Component
+public class TermProximityLocalReranker implements LocalReranker {
+
+    public static final String NAME = "proximity";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public double[] score(String query, List<String> documents) {
+        double[] scores = new double[documents.size()];
+        Set<String> queryTerms = new LinkedHashSet<>(RerankTextTokenizer.tokenize(query));
+        if (queryTerms.isEmpty()) {
+            return scores;
+        }
+        for (int i = 0; i < documents.size(); i++) {
+            List<String> tokens = RerankTextTokenizer.tokenize(documents.get(i));
+            Set<String> matched = new LinkedHashSet<>();
+            for (String token : tokens) {
+                if (queryTerms.contains(token)) {
+                    matched.add(token);
+                }
+            }
+            if (matched.isEmpty()) {
+                continue;
+            }
+            double coverage = (double) matched.size() / queryTerms.size();
+            int span = minimumSpan(tokens, matched);
+            scores[i] = coverage + coverage * matched.size() / (double) span;
+        }
+        return scores;
+    }
+
+    /** 计算包含所有已命中词项的最短窗口长度（滑动窗口） */
+    static int minimumSpan(List<String> tokens, Set<String> terms) {
+        Map<String, Integer> window = new HashMap<>();
+        int covered = 0;
+        int best = Integer.MAX_VALUE;
+        int left = 0;
+        for (int right = 0; right < tokens.size(); right++) {
+            String token = tokens.get(right);
+            if (!terms.contains(token)) {
+                continue;
+            }
+            if (window.merge(token, 1, Integer::sum) == 1) {
+                covered++;
+            }
+            while (covered == terms.size()) {
+                best = Math.min(best, right - left + 1);
+                String leftToken = tokens.get(left++);
+                if (terms.contains(leftToken) && window.merge(leftToken, -1, Integer::sum) == 0) {
+                    covered--;
+                }
+            }
+        }
+        return best == Integer.MAX_VALUE ? tokens.size() : best;
+    }
+}
@@ -0,0 +1,77 @@
+package org.xhy.infrastructure.rag.translator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** 单个翻译器的累计指标 节点数、缓存命中、实际翻译调用、失败次数和翻译耗时 */
+public class NodeTranslationMetrics {
+
+    private final LongAdder nodes = new LongAdder();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder totalLatencyNanos = new LongAdder();
+
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    void recordNodes(int count) {
+        nodes.add(count);
+    }
+
+    void recordCacheHits(int count) {
+        cacheHits.add(count);
+    }
+
+    void recordCall(long latencyNanos, boolean failed) {
+        calls.increment();
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulate(latencyNanos);
+        if (failed) {
+            failures.increment();
+        }
+    }
+
+    /** 需要翻译的节点数（含缓存命中和同批次重复节点） */
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /** 实际调用翻译器的次数 */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public double getCacheHitRatio() {
+        long total = getNodes();
+        return total > 0 ? (double) getCacheHits() / total : 0.0;
+    }
+
+    public long getAvgLatencyMillis() {
+        long count = getCalls();
+        return count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.sum() / count) : 0;
+    }
+
+    public long getMaxLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes=%d, cacheHits=%d (%.1f%%), calls=%d, failures=%d, avgLatency=%dms, maxLatency=%dms",
+                getNodes(), getCacheHits(), getCacheHitRatio() * 100, getCalls(), getFailures(),
+                getAvgLatencyMillis(), getMaxLatencyMillis());
+    }
+}
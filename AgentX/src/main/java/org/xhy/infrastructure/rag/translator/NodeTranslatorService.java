@@ -1,17 +1,34 @@
 package org.xhy.infrastructure.rag.translator;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.vladsch.flexmark.util.ast.Node;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.rag.strategy.context.ProcessingContext;
+import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.rag.config.RagTranslationProperties;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** 节点翻译服务
- * 
- * 负责协调所有的 NodeTranslator 实现，选择合适的翻译器处理特定类型的节点 */
+ *
+ * 负责协调所有的 NodeTranslator 实现，选择合适的翻译器处理特定类型的节点。 批量翻译时先按翻译器类型、模型和节点内容哈希去重并查询缓存，
+ * 未命中的节点在有界线程池中并发翻译，结果按输入顺序返回 */
 @Service
 public class NodeTranslatorService {
 
@@ -19,16 +36,40 @@ public class NodeTranslatorService {
 
     private final List<NodeTranslator> translators;
 
-    public NodeTranslatorService(List<NodeTranslator> translators) {
+    private final RagTranslationProperties properties;
+
+    private final Cache<String, String> cache;
+
+    private final Map<String, NodeTranslationMetrics> metrics = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    public NodeTranslatorService(List<NodeTranslator> translators, RagTranslationProperties properties) {
         // 按优先级排序翻译器
         this.translators = translators.stream().sorted(Comparator.comparingInt(NodeTranslator::getPriority)).toList();
+        this.properties = properties;
+        this.cache = CacheBuilder.newBuilder().maximumSize(properties.getCacheMaxSize())
+                .expireAfterWrite(properties.getCacheTtlSeconds(), TimeUnit.SECONDS).recordStats().build();
+        int threads = Math.max(1, properties.getMaxConcurrentRequests());
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "node-translate-thread-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
 
-        log.info("NodeTranslatorService initialized with {} translators: {}", translators.size(),
-                this.translators.stream().map(NodeTranslator::getType).toList());
+        log.info("NodeTranslatorService initialized with {} translators: {}, max concurrent requests: {}",
+                translators.size(), this.translators.stream().map(NodeTranslator::getType).toList(), threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
     }
 
     /** 翻译节点内容
-     * 
+     *
      * @param node AST节点
      * @param context 处理上下文
      * @return 翻译后的内容，如果没有合适的翻译器则返回原内容 */
@@ -36,56 +77,172 @@ public class NodeTranslatorService {
         if (node == null) {
             return "";
         }
+        return translateAll(List.of(node), context).get(0);
+    }
 
-        String originalContent = node.getChars().toString();
+    /** 批量翻译节点内容
+     *
+     * 相同翻译器、相同模型下内容相同的节点只翻译一次，缓存命中的节点不再调用翻译器，其余节点并发翻译
+     *
+     * @param nodes AST节点列表
+     * @param context 处理上下文
+     * @return 与输入顺序一致的翻译结果，翻译失败或没有合适翻译器的节点返回原内容 */
+    public List<String> translateAll(List<Node> nodes, ProcessingContext context) {
+        List<String> results = new ArrayList<>(nodes.size());
+        // 缓存键 -> 待翻译节点在结果中的位置
+        Map<String, List<Integer>> pendingPositions = new LinkedHashMap<>();
+        Map<String, Node> pendingNodes = new LinkedHashMap<>();
+        Map<String, String> pendingTypes = new LinkedHashMap<>();
 
-        // 查找第一个可以处理该类型节点的翻译器
-        for (NodeTranslator translator : translators) {
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            String originalContent = node.getChars().toString();
+            results.add(originalContent);
+
+            NodeTranslator translator = findTranslator(node);
+            if (translator == null) {
+                log.debug("No translator found for {} node, returning original content",
+                        node.getClass().getSimpleName());
+                continue;
+            }
+            String type = translator.getType();
+            NodeTranslationMetrics translatorMetrics = metricsOf(type);
+            translatorMetrics.recordNodes(1);
+
+            String key = cacheKey(type, context, originalContent);
+            String cached = properties.isCacheEnabled() ? cache.getIfPresent(key) : null;
+            if (cached != null) {
+                translatorMetrics.recordCacheHits(1);
+                results.set(i, cached);
+                continue;
+            }
+            List<Integer> positions = pendingPositions.computeIfAbsent(key, k -> new ArrayList<>());
+            if (!positions.isEmpty()) {
+                // 同批次内的重复节点复用第一次的翻译结果
+                translatorMetrics.recordCacheHits(1);
+            }
+            positions.add(i);
+            pendingNodes.putIfAbsent(key, node);
+            pendingTypes.putIfAbsent(key, type);
+        }
+
+        if (pendingNodes.isEmpty()) {
+            return results;
+        }
+
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        pendingNodes.forEach((key, node) -> futures.put(key,
+                CompletableFuture.supplyAsync(() -> translateNode(node, context, pendingTypes.get(key)), executor)));
+
+        futures.forEach((key, future) -> {
+            String translated;
             try {
-                if (translator.canTranslate(node)) {
+                translated = future.join();
+            } catch (Exception e) {
+                log.warn("Translation of {} node failed: {}", pendingTypes.get(key), e.getMessage());
+                return;
+            }
+            String originalContent = pendingNodes.get(key).getChars().toString();
+            if (translated == null || translated.equals(originalContent)) {
+                return;
+            }
+            if (properties.isCacheEnabled()) {
+                cache.put(key, translated);
+            }
+            pendingPositions.get(key).forEach(position -> results.set(position, translated));
+        });
+
+        log.debug("Translated {} nodes with {} translator calls", nodes.size(), futures.size());
+        return results;
+    }
+
+    /** 依次尝试可处理该节点的翻译器，记录首选翻译器的耗时 */
+    private String translateNode(Node node, ProcessingContext context, String metricsType) {
+        String originalContent = node.getChars().toString();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            for (NodeTranslator translator : translators) {
+                try {
+                    if (!translator.canTranslate(node)) {
+                        continue;
+                    }
                     log.debug("Using {} to translate {} node", translator.getType(), node.getClass().getSimpleName());
 
                     String translatedContent = translator.translate(node, context);
+                    failed = false;
 
                     if (translatedContent != null && !translatedContent.equals(originalContent)) {
                         log.debug("Successfully translated {} node: {} chars -> {} chars",
                                 node.getClass().getSimpleName(), originalContent.length(), translatedContent.length());
                         return translatedContent;
                     }
+                } catch (Exception e) {
+                    log.warn("Translator {} failed to process {} node: {}", translator.getType(),
+                            node.getClass().getSimpleName(), e.getMessage());
+                    // 继续尝试下一个翻译器
+                }
+            }
+            return originalContent;
+        } finally {
+            metricsOf(metricsType).recordCall(System.nanoTime() - start, failed);
+        }
+    }
+
+    /** 查找第一个可以处理该类型节点的翻译器 */
+    private NodeTranslator findTranslator(Node node) {
+        for (NodeTranslator translator : translators) {
+            try {
+                if (translator.canTranslate(node)) {
+                    return translator;
                 }
             } catch (Exception e) {
-                log.warn("Translator {} failed to process {} node: {}", translator.getType(),
-                        node.getClass().getSimpleName(), e.getMessage());
-                // 继续尝试下一个翻译器
+                log.warn("Error checking translator capability: {}", e.getMessage());
             }
         }
+        return null;
+    }
 
-        // 没有找到合适的翻译器，返回原内容
-        log.debug("No translator found for {} node, returning original content", node.getClass().getSimpleName());
-        return originalContent;
+    /** 缓存键：翻译器类型、翻译所用模型和节点内容的SHA-256，模型变化后不复用旧的翻译结果 */
+    private static String cacheKey(String type, ProcessingContext context, String content) {
+        return type + '|' + modelKey(context.getLlmConfig()) + '|' + modelKey(context.getVisionModelConfig()) + '|'
+                + DigestUtil.sha256Hex(content);
+    }
+
+    private static String modelKey(ProviderConfig config) {
+        return config == null ? "" : config.getBaseUrl() + "#" + config.getModel();
+    }
+
+    private NodeTranslationMetrics metricsOf(String type) {
+        return metrics.computeIfAbsent(type, k -> new NodeTranslationMetrics());
     }
 
     /** 检查是否有翻译器可以处理指定类型的节点
-     * 
+     *
      * @param node AST节点
      * @return 是否有翻译器可以处理 */
     public boolean canTranslate(Node node) {
-        return translators.stream().anyMatch(translator -> {
-            try {
-                return translator.canTranslate(node);
-            } catch (Exception e) {
-                log.warn("Error checking translator capability: {}", e.getMessage());
-                return false;
-            }
-        });
+        return findTranslator(node) != null;
+    }
+
+    /** 获取各翻译器的累计指标
+     *
+     * @return 翻译器类型与指标 */
+    public Map<String, NodeTranslationMetrics> getMetrics() {
+        return Map.copyOf(metrics);
+    }
+
+    /** 获取翻译缓存统计信息 */
+    public String cacheStats() {
+        return cache.stats().toString();
     }
 
     /** 获取所有已注册的翻译器信息
-     * 
+     *
      * @return 翻译器信息列表 */
     public List<String> getTranslatorInfo() {
         return translators.stream()
                 .map(translator -> String.format("%s (priority: %d)", translator.getType(), translator.getPriority()))
                 .toList();
     }
-}
\ No newline at end of file
+}
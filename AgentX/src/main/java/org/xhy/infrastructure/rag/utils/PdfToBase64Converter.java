@@ -76,18 +76,28 @@ public class PdfToBase64Converter {
                 throw new IllegalArgumentException("页码超出范围: " + pageIndex);
             }
 
-            PDFRenderer renderer = new PDFRenderer(document);
-            // 使用较低的DPI以减少内存使用
-            BufferedImage image = renderer.renderImageWithDPI(pageIndex, DEFAULT_DPI);
+            return renderPageToBase64(new PDFRenderer(document), pageIndex, imageFormat);
+        }
+    }
 
-            // 将图片转换为base64字符串并压缩
-            String base64 = convertImageToBase64Compressed(image, imageFormat);
+    /** 使用已加载文档的渲染器渲染单页并转换为base64，适合对同一文档连续渲染多页，避免每页重复解析PDF
+     *
+     * @param renderer 已加载文档的渲染器（PDFRenderer非线程安全，不可跨线程共享）
+     * @param pageIndex 要处理的页码（从0开始）
+     * @param imageFormat 图像格式（如"jpg"）
+     * @return 指定页面的base64编码字符串 */
+    public static String renderPageToBase64(PDFRenderer renderer, int pageIndex, String imageFormat)
+            throws IOException {
+        // 使用较低的DPI以减少内存使用
+        BufferedImage image = renderer.renderImageWithDPI(pageIndex, DEFAULT_DPI);
 
-            // 立即释放资源
-            image.flush();
+        // 将图片转换为base64字符串并压缩
+        String base64 = convertImageToBase64Compressed(image, imageFormat);
 
-            return base64;
-        }
+        // 立即释放资源
+        image.flush();
+
+        return base64;
     }
 
     /** 获取PDF总页数 */
@@ -0,0 +1,47 @@
+package org.xhy.interfaces.api.admin;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import org.springframework.web.bind.annotation.*;
+import org.xhy.application.rag.dto.RagDeadLetterDTO;
+import org.xhy.application.rag.request.QueryDeadLetterRequest;
+import org.xhy.application.rag.service.manager.RagDeadLetterAppService;
+import org.xhy.interfaces.api.common.Result;
+
+/** 管理员RAG入库死信控制器 */
+@RestController
+@RequestMapping("/admin/rags/dead-letters")
+public class AdminRagDeadLetterController {
+
+    private final RagDeadLetterAppService ragDeadLetterAppService;
+
+    public AdminRagDeadLetterController(RagDeadLetterAppService ragDeadLetterAppService) {
+        this.ragDeadLetterAppService = ragDeadLetterAppService;
+    }
+
+    /** 分页查询死信消息
+     * 
+     * @param request 查询请求
+     * @return 死信消息分页 */
+    @GetMapping
+    public Result<Page<RagDeadLetterDTO>> listDeadLetters(QueryDeadLetterRequest request) {
+        return Result.success(ragDeadLetterAppService.listDeadLetters(request));
+    }
+
+    /** 获取死信消息详情
+     * 
+     * @param id 死信ID
+     * @return 死信消息 */
+    @GetMapping("/{id}")
+    public Result<RagDeadLetterDTO> getDeadLetter(@PathVariable String id) {
+        return Result.success(ragDeadLetterAppService.getDeadLetter(id));
+    }
+
+    /** 重放死信消息
+     * 
+     * @param id 死信ID
+     * @return 重放后的死信消息 */
+    @PostMapping("/{id}/replay")
+    public Result<RagDeadLetterDTO> replay(@PathVariable String id) {
+        return Result.success(ragDeadLetterAppService.replay(id));
+    }
+}
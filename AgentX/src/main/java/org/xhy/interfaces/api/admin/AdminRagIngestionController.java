@@ -0,0 +1,58 @@
+package org.xhy.interfaces.api.admin;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.xhy.application.rag.dto.IngestionQueueStatsDTO;
+import org.xhy.application.rag.service.manager.RagIngestionMonitorAppService;
+import org.xhy.infrastructure.mq.rabbit.ListenerAutoscaleMetrics;
+import org.xhy.infrastructure.mq.rabbit.ListenerAutoscaler;
+import org.xhy.infrastructure.rag.translator.NodeTranslationMetrics;
+import org.xhy.infrastructure.rag.translator.NodeTranslatorService;
+import org.xhy.interfaces.api.common.Result;
+
+/** 管理员RAG入库监控控制器 */
+@RestController
+@RequestMapping("/admin/rags/ingestion")
+public class AdminRagIngestionController {
+
+    private final ListenerAutoscaler listenerAutoscaler;
+
+    private final RagIngestionMonitorAppService ragIngestionMonitorAppService;
+
+    private final NodeTranslatorService nodeTranslatorService;
+
+    public AdminRagIngestionController(ListenerAutoscaler listenerAutoscaler,
+            RagIngestionMonitorAppService ragIngestionMonitorAppService, NodeTranslatorService nodeTranslatorService) {
+        this.listenerAutoscaler = listenerAutoscaler;
+        this.ragIngestionMonitorAppService = ragIngestionMonitorAppService;
+        this.nodeTranslatorService = nodeTranslatorService;
+    }
+
+    /** 获取各用户的入库排队情况
+     * 
+     * @return 用户排队中、处理中的文件数和排队等待时间 */
+    @GetMapping("/queue")
+    public Result<List<IngestionQueueStatsDTO>> getQueueStats() {
+        return Result.success(ragIngestionMonitorAppService.listQueueStats());
+    }
+
+    /** 获取入库队列的自动伸缩指标
+     * 
+     * @return 队列名与最近一次采样、累计调整次数 */
+    @GetMapping("/autoscale")
+    public Result<Map<String, ListenerAutoscaleMetrics>> getAutoscaleMetrics() {
+        return Result.success(listenerAutoscaler.getMetrics());
+    }
+
+    /** 获取文档入库时节点翻译的累计指标
+     * 
+     * @return 翻译器类型与节点数、缓存命中、调用次数、失败次数和耗时 */
+    @GetMapping("/translation")
+    public Result<Map<String, NodeTranslationMetrics>> getTranslationMetrics() {
+        return Result.success(nodeTranslatorService.getMetrics());
+    }
+}
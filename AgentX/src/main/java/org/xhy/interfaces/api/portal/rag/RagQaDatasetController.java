@@ -1,9 +1,12 @@
 package org.xhy.interfaces.api.portal.rag;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.xhy.application.rag.dto.*;
+import org.xhy.application.rag.service.manager.RagFileProgressPushAppService;
 import org.xhy.application.rag.service.manager.RagQaDatasetAppService;
 import org.xhy.infrastructure.auth.UserContext;
 import org.xhy.interfaces.api.common.Result;
@@ -18,9 +21,12 @@ import java.util.List;
 public class RagQaDatasetController {
 
     private final RagQaDatasetAppService ragQaDatasetAppService;
+    private final RagFileProgressPushAppService ragFileProgressPushAppService;
 
-    public RagQaDatasetController(RagQaDatasetAppService ragQaDatasetAppService) {
+    public RagQaDatasetController(RagQaDatasetAppService ragQaDatasetAppService,
+            RagFileProgressPushAppService ragFileProgressPushAppService) {
         this.ragQaDatasetAppService = ragQaDatasetAppService;
+        this.ragFileProgressPushAppService = ragFileProgressPushAppService;
     }
 
     /** 创建数据集
@@ -166,4 +172,13 @@ public class RagQaDatasetController {
         List<FileProcessProgressDTO> progressList = ragQaDatasetAppService.getDatasetFilesProgress(datasetId, userId);
         return Result.success(progressList);
     }
+
+    /** 订阅数据集文件处理进度推送 首条消息为全量进度，之后按周期合并推送有变化的文件
+     * @param datasetId 数据集ID
+     * @return SSE连接 */
+    @GetMapping(value = "/{datasetId}/files/progress/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeDatasetFilesProgress(@PathVariable String datasetId) {
+        String userId = UserContext.getCurrentUserId();
+        return ragFileProgressPushAppService.subscribe(datasetId, userId);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+-- 为RAG数据集添加入库代次字段
+-- Migration: V20251019001__add_ingest_generation_to_rag_dataset.sql
+-- Description: 数据集内文件新增、重新处理或删除时递增，作为检索结果缓存键的一部分
+
+ALTER TABLE ai_rag_qa_dataset ADD COLUMN ingest_generation BIGINT NOT NULL DEFAULT 0;
+
+COMMENT ON COLUMN ai_rag_qa_dataset.ingest_generation IS '入库代次，数据集内容变化时递增，用于检索结果缓存失效';
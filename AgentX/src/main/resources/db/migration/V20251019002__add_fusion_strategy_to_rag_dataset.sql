@@ -0,0 +1,7 @@
+-- 为RAG数据集添加混合检索融合策略字段
+-- Migration: V20251019002__add_fusion_strategy_to_rag_dataset.sql
+-- Description: 允许按数据集选择向量检索与关键词检索结果的融合策略
+
+ALTER TABLE ai_rag_qa_dataset ADD COLUMN fusion_strategy VARCHAR(32);
+
+COMMENT ON COLUMN ai_rag_qa_dataset.fusion_strategy IS '混合检索融合策略：RRF/WEIGHTED_RRF/MIN_MAX/Z_SCORE/DBSF，为空时使用全局默认策略';
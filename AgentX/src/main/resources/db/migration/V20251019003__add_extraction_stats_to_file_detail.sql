@@ -0,0 +1,11 @@
+-- 为文件详情添加PDF提取统计字段
+-- Migration: V20251019003__add_extraction_stats_to_file_detail.sql
+-- Description: 记录每页采用文本层还是OCR提取，以及文本层节省的OCR调用次数
+
+ALTER TABLE file_detail ADD COLUMN text_layer_page_count INTEGER DEFAULT 0;
+ALTER TABLE file_detail ADD COLUMN ocr_page_count INTEGER DEFAULT 0;
+ALTER TABLE file_detail ADD COLUMN page_extraction_stats TEXT;
+
+COMMENT ON COLUMN file_detail.text_layer_page_count IS '直接使用PDF文本层的页数，即节省的OCR调用次数';
+COMMENT ON COLUMN file_detail.ocr_page_count IS '经过OCR识别的页数';
+COMMENT ON COLUMN file_detail.page_extraction_stats IS '每页提取方式及文本层质量统计';
@@ -0,0 +1,9 @@
+-- 为文件详情添加向量化进度计数器
+-- Migration: V20251019004__add_embedding_counters_to_file_detail.sql
+-- Description: 以原子自增计数代替每个批次对document_unit的全表计数，保证完成状态只被触发一次
+
+ALTER TABLE file_detail ADD COLUMN embedding_total_count INTEGER DEFAULT 0;
+ALTER TABLE file_detail ADD COLUMN embedding_done_count INTEGER DEFAULT 0;
+
+COMMENT ON COLUMN file_detail.embedding_total_count IS '本轮向量化已分发的段落数';
+COMMENT ON COLUMN file_detail.embedding_done_count IS '本轮向量化已处理完成的段落数，由原子自增维护';
@@ -0,0 +1,25 @@
+-- 创建嵌入向量内容寻址缓存表
+-- Migration: V20251019005__create_embedding_cache.sql
+-- Description: 按规范化文本与嵌入模型的哈希缓存向量，重复上传、重新处理和公共模板文本不再重复调用嵌入接口；文件记录每轮向量化的缓存命中情况
+
+CREATE TABLE embedding_cache (
+    id VARCHAR(64) PRIMARY KEY NOT NULL,
+    model_key VARCHAR(512) NOT NULL,
+    dimension INTEGER NOT NULL,
+    vector BYTEA NOT NULL,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_embedding_cache_model_key ON embedding_cache (model_key);
+
+COMMENT ON TABLE embedding_cache IS '嵌入向量内容寻址缓存表';
+COMMENT ON COLUMN embedding_cache.id IS '嵌入模型标识与规范化文本的SHA-256';
+COMMENT ON COLUMN embedding_cache.model_key IS '嵌入模型标识（服务地址|模型名）';
+COMMENT ON COLUMN embedding_cache.dimension IS '向量维度';
+COMMENT ON COLUMN embedding_cache.vector IS '小端序float32向量';
+
+ALTER TABLE file_detail ADD COLUMN embedding_cache_hits INTEGER DEFAULT 0;
+ALTER TABLE file_detail ADD COLUMN embedding_cache_misses INTEGER DEFAULT 0;
+
+COMMENT ON COLUMN file_detail.embedding_cache_hits IS '本轮向量化复用缓存向量的段落数';
+COMMENT ON COLUMN file_detail.embedding_cache_misses IS '本轮向量化调用嵌入接口的段落数';
@@ -0,0 +1,11 @@
+-- 文档单元增加页面与内容指纹
+-- Migration: V20251019006__add_document_unit_fingerprints.sql
+-- Description: 重新处理或重新上传文件时与上一轮结果比对，只对变化的页面重新OCR、变化的段落重新向量化
+
+ALTER TABLE document_unit ADD COLUMN source_hash VARCHAR(64);
+ALTER TABLE document_unit ADD COLUMN content_hash VARCHAR(64);
+
+CREATE INDEX idx_document_unit_file_id ON document_unit (file_id);
+
+COMMENT ON COLUMN document_unit.source_hash IS '源页面指纹（PDF为页面内容流与图片资源的哈希，文本类文件与内容指纹相同）';
+COMMENT ON COLUMN document_unit.content_hash IS '提取内容指纹，内容不变的段落沿用已有向量';
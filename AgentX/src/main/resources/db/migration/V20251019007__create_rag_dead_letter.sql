@@ -0,0 +1,35 @@
+-- 创建RAG入库死信消息表
+-- Migration: V20251019007__create_rag_dead_letter.sql
+-- Description: 超过重试次数或不可重试的入库消息落库保存，供管理员查看原因并重放
+
+CREATE TABLE rag_dead_letter (
+    id VARCHAR(36) PRIMARY KEY NOT NULL,
+    source_queue VARCHAR(255),
+    source_exchange VARCHAR(255),
+    source_routing_key VARCHAR(255),
+    file_id VARCHAR(36),
+    trace_id VARCHAR(64),
+    payload TEXT,
+    error_message TEXT,
+    retry_count INTEGER DEFAULT 0,
+    status INTEGER DEFAULT 0,
+    replayed_at TIMESTAMP WITHOUT TIME ZONE,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    deleted_at TIMESTAMP WITHOUT TIME ZONE
+);
+
+CREATE INDEX idx_rag_dead_letter_status ON rag_dead_letter (status);
+CREATE INDEX idx_rag_dead_letter_file_id ON rag_dead_letter (file_id);
+
+COMMENT ON TABLE rag_dead_letter IS 'RAG入库死信消息表';
+COMMENT ON COLUMN rag_dead_letter.source_queue IS '原队列';
+COMMENT ON COLUMN rag_dead_letter.source_exchange IS '原交换机';
+COMMENT ON COLUMN rag_dead_letter.source_routing_key IS '原路由键';
+COMMENT ON COLUMN rag_dead_letter.file_id IS '文件ID';
+COMMENT ON COLUMN rag_dead_letter.trace_id IS '链路追踪ID';
+COMMENT ON COLUMN rag_dead_letter.payload IS '原始消息体';
+COMMENT ON COLUMN rag_dead_letter.error_message IS '最后一次失败原因';
+COMMENT ON COLUMN rag_dead_letter.retry_count IS '已重试次数';
+COMMENT ON COLUMN rag_dead_letter.status IS '状态：0-待处理，1-已重放';
+COMMENT ON COLUMN rag_dead_letter.replayed_at IS '重放时间';
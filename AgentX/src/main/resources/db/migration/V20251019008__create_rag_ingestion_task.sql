@@ -0,0 +1,30 @@
+-- 创建RAG入库排队任务表
+-- Migration: V20251019008__create_rag_ingestion_task.sql
+-- Description: 文件预处理消息按用户排队，由公平调度在全局并发窗口内轮流放行，避免单个用户的大批量上传阻塞其他用户
+
+CREATE TABLE rag_ingestion_task (
+    id VARCHAR(36) PRIMARY KEY NOT NULL,
+    user_id VARCHAR(36) NOT NULL,
+    file_id VARCHAR(36) NOT NULL,
+    trace_id VARCHAR(64),
+    payload TEXT NOT NULL,
+    status INTEGER NOT NULL DEFAULT 0,
+    dispatched_at TIMESTAMP WITHOUT TIME ZONE,
+    finished_at TIMESTAMP WITHOUT TIME ZONE,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    deleted_at TIMESTAMP WITHOUT TIME ZONE
+);
+
+CREATE INDEX idx_rag_ingestion_task_status_user ON rag_ingestion_task (status, user_id, created_at);
+CREATE INDEX idx_rag_ingestion_task_file_id ON rag_ingestion_task (file_id);
+CREATE INDEX idx_rag_ingestion_task_dispatched_at ON rag_ingestion_task (dispatched_at);
+
+COMMENT ON TABLE rag_ingestion_task IS 'RAG入库排队任务表';
+COMMENT ON COLUMN rag_ingestion_task.user_id IS '提交用户ID';
+COMMENT ON COLUMN rag_ingestion_task.file_id IS '文件ID';
+COMMENT ON COLUMN rag_ingestion_task.trace_id IS '链路追踪ID';
+COMMENT ON COLUMN rag_ingestion_task.payload IS '预处理消息体';
+COMMENT ON COLUMN rag_ingestion_task.status IS '状态：0-排队中，1-处理中，2-已结束';
+COMMENT ON COLUMN rag_ingestion_task.dispatched_at IS '放行时间，与创建时间之差即排队等待时间';
+COMMENT ON COLUMN rag_ingestion_task.finished_at IS '结束时间';
@@ -0,0 +1,12 @@
+-- 快照复制索引
+-- Migration: V20251019009__add_snapshot_copy_indexes.sql
+-- Description: 发布版本和安装快照改为数据库内按文件、按文档ID游标分块复制，为按块取数和文件ID换算补充索引
+
+DROP INDEX IF EXISTS idx_document_unit_file_id;
+CREATE INDEX idx_document_unit_file_id ON document_unit (file_id, id);
+
+CREATE INDEX idx_rag_version_files_version_id ON rag_version_files (rag_version_id, original_file_id);
+CREATE INDEX idx_rag_version_documents_file_id ON rag_version_documents (rag_version_file_id, id);
+CREATE INDEX idx_rag_version_documents_version_id ON rag_version_documents (rag_version_id);
+CREATE INDEX idx_user_rag_files_user_rag_id ON user_rag_files (user_rag_id, original_file_id);
+CREATE INDEX idx_user_rag_documents_user_rag_id ON user_rag_documents (user_rag_id);
@@ -0,0 +1,172 @@
+-- 创建内容寻址的分块存储
+-- Migration: V20251019010__create_rag_chunk_store.sql
+-- Description: 发布版本和安装快照不再复制文档与向量，版本文件和用户文件只引用按内容寻址、不可变的分块集合；
+--              分块集合与分块按引用计数回收。存量版本快照和用户快照按同样的规则回填，内容为空的文档单元不计入集合
+
+CREATE EXTENSION IF NOT EXISTS vector;
+
+CREATE TABLE rag_chunk (
+    id VARCHAR(64) PRIMARY KEY NOT NULL,
+    content TEXT NOT NULL,
+    ref_count INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_rag_chunk_orphan ON rag_chunk (updated_at) WHERE ref_count <= 0;
+
+COMMENT ON TABLE rag_chunk IS 'RAG内容寻址分块表，内容相同的文档单元在所有版本和安装间共享一行';
+COMMENT ON COLUMN rag_chunk.id IS '内容的SHA-256，与document_unit.content_hash一致';
+COMMENT ON COLUMN rag_chunk.content IS '分块内容';
+COMMENT ON COLUMN rag_chunk.ref_count IS '引用该分块的集合成员数';
+
+CREATE TABLE rag_chunk_set (
+    id VARCHAR(64) PRIMARY KEY NOT NULL,
+    document_count INTEGER NOT NULL DEFAULT 0,
+    ref_count INTEGER NOT NULL DEFAULT 0,
+    sealed BOOLEAN NOT NULL DEFAULT FALSE,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_rag_chunk_set_orphan ON rag_chunk_set (updated_at) WHERE ref_count <= 0;
+
+COMMENT ON TABLE rag_chunk_set IS 'RAG分块集合表，一个文件在某一时刻的全部分块，按内容寻址且写入成员后不再变化';
+COMMENT ON COLUMN rag_chunk_set.id IS '按页码排序的（页码:分块ID）序列的SHA-256';
+COMMENT ON COLUMN rag_chunk_set.document_count IS '成员数';
+COMMENT ON COLUMN rag_chunk_set.ref_count IS '引用该集合的版本文件和用户文件数';
+COMMENT ON COLUMN rag_chunk_set.sealed IS '成员是否已写入';
+
+CREATE TABLE rag_chunk_set_member (
+    id VARCHAR(36) PRIMARY KEY NOT NULL,
+    chunk_set_id VARCHAR(64) NOT NULL,
+    chunk_id VARCHAR(64) NOT NULL,
+    page INTEGER,
+    original_document_id VARCHAR(64),
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_rag_chunk_set_member_set ON rag_chunk_set_member (chunk_set_id, page);
+CREATE INDEX idx_rag_chunk_set_member_chunk ON rag_chunk_set_member (chunk_id);
+
+COMMENT ON TABLE rag_chunk_set_member IS 'RAG分块集合成员表';
+COMMENT ON COLUMN rag_chunk_set_member.chunk_set_id IS '分块集合ID';
+COMMENT ON COLUMN rag_chunk_set_member.chunk_id IS '分块ID';
+COMMENT ON COLUMN rag_chunk_set_member.page IS '页码';
+COMMENT ON COLUMN rag_chunk_set_member.original_document_id IS '首次写入该集合时的原始文档单元ID（仅标识）';
+
+CREATE TABLE rag_chunk_vector (
+    id VARCHAR(64) PRIMARY KEY NOT NULL,
+    chunk_id VARCHAR(64) NOT NULL,
+    embedding_model VARCHAR(255) NOT NULL,
+    text TEXT,
+    embedding vector NOT NULL,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_rag_chunk_vector_chunk_model ON rag_chunk_vector (chunk_id, embedding_model);
+
+COMMENT ON TABLE rag_chunk_vector IS 'RAG分块向量表，随分块共享和回收，版本检索只在版本引用的分块内计算距离';
+COMMENT ON COLUMN rag_chunk_vector.id IS '分块ID、嵌入模型与向量文本的SHA-256';
+COMMENT ON COLUMN rag_chunk_vector.chunk_id IS '分块ID';
+COMMENT ON COLUMN rag_chunk_vector.embedding_model IS '生成向量的嵌入模型标识，检索只比较同一模型的向量';
+COMMENT ON COLUMN rag_chunk_vector.text IS '向量对应的段落文本';
+COMMENT ON COLUMN rag_chunk_vector.embedding IS '向量，取自发布时数据集的向量库';
+
+ALTER TABLE rag_version_files ADD COLUMN chunk_set_id VARCHAR(64);
+ALTER TABLE user_rag_files ADD COLUMN chunk_set_id VARCHAR(64);
+
+CREATE INDEX idx_rag_version_files_chunk_set_id ON rag_version_files (chunk_set_id);
+CREATE INDEX idx_user_rag_files_chunk_set_id ON user_rag_files (chunk_set_id);
+
+COMMENT ON COLUMN rag_version_files.chunk_set_id IS '引用的分块集合ID，文件没有文档时为空';
+COMMENT ON COLUMN user_rag_files.chunk_set_id IS '引用的分块集合ID，文件没有文档时为空';
+
+-- 发布时按文档单元ID取向量
+DO $$
+BEGIN
+    IF to_regclass('public.vector_store') IS NOT NULL THEN
+        CREATE INDEX IF NOT EXISTS idx_vector_store_document_id ON public.vector_store ((metadata ->> 'DOCUMENT_ID'));
+    END IF;
+END $$;
+
+-- ========== 回填存量版本快照和用户快照 ==========
+
+CREATE TEMP TABLE chunk_store_backfill AS
+SELECT owner_type, owner_file_id,
+       encode(sha256(convert_to(string_agg(COALESCE(page::text, '') || ':' || chunk_id, ','
+           ORDER BY page NULLS FIRST, chunk_id), 'UTF8')), 'hex') AS chunk_set_id,
+       COUNT(*) AS document_count
+FROM (
+    SELECT 'V' AS owner_type, rag_version_file_id AS owner_file_id, page,
+           encode(sha256(convert_to(content, 'UTF8')), 'hex') AS chunk_id
+    FROM rag_version_documents WHERE deleted_at IS NULL AND content IS NOT NULL
+    UNION ALL
+    SELECT 'U', user_rag_file_id, page, encode(sha256(convert_to(content, 'UTF8')), 'hex')
+    FROM user_rag_documents WHERE deleted_at IS NULL AND content IS NOT NULL
+) d
+GROUP BY owner_type, owner_file_id;
+
+UPDATE rag_version_files vf SET chunk_set_id = b.chunk_set_id
+FROM chunk_store_backfill b WHERE b.owner_type = 'V' AND b.owner_file_id = vf.id;
+
+UPDATE user_rag_files uf SET chunk_set_id = b.chunk_set_id
+FROM chunk_store_backfill b WHERE b.owner_type = 'U' AND b.owner_file_id = uf.id;
+
+INSERT INTO rag_chunk_set (id, document_count, ref_count, sealed)
+SELECT chunk_set_id, MAX(document_count), 0, TRUE FROM chunk_store_backfill GROUP BY chunk_set_id;
+
+-- 每个集合只从一个代表文件写入成员
+INSERT INTO rag_chunk_set_member (id, chunk_set_id, chunk_id, page, original_document_id)
+SELECT REPLACE(gen_random_uuid()::text, '-', ''), r.chunk_set_id,
+       encode(sha256(convert_to(d.content, 'UTF8')), 'hex'), d.page, d.original_document_id
+FROM (SELECT DISTINCT ON (chunk_set_id) chunk_set_id, owner_type, owner_file_id
+      FROM chunk_store_backfill ORDER BY chunk_set_id, owner_type, owner_file_id) r
+JOIN (SELECT 'V' AS owner_type, rag_version_file_id AS owner_file_id, page, content, original_document_id
+      FROM rag_version_documents WHERE deleted_at IS NULL AND content IS NOT NULL
+      UNION ALL
+      SELECT 'U', user_rag_file_id, page, content, original_document_id
+      FROM user_rag_documents WHERE deleted_at IS NULL AND content IS NOT NULL) d
+    ON d.owner_type = r.owner_type AND d.owner_file_id = r.owner_file_id;
+
+INSERT INTO rag_chunk (id, content, ref_count)
+SELECT DISTINCT ON (chunk_id) chunk_id, content, 0
+FROM (SELECT encode(sha256(convert_to(content, 'UTF8')), 'hex') AS chunk_id, content
+      FROM rag_version_documents WHERE deleted_at IS NULL AND content IS NOT NULL
+      UNION ALL
+      SELECT encode(sha256(convert_to(content, 'UTF8')), 'hex'), content
+      FROM user_rag_documents WHERE deleted_at IS NULL AND content IS NOT NULL) d
+WHERE chunk_id IN (SELECT chunk_id FROM rag_chunk_set_member);
+
+UPDATE rag_chunk c SET ref_count = m.member_count
+FROM (SELECT chunk_id, COUNT(*) AS member_count FROM rag_chunk_set_member GROUP BY chunk_id) m
+WHERE c.id = m.chunk_id;
+
+UPDATE rag_chunk_set s SET ref_count = r.ref_count
+FROM (SELECT chunk_set_id, COUNT(*) AS ref_count FROM (
+          SELECT chunk_set_id FROM rag_version_files WHERE deleted_at IS NULL AND chunk_set_id IS NOT NULL
+          UNION ALL
+          SELECT chunk_set_id FROM user_rag_files WHERE deleted_at IS NULL AND chunk_set_id IS NOT NULL) f
+      GROUP BY chunk_set_id) r
+WHERE s.id = r.chunk_set_id;
+
+-- 存量快照从未复制向量，从数据集向量库中取内容仍一致的文档单元的向量，模型标识取文件所有者的默认嵌入模型，
+-- 与发布时的取法一致；所有者未配置嵌入模型的文件不固化向量
+DO $$
+BEGIN
+    IF to_regclass('public.vector_store') IS NOT NULL THEN
+        INSERT INTO rag_chunk_vector (id, chunk_id, embedding_model, text, embedding)
+        SELECT encode(sha256(convert_to(m.chunk_id || ':' || mo.model_endpoint || ':' || COALESCE(vs.text, ''),
+                   'UTF8')), 'hex'), m.chunk_id, mo.model_endpoint, vs.text, vs.embedding
+        FROM rag_chunk_set_member m
+        JOIN document_unit d ON d.id = m.original_document_id AND d.deleted_at IS NULL
+            AND COALESCE(d.content_hash, encode(sha256(convert_to(d.content, 'UTF8')), 'hex')) = m.chunk_id
+        JOIN file_detail fd ON fd.id = d.file_id
+        JOIN user_settings us ON us.user_id = fd.user_id AND us.deleted_at IS NULL
+        JOIN models mo ON mo.id = (us.setting_config ->> 'defaultEmbeddingModel')
+        JOIN public.vector_store vs ON (vs.metadata ->> 'DOCUMENT_ID') = d.id
+        ON CONFLICT (id) DO NOTHING;
+    END IF;
+END $$;
+
+DROP TABLE chunk_store_backfill;
@@ -0,0 +1,5 @@
+-- 记忆去重索引
+-- Migration: V20251019011__add_memory_dedupe_index.sql
+-- Description: 保存记忆改为按用户和去重哈希集合一次查重，为查重补充索引
+
+CREATE INDEX IF NOT EXISTS idx_memory_items_user_dedupe ON memory_items (user_id, dedupe_hash) WHERE deleted_at IS NULL;
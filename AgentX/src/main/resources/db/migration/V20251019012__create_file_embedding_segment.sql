@@ -0,0 +1,14 @@
+-- 向量化段落完成登记
+-- Migration: V20251019012__create_file_embedding_segment.sql
+-- Description: 向量化完成计数改为按段落ID登记，消息重投或整批重试时已计数的段落不再重复累加，写入失败的段落不计数
+
+CREATE TABLE file_embedding_segment (
+    file_id VARCHAR(64) NOT NULL,
+    segment_id VARCHAR(128) NOT NULL,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (file_id, segment_id)
+);
+
+COMMENT ON TABLE file_embedding_segment IS '本轮向量化已计入完成数的段落，开始新一轮或完成向量化时清空';
+COMMENT ON COLUMN file_embedding_segment.file_id IS '文件ID';
+COMMENT ON COLUMN file_embedding_segment.segment_id IS '向量化段落ID';
@@ -0,0 +1,12 @@
+-- 入库排队任务按文件唯一
+-- Migration: V20251019013__add_rag_ingestion_task_pending_unique.sql
+-- Description: 同一文件最多只有一个排队中的任务，提交时以 INSERT ... ON CONFLICT 原子地新增或更新消息体，避免并发提交重复排队
+
+-- 已存在的重复排队任务只保留最新的一条，其余标记为已结束
+UPDATE rag_ingestion_task t SET status = 2, finished_at = CURRENT_TIMESTAMP
+WHERE t.status = 0 AND t.deleted_at IS NULL AND EXISTS (
+    SELECT 1 FROM rag_ingestion_task o
+    WHERE o.file_id = t.file_id AND o.status = 0 AND o.deleted_at IS NULL
+      AND (o.created_at, o.id) > (t.created_at, t.id));
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_rag_ingestion_task_unique_pending_file ON rag_ingestion_task (file_id) WHERE status = 0 AND deleted_at IS NULL;
@@ -0,0 +1,9 @@
+-- 嵌入向量缓存按最近使用时间淘汰
+-- Migration: V20251019014__add_embedding_cache_retention.sql
+-- Description: 缓存命中时刷新最近使用时间，定时任务淘汰长期未使用的条目，并在条目数超过上限时淘汰最久未使用的条目
+
+ALTER TABLE embedding_cache ADD COLUMN last_used_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+CREATE INDEX idx_embedding_cache_last_used_at ON embedding_cache (last_used_at);
+
+COMMENT ON COLUMN embedding_cache.last_used_at IS '最近一次写入或命中的时间，用于淘汰长期未使用的条目';
@@ -0,0 +1,181 @@
+package org.xhy.application.rag.service.manager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.xhy.application.rag.dto.FileProcessProgressDTO;
+import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
+import org.xhy.domain.rag.event.FileProgressChangedEvent;
+import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.service.FileDetailDomainService;
+import org.xhy.domain.rag.service.RagQaDatasetDomainService;
+import org.xhy.infrastructure.rag.config.RagProgressPushProperties;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/** 文件进度推送测试 同一周期内的多次变更合并为一次批量读库和一次推送，各连接未变化不重推，无订阅时不读库 */
+class RagFileProgressPushAppServiceTest {
+
+    private static final String DATASET_ID = "dataset-1";
+
+    private final Map<String, FileDetailEntity> rows = new HashMap<>();
+
+    private FileDetailDomainService fileDetailDomainService;
+
+    private RagFileProgressPushAppService pushService;
+
+    @BeforeEach
+    void setUp() {
+        fileDetailDomainService = mock(FileDetailDomainService.class);
+        when(fileDetailDomainService.listFilesByIds(anyCollection())).thenAnswer(inv -> {
+            Collection<String> ids = inv.getArgument(0);
+            return ids.stream().map(rows::get).filter(row -> row != null).toList();
+        });
+        RagProgressPushProperties properties = new RagProgressPushProperties();
+        properties.setResyncIntervalMillis(Long.MAX_VALUE);
+        pushService = new RagFileProgressPushAppService(fileDetailDomainService,
+                mock(RagQaDatasetDomainService.class), properties);
+        rows.put("file-1", file("file-1", DATASET_ID, 10.0));
+        rows.put("file-2", file("file-2", DATASET_ID, 20.0));
+        rows.put("file-3", file("file-3", "dataset-2", 30.0));
+    }
+
+    @Test
+    void burstOfEventsShouldBeCoalescedIntoOneReadAndOnePush() throws Exception {
+        SseEmitter emitter = mock(SseEmitter.class);
+        pushService.register(DATASET_ID, emitter);
+
+        for (int i = 0; i < 100; i++) {
+            pushService.onProgressChanged(new FileProgressChangedEvent("file-1", DATASET_ID));
+            pushService.onProgressChanged(new FileProgressChangedEvent("file-2", null));
+        }
+        pushService.flush();
+
+        verify(fileDetailDomainService).listFilesByIds(Set.of("file-1", "file-2"));
+        assertThat(pushedBatches(emitter)).singleElement().satisfies(batch -> assertThat(batch)
+                .extracting(FileProcessProgressDTO::getFileId).containsExactlyInAnyOrder("file-1", "file-2"));
+
+        // 补推一轮时内容未变不重推，之后不再读库
+        pushService.flush();
+        pushService.flush();
+        verify(fileDetailDomainService, times(2)).listFilesByIds(anyCollection());
+        verify(emitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void changeLandingAfterEventShouldBePickedUpBySettleRound() throws Exception {
+        SseEmitter emitter = mock(SseEmitter.class);
+        pushService.register(DATASET_ID, emitter);
+
+        pushService.onProgressChanged(new FileProgressChangedEvent("file-1", DATASET_ID));
+        pushService.flush();
+        // 事件发布方在首轮读库之后才落库
+        rows.get("file-1").setEmbeddingProcessProgress(55.0);
+        pushService.flush();
+
+        List<List<FileProcessProgressDTO>> batches = pushedBatches(emitter);
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(1)).singleElement().extracting(FileProcessProgressDTO::getEmbeddingProcessProgress)
+                .isEqualTo(55.0);
+    }
+
+    @Test
+    void newSubscriberSnapshotShouldNotSuppressPushToExistingSubscriber() throws Exception {
+        SseEmitter existing = mock(SseEmitter.class);
+        pushService.register(DATASET_ID, existing);
+        pushService.onProgressChanged(new FileProgressChangedEvent("file-1", DATASET_ID));
+        pushService.flush();
+
+        // 变更落库后、下个周期前有新连接订阅，其全量快照已含新进度
+        rows.get("file-1").setEmbeddingProcessProgress(70.0);
+        when(fileDetailDomainService.listAllFilesByDataset(DATASET_ID, "user-1"))
+                .thenReturn(List.of(rows.get("file-1"), rows.get("file-2")));
+        pushService.subscribe(DATASET_ID, "user-1");
+        pushService.onProgressChanged(new FileProgressChangedEvent("file-1", DATASET_ID));
+        pushService.flush();
+
+        List<List<FileProcessProgressDTO>> batches = pushedBatches(existing);
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(1)).singleElement().extracting(FileProcessProgressDTO::getEmbeddingProcessProgress)
+                .isEqualTo(70.0);
+    }
+
+    @Test
+    void filesOfUnsubscribedDatasetsShouldNotBePushed() throws Exception {
+        SseEmitter emitter = mock(SseEmitter.class);
+        pushService.register(DATASET_ID, emitter);
+
+        pushService.onProgressChanged(new FileProgressChangedEvent("file-3", "dataset-2"));
+        pushService.flush();
+        verify(fileDetailDomainService, never()).listFilesByIds(anyCollection());
+
+        // 计数事件不带数据集，读库后按文件所属数据集过滤
+        pushService.onProgressChanged(new FileProgressChangedEvent("file-3", null));
+        pushService.flush();
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void eventsWithoutSubscribersShouldNotTouchDatabase() {
+        pushService.onProgressChanged(new FileProgressChangedEvent("file-1", DATASET_ID));
+        pushService.flush();
+
+        verifyNoInteractions(fileDetailDomainService);
+    }
+
+    @Test
+    void brokenConnectionShouldBeDropped() throws Exception {
+        SseEmitter emitter = mock(SseEmitter.class);
+        doThrow(new IOException("Broken pipe")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        pushService.register(DATASET_ID, emitter);
+
+        pushService.onProgressChanged(new FileProgressChangedEvent("file-1", DATASET_ID));
+        pushService.flush();
+        rows.get("file-1").setEmbeddingProcessProgress(80.0);
+        pushService.onProgressChanged(new FileProgressChangedEvent("file-1", DATASET_ID));
+        pushService.flush();
+
+        verify(emitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(fileDetailDomainService, times(1)).listFilesByIds(anyCollection());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<List<FileProcessProgressDTO>> pushedBatches(SseEmitter emitter) throws IOException {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> captor = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, atLeast(0)).send(captor.capture());
+        return captor.getAllValues().stream()
+                .map(builder -> builder.build().stream().map(ResponseBodyEmitter.DataWithMediaType::getData)
+                        .filter(List.class::isInstance).map(data -> (List<FileProcessProgressDTO>) data).findFirst()
+                        .orElseThrow())
+                .toList();
+    }
+
+    private static FileDetailEntity file(String id, String datasetId, double embeddingProgress) {
+        FileDetailEntity file = new FileDetailEntity();
+        file.setId(id);
+        file.setDataSetId(datasetId);
+        file.setOriginalFilename(id + ".pdf");
+        file.setProcessingStatus(FileProcessingStatusEnum.EMBEDDING_PROCESSING.getCode());
+        file.setEmbeddingProcessProgress(embeddingProgress);
+        return file;
+    }
+}
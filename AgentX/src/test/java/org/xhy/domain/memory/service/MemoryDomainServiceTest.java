@@ -0,0 +1,180 @@
+package org.xhy.domain.memory.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.xhy.domain.memory.constant.MemoryMetadataConstant;
+import org.xhy.domain.memory.model.CandidateMemory;
+import org.xhy.domain.memory.model.MemoryItemEntity;
+import org.xhy.domain.memory.model.MemoryType;
+import org.xhy.domain.memory.repository.MemoryItemRepository;
+import org.xhy.domain.rag.model.ModelConfig;
+import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.rag.factory.EmbeddingModelFactory;
+import org.xhy.infrastructure.rag.service.UserModelConfigResolver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** 记忆保存测试 验证批量嵌入、集合查重，重复保存后每个记忆条目只保留一条向量，以及向量写入失败时保留已有向量 */
+class MemoryDomainServiceTest {
+
+    private static final String USER_ID = "memory-test-user";
+
+    private static final int DIMENSION = 8;
+
+    private final Map<String, MemoryItemEntity> rows = new LinkedHashMap<>();
+
+    private MemoryItemRepository memoryItemRepository;
+    private OpenAiEmbeddingModel embeddingModel;
+    private UpsertEmbeddingStore store;
+    private MemoryDomainService memoryDomainService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // Lambda条件构造需要实体的表信息缓存
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""),
+                MemoryItemEntity.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        memoryItemRepository = mock(MemoryItemRepository.class);
+        when(memoryItemRepository.selectList(any())).thenAnswer(inv -> new ArrayList<>(rows.values()));
+        when(memoryItemRepository.insert(any(MemoryItemEntity.class))).thenAnswer(inv -> {
+            MemoryItemEntity item = inv.getArgument(0);
+            item.setId(UUID.randomUUID().toString().replace("-", ""));
+            rows.put(item.getId(), item);
+            return 1;
+        });
+        when(memoryItemRepository.updateById(any(MemoryItemEntity.class))).thenReturn(1);
+        doCallRealMethod().when(memoryItemRepository).checkInsert(any());
+        doCallRealMethod().when(memoryItemRepository).checkedUpdateById(any());
+
+        embeddingModel = mock(OpenAiEmbeddingModel.class);
+        when(embeddingModel.embedAll(anyList())).thenAnswer(inv -> {
+            List<TextSegment> segments = inv.getArgument(0);
+            return Response.from(segments.stream().map(s -> embed(s.text())).collect(Collectors.toList()));
+        });
+        EmbeddingModelFactory embeddingModelFactory = mock(EmbeddingModelFactory.class);
+        when(embeddingModelFactory.createEmbeddingModel(any())).thenReturn(embeddingModel);
+        UserModelConfigResolver userModelConfigResolver = mock(UserModelConfigResolver.class);
+        when(userModelConfigResolver.getUserEmbeddingModelConfig(anyString())).thenReturn(new ModelConfig());
+
+        store = new UpsertEmbeddingStore();
+        memoryDomainService = new MemoryDomainService(memoryItemRepository, embeddingModelFactory,
+                userModelConfigResolver, store, mock(ApplicationEventPublisher.class),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    void repeatedSavesShouldKeepOneVectorPerItem() {
+        List<String> first = memoryDomainService.saveMemories(USER_ID, "s1",
+                List.of(candidate("用户主要使用 Python", 0.6f), candidate("用户常驻上海办公", 0.5f),
+                        candidate("  用户主要使用   python ", 0.9f)));
+        assertThat(first).hasSize(2);
+        assertThat(rows).hasSize(2);
+
+        // 旧版本按随机ID写入的重复向量，合并时应被清理
+        MemoryItemEntity python = rows.get(first.get(0));
+        Metadata legacy = new Metadata().put(MemoryMetadataConstant.USER_ID, USER_ID)
+                .put(MemoryMetadataConstant.ITEM_ID, python.getId());
+        store.add(embed(python.getText()), new TextSegment(python.getText(), legacy));
+        assertThat(vectors()).hasSize(3);
+
+        for (int i = 0; i < 3; i++) {
+            memoryDomainService.saveMemories(USER_ID, "s2", List.of(candidate("用户主要使用 Python", 0.7f),
+                    candidate("用户常驻上海办公", 0.8f), candidate("用户偏好简洁的回答", 0.4f)));
+        }
+
+        assertThat(rows).hasSize(3);
+        List<EmbeddingMatch<TextSegment>> vectors = vectors();
+        assertThat(vectors).hasSize(rows.size());
+        assertThat(vectors.stream().map(m -> m.embedded().metadata().getString(MemoryMetadataConstant.ITEM_ID)))
+                .containsExactlyInAnyOrderElementsOf(rows.keySet());
+        assertThat(python.getImportance()).isEqualTo(0.9f);
+
+        // 每次保存只有一次批量嵌入和一次查重
+        verify(embeddingModel, times(4)).embedAll(anyList());
+        verify(memoryItemRepository, times(4)).selectList(any());
+    }
+
+    @Test
+    void failedVectorWriteShouldKeepExistingVectors() {
+        List<String> first = memoryDomainService.saveMemories(USER_ID, "s1",
+                List.of(candidate("用户主要使用 Python", 0.6f)));
+        assertThat(vectors()).hasSize(1);
+
+        store.failing = true;
+        assertThatThrownBy(() -> memoryDomainService.saveMemories(USER_ID, "s2",
+                List.of(candidate("用户主要使用 Python", 0.9f)))).isInstanceOf(BusinessException.class);
+
+        assertThat(vectors()).extracting(m -> m.embedded().metadata().getString(MemoryMetadataConstant.ITEM_ID))
+                .containsExactly(first.get(0));
+    }
+
+    private List<EmbeddingMatch<TextSegment>> vectors() {
+        return store.search(EmbeddingSearchRequest.builder().queryEmbedding(embed("query")).maxResults(100)
+                .minScore(0.0).build()).matches();
+    }
+
+    private static CandidateMemory candidate(String text, float importance) {
+        CandidateMemory c = new CandidateMemory();
+        c.setType(MemoryType.FACT);
+        c.setText(text);
+        c.setImportance(importance);
+        return c;
+    }
+
+    /** 与PgVector一致，按向量ID覆盖写入 */
+    private static class UpsertEmbeddingStore extends InMemoryEmbeddingStore<TextSegment> {
+
+        private boolean failing;
+
+        @Override
+        public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+            if (failing) {
+                throw new IllegalStateException("vector store unavailable");
+            }
+            removeAll(ids);
+            super.addAll(ids, embeddings, embedded);
+        }
+    }
+
+    private static Embedding embed(String text) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = 1 + ((text.hashCode() >> i) & 1);
+        }
+        return Embedding.from(vector);
+    }
+}
@@ -0,0 +1,136 @@
+package org.xhy.domain.memory.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.memory.model.CandidateMemory;
+import org.xhy.infrastructure.memory.config.MemoryExtractionProperties;
+import org.xhy.infrastructure.rag.service.UserModelConfigResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/** 记忆抽取合并测试 统计同一会话多轮发言的模型调用次数，并验证线程池满时保留窗口、停机时提交剩余窗口 */
+class MemoryExtractorServiceTest {
+
+    private static final String USER_ID = "extract-user";
+
+    private final List<List<String>> extractedWindows = new ArrayList<>();
+
+    private final AtomicBoolean rejecting = new AtomicBoolean();
+
+    /** 线程池拒绝前执行一次的动作，模拟取出窗口到放回窗口之间同一会话又有新发言 */
+    private final AtomicReference<Runnable> beforeReject = new AtomicReference<>();
+
+    private MemoryDomainService memoryDomainService;
+    private MemoryExtractionProperties properties;
+    private MemoryExtractorService service;
+
+    @BeforeEach
+    void setUp() {
+        memoryDomainService = mock(MemoryDomainService.class);
+        properties = new MemoryExtractionProperties();
+        properties.setDebounceTurns(5);
+        properties.setIdleMillis(60_000);
+
+        Executor executor = task -> {
+            if (rejecting.get()) {
+                Runnable action = beforeReject.getAndSet(null);
+                if (action != null) {
+                    action.run();
+                }
+                throw new RejectedExecutionException("queue full");
+            }
+            task.run();
+        };
+        service = new MemoryExtractorService(mock(UserModelConfigResolver.class), memoryDomainService, properties,
+                executor) {
+            @Override
+            public List<CandidateMemory> extract(String userId, String sessionId, List<String> userMessages) {
+                extractedWindows.add(List.copyOf(userMessages));
+                CandidateMemory c = new CandidateMemory();
+                c.setText(userMessages.get(userMessages.size() - 1));
+                return List.of(c);
+            }
+        };
+    }
+
+    @Test
+    void turnsShouldBeExtractedInDebouncedWindows() {
+        // 逐轮抽取时12轮对话需要12次调用
+        for (int i = 1; i <= 12; i++) {
+            service.submitTurn(USER_ID, "s1", "第" + i + "轮发言");
+        }
+        assertThat(extractedWindows).hasSize(2);
+        assertThat(extractedWindows.get(0)).containsExactly("第1轮发言", "第2轮发言", "第3轮发言", "第4轮发言", "第5轮发言");
+
+        // 未攒够轮数的尾部在空闲超时后提交
+        service.flushIdleWindows();
+        assertThat(extractedWindows).hasSize(2);
+        properties.setIdleMillis(0);
+        service.flushIdleWindows();
+        assertThat(extractedWindows).hasSize(3);
+        assertThat(extractedWindows.get(2)).containsExactly("第11轮发言", "第12轮发言");
+
+        verify(memoryDomainService, times(3)).saveMemories(anyString(), anyString(), anyList());
+        assertThat(service.stats()).contains("turns=12", "sessions=1", "calls=3", "turnsPerCall=4.00",
+                "callsPerSession=3.00");
+    }
+
+    @Test
+    void rejectedWindowShouldStayPendingUntilShutdownFlush() {
+        rejecting.set(true);
+        for (int i = 1; i <= 7; i++) {
+            service.submitTurn(USER_ID, "s1", "第" + i + "轮发言");
+        }
+        service.submitTurn(USER_ID, "s2", "另一个会话");
+        assertThat(extractedWindows).isEmpty();
+        assertThat(service.stats()).contains("deferred=3", "pending=2");
+
+        // 停机时线程池仍然拒绝，在停机线程内完成抽取
+        service.flushAll();
+        assertThat(extractedWindows).hasSize(2);
+        assertThat(extractedWindows).anySatisfy(window -> assertThat(window).hasSize(7));
+        assertThat(service.stats()).contains("calls=2", "pending=0");
+    }
+
+    @Test
+    void windowShouldKeepOnlyLatestTurns() {
+        properties.setDebounceTurns(100);
+        properties.setMaxWindowTurns(3);
+        for (int i = 1; i <= 5; i++) {
+            service.submitTurn(USER_ID, "s1", "第" + i + "轮发言");
+        }
+        service.flushAll();
+        assertThat(extractedWindows).containsExactly(List.of("第3轮发言", "第4轮发言", "第5轮发言"));
+        assertThat(service.stats()).contains("droppedTurns=2");
+    }
+
+    @Test
+    void rejectedWindowMergedWithNewTurnsShouldKeepOnlyLatestTurns() {
+        properties.setDebounceTurns(3);
+        properties.setMaxWindowTurns(3);
+        rejecting.set(true);
+        beforeReject.set(() -> {
+            for (int i = 4; i <= 6; i++) {
+                service.submitTurn(USER_ID, "s1", "第" + i + "轮发言");
+            }
+        });
+        for (int i = 1; i <= 3; i++) {
+            service.submitTurn(USER_ID, "s1", "第" + i + "轮发言");
+        }
+        service.flushAll();
+        assertThat(extractedWindows).containsExactly(List.of("第4轮发言", "第5轮发言", "第6轮发言"));
+        assertThat(service.stats()).contains("droppedTurns=3");
+    }
+}
@@ -0,0 +1,132 @@
+package org.xhy.domain.memory.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.memory.event.MemoryChangedEvent;
+import org.xhy.domain.memory.model.MemoryResult;
+import org.xhy.infrastructure.memory.config.MemoryRecallProperties;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** 记忆召回门控测试 验证低信息消息、同话题消息和冷却期内不重复召回，超过耗时预算时跳过，以及记忆变更后丢弃缓存 */
+class MemoryRecallDomainServiceTest {
+
+    private static final String USER_ID = "recall-user";
+
+    private static final String SESSION_ID = "recall-session";
+
+    private MemoryDomainService memoryDomainService;
+    private MemoryRecallProperties properties;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        memoryDomainService = mock(MemoryDomainService.class);
+        properties = new MemoryRecallProperties();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void lowSignalAndSameTopicMessagesShouldReuseSessionRecall() {
+        List<MemoryResult> python = List.of(result("用户主要使用 Python"));
+        when(memoryDomainService.searchRelevant(anyString(), anyString(), anyInt())).thenReturn(python);
+        MemoryRecallDomainService service = new MemoryRecallDomainService(memoryDomainService, properties, executor);
+
+        assertThat(service.recall(USER_ID, SESSION_ID, "帮我写一个 Python 爬虫脚本", 5)).isEqualTo(python);
+        assertThat(service.recall(USER_ID, SESSION_ID, "好的，谢谢!", 5)).isEqualTo(python);
+        assertThat(service.recall(USER_ID, SESSION_ID, "  Continue. ", 5)).isEqualTo(python);
+        assertThat(service.recall(USER_ID, SESSION_ID, "ok", 5)).isEqualTo(python);
+        assertThat(service.recall(USER_ID, SESSION_ID, "帮我写一个 Python 爬虫脚本吧", 5)).isEqualTo(python);
+
+        verify(memoryDomainService, times(1)).searchRelevant(anyString(), anyString(), anyInt());
+        assertThat(service.stats()).contains("requests=5", "skipRate=0.60", "hitRate=0.20", "recalls=1");
+    }
+
+    @Test
+    void newTopicShouldRecallAfterCooldown() {
+        when(memoryDomainService.searchRelevant(anyString(), anyString(), anyInt()))
+                .thenReturn(List.of(result("用户常驻上海办公")));
+        properties.setCooldownMillis(60_000);
+        MemoryRecallDomainService service = new MemoryRecallDomainService(memoryDomainService, properties, executor);
+
+        service.recall(USER_ID, SESSION_ID, "推荐几家上海的咖啡馆", 5);
+        // 冷却期内的新话题不沿用上个话题的结果
+        assertThat(service.recall(USER_ID, SESSION_ID, "数据库索引应该怎么设计", 5)).isEmpty();
+        verify(memoryDomainService, times(1)).searchRelevant(anyString(), anyString(), anyInt());
+
+        properties.setCooldownMillis(0);
+        service.recall(USER_ID, SESSION_ID, "数据库索引应该怎么设计", 5);
+        verify(memoryDomainService).searchRelevant(USER_ID, "数据库索引应该怎么设计", 5);
+
+        // 另一个会话不受冷却和缓存影响
+        service.recall(USER_ID, "other-session", "推荐几家上海的咖啡馆", 5);
+        verify(memoryDomainService, times(2)).searchRelevant(USER_ID, "推荐几家上海的咖啡馆", 5);
+    }
+
+    @Test
+    void slowRecallShouldBeSkippedAndCachedForNextTurn() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<MemoryResult> late = List.of(result("用户本周目标：完成 Agent 项目搭建"));
+        when(memoryDomainService.searchRelevant(anyString(), eq("这周的 Agent 项目进度怎么安排"), anyInt()))
+                .thenAnswer(inv -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return late;
+                });
+        properties.setTimeoutMillis(50);
+        MemoryRecallDomainService service = new MemoryRecallDomainService(memoryDomainService, properties, executor);
+
+        assertThat(service.recall(USER_ID, SESSION_ID, "这周的 Agent 项目进度怎么安排", 5)).isEmpty();
+
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(service.recall(USER_ID, SESSION_ID, "这周的 Agent 项目进度怎么安排呢", 5)).isEqualTo(late);
+        assertThat(service.stats()).contains("timeouts=1", "hitRate=0.50");
+    }
+
+    @Test
+    void memoryChangeShouldDropCachedRecallsOfThatUser() {
+        when(memoryDomainService.searchRelevant(anyString(), anyString(), anyInt()))
+                .thenReturn(List.of(result("用户主要使用 Python")), List.of(result("用户改用 Go")));
+        properties.setCooldownMillis(0);
+        MemoryRecallDomainService service = new MemoryRecallDomainService(memoryDomainService, properties, executor);
+
+        service.recall(USER_ID, SESSION_ID, "帮我写一个 Python 爬虫脚本", 5);
+        service.recall("other-user", SESSION_ID, "帮我写一个 Python 爬虫脚本", 5);
+        service.onMemoryChanged(new MemoryChangedEvent(USER_ID));
+
+        // 记忆变更的用户重新召回，其他用户的缓存不受影响
+        assertThat(service.recall(USER_ID, SESSION_ID, "帮我写一个 Python 爬虫脚本吧", 5))
+                .extracting(MemoryResult::getText).containsExactly("用户改用 Go");
+        service.recall("other-user", SESSION_ID, "帮我写一个 Python 爬虫脚本吧", 5);
+        verify(memoryDomainService, times(3)).searchRelevant(anyString(), anyString(), anyInt());
+    }
+
+    private static MemoryResult result(String text) {
+        MemoryResult r = new MemoryResult();
+        r.setItemId(text);
+        r.setText(text);
+        r.setScore(0.9);
+        return r;
+    }
+}
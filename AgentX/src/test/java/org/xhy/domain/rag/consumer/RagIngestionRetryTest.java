@@ -0,0 +1,346 @@
+package org.xhy.domain.rag.consumer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Envelope;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.xhy.application.rag.service.manager.RagDeadLetterAppService;
+import org.xhy.domain.rag.constant.DeadLetterStatus;
+import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
+import org.xhy.domain.rag.message.RagDocSyncStorageMessage;
+import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.model.RagDeadLetterEntity;
+import org.xhy.domain.rag.service.EmbeddingDomainService;
+import org.xhy.domain.rag.service.FileDetailDomainService;
+import org.xhy.domain.rag.service.RagDeadLetterDomainService;
+import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.mq.core.MessageHeaders;
+import org.xhy.infrastructure.mq.core.MessagePublisher;
+import org.xhy.infrastructure.mq.core.MessageRoute;
+import org.xhy.infrastructure.mq.events.RagDeadLetterEvent;
+import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
+import org.xhy.infrastructure.mq.rabbit.RagIngestionFailureHandler;
+import org.xhy.infrastructure.mq.rabbit.RagIngestionRetryConfig;
+import org.xhy.infrastructure.rag.config.RagIngestionRetryProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** 入库消息重试与死信测试 使用内存中的交换机、队列和队列TTL模拟RabbitMQ，校验失败消息按递增延迟重试、超过次数后进入死信队列并可重放 */
+class RagIngestionRetryTest {
+
+    private static final String FILE_ID = "file-1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private InMemoryBroker broker;
+
+    private EmbeddingDomainService embeddingService;
+
+    private FileDetailDomainService fileDetailDomainService;
+
+    private RagIngestionRetryProperties properties;
+
+    private RagDocStorageConsumer consumer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        properties = new RagIngestionRetryProperties();
+        properties.setMaxRetries(3);
+        properties.setInitialBackoffMillis(1000);
+        properties.setMultiplier(2.0);
+        properties.setMaxBackoffMillis(3000);
+        broker = new InMemoryBroker(new RagIngestionRetryConfig().ragIngestionRetryDeclarables(properties));
+
+        embeddingService = mock(EmbeddingDomainService.class);
+        fileDetailDomainService = mock(FileDetailDomainService.class);
+        FileDetailEntity file = new FileDetailEntity();
+        file.setId(FILE_ID);
+        file.setUserId("user-1");
+        file.setProcessingStatus(FileProcessingStatusEnum.EMBEDDING_FAILED.getCode());
+        when(fileDetailDomainService.getFileByIdWithoutUserCheck(FILE_ID)).thenReturn(file);
+        consumer = new RagDocStorageConsumer(embeddingService, fileDetailDomainService,
+                new RagIngestionFailureHandler(properties));
+    }
+
+    @Test
+    void transientFailuresShouldBeRetriedWithGrowingDelay() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(inv -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new IllegalStateException("embedding service unavailable");
+            }
+            return null;
+        }).when(embeddingService).syncStorage(any(RagDocSyncStorageMessage.class));
+
+        broker.publishToMain(storagePayload());
+        broker.drain(this::deliverToStorageConsumer);
+
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(broker.expiredDelays).containsExactly(1000L, 2000L);
+        assertThat(broker.deadLetters).isEmpty();
+        // 每次投递恰好确认一次，没有拒绝
+        assertThat(broker.acks).isEqualTo(3);
+        assertThat(broker.nacks).isZero();
+        verify(fileDetailDomainService, never()).failFileEmbeddingProcessing(anyString(), anyString());
+    }
+
+    @Test
+    void persistentFailureShouldEndUpInDeadLetterQueue() throws Exception {
+        doThrow(new IllegalStateException("embedding service unavailable")).when(embeddingService)
+                .syncStorage(any(RagDocSyncStorageMessage.class));
+
+        broker.publishToMain(storagePayload());
+        broker.drain(this::deliverToStorageConsumer);
+
+        verify(embeddingService, times(4)).syncStorage(any(RagDocSyncStorageMessage.class));
+        // 第三级延迟被上限截断
+        assertThat(broker.expiredDelays).containsExactly(1000L, 2000L, 3000L);
+        assertThat(broker.deadLetters).hasSize(1);
+        Map<String, Object> headers = broker.deadLetters.get(0).properties.getHeaders();
+        assertThat(headers.get(MessageHeaders.RETRY_COUNT)).isEqualTo(3);
+        assertThat(headers.get(MessageHeaders.ORIGINAL_QUEUE)).isEqualTo(RagDocSyncStorageEvent.QUEUE_NAME);
+        assertThat(headers.get(MessageHeaders.LAST_ERROR).toString()).contains("embedding service unavailable");
+        assertThat(broker.acks).isEqualTo(4);
+        verify(fileDetailDomainService, times(1)).failFileEmbeddingProcessing(FILE_ID, "user-1");
+    }
+
+    @Test
+    void nonRetryableFailureShouldBeDeadLetteredImmediately() throws Exception {
+        doThrow(new BusinessException("文件不存在")).when(embeddingService)
+                .syncStorage(any(RagDocSyncStorageMessage.class));
+
+        broker.publishToMain(storagePayload());
+        broker.drain(this::deliverToStorageConsumer);
+
+        verify(embeddingService, times(1)).syncStorage(any(RagDocSyncStorageMessage.class));
+        assertThat(broker.expiredDelays).isEmpty();
+        assertThat(broker.deadLetters).hasSize(1);
+        assertThat(broker.deadLetters.get(0).properties.getHeaders().get(MessageHeaders.RETRY_COUNT)).isEqualTo(0);
+    }
+
+    @Test
+    void unconfirmedForwardShouldRequeueInsteadOfAcking() throws Exception {
+        doThrow(new IllegalStateException("embedding service unavailable")).when(embeddingService)
+                .syncStorage(any(RagDocSyncStorageMessage.class));
+        broker.confirmPublishes = false;
+
+        Published original = new Published(new AMQP.BasicProperties.Builder().headers(new HashMap<>()).build(),
+                storagePayload().getBytes(StandardCharsets.UTF_8));
+        deliverToStorageConsumer(original.toMessage(1), broker.channel);
+
+        // 代理未确认转发，原消息不能被确认，只能拒绝并重新入队
+        verify(broker.channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(broker.channel).basicNack(1L, false, true);
+        verify(broker.publishChannel).confirmSelect();
+        verify(broker.publishChannel).close();
+    }
+
+    @Test
+    void deadLetterShouldBeRecordedAndReplayedToTheOriginalQueue() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(inv -> {
+            if (attempts.incrementAndGet() <= 4) {
+                throw new IllegalStateException("embedding service unavailable");
+            }
+            return null;
+        }).when(embeddingService).syncStorage(any(RagDocSyncStorageMessage.class));
+        broker.publishToMain(storagePayload());
+        broker.drain(this::deliverToStorageConsumer);
+
+        RagDeadLetterEntity deadLetter = RagDeadLetterConsumer.toDeadLetter(broker.deadLetters.get(0).toMessage(1));
+        assertThat(deadLetter.getFileId()).isEqualTo(FILE_ID);
+        assertThat(deadLetter.getTraceId()).isEqualTo("trace-1");
+        assertThat(deadLetter.getRetryCount()).isEqualTo(3);
+        assertThat(deadLetter.getSourceExchange()).isEqualTo(RagDocSyncStorageEvent.EXCHANGE_NAME);
+
+        deadLetter.setId("dl-1");
+        deadLetter.setStatus(DeadLetterStatus.PENDING.getCode());
+        RagDeadLetterDomainService deadLetterDomainService = mock(RagDeadLetterDomainService.class);
+        when(deadLetterDomainService.getDeadLetter("dl-1")).thenReturn(deadLetter);
+        when(deadLetterDomainService.markReplayed("dl-1")).thenReturn(true);
+        MessagePublisher publisher = mock(MessagePublisher.class);
+        doAnswer(inv -> {
+            MessageRoute route = inv.getArgument(0);
+            Map<String, Object> headers = inv.getArgument(2);
+            broker.route(route.getExchange(), route.getRoutingKey(),
+                    new AMQP.BasicProperties.Builder().headers(headers).build(),
+                    inv.<String>getArgument(1).getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(publisher).publishRaw(any(MessageRoute.class), anyString(), anyMap());
+
+        new RagDeadLetterAppService(deadLetterDomainService, fileDetailDomainService, publisher).replay("dl-1");
+        broker.drain(this::deliverToStorageConsumer);
+
+        verify(fileDetailDomainService).startFileEmbeddingProcessing(FILE_ID, "user-1");
+        assertThat(attempts.get()).isEqualTo(5);
+        assertThat(broker.deadLetters).hasSize(1);
+    }
+
+    private String storagePayload() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", "unit-1");
+        data.put("fileId", FILE_ID);
+        data.put("page", 0);
+        data.put("content", "第一章 概述");
+        data.put("fileName", "guide.pdf");
+        Map<String, Object> envelope = new HashMap<>();
+        envelope.put("traceId", "trace-1");
+        envelope.put("data", data);
+        return objectMapper.writeValueAsString(envelope);
+    }
+
+    private void deliverToStorageConsumer(Message message, Channel channel) throws Exception {
+        Map<String, Object> payload = objectMapper.readValue(message.getBody(), new TypeReference<>() {
+        });
+        consumer.receiveMessage(payload, message, channel);
+    }
+
+    private interface Delivery {
+        void accept(Message message, Channel channel) throws Exception;
+    }
+
+    /** 内存消息代理 按Declarables构建交换机绑定和重试队列参数，重试队列到期后按死信参数路由回原交换机 */
+    private static class InMemoryBroker {
+
+        private final DefaultMessagePropertiesConverter converter = new DefaultMessagePropertiesConverter();
+
+        /** 交换机 -> 路由键 -> 队列 */
+        private final Map<String, Map<String, String>> bindings = new HashMap<>();
+
+        private final Map<String, Queue> retryQueues = new HashMap<>();
+
+        private final Map<String, Deque<Published>> queues = new HashMap<>();
+
+        private final List<Published> deadLetters = new ArrayList<>();
+
+        private final List<Long> expiredDelays = new ArrayList<>();
+
+        private final Channel channel = mock(Channel.class);
+
+        /** 失败处理器转发消息使用的确认模式通道 */
+        private final Channel publishChannel = mock(Channel.class);
+
+        /** 代理是否确认转发的消息，置为false模拟代理拒绝 */
+        private boolean confirmPublishes = true;
+
+        private int acks;
+
+        private int nacks;
+
+        private long deliveryTag;
+
+        InMemoryBroker(Declarables declarables) throws Exception {
+            for (Queue queue : declarables.getDeclarablesByType(Queue.class)) {
+                retryQueues.put(queue.getName(), queue);
+            }
+            for (Binding binding : declarables.getDeclarablesByType(Binding.class)) {
+                bind(binding.getExchange(), binding.getRoutingKey(), binding.getDestination());
+            }
+            bind(RagDocSyncStorageEvent.EXCHANGE_NAME, RagDocSyncStorageEvent.ROUTE_KEY,
+                    RagDocSyncStorageEvent.QUEUE_NAME);
+            bind(RagDeadLetterEvent.EXCHANGE_NAME, RagDeadLetterEvent.ROUTE_KEY, RagDeadLetterEvent.QUEUE_NAME);
+
+            Connection connection = mock(Connection.class);
+            when(channel.getConnection()).thenReturn(connection);
+            when(connection.createChannel()).thenReturn(publishChannel);
+            doAnswer(inv -> {
+                if (confirmPublishes) {
+                    route(inv.getArgument(0), inv.getArgument(1), inv.getArgument(3), inv.getArgument(4));
+                }
+                return null;
+            }).when(publishChannel).basicPublish(anyString(), anyString(), eq(true), any(AMQP.BasicProperties.class),
+                    any(byte[].class));
+            when(publishChannel.waitForConfirms(anyLong())).thenAnswer(inv -> confirmPublishes);
+            when(publishChannel.isOpen()).thenReturn(true);
+            doAnswer(inv -> ++acks).when(channel).basicAck(anyLong(), eq(false));
+            doAnswer(inv -> {
+                nacks++;
+                return null;
+            }).when(channel).basicNack(anyLong(), eq(false), anyBoolean());
+        }
+
+        private void bind(String exchange, String routingKey, String queue) {
+            bindings.computeIfAbsent(exchange, k -> new HashMap<>()).put(routingKey, queue);
+        }
+
+        void publishToMain(String body) {
+            route(RagDocSyncStorageEvent.EXCHANGE_NAME, RagDocSyncStorageEvent.ROUTE_KEY,
+                    new AMQP.BasicProperties.Builder().headers(new HashMap<>()).build(),
+                    body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void route(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+            String queue = bindings.getOrDefault(exchange, Map.of()).get(routingKey);
+            assertThat(queue).as("binding for %s/%s", exchange, routingKey).isNotNull();
+            Published published = new Published(properties, body);
+            if (RagDeadLetterEvent.QUEUE_NAME.equals(queue)) {
+                deadLetters.add(published);
+            } else {
+                queues.computeIfAbsent(queue, k -> new ArrayDeque<>()).add(published);
+            }
+        }
+
+        /** 投递主队列中的消息直到为空，然后让最早到期的重试队列消息按队列TTL过期回流，循环至所有队列为空 */
+        void drain(Delivery delivery) throws Exception {
+            while (true) {
+                Deque<Published> main = queues.getOrDefault(RagDocSyncStorageEvent.QUEUE_NAME, new ArrayDeque<>());
+                if (!main.isEmpty()) {
+                    delivery.accept(main.poll().toMessage(++deliveryTag), channel);
+                    continue;
+                }
+                String next = queues.entrySet().stream().filter(e -> retryQueues.containsKey(e.getKey()))
+                        .filter(e -> !e.getValue().isEmpty()).map(Map.Entry::getKey).findFirst().orElse(null);
+                if (next == null) {
+                    return;
+                }
+                Queue retryQueue = retryQueues.get(next);
+                Map<String, Object> args = retryQueue.getArguments();
+                expiredDelays.add(((Number) args.get("x-message-ttl")).longValue());
+                Published expired = queues.get(next).poll();
+                route((String) args.get("x-dead-letter-exchange"), (String) args.get("x-dead-letter-routing-key"),
+                        expired.properties, expired.body);
+            }
+        }
+    }
+
+    private record Published(AMQP.BasicProperties properties, byte[] body) {
+
+        Message toMessage(long deliveryTag) {
+            MessageProperties messageProperties = new DefaultMessagePropertiesConverter().toMessageProperties(
+                    properties, new Envelope(deliveryTag, false, "", ""), "UTF-8");
+            return new Message(body, messageProperties);
+        }
+    }
+}
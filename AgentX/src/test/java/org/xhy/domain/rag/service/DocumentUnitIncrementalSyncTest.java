@@ -0,0 +1,324 @@
+package org.xhy.domain.rag.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.DocumentUnitSyncResult;
+import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.infrastructure.rag.config.RagDocumentUnitProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** 文档单元增量同步测试 以一组逐步修改的文档版本为语料，校验每次重新处理只改写、新增、删除真正变化的单元，其余单元沿用原记录和向量；
+ * 并校验大文档落库时按批合并为多行写入语句 */
+class DocumentUnitIncrementalSyncTest {
+
+    private static final String FILE_ID = "file-1";
+
+    /** 当前落库的文档单元 */
+    private List<DocumentUnitEntity> rows;
+
+    /** 已向量化的文档单元ID */
+    private List<String> vectorized;
+
+    private int updates;
+
+    private int inserts;
+
+    private List<String> deletedUnits;
+
+    private List<String> deletedVectors;
+
+    private DocumentUnitRepository repository;
+
+    private DocumentUnitDomainService service;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // Lambda条件构造需要实体的表信息缓存
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""),
+                DocumentUnitEntity.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        rows = new ArrayList<>();
+        vectorized = new ArrayList<>();
+        repository = mock(DocumentUnitRepository.class);
+        when(repository.selectList(any(Wrapper.class))).thenAnswer(inv -> rows.stream()
+                .sorted(Comparator.comparing(DocumentUnitEntity::getPage)).map(DocumentUnitIncrementalSyncTest::copy)
+                .toList());
+        when(repository.upsertBatch(anyList())).thenAnswer(inv -> {
+            List<DocumentUnitEntity> units = inv.getArgument(0);
+            for (DocumentUnitEntity unit : units) {
+                assertThat(unit.getId()).isNotNull();
+                if (rows.stream().anyMatch(row -> row.getId().equals(unit.getId()))) {
+                    updates++;
+                } else {
+                    inserts++;
+                }
+            }
+            return units.size();
+        });
+        when(repository.deleteByIds(anyCollection())).thenAnswer(inv -> {
+            Collection<String> ids = inv.getArgument(0);
+            deletedUnits.addAll(ids);
+            return ids.size();
+        });
+
+        EmbeddingDomainService embeddingDomainService = mock(EmbeddingDomainService.class);
+        doAnswer(inv -> {
+            Collection<String> ids = inv.getArgument(1);
+            deletedVectors.addAll(ids);
+            vectorized.removeAll(ids);
+            return null;
+        }).when(embeddingDomainService).deleteEmbeddingByDocumentIds(anyString(), anyCollection());
+
+        RagDocumentUnitProperties properties = new RagDocumentUnitProperties();
+        properties.setWriteBatchSize(500);
+        service = new DocumentUnitDomainService(repository, embeddingDomainService, properties);
+    }
+
+    @Test
+    void firstRunShouldInsertEverything() {
+        DocumentUnitSyncResult result = run("封面", "第一章 概述", "第二章 安装", "第三章 配置");
+
+        assertThat(result.getInsertedCount()).isEqualTo(4);
+        assertThat(result.getPendingUnits()).hasSize(4);
+        assertThat(deletedVectors).isEmpty();
+    }
+
+    @Test
+    void rerunWithoutChangesShouldDoNoWork() {
+        run("封面", "第一章 概述", "第二章 安装", "第三章 配置");
+
+        DocumentUnitSyncResult result = run("封面", "第一章 概述", "第二章 安装", "第三章 配置");
+
+        assertThat(result.getReusedCount()).isEqualTo(4);
+        assertThat(result.hasChanges()).isFalse();
+        assertThat(result.getPendingUnits()).isEmpty();
+        assertThat(updates + inserts).isZero();
+        assertThat(deletedVectors).isEmpty();
+    }
+
+    @Test
+    void editedPageShouldBeTheOnlyOneReembedded() {
+        run("封面", "第一章 概述", "第二章 安装", "第三章 配置");
+        String installId = idOfPage(2);
+
+        DocumentUnitSyncResult result = run("封面", "第一章 概述", "第二章 安装（新增Docker部署）", "第三章 配置");
+
+        assertThat(result.getReusedCount()).isEqualTo(3);
+        assertThat(result.getUpdatedCount()).isEqualTo(1);
+        assertThat(result.getPendingUnits()).extracting(DocumentUnitEntity::getId).containsExactly(installId);
+        assertThat(updates).isEqualTo(1);
+        assertThat(inserts).isZero();
+        assertThat(deletedVectors).containsExactly(installId);
+    }
+
+    @Test
+    void insertedPageShouldOnlyShiftPageNumbersOfTheRest() {
+        run("封面", "第一章 概述", "第二章 安装", "第三章 配置");
+        Map<String, String> idsByContent = idsByContent();
+
+        DocumentUnitSyncResult result = run("封面", "目录", "第一章 概述", "第二章 安装", "第三章 配置");
+
+        assertThat(result.getReusedCount()).isEqualTo(4);
+        assertThat(result.getInsertedCount()).isEqualTo(1);
+        assertThat(result.getPendingUnits()).extracting(DocumentUnitEntity::getContent).containsExactly("目录");
+        // 后移的三页只更新页码，不重新向量化
+        assertThat(updates).isEqualTo(3);
+        assertThat(deletedVectors).isEmpty();
+        assertThat(idOfPage(4)).isEqualTo(idsByContent.get("第三章 配置"));
+    }
+
+    @Test
+    void removedPageShouldDeleteItsUnitAndVectors() {
+        run("封面", "第一章 概述", "第二章 安装", "第三章 配置");
+        String overviewId = idOfPage(1);
+
+        DocumentUnitSyncResult result = run("封面", "第二章 安装", "第三章 配置");
+
+        assertThat(result.getDeletedCount()).isEqualTo(1);
+        assertThat(result.getPendingUnits()).isEmpty();
+        assertThat(deletedUnits).containsExactly(overviewId);
+        assertThat(deletedVectors).containsExactly(overviewId);
+        assertThat(vectorized).hasSize(3);
+    }
+
+    @Test
+    void vectorsShouldOnlyBeDeletedAfterCommit() {
+        run("封面", "第一章 概述", "第二章 安装", "第三章 配置");
+        String overviewId = idOfPage(1);
+        String installId = idOfPage(2);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            DocumentUnitSyncResult result = run("封面", "第二章 安装（新增Docker部署）", "第三章 配置");
+
+            // 事务提交前单元已改写和删除，向量仍保留，回滚时原有向量可继续使用
+            assertThat(result.getDeletedCount()).isEqualTo(1);
+            assertThat(deletedUnits).hasSize(1);
+            assertThat(deletedVectors).isEmpty();
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertThat(deletedVectors).containsExactlyInAnyOrder(overviewId, installId);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void repeatedBoilerplatePagesShouldEachKeepTheirUnit() {
+        run("页眉免责声明", "正文一", "页眉免责声明", "正文二");
+
+        DocumentUnitSyncResult result = run("页眉免责声明", "正文一（修订）", "页眉免责声明", "正文二");
+
+        assertThat(result.getReusedCount()).isEqualTo(3);
+        assertThat(result.getUpdatedCount()).isEqualTo(1);
+        assertThat(deletedVectors).containsExactly(idOfPage(1));
+        assertThat(rows).extracting(DocumentUnitEntity::getId).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void pageNotExtractedThisRunShouldKeepItsUnitAndVectors() {
+        run("封面", "第一章 概述", "扫描页内容");
+        String scannedId = idOfPage(2);
+
+        // 扫描页本轮未能OCR，内容为空
+        DocumentUnitSyncResult result = run("封面", "第一章 概述", null);
+
+        assertThat(result.hasChanges()).isFalse();
+        assertThat(updates + inserts).isZero();
+        assertThat(deletedUnits).isEmpty();
+        assertThat(deletedVectors).isEmpty();
+        assertThat(vectorized).contains(scannedId);
+    }
+
+    @Test
+    void unitsLeftUnvectorizedLastRunShouldBePickedUpAgain() {
+        run("封面", "第一章 概述");
+        vectorized.remove(idOfPage(1));
+
+        DocumentUnitSyncResult result = run("封面", "第一章 概述");
+
+        assertThat(result.hasChanges()).isFalse();
+        assertThat(result.getPendingUnits()).extracting(DocumentUnitEntity::getContent).containsExactly("第一章 概述");
+    }
+
+    @Test
+    void thousandPageDocumentShouldBeWrittenInTwoStatements() {
+        String[] pages = new String[1000];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = "第" + page + "页";
+        }
+
+        DocumentUnitSyncResult result = run(pages);
+
+        assertThat(result.getInsertedCount()).isEqualTo(1000);
+        // 一次查询原有单元，1000个单元按每批500合并为两条写入语句
+        verify(repository, times(2)).upsertBatch(anyList());
+        verify(repository, never()).checkInsert(any(DocumentUnitEntity.class));
+        verify(repository, never()).update(any(Wrapper.class));
+        assertThat(mockingDetails(repository).getInvocations()).hasSize(3);
+        assertThat(result.getPendingUnits()).extracting(DocumentUnitEntity::getId).doesNotContainNull()
+                .doesNotHaveDuplicates();
+    }
+
+    @Test
+    void rewritingEveryPageShouldStillUseBatchedStatements() {
+        String[] pages = new String[1000];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = "第" + page + "页";
+        }
+        run(pages);
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = "修订后的第" + page + "页";
+        }
+        clearInvocations(repository);
+
+        DocumentUnitSyncResult result = run(pages);
+
+        assertThat(result.getUpdatedCount()).isEqualTo(1000);
+        assertThat(updates).isEqualTo(1000);
+        verify(repository, times(2)).upsertBatch(anyList());
+        assertThat(mockingDetails(repository).getInvocations()).hasSize(3);
+    }
+
+    /** 以给定的页面内容执行一轮同步，同步后的单元成为新的落库状态，待向量化的单元视为本轮向量化成功 */
+    private DocumentUnitSyncResult run(String... pages) {
+        updates = 0;
+        inserts = 0;
+        deletedUnits = new ArrayList<>();
+        deletedVectors = new ArrayList<>();
+        rows.forEach(row -> row.setIsVector(vectorized.contains(row.getId())));
+
+        List<DocumentUnitEntity> extracted = new ArrayList<>();
+        for (int page = 0; page < pages.length; page++) {
+            DocumentUnitEntity unit = new DocumentUnitEntity();
+            unit.setPage(page);
+            unit.setContent(pages[page]);
+            unit.setIsOcr(true);
+            unit.setIsVector(false);
+            extracted.add(unit);
+        }
+        DocumentUnitSyncResult result = service.syncFileUnits(FILE_ID, extracted);
+
+        // 未提取出内容的页面保留原记录
+        Map<Integer, DocumentUnitEntity> previousByPage = rows.stream()
+                .collect(Collectors.toMap(DocumentUnitEntity::getPage, row -> row, (x, y) -> x));
+        rows = extracted.stream().map(unit -> unit.getContent() == null && previousByPage.containsKey(unit.getPage())
+                ? previousByPage.get(unit.getPage())
+                : copy(unit)).collect(Collectors.toList());
+        result.getPendingUnits().forEach(unit -> vectorized.add(unit.getId()));
+        return result;
+    }
+
+    private String idOfPage(int page) {
+        return rows.stream().filter(row -> row.getPage() == page).findFirst().orElseThrow().getId();
+    }
+
+    private Map<String, String> idsByContent() {
+        return rows.stream().collect(Collectors.toMap(DocumentUnitEntity::getContent, DocumentUnitEntity::getId,
+                (a, b) -> a));
+    }
+
+    private static DocumentUnitEntity copy(DocumentUnitEntity unit) {
+        DocumentUnitEntity copy = new DocumentUnitEntity();
+        copy.setId(unit.getId());
+        copy.setFileId(unit.getFileId());
+        copy.setPage(unit.getPage());
+        copy.setContent(unit.getContent());
+        copy.setIsOcr(unit.getIsOcr());
+        copy.setIsVector(unit.getIsVector());
+        copy.setSourceHash(unit.getSourceHash());
+        copy.setContentHash(unit.getContentHash());
+        return copy;
+    }
+}
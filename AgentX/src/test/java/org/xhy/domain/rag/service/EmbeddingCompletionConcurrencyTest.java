@@ -0,0 +1,205 @@
+package org.xhy.domain.rag.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
+import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.repository.FileDetailRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 向量化完成计数并发测试 大量消费者并行累加完成计数时，完成状态转换只触发一次，重投的段落不重复计数
+ * 计数累加与条件状态转换直接在数据库上执行，各消费者线程使用各自的连接并提交，需连接测试数据库 */
+@SpringBootTest
+class EmbeddingCompletionConcurrencyTest {
+
+    private static final String USER_ID = "embedding-completion-test-user";
+
+    private static final int CONSUMERS = 32;
+
+    private static final int SEGMENTS = 2_000;
+
+    private static final int ROUNDS = 5;
+
+    @Autowired
+    private FileDetailDomainService fileDetailDomainService;
+
+    @Autowired
+    private FileDetailRepository fileDetailRepository;
+
+    /** 本测试插入的文件，结束后清理 */
+    private final List<String> fileIds = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (String fileId : fileIds) {
+            fileDetailRepository.clearEmbeddedSegments(fileId);
+            fileDetailRepository.deleteById(fileId);
+        }
+    }
+
+    @Test
+    void parallelConsumersShouldCompleteExactlyOnce() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            String fileId = addFile(FileProcessingStatusEnum.EMBEDDING_PROCESSING, SEGMENTS);
+
+            int completions = runConsumers(fileId, false);
+
+            FileDetailEntity file = fileDetailRepository.selectById(fileId);
+            assertThat(completions).isEqualTo(1);
+            assertThat(file.getEmbeddingDoneCount()).isEqualTo(SEGMENTS);
+            assertThat(file.getProcessingStatus()).isEqualTo(FileProcessingStatusEnum.COMPLETED.getCode());
+        }
+    }
+
+    @Test
+    void completionCheckRacingWithConsumersShouldCompleteExactlyOnce() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            String fileId = addFile(FileProcessingStatusEnum.EMBEDDING_PROCESSING, SEGMENTS);
+
+            int completions = runConsumers(fileId, true);
+
+            assertThat(completions).isEqualTo(1);
+            assertThat(fileDetailRepository.selectById(fileId).getProcessingStatus())
+                    .isEqualTo(FileProcessingStatusEnum.COMPLETED.getCode());
+        }
+    }
+
+    @Test
+    void crossingBeforeEmbeddingStateShouldBeCompletedLater() {
+        // 预处理阶段就分发了向量化，最后一批在进入向量化状态前完成
+        String fileId = addFile(FileProcessingStatusEnum.OCR_PROCESSING, 10);
+
+        assertThat(fileDetailDomainService.recordEmbeddingProcessed(fileId, segments(0, 10), List.of(), segments(0, 10))).isFalse();
+        assertThat(fileDetailRepository.selectById(fileId).getProcessingStatus())
+                .isEqualTo(FileProcessingStatusEnum.OCR_PROCESSING.getCode());
+
+        fileDetailRepository.compareAndSetProcessingStatus(fileId, FileProcessingStatusEnum.OCR_PROCESSING.getCode(),
+                FileProcessingStatusEnum.EMBEDDING_PROCESSING.getCode());
+        assertThat(fileDetailDomainService.completeEmbeddingIfFinished(fileId)).isTrue();
+        assertThat(fileDetailDomainService.completeEmbeddingIfFinished(fileId)).isFalse();
+    }
+
+    @Test
+    void extraSegmentsAfterCompletionShouldNotCompleteAgain() {
+        String fileId = addFile(FileProcessingStatusEnum.EMBEDDING_PROCESSING, 4);
+
+        assertThat(fileDetailDomainService.recordEmbeddingProcessed(fileId, segments(0, 4), List.of(), segments(0, 4))).isTrue();
+        // 完成后单独修改语料触发的重新向量化
+        assertThat(fileDetailDomainService.recordEmbeddingProcessed(fileId, segments(4, 1), List.of(), segments(4, 1))).isFalse();
+        assertThat(fileDetailRepository.selectById(fileId).getProcessingStatus())
+                .isEqualTo(FileProcessingStatusEnum.COMPLETED.getCode());
+    }
+
+    @Test
+    void redeliveredSegmentsShouldNotBeCounted() {
+        String fileId = addFile(FileProcessingStatusEnum.EMBEDDING_PROCESSING, 6);
+
+        // 首批有两个段落写入失败，只登记成功的段落；整批重试时已登记的段落不再累加完成数和缓存命中数
+        assertThat(fileDetailDomainService.recordEmbeddingProcessed(fileId, segments(0, 4), List.of(), segments(0, 4)))
+                .isFalse();
+        assertThat(fileDetailDomainService.recordEmbeddingProcessed(fileId, segments(0, 4), segments(0, 4), List.of()))
+                .isFalse();
+        FileDetailEntity file = fileDetailRepository.selectById(fileId);
+        assertThat(file.getEmbeddingDoneCount()).isEqualTo(4);
+        assertThat(file.getEmbeddingCacheHits()).isZero();
+        assertThat(file.getEmbeddingCacheMisses()).isEqualTo(4);
+        assertThat(file.getProcessingStatus()).isEqualTo(FileProcessingStatusEnum.EMBEDDING_PROCESSING.getCode());
+
+        assertThat(fileDetailDomainService.recordEmbeddingProcessed(fileId, segments(0, 6), segments(0, 4),
+                segments(4, 2))).isTrue();
+        file = fileDetailRepository.selectById(fileId);
+        assertThat(file.getEmbeddingDoneCount()).isEqualTo(6);
+        assertThat(file.getEmbeddingCacheHits()).isZero();
+        assertThat(file.getEmbeddingCacheMisses()).isEqualTo(6);
+    }
+
+    /** 并发消费者从共享池中取随机大小的批次并记录完成，可选地同时有检查线程反复尝试补完成
+     * @return 由调用方完成状态转换的次数 */
+    private int runConsumers(String fileId, boolean withCompletionCheckers) throws Exception {
+        AtomicInteger remaining = new AtomicInteger(SEGMENTS);
+        AtomicInteger completions = new AtomicInteger();
+        int checkers = withCompletionCheckers ? 4 : 0;
+        ExecutorService executor = Executors.newFixedThreadPool(CONSUMERS + checkers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < CONSUMERS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    while (true) {
+                        int size = ThreadLocalRandom.current().nextInt(1, 33);
+                        int before = remaining.getAndUpdate(left -> Math.max(0, left - size));
+                        int taken = Math.min(before, size);
+                        if (taken == 0) {
+                            return null;
+                        }
+                        List<String> batch = segments(SEGMENTS - before, taken);
+                        if (fileDetailDomainService.recordEmbeddingProcessed(fileId, batch, List.of(), batch)) {
+                            completions.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < checkers; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    while (!isCompleted(fileId)) {
+                        if (fileDetailDomainService.completeEmbeddingIfFinished(fileId)) {
+                            completions.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return completions.get();
+    }
+
+    private boolean isCompleted(String fileId) {
+        return FileProcessingStatusEnum.COMPLETED.getCode()
+                .equals(fileDetailRepository.selectById(fileId).getProcessingStatus());
+    }
+
+    private String addFile(FileProcessingStatusEnum status, int total) {
+        FileDetailEntity file = new FileDetailEntity();
+        file.setDataSetId("embedding-completion-test-" + UUID.randomUUID());
+        file.setUserId(USER_ID);
+        file.setOriginalFilename("向量化完成测试-" + UUID.randomUUID() + ".pdf");
+        file.setExt("pdf");
+        file.setFilePageSize(1);
+        file.setProcessingStatus(status.getCode());
+        file.setEmbeddingTotalCount(total);
+        file.setEmbeddingDoneCount(0);
+        fileDetailRepository.insert(file);
+        fileIds.add(file.getId());
+        return file.getId();
+    }
+
+    private static List<String> segments(int from, int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            ids.add("unit-" + i + "_segment_0");
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,162 @@
+package org.xhy.domain.rag.service;
+
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.rag.config.RagFairQueueProperties;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 入库公平调度仿真测试 一个用户一次上传500个文件后，其他用户陆续各上传1个文件，按离散事件仿真比较先进先出与公平调度下小用户的排队时间 */
+class FairIngestionSimulationTest {
+
+    private static final int WORKERS = 8;
+
+    /** 每个文件的预处理耗时（秒） */
+    private static final long SERVICE_SECONDS = 60;
+
+    @Test
+    void fifoShouldStarveSmallUploadersBehindHeavyNeighbour() {
+        List<Task> tasks = heavyNeighbourWorkload();
+
+        simulate(tasks, (pending, inFlight) -> pending.subList(0, Math.min(pending.size(),
+                WORKERS - inFlight.values().stream().mapToInt(Integer::intValue).sum())));
+
+        // 小用户排在500个文件之后，等待以小时计
+        assertThat(maxWait(tasks, "small")).isGreaterThan(3000);
+    }
+
+    @Test
+    void fairQueueShouldBoundSmallUploaderWaitWithPerUserCap() {
+        List<Task> tasks = heavyNeighbourWorkload();
+        FairIngestionPolicy policy = new FairIngestionPolicy(properties(6));
+
+        simulate(tasks, (pending, inFlight) -> policy.select(pending, Task::userId, inFlight));
+
+        // 重度用户最多占用6个名额，小用户到达时总有空闲名额
+        assertThat(maxWait(tasks, "small")).isZero();
+        assertThat(tasks).allMatch(task -> task.finishedAt >= 0);
+    }
+
+    @Test
+    void fairQueueWithoutCapShouldBoundSmallUploaderWaitByOneServiceTime() {
+        List<Task> tasks = heavyNeighbourWorkload();
+        FairIngestionPolicy policy = new FairIngestionPolicy(properties(0));
+
+        long makespan = simulate(tasks, (pending, inFlight) -> policy.select(pending, Task::userId, inFlight));
+
+        // 不限单用户并发时重度用户占满窗口，小用户最多等待一个名额释放
+        assertThat(maxWait(tasks, "small")).isLessThanOrEqualTo(SERVICE_SECONDS);
+        // 工作量守恒：总耗时与先进先出相同
+        assertThat(makespan).isEqualTo((long) Math.ceil(510.0 / WORKERS) * SERVICE_SECONDS);
+    }
+
+    @Test
+    void weightsShouldSplitSlotsProportionally() {
+        RagFairQueueProperties properties = properties(0);
+        properties.getUserWeights().put("gold", 3);
+        FairIngestionPolicy policy = new FairIngestionPolicy(properties);
+        List<Task> pending = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            pending.add(new Task("basic", 0));
+            pending.add(new Task("gold", 0));
+        }
+
+        List<Task> selected = policy.select(pending, Task::userId, Map.of());
+
+        assertThat(selected).hasSize(WORKERS);
+        assertThat(selected.stream().filter(task -> task.userId().equals("gold")).count()).isEqualTo(6);
+        assertThat(selected.stream().filter(task -> task.userId().equals("basic")).count()).isEqualTo(2);
+    }
+
+    @Test
+    void fullWindowShouldDispatchNothing() {
+        FairIngestionPolicy policy = new FairIngestionPolicy(properties(6));
+
+        assertThat(policy.select(List.of(new Task("small", 0)), Task::userId, Map.of("heavy", 6, "other", 2)))
+                .isEmpty();
+    }
+
+    /** 重度用户在0时刻上传500个文件，10个小用户每隔5分钟各上传1个文件 */
+    private static List<Task> heavyNeighbourWorkload() {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            tasks.add(new Task("heavy", 0));
+        }
+        for (int i = 1; i <= 10; i++) {
+            tasks.add(new Task("small-" + i, i * 300L));
+        }
+        return tasks;
+    }
+
+    private static RagFairQueueProperties properties(int perUserCap) {
+        RagFairQueueProperties properties = new RagFairQueueProperties();
+        properties.setMaxInFlight(WORKERS);
+        properties.setMaxInFlightPerUser(perUserCap);
+        return properties;
+    }
+
+    /** 离散事件仿真：在每个到达或完成时刻按调度策略放行排队任务，放行即开始处理
+     *
+     * @return 全部任务完成的时刻 */
+    private static long simulate(List<Task> tasks, BiFunction<List<Task>, Map<String, Integer>, List<Task>> policy) {
+        List<Task> arrivals = new ArrayList<>(tasks);
+        arrivals.sort(Comparator.comparingLong(task -> task.submittedAt));
+        PriorityQueue<Task> running = new PriorityQueue<>(Comparator.comparingLong(task -> task.finishedAt));
+        List<Task> pending = new ArrayList<>();
+        Map<String, Integer> inFlight = new HashMap<>();
+        int nextArrival = 0;
+        long now = 0;
+
+        while (nextArrival < arrivals.size() || !pending.isEmpty() || !running.isEmpty()) {
+            long nextArrivalAt = nextArrival < arrivals.size() ? arrivals.get(nextArrival).submittedAt : Long.MAX_VALUE;
+            long nextFinishAt = running.isEmpty() ? Long.MAX_VALUE : running.peek().finishedAt;
+            now = Math.min(nextArrivalAt, nextFinishAt);
+            while (!running.isEmpty() && running.peek().finishedAt == now) {
+                inFlight.merge(running.poll().userId(), -1, Integer::sum);
+            }
+            while (nextArrival < arrivals.size() && arrivals.get(nextArrival).submittedAt == now) {
+                pending.add(arrivals.get(nextArrival++));
+            }
+            for (Task task : new ArrayList<>(policy.apply(pending, inFlight))) {
+                pending.remove(task);
+                task.startedAt = now;
+                task.finishedAt = now + SERVICE_SECONDS;
+                running.add(task);
+                inFlight.merge(task.userId(), 1, Integer::sum);
+            }
+        }
+        return now;
+    }
+
+    private static long maxWait(List<Task> tasks, String userPrefix) {
+        return tasks.stream().filter(task -> task.userId().startsWith(userPrefix))
+                .mapToLong(task -> task.startedAt - task.submittedAt).max().orElseThrow();
+    }
+
+    private static class Task {
+
+        private final String userId;
+
+        private final long submittedAt;
+
+        private long startedAt = -1;
+
+        private long finishedAt = -1;
+
+        Task(String userId, long submittedAt) {
+            this.userId = userId;
+            this.submittedAt = submittedAt;
+        }
+
+        String userId() {
+            return userId;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.xhy.domain.rag.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.xhy.domain.rag.dto.HybridSearchConfig;
+import org.xhy.domain.rag.model.DatasetSearchProfile;
+import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.RerankResult;
+import org.xhy.domain.rag.model.VectorStoreResult;
+import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.domain.rag.repository.RagChunkRepository;
+import org.xhy.infrastructure.rag.cache.HybridSearchResultCache;
+import org.xhy.infrastructure.rag.config.RagFusionProperties;
+import org.xhy.infrastructure.rag.config.RagSearchCacheProperties;
+import org.xhy.infrastructure.rag.factory.EmbeddingModelFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/** 混合检索查询扩展测试 验证相邻片段扩展只发出一次批量查询，以及检索结果缓存的写入条件和副本隔离 */
+class HybridSearchDomainServiceTest {
+
+    private static final int HIT_COUNT = 15;
+
+    private EmbeddingDomainService embeddingDomainService;
+    private KeywordSearchDomainService keywordSearchDomainService;
+    private DocumentUnitRepository documentUnitRepository;
+    private RagChunkRepository ragChunkRepository;
+    private HybridSearchDomainService hybridSearchDomainService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // Lambda条件构造需要实体的表信息缓存
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""),
+                DocumentUnitEntity.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        embeddingDomainService = mock(EmbeddingDomainService.class);
+        keywordSearchDomainService = mock(KeywordSearchDomainService.class);
+        documentUnitRepository = mock(DocumentUnitRepository.class);
+        ragChunkRepository = mock(RagChunkRepository.class);
+        HyDEDomainService hydeDomainService = mock(HyDEDomainService.class);
+        when(hydeDomainService.generateHypotheticalDocument(anyString(), any())).thenAnswer(inv -> inv.getArgument(0));
+
+        RagSearchCacheProperties cacheProperties = new RagSearchCacheProperties();
+        cacheProperties.setEnabled(false);
+
+        hybridSearchDomainService = new HybridSearchDomainService(embeddingDomainService, keywordSearchDomainService,
+                documentUnitRepository, ragChunkRepository, mock(RerankDomainService.class), hydeDomainService,
+                mock(RagQaDatasetDomainService.class), new HybridSearchResultCache(cacheProperties),
+                new RagFusionProperties());
+    }
+
+    @Test
+    void queryExpansionShouldIssueSingleBatchedStatement() {
+        // 15个命中分布在两个文件的连续页上，相邻窗口大量重叠
+        List<VectorStoreResult> hits = new ArrayList<>();
+        List<DocumentUnitEntity> hitUnits = new ArrayList<>();
+        for (int i = 0; i < HIT_COUNT; i++) {
+            String fileId = i % 2 == 0 ? "file-a" : "file-b";
+            int page = i / 2 + 1;
+            hits.add(hit("doc-" + i, fileId, 1.0 - i * 0.01));
+            hitUnits.add(unit("doc-" + i, fileId, page));
+        }
+        List<DocumentUnitEntity> neighbours = new ArrayList<>(hitUnits);
+        neighbours.add(unit("neighbour-a", "file-a", 9));
+        neighbours.add(unit("neighbour-b", "file-b", 8));
+        // 超出所有窗口的片段不应被扩展
+        neighbours.add(unit("far-away", "file-b", 20));
+
+        when(embeddingDomainService.vectorSearch(any(), anyString(), anyInt(), any(), any(), any(), any()))
+                .thenReturn(hits);
+        when(keywordSearchDomainService.keywordSearch(any(), anyString(), anyInt())).thenReturn(List.of());
+        when(documentUnitRepository.selectList(any())).thenReturn(new ArrayList<>(hitUnits), neighbours);
+
+        HybridSearchConfig config = HybridSearchConfig.builder(List.of("dataset-1"), "如何配置知识库")
+                .maxResults(HIT_COUNT).enableRerank(false).enableQueryExpansion(true)
+                .embeddingConfig(new EmbeddingModelFactory.EmbeddingConfig("key", "http://localhost", "model"))
+                .build();
+
+        List<DocumentUnitEntity> results = hybridSearchDomainService.hybridSearch(config);
+
+        // 一次按ID加载命中文档 + 一次批量加载所有相邻片段
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Wrapper<DocumentUnitEntity>> captor = ArgumentCaptor.forClass(Wrapper.class);
+        verify(documentUnitRepository, times(2)).selectList(captor.capture());
+
+        // 每个文件的重叠窗口被合并为一个页码区间
+        String expansionSql = captor.getAllValues().get(1).getSqlSegment();
+        assertThat(expansionSql.split("BETWEEN", -1)).hasSize(3);
+
+        assertThat(results).hasSize(HIT_COUNT + 2);
+        assertThat(results).extracting(DocumentUnitEntity::getId).doesNotHaveDuplicates().contains("neighbour-a",
+                "neighbour-b").doesNotContain("far-away");
+    }
+
+    @Test
+    void snapshotSearchShouldStayWithinVersionChunks() {
+        VectorStoreResult vectorHit = hit("member-1", "file-a", 0.9);
+        vectorHit.setText("版本内容一");
+        vectorHit.getMetadata().put("PAGE", 3);
+        VectorStoreResult keywordHit = hit("member-2", "file-b", 0.5);
+        keywordHit.setText("版本内容二");
+        when(embeddingDomainService.vectorSearchInVersion(eq("version-1"), anyString(), anyInt(), any(), any()))
+                .thenReturn(List.of(vectorHit));
+        when(keywordSearchDomainService.keywordSearchInVersion(eq("version-1"), anyString(), anyInt()))
+                .thenReturn(List.of(keywordHit));
+        // 查询扩展只在版本引用的分块成员内取相邻页
+        VectorStoreResult neighbour = hit("member-3", "file-a", 0);
+        neighbour.setScore(null);
+        neighbour.setText("版本内容三");
+        neighbour.getMetadata().put("PAGE", 4);
+        VectorStoreResult self = hit("member-1", "file-a", 0);
+        self.getMetadata().put("PAGE", 3);
+        when(ragChunkRepository.selectVersionMembersInPageRanges(eq("version-1"), any()))
+                .thenReturn(List.of(self, neighbour));
+
+        HybridSearchConfig config = HybridSearchConfig.builder(List.of("dataset-1"), "如何配置知识库").enableRerank(false)
+                .enableQueryExpansion(true).ragVersionId("version-1")
+                .embeddingConfig(new EmbeddingModelFactory.EmbeddingConfig("key", "http://localhost", "model"))
+                .build();
+
+        List<DocumentUnitEntity> results = hybridSearchDomainService.hybridSearch(config);
+
+        // 不检索数据集的实时向量库，也不回查文档单元表
+        verify(embeddingDomainService, never()).vectorSearch(any(), anyString(), anyInt(), any(), any(), any(),
+                any());
+        verify(keywordSearchDomainService, never()).keywordSearch(any(), anyString(), anyInt());
+        verifyNoInteractions(documentUnitRepository);
+        assertThat(results).extracting(DocumentUnitEntity::getId).containsExactlyInAnyOrder("member-1", "member-2",
+                "member-3");
+        assertThat(results).filteredOn(doc -> doc.getId().equals("member-3")).singleElement().satisfies(doc -> {
+            assertThat(doc.getContent()).isEqualTo("版本内容三");
+            assertThat(doc.getSimilarityScore()).isLessThan(0.9);
+        });
+        assertThat(results).filteredOn(doc -> doc.getId().equals("member-1")).singleElement().satisfies(doc -> {
+            assertThat(doc.getContent()).isEqualTo("版本内容一");
+            assertThat(doc.getFileId()).isEqualTo("file-a");
+            assertThat(doc.getPage()).isEqualTo(3);
+        });
+    }
+
+    @Test
+    void cacheShouldSkipRerankFallbackAndIsolateCallerMutations() {
+        RagSearchCacheProperties cacheProperties = new RagSearchCacheProperties();
+        cacheProperties.setEnabled(true);
+        RerankDomainService rerankDomainService = mock(RerankDomainService.class);
+        when(rerankDomainService.rerankWithResult(any(), any(), anyString()))
+                .thenReturn(new RerankResult(List.of(0), true), new RerankResult(List.of(0), false));
+        HyDEDomainService hydeDomainService = mock(HyDEDomainService.class);
+        when(hydeDomainService.generateHypotheticalDocument(anyString(), any())).thenAnswer(inv -> inv.getArgument(0));
+        RagQaDatasetDomainService ragQaDatasetDomainService = mock(RagQaDatasetDomainService.class);
+        when(ragQaDatasetDomainService.getSearchProfile(any()))
+                .thenReturn(new DatasetSearchProfile(Map.of("dataset-1", 1L), null));
+        HybridSearchDomainService service = new HybridSearchDomainService(embeddingDomainService,
+                keywordSearchDomainService, documentUnitRepository, ragChunkRepository, rerankDomainService,
+                hydeDomainService, ragQaDatasetDomainService, new HybridSearchResultCache(cacheProperties),
+                new RagFusionProperties());
+
+        VectorStoreResult vectorHit = hit("member-1", "file-a", 0.9);
+        vectorHit.setText("版本内容一");
+        when(embeddingDomainService.vectorSearchInVersion(eq("version-1"), anyString(), anyInt(), any(), any()))
+                .thenReturn(List.of(vectorHit));
+        when(keywordSearchDomainService.keywordSearchInVersion(eq("version-1"), anyString(), anyInt()))
+                .thenReturn(List.of());
+
+        // 第一次重排序回退，结果不写缓存；第二次正常重排序后写入缓存
+        service.hybridSearch(versionConfig());
+        service.hybridSearch(versionConfig()).get(0).setContent("调用方改写");
+        List<DocumentUnitEntity> cached = service.hybridSearch(versionConfig());
+
+        verify(rerankDomainService, times(2)).rerankWithResult(any(), any(), anyString());
+        assertThat(cached).singleElement().extracting(DocumentUnitEntity::getContent).isEqualTo("版本内容一");
+    }
+
+    private static HybridSearchConfig versionConfig() {
+        return HybridSearchConfig.builder(List.of("dataset-1"), "如何配置知识库").enableRerank(true)
+                .ragVersionId("version-1")
+                .embeddingConfig(new EmbeddingModelFactory.EmbeddingConfig("key", "http://localhost", "model"))
+                .build();
+    }
+
+    @Test
+    void shouldMergeOverlappingPageWindows() {
+        List<DocumentUnitEntity> documents = List.of(unit("1", "f1", 1), unit("2", "f1", 3), unit("3", "f1", 10),
+                unit("4", "f2", 5));
+
+        Map<String, List<int[]>> ranges = HybridSearchDomainService.mergeAdjacentPageRanges(documents);
+
+        assertThat(ranges.get("f1")).containsExactly(new int[]{1, 4}, new int[]{9, 11});
+        assertThat(ranges.get("f2")).containsExactly(new int[]{4, 6});
+    }
+
+    private static VectorStoreResult hit(String documentId, String fileId, double score) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("DOCUMENT_ID", documentId);
+        metadata.put("FILE_ID", fileId);
+        VectorStoreResult result = new VectorStoreResult();
+        result.setMetadata(metadata);
+        result.setScore(score);
+        return result;
+    }
+
+    private static DocumentUnitEntity unit(String id, String fileId, int page) {
+        DocumentUnitEntity entity = new DocumentUnitEntity();
+        entity.setId(id);
+        entity.setFileId(fileId);
+        entity.setPage(page);
+        entity.setIsVector(true);
+        return entity;
+    }
+}
@@ -0,0 +1,219 @@
+package org.xhy.domain.rag.service;
+
+import com.dtflys.forest.Forest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.rag.api.RerankForestApi;
+import org.xhy.infrastructure.rag.cache.RerankScoreCache;
+import org.xhy.infrastructure.rag.config.RerankProperties;
+import org.xhy.infrastructure.rag.rerank.Bm25LocalReranker;
+import org.xhy.infrastructure.rag.rerank.TermProximityLocalReranker;
+import org.xhy.infrastructure.rag.stub.StubModelServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 重排序领域服务测试 使用本地桩服务验证分数缓存、分批请求、截断，超时后取消剩余批次、线程池满时拒绝批次并使用本地重排序兜底 */
+class RerankDomainServiceTest {
+
+    /** 每次请求收到的文档列表 */
+    private final List<List<String>> receivedBatches = new CopyOnWriteArrayList<>();
+
+    private StubModelServer stubServer;
+    private RerankProperties properties;
+    private RerankDomainService rerankDomainService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new StubModelServer("/v1/rerank", this::rerank);
+        properties = new RerankProperties();
+        properties.setApiUrl(stubServer.url());
+        properties.setApiKey("stub");
+        properties.setModel("stub-reranker");
+        properties.setTimeout(5000);
+        properties.setBatchSize(4);
+        properties.setMaxDocumentTokens(64);
+        rerankDomainService = new RerankDomainService(properties, Forest.client(RerankForestApi.class),
+                new RerankScoreCache(properties),
+                List.of(new Bm25LocalReranker(), new TermProximityLocalReranker()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        rerankDomainService.shutdown();
+        stubServer.close();
+    }
+
+    @Test
+    void shouldRankByScoreAndSplitIntoBatches() {
+        List<String> ids = new ArrayList<>();
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add("chunk-" + i);
+            documents.add(i == 7 ? "agent agent agent 配置" : i == 3 ? "agent 配置" : "无关内容 " + i);
+        }
+
+        List<Integer> order = rerankDomainService.rerank(ids, documents, "agent");
+
+        assertThat(order).hasSize(10).startsWith(7, 3).doesNotHaveDuplicates();
+        // 10个候选按每批4个拆分为3个请求
+        assertThat(receivedBatches).hasSize(3);
+    }
+
+    @Test
+    void shouldOnlySendUnseenCandidates() {
+        List<String> ids = List.of("a", "b", "c");
+        List<String> documents = List.of("agent", "other", "agent agent");
+        rerankDomainService.rerank(ids, documents, "agent");
+
+        List<Integer> order = rerankDomainService.rerank(List.of("a", "b", "c", "d"),
+                List.of("agent", "other", "agent agent", "agent agent agent"), "agent");
+
+        assertThat(order).containsExactly(3, 2, 0, 1);
+        assertThat(receivedBatches).hasSize(2);
+        assertThat(receivedBatches.get(1)).containsExactly("agent agent agent");
+    }
+
+    @Test
+    void editedCandidateShouldBeRescored() {
+        rerankDomainService.rerank(List.of("a", "b"), List.of("agent", "other"), "agent");
+
+        // 片段b被编辑后内容变化，缓存的旧分数不再命中
+        List<Integer> order = rerankDomainService.rerank(List.of("a", "b"), List.of("agent", "agent agent"), "agent");
+
+        assertThat(order).containsExactly(1, 0);
+        assertThat(receivedBatches).hasSize(2);
+        assertThat(receivedBatches.get(1)).containsExactly("agent agent");
+    }
+
+    @Test
+    void timeoutShouldCancelQueuedBatches() throws Exception {
+        rerankDomainService.shutdown();
+        properties.setParallelism(1);
+        properties.setBatchSize(1);
+        properties.setTimeout(200);
+        rerankDomainService = new RerankDomainService(properties, Forest.client(RerankForestApi.class),
+                new RerankScoreCache(properties), List.of(new Bm25LocalReranker()));
+        stubServer.setDelayMillis(500);
+
+        rerankDomainService.rerank(List.of("a", "b", "c"), List.of("x", "agent", "agent agent"), "agent");
+
+        // 超时后排队中的两个批次被取消，等待执行中的批次结束后也不会再发出请求
+        Thread.sleep(1000);
+        assertThat(receivedBatches).hasSize(1);
+    }
+
+    @Test
+    void rejectedBatchesShouldFallBackWithoutRunningOnCaller() {
+        rerankDomainService.shutdown();
+        properties.setParallelism(1);
+        properties.setQueueCapacity(1);
+        properties.setBatchSize(1);
+        properties.setLocalReranker("none");
+        rerankDomainService = new RerankDomainService(properties, Forest.client(RerankForestApi.class),
+                new RerankScoreCache(properties), List.of());
+        stubServer.setDelayMillis(200);
+
+        // 一个批次执行、一个排队，其余批次被拒绝，检索线程不自己发起远程调用
+        List<Integer> order = rerankDomainService.rerank(List.of("a", "b", "c", "d"),
+                List.of("x", "agent agent", "agent", "agent agent agent"), "agent");
+
+        assertThat(receivedBatches).hasSize(2);
+        // 已完成的两个批次按远程分数排序，被拒绝的候选保持原始顺序
+        assertThat(order).containsExactly(1, 0, 2, 3);
+    }
+
+    @Test
+    void shouldTruncateLongCandidates() {
+        rerankDomainService.rerank(List.of("long"), List.of("x".repeat(10_000)), "agent");
+
+        // 64个token按4个字符1个token估算为256个字符
+        assertThat(receivedBatches.get(0).get(0)).hasSize(256);
+        assertThat(RerankDomainService.truncateToTokenBudget("知识库配置说明", 3)).isEqualTo("知识库");
+    }
+
+    @Test
+    void shouldFallBackToLocalRerankerOnTimeout() {
+        properties.setTimeout(200);
+        stubServer.setDelayMillis(1000);
+
+        List<Integer> order = rerankDomainService.rerank(List.of("a", "b", "c"), List.of("x", "agent", "agent agent"),
+                "agent");
+
+        assertThat(order).containsExactly(2, 1, 0);
+    }
+
+    @Test
+    void fallbackShouldKeepScoresOfCompletedBatches() {
+        // 预热HTTP客户端，避免首个请求的初始化耗时计入超时
+        rerankDomainService.rerank(List.of("warm-up"), List.of("warm up"), "warm");
+        properties.setTimeout(300);
+        properties.setBatchSize(1);
+        properties.setLocalReranker("none");
+
+        // 含slow的批次超时，另外两个批次已拿到远程分数
+        List<Integer> order = rerankDomainService.rerank(List.of("a", "b", "c"), List.of("x", "agent agent", "agent slow"),
+                "agent");
+
+        assertThat(order).containsExactly(1, 0, 2);
+    }
+
+    @Test
+    void shouldKeepOriginalOrderWhenNoLocalRerankerConfigured() {
+        properties.setTimeout(200);
+        properties.setLocalReranker("none");
+        stubServer.setDelayMillis(1000);
+
+        List<Integer> order = rerankDomainService.rerank(List.of("a", "b", "c"), List.of("x", "agent", "agent agent"),
+                "agent");
+
+        assertThat(order).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    void shouldSkipRemoteServiceInLocalOnlyMode() {
+        properties.setLocalOnly(true);
+
+        List<Integer> order = rerankDomainService.rerank(List.of("x", "知识库配置", "知识库"), "如何配置知识库");
+
+        assertThat(order).startsWith(1);
+        assertThat(receivedBatches).isEmpty();
+    }
+
+    /** 兼容SiliconFlow/Cohere的rerank接口格式，按查询词在文档中出现的次数打分，含slow的批次额外延迟1秒 */
+    private JsonNode rerank(JsonNode request) {
+        String query = request.path("query").asText().toLowerCase(Locale.ROOT);
+        List<String> documents = new ArrayList<>();
+        request.path("documents").forEach(node -> documents.add(node.asText()));
+        receivedBatches.add(documents);
+        if (documents.stream().anyMatch(document -> document.contains("slow"))) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        ObjectNode response = StubModelServer.json();
+        response.put("id", "stub");
+        ArrayNode results = response.putArray("results");
+        for (int i = 0; i < documents.size(); i++) {
+            String text = documents.get(i).toLowerCase(Locale.ROOT);
+            long hits = 0;
+            for (String term : query.split("\\s+")) {
+                hits += text.split(Pattern.quote(term), -1).length - 1;
+            }
+            results.addObject().put("index", i).put("relevance_score", hits / (hits + 1.0));
+        }
+        return response;
+    }
+}
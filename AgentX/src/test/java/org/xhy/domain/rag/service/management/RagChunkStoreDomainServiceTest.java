@@ -0,0 +1,317 @@
+package org.xhy.domain.rag.service.management;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
+import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.model.RagChunkEntity;
+import org.xhy.domain.rag.model.RagChunkSetEntity;
+import org.xhy.domain.rag.model.RagQaDatasetEntity;
+import org.xhy.domain.rag.model.RagVersionDocumentEntity;
+import org.xhy.domain.rag.model.RagVersionEntity;
+import org.xhy.domain.rag.model.RagVersionFileEntity;
+import org.xhy.domain.rag.model.UserRagDocumentEntity;
+import org.xhy.domain.rag.model.VectorStoreResult;
+import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.domain.rag.repository.RagChunkRepository;
+import org.xhy.domain.rag.repository.RagChunkSetRepository;
+import org.xhy.domain.rag.repository.RagQaDatasetRepository;
+import org.xhy.domain.rag.repository.RagVersionDocumentRepository;
+import org.xhy.domain.rag.repository.RagVersionFileRepository;
+import org.xhy.domain.rag.repository.UserRagDocumentRepository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 内容寻址分块存储测试 在多版本、多安装的合成数据集上对比共享分块与逐份复制的行数和耗时，并验证版本检索隔离、
+ * 空内容页不入集合和无引用回收，需连接测试数据库 */
+@SpringBootTest
+@Transactional
+class RagChunkStoreDomainServiceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RagChunkStoreDomainServiceTest.class);
+
+    private static final String USER_ID = "chunk-store-test-user";
+
+    private static final int FILE_COUNT = 6;
+
+    private static final int PAGES_PER_FILE = 20;
+
+    private static final int VERSION_COUNT = 5;
+
+    private static final int INSTALLS_PER_VERSION = 2;
+
+    /** 各版本修订写入的检索标记，不含数字以免与页码分词混淆 */
+    private static final String[] REVISION_MARKERS = {"", "alpha", "bravo", "charlie", "delta"};
+
+    /** 测试在同一事务内，NOW()不变，用负宽限期让刚归零的集合和分块立即可回收 */
+    private static final long IMMEDIATE = -60;
+
+    @Autowired
+    private RagVersionDomainService ragVersionDomainService;
+
+    @Autowired
+    private UserRagSnapshotDomainService userRagSnapshotDomainService;
+
+    @Autowired
+    private RagChunkStoreDomainService ragChunkStoreDomainService;
+
+    @Autowired
+    private RagQaDatasetRepository ragQaDatasetRepository;
+
+    @Autowired
+    private FileDetailRepository fileDetailRepository;
+
+    @Autowired
+    private DocumentUnitRepository documentUnitRepository;
+
+    @Autowired
+    private RagVersionFileRepository ragVersionFileRepository;
+
+    @Autowired
+    private RagVersionDocumentRepository ragVersionDocumentRepository;
+
+    @Autowired
+    private UserRagDocumentRepository userRagDocumentRepository;
+
+    @Autowired
+    private RagChunkSetRepository ragChunkSetRepository;
+
+    @Autowired
+    private RagChunkRepository ragChunkRepository;
+
+    private String datasetId;
+
+    private final List<FileDetailEntity> files = new ArrayList<>();
+
+    private final List<String> versionIds = new ArrayList<>();
+
+    private final List<String> userRagIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        RagQaDatasetEntity dataset = new RagQaDatasetEntity();
+        dataset.setName("分块共享测试");
+        dataset.setUserId(USER_ID);
+        ragQaDatasetRepository.insert(dataset);
+        datasetId = dataset.getId();
+
+        for (int i = 0; i < FILE_COUNT; i++) {
+            files.add(addFile(i));
+        }
+
+        // 每个新版本只修改一个文件的首页，其余文件原样发布；每个版本安装两次
+        long publishNanos = 0;
+        long installNanos = 0;
+        for (int v = 0; v < VERSION_COUNT; v++) {
+            if (v > 0) {
+                reviseFirstPage(files.get(v - 1), v);
+            }
+            long start = System.nanoTime();
+            RagVersionEntity version = ragVersionDomainService.createRagVersionSnapshot(datasetId, "1.0." + v,
+                    "第" + v + "版", USER_ID);
+            publishNanos += System.nanoTime() - start;
+            versionIds.add(version.getId());
+
+            for (int i = 0; i < INSTALLS_PER_VERSION; i++) {
+                String userRagId = "user-rag-" + UUID.randomUUID();
+                start = System.nanoTime();
+                userRagSnapshotDomainService.createUserSnapshot(userRagId, version.getId());
+                installNanos += System.nanoTime() - start;
+                userRagIds.add(userRagId);
+            }
+        }
+        logger.info("发布 {} 个版本耗时 {}ms，安装 {} 次耗时 {}ms", VERSION_COUNT, publishNanos / 1_000_000,
+                userRagIds.size(), installNanos / 1_000_000);
+    }
+
+    @Test
+    void versionsAndInstallsShouldShareUnchangedChunks() {
+        int documentsPerVersion = FILE_COUNT * PAGES_PER_FILE;
+        long copiedRows = (long) documentsPerVersion * (VERSION_COUNT + userRagIds.size());
+
+        // 初版每个文件一个集合，之后每版只有被修改的文件产生新集合
+        Set<String> setIds = referencedSetIds();
+        assertThat(setIds).hasSize(FILE_COUNT + VERSION_COUNT - 1);
+        List<RagChunkSetEntity> sets = ragChunkSetRepository.selectBatchIds(setIds);
+        long members = sets.stream().mapToLong(RagChunkSetEntity::getDocumentCount).sum();
+        assertThat(members).isEqualTo((long) setIds.size() * PAGES_PER_FILE);
+        assertThat(sets).allMatch(RagChunkSetEntity::getSealed);
+
+        // 每次修改只新增一个分块
+        Set<String> chunkIds = allContents().stream().map(DigestUtil::sha256Hex).collect(Collectors.toSet());
+        assertThat(ragChunkRepository.selectBatchIds(chunkIds)).hasSize(documentsPerVersion + VERSION_COUNT - 1);
+        logger.info("逐份复制需写入 {} 行文档，共享后写入 {} 个集合成员和 {} 个分块", copiedRows, members, chunkIds.size());
+
+        // 引用数：每个集合被引用它的版本文件和用户文件各计一次
+        RagChunkSetEntity firstFileOriginal = ragChunkSetRepository.selectById(chunkSetOf(versionIds.get(0), 0));
+        assertThat(firstFileOriginal.getRefCount()).isEqualTo(1 + INSTALLS_PER_VERSION);
+        RagChunkSetEntity lastFile = ragChunkSetRepository.selectById(chunkSetOf(versionIds.get(0), FILE_COUNT - 1));
+        assertThat(lastFile.getRefCount()).isEqualTo(VERSION_COUNT * (1 + INSTALLS_PER_VERSION));
+
+        // 不再写入逐份复制的文档行
+        assertThat(ragVersionDocumentRepository.selectCount(Wrappers.<RagVersionDocumentEntity>lambdaQuery()
+                .in(RagVersionDocumentEntity::getRagVersionId, versionIds))).isZero();
+        assertThat(userRagDocumentRepository.selectCount(Wrappers.<UserRagDocumentEntity>lambdaQuery()
+                .in(UserRagDocumentEntity::getUserRagId, userRagIds))).isZero();
+    }
+
+    @Test
+    void eachVersionShouldSeeItsOwnContent() {
+        for (int v = 0; v < VERSION_COUNT; v++) {
+            String versionId = versionIds.get(v);
+            List<RagVersionDocumentEntity> documents = ragVersionDocumentRepository.selectVersionDocuments(versionId);
+            assertThat(documents).hasSize(FILE_COUNT * PAGES_PER_FILE);
+            assertThat(ragVersionDomainService.getRagVersion(versionId).getDocumentCount())
+                    .isEqualTo(FILE_COUNT * PAGES_PER_FILE);
+
+            if (v > 0) {
+                String revised = REVISION_MARKERS[v];
+                assertThat(documents).anyMatch(doc -> doc.getContent().contains(revised));
+            }
+
+            // 检索只命中本版本引用的分块：第v版的修订只出现在第v版及之后
+            for (int other = 1; other < VERSION_COUNT; other++) {
+                List<VectorStoreResult> hits = ragChunkRepository.keywordSearchInVersion(versionId,
+                        REVISION_MARKERS[other], 10);
+                assertThat(hits.isEmpty()).isEqualTo(other > v);
+            }
+
+            String userRagId = userRagIds.get(v * INSTALLS_PER_VERSION);
+            assertThat(userRagDocumentRepository.selectUserDocuments(userRagId, null)).extracting(
+                    UserRagDocumentEntity::getContent).containsExactlyInAnyOrderElementsOf(
+                            documents.stream().map(RagVersionDocumentEntity::getContent).toList());
+            assertThat(userRagSnapshotDomainService.getUserRagDocumentCount(userRagId))
+                    .isEqualTo(FILE_COUNT * PAGES_PER_FILE);
+        }
+    }
+
+    @Test
+    void unreferencedSetsAndChunksShouldBeCollected() {
+        String firstVersionId = versionIds.get(0);
+        String replacedSetId = chunkSetOf(firstVersionId, 0);
+        String sharedSetId = chunkSetOf(firstVersionId, FILE_COUNT - 1);
+        String replacedChunkId = DigestUtil.sha256Hex(pageContent(files.get(0), 0));
+
+        // 仍被引用时不回收
+        ragChunkStoreDomainService.collectGarbage(IMMEDIATE);
+        assertThat(ragChunkSetRepository.selectById(replacedSetId)).isNotNull();
+
+        // 卸载第一版的安装并删除第一版后，只有被第二版替换掉的集合和分块无人引用
+        for (int i = 0; i < INSTALLS_PER_VERSION; i++) {
+            userRagSnapshotDomainService.deleteUserSnapshot(userRagIds.get(i));
+        }
+        ragVersionDomainService.deleteRagVersion(firstVersionId, USER_ID);
+        assertThat(ragChunkSetRepository.selectById(replacedSetId).getRefCount()).isZero();
+
+        ragChunkStoreDomainService.collectGarbage(IMMEDIATE);
+
+        assertThat(ragChunkSetRepository.selectById(replacedSetId)).isNull();
+        RagChunkEntity replacedChunk = ragChunkRepository.selectById(replacedChunkId);
+        assertThat(replacedChunk).isNull();
+        RagChunkSetEntity shared = ragChunkSetRepository.selectById(sharedSetId);
+        assertThat(shared.getRefCount()).isEqualTo((VERSION_COUNT - 1) * (1 + INSTALLS_PER_VERSION));
+        assertThat(ragVersionDocumentRepository.selectVersionDocuments(versionIds.get(1)))
+                .hasSize(FILE_COUNT * PAGES_PER_FILE);
+    }
+
+    @Test
+    void nullContentPagesShouldBeLeftOutOfChunkSets() {
+        // 一个文件混有空内容页，另一个文件只有空内容页
+        FileDetailEntity mixed = addFile(FILE_COUNT);
+        addPage(mixed, PAGES_PER_FILE, null);
+        FileDetailEntity empty = addFile(FILE_COUNT + 1, 0);
+        addPage(empty, 0, null);
+        files.add(mixed);
+        files.add(empty);
+
+        RagVersionEntity version = ragVersionDomainService.createRagVersionSnapshot(datasetId, "2.0.0", "空内容页",
+                USER_ID);
+
+        RagChunkSetEntity mixedSet = ragChunkSetRepository.selectById(chunkSetOf(version.getId(), FILE_COUNT));
+        assertThat(mixedSet.getSealed()).isTrue();
+        assertThat(mixedSet.getDocumentCount()).isEqualTo(PAGES_PER_FILE);
+        assertThat(chunkSetOf(version.getId(), FILE_COUNT + 1)).isNull();
+        assertThat(ragVersionDomainService.getRagVersion(version.getId()).getDocumentCount())
+                .isEqualTo((FILE_COUNT + 1) * PAGES_PER_FILE);
+    }
+
+    private Set<String> referencedSetIds() {
+        return ragVersionFileRepository
+                .selectList(Wrappers.<RagVersionFileEntity>lambdaQuery().in(RagVersionFileEntity::getRagVersionId,
+                        versionIds))
+                .stream().map(RagVersionFileEntity::getChunkSetId).collect(Collectors.toSet());
+    }
+
+    private String chunkSetOf(String versionId, int fileIndex) {
+        return ragVersionFileRepository.selectOne(Wrappers.<RagVersionFileEntity>lambdaQuery()
+                .eq(RagVersionFileEntity::getRagVersionId, versionId)
+                .eq(RagVersionFileEntity::getOriginalFileId, files.get(fileIndex).getId())).getChunkSetId();
+    }
+
+    /** 所有版本出现过的文档内容 */
+    private Set<String> allContents() {
+        Set<String> contents = new HashSet<>();
+        versionIds.forEach(versionId -> ragVersionDocumentRepository.selectVersionDocuments(versionId)
+                .forEach(doc -> contents.add(doc.getContent())));
+        return contents;
+    }
+
+    private void reviseFirstPage(FileDetailEntity file, int revision) {
+        DocumentUnitEntity firstPage = documentUnitRepository.selectOne(Wrappers.<DocumentUnitEntity>lambdaQuery()
+                .eq(DocumentUnitEntity::getFileId, file.getId()).eq(DocumentUnitEntity::getPage, 0));
+        firstPage.setContent(pageContent(file, 0) + " " + REVISION_MARKERS[revision]);
+        documentUnitRepository.updateById(firstPage);
+    }
+
+    private FileDetailEntity addFile(int index) {
+        return addFile(index, PAGES_PER_FILE);
+    }
+
+    private FileDetailEntity addFile(int index, int pages) {
+        FileDetailEntity file = new FileDetailEntity();
+        file.setDataSetId(datasetId);
+        file.setUserId(USER_ID);
+        file.setOriginalFilename("分块共享-" + index + "-" + UUID.randomUUID() + ".pdf");
+        file.setSize(4096L);
+        file.setExt("pdf");
+        file.setPath("chunk-store-test/" + UUID.randomUUID() + ".pdf");
+        file.setFilePageSize(pages);
+        file.setProcessingStatus(FileProcessingStatusEnum.COMPLETED.getCode());
+        fileDetailRepository.insert(file);
+
+        for (int page = 0; page < pages; page++) {
+            addPage(file, page, pageContent(file, page));
+        }
+        return file;
+    }
+
+    private void addPage(FileDetailEntity file, int page, String content) {
+        DocumentUnitEntity doc = new DocumentUnitEntity();
+        doc.setFileId(file.getId());
+        doc.setPage(page);
+        doc.setContent(content);
+        doc.setIsVector(true);
+        doc.setIsOcr(true);
+        documentUnitRepository.insert(doc);
+    }
+
+    private static String pageContent(FileDetailEntity file, int page) {
+        return "第" + page + "页内容 " + file.getOriginalFilename();
+    }
+}
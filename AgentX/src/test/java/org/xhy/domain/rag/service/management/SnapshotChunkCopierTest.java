@@ -0,0 +1,105 @@
+package org.xhy.domain.rag.service.management;
+
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.rag.model.SnapshotCopyChunk;
+import org.xhy.domain.rag.model.SnapshotSourceCount;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 快照分块复制测试 小文件装箱合并为一条语句，大文件按ID游标逐块复制，每个文档恰好复制一次 */
+class SnapshotChunkCopierTest {
+
+    /** 源文件ID -> 文档ID */
+    private final Map<String, List<String>> documents = new LinkedHashMap<>();
+
+    private final List<String> copied = new ArrayList<>();
+
+    private final List<List<String>> statements = new ArrayList<>();
+
+    @Test
+    void smallFilesShouldBePackedUpToBatchSize() {
+        addFile("file-a", 3);
+        addFile("file-b", 4);
+        addFile("file-c", 0);
+        addFile("file-d", 5);
+        addFile("file-e", 2);
+
+        List<List<String>> groups = new SnapshotChunkCopier("测试", 10).pack(sources());
+
+        assertThat(groups).containsExactly(List.of("file-a", "file-b"), List.of("file-d", "file-e"));
+    }
+
+    @Test
+    void largeFileShouldBeCopiedChunkByChunkWithKeysetCursor() {
+        addFile("file-a", 3);
+        addFile("file-b", 25);
+        addFile("file-c", 4);
+
+        long total = new SnapshotChunkCopier("测试", 10).copy(sources(), this::copyChunk);
+
+        assertThat(total).isEqualTo(32);
+        assertThat(copied).doesNotHaveDuplicates().containsExactlyInAnyOrderElementsOf(
+                documents.values().stream().flatMap(List::stream).collect(Collectors.toList()));
+        // file-a单独一组（加上file-b超出块大小），file-b三块，file-c一组
+        assertThat(statements).hasSize(5);
+        assertThat(statements.subList(1, 4)).allSatisfy(group -> assertThat(group).containsExactly("file-b"));
+    }
+
+    @Test
+    void exactMultipleOfBatchSizeShouldEndWithEmptyChunk() {
+        addFile("file-a", 20);
+
+        long total = new SnapshotChunkCopier("测试", 10).copy(sources(), this::copyChunk);
+
+        assertThat(total).isEqualTo(20);
+        assertThat(statements).hasSize(3);
+    }
+
+    @Test
+    void emptyVersionShouldNotIssueStatements() {
+        addFile("file-a", 0);
+
+        assertThat(new SnapshotChunkCopier("测试", 10).copy(sources(), this::copyChunk)).isZero();
+        assertThat(statements).isEmpty();
+    }
+
+    private void addFile(String fileId, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(fileId + "-doc-" + String.format("%03d", i));
+        }
+        documents.put(fileId, ids);
+    }
+
+    private List<SnapshotSourceCount> sources() {
+        List<SnapshotSourceCount> sources = new ArrayList<>();
+        documents.forEach((fileId, ids) -> {
+            SnapshotSourceCount source = new SnapshotSourceCount();
+            source.setSourceFileId(fileId);
+            source.setDocumentCount(ids.size());
+            sources.add(source);
+        });
+        return sources;
+    }
+
+    /** 模拟INSERT ... SELECT ... WHERE id > afterId ORDER BY id LIMIT limit */
+    private SnapshotCopyChunk copyChunk(List<String> sourceFileIds, String afterId, int limit) {
+        statements.add(List.copyOf(sourceFileIds));
+        TreeSet<String> candidates = new TreeSet<>();
+        sourceFileIds.forEach(fileId -> candidates.addAll(documents.get(fileId)));
+        List<String> chunk = candidates.tailSet(afterId, false).stream().limit(limit).collect(Collectors.toList());
+        copied.addAll(chunk);
+
+        SnapshotCopyChunk result = new SnapshotCopyChunk();
+        result.setLastSourceId(chunk.isEmpty() ? null : chunk.get(chunk.size() - 1));
+        result.setCopiedCount(chunk.size());
+        return result;
+    }
+}
@@ -0,0 +1,292 @@
+package org.xhy.domain.rag.service.management;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import org.xhy.domain.rag.constant.FileProcessingStatusEnum;
+import org.xhy.domain.rag.model.DocumentUnitEntity;
+import org.xhy.domain.rag.model.FileDetailEntity;
+import org.xhy.domain.rag.model.RagQaDatasetEntity;
+import org.xhy.domain.rag.model.RagVersionDocumentEntity;
+import org.xhy.domain.rag.model.RagVersionEntity;
+import org.xhy.domain.rag.model.RagVersionFileEntity;
+import org.xhy.domain.rag.model.UserRagDocumentEntity;
+import org.xhy.domain.rag.model.UserRagFileEntity;
+import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.domain.rag.repository.RagQaDatasetRepository;
+import org.xhy.domain.rag.repository.RagVersionDocumentRepository;
+import org.xhy.domain.rag.repository.RagVersionFileRepository;
+import org.xhy.domain.rag.repository.UserRagDocumentRepository;
+import org.xhy.domain.rag.repository.UserRagFileRepository;
+import org.xhy.infrastructure.rag.config.RagSnapshotProperties;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 快照等价性测试 经分块集合读取的版本快照、用户快照与原逐行复制生成的快照逐行一致（新生成的主键除外），需连接测试数据库 */
+@SpringBootTest
+@Transactional
+class SnapshotCopyEquivalenceTest {
+
+    private static final String USER_ID = "snapshot-test-user";
+
+    @Autowired
+    private RagVersionDomainService ragVersionDomainService;
+
+    @Autowired
+    private UserRagSnapshotDomainService userRagSnapshotDomainService;
+
+    @Autowired
+    private RagSnapshotProperties snapshotProperties;
+
+    @Autowired
+    private RagQaDatasetRepository ragQaDatasetRepository;
+
+    @Autowired
+    private FileDetailRepository fileDetailRepository;
+
+    @Autowired
+    private DocumentUnitRepository documentUnitRepository;
+
+    @Autowired
+    private RagVersionFileRepository ragVersionFileRepository;
+
+    @Autowired
+    private RagVersionDocumentRepository ragVersionDocumentRepository;
+
+    @Autowired
+    private UserRagFileRepository userRagFileRepository;
+
+    @Autowired
+    private UserRagDocumentRepository userRagDocumentRepository;
+
+    private int originalBatchSize;
+
+    private String datasetId;
+
+    @BeforeEach
+    void setUp() {
+        // 块大小取小值，让大文件跨多块、小文件装箱合并
+        originalBatchSize = snapshotProperties.getCopyBatchSize();
+        snapshotProperties.setCopyBatchSize(7);
+
+        RagQaDatasetEntity dataset = new RagQaDatasetEntity();
+        dataset.setName("快照等价性测试");
+        dataset.setUserId(USER_ID);
+        ragQaDatasetRepository.insert(dataset);
+        datasetId = dataset.getId();
+
+        addFile(datasetId, FileProcessingStatusEnum.COMPLETED, 0);
+        addFile(datasetId, FileProcessingStatusEnum.COMPLETED, 3);
+        addFile(datasetId, FileProcessingStatusEnum.EMBEDDING_FAILED, 4);
+        addFile(datasetId, FileProcessingStatusEnum.OCR_FAILED, 23);
+        addFile(datasetId, FileProcessingStatusEnum.EMBEDDING_PROCESSING, 2);
+        addFile(datasetId, null, 1);
+        // 已删除的文档和其他数据集的文件不进入快照
+        FileDetailEntity withDeleted = addFile(datasetId, FileProcessingStatusEnum.COMPLETED, 5);
+        documentUnitRepository.delete(Wrappers.<DocumentUnitEntity>lambdaQuery()
+                .eq(DocumentUnitEntity::getFileId, withDeleted.getId()).eq(DocumentUnitEntity::getPage, 2));
+        addFile("other-" + UUID.randomUUID(), FileProcessingStatusEnum.COMPLETED, 6);
+    }
+
+    @AfterEach
+    void tearDown() {
+        snapshotProperties.setCopyBatchSize(originalBatchSize);
+    }
+
+    @Test
+    void versionSnapshotShouldMatchRowByRowCopy() {
+        String legacyVersionId = "legacy-" + UUID.randomUUID();
+        legacyCopyFilesAndDocuments(datasetId, legacyVersionId);
+
+        RagVersionEntity version = ragVersionDomainService.createRagVersionSnapshot(datasetId, "1.0.0", "等价性测试",
+                USER_ID);
+
+        assertThat(versionFileRows(version.getId())).isEqualTo(versionFileRows(legacyVersionId));
+        assertThat(versionDocumentRows(version.getId())).isEqualTo(legacyVersionDocumentRows(legacyVersionId));
+        assertThat(versionDocumentRows(version.getId())).hasSize(37);
+
+        RagVersionEntity stored = ragVersionDomainService.getRagVersion(version.getId());
+        assertThat(stored.getFileCount()).isEqualTo(7);
+        assertThat(stored.getDocumentCount()).isEqualTo(37);
+    }
+
+    @Test
+    void userSnapshotShouldMatchRowByRowCopy() {
+        RagVersionEntity version = ragVersionDomainService.createRagVersionSnapshot(datasetId, "1.0.0", "等价性测试",
+                USER_ID);
+        String legacyUserRagId = "legacy-" + UUID.randomUUID();
+        legacyCreateUserSnapshot(legacyUserRagId, version.getId());
+
+        String userRagId = "user-rag-" + UUID.randomUUID();
+        userRagSnapshotDomainService.createUserSnapshot(userRagId, version.getId());
+
+        assertThat(userFileRows(userRagId)).isEqualTo(userFileRows(legacyUserRagId));
+        assertThat(userDocumentRows(userRagId)).isEqualTo(legacyUserDocumentRows(legacyUserRagId));
+        assertThat(userRagSnapshotDomainService.getUserRagDocumentCount(userRagId)).isEqualTo(37);
+
+        // 同一版本再装一次不应与已有用户文件主键冲突
+        String secondUserRagId = "user-rag-" + UUID.randomUUID();
+        userRagSnapshotDomainService.createUserSnapshot(secondUserRagId, version.getId());
+        assertThat(userDocumentRows(secondUserRagId)).isEqualTo(userDocumentRows(userRagId));
+    }
+
+    // ========== 原逐行复制实现，作为对照 ==========
+
+    private void legacyCopyFilesAndDocuments(String ragId, String ragVersionId) {
+        List<FileDetailEntity> originalFiles = fileDetailRepository
+                .selectList(Wrappers.<FileDetailEntity>lambdaQuery().eq(FileDetailEntity::getDataSetId, ragId));
+        for (FileDetailEntity originalFile : originalFiles) {
+            RagVersionFileEntity versionFile = new RagVersionFileEntity();
+            versionFile.setRagVersionId(ragVersionId);
+            versionFile.setOriginalFileId(originalFile.getId());
+            versionFile.setFileName(originalFile.getOriginalFilename());
+            versionFile.setFileSize(originalFile.getSize());
+            versionFile.setFilePageSize(originalFile.getFilePageSize());
+            versionFile.setFileType(originalFile.getExt());
+            versionFile.setFilePath(originalFile.getPath());
+            versionFile.setProcessStatus(originalFile.getIsInitialize());
+            versionFile.setEmbeddingStatus(originalFile.getIsEmbedding());
+            ragVersionFileRepository.insert(versionFile);
+
+            List<DocumentUnitEntity> documents = documentUnitRepository.selectList(Wrappers
+                    .<DocumentUnitEntity>lambdaQuery().eq(DocumentUnitEntity::getFileId, originalFile.getId()));
+            for (DocumentUnitEntity doc : documents) {
+                RagVersionDocumentEntity versionDoc = new RagVersionDocumentEntity();
+                versionDoc.setRagVersionId(ragVersionId);
+                versionDoc.setRagVersionFileId(versionFile.getId());
+                versionDoc.setOriginalDocumentId(doc.getId());
+                versionDoc.setContent(doc.getContent());
+                versionDoc.setPage(doc.getPage());
+                ragVersionDocumentRepository.insert(versionDoc);
+            }
+        }
+    }
+
+    /** 原实现连同主键一起复制文件快照，同一版本只能装一次；这里清掉主键以便与新实现在同一库中对照 */
+    private void legacyCreateUserSnapshot(String userRagId, String ragVersionId) {
+        List<RagVersionFileEntity> versionFiles = ragVersionFileRepository.selectList(
+                Wrappers.<RagVersionFileEntity>lambdaQuery().eq(RagVersionFileEntity::getRagVersionId, ragVersionId));
+        Map<String, String> fileIdMapping = new HashMap<>();
+        for (RagVersionFileEntity versionFile : versionFiles) {
+            UserRagFileEntity userFile = new UserRagFileEntity();
+            BeanUtils.copyProperties(versionFile, userFile);
+            userFile.setId(null);
+            userFile.setUserRagId(userRagId);
+            userRagFileRepository.insert(userFile);
+            fileIdMapping.put(versionFile.getId(), userFile.getId());
+        }
+
+        List<RagVersionDocumentEntity> versionDocuments = ragVersionDocumentRepository
+                .selectVersionDocuments(ragVersionId);
+        for (RagVersionDocumentEntity versionDoc : versionDocuments) {
+            UserRagDocumentEntity userDoc = new UserRagDocumentEntity();
+            userDoc.setUserRagId(userRagId);
+            userDoc.setUserRagFileId(fileIdMapping.get(versionDoc.getRagVersionFileId()));
+            userDoc.setOriginalDocumentId(versionDoc.getOriginalDocumentId());
+            userDoc.setContent(versionDoc.getContent());
+            userDoc.setPage(versionDoc.getPage());
+            userDoc.setVectorId(versionDoc.getVectorId());
+            userRagDocumentRepository.insert(userDoc);
+        }
+    }
+
+    // ========== 去掉生成主键后的行内容，文件关联换算为原始文件ID ==========
+
+    private List<String> versionFileRows(String ragVersionId) {
+        return ragVersionFileRepository
+                .selectList(Wrappers.<RagVersionFileEntity>lambdaQuery().eq(RagVersionFileEntity::getRagVersionId,
+                        ragVersionId))
+                .stream()
+                .map(f -> String.join("|", f.getOriginalFileId(), f.getFileName(), String.valueOf(f.getFileSize()),
+                        String.valueOf(f.getFilePageSize()), f.getFileType(), f.getFilePath(),
+                        String.valueOf(f.getProcessStatus()), String.valueOf(f.getEmbeddingStatus())))
+                .sorted().collect(Collectors.toList());
+    }
+
+    private List<String> versionDocumentRows(String ragVersionId) {
+        return versionDocumentRows(ragVersionId, ragVersionDocumentRepository.selectVersionDocuments(ragVersionId));
+    }
+
+    private List<String> legacyVersionDocumentRows(String ragVersionId) {
+        return versionDocumentRows(ragVersionId, ragVersionDocumentRepository.selectList(Wrappers
+                .<RagVersionDocumentEntity>lambdaQuery().eq(RagVersionDocumentEntity::getRagVersionId, ragVersionId)));
+    }
+
+    private List<String> versionDocumentRows(String ragVersionId, List<RagVersionDocumentEntity> documents) {
+        Map<String, String> originalFileIds = ragVersionFileRepository
+                .selectList(Wrappers.<RagVersionFileEntity>lambdaQuery().eq(RagVersionFileEntity::getRagVersionId,
+                        ragVersionId))
+                .stream().collect(Collectors.toMap(RagVersionFileEntity::getId, RagVersionFileEntity::getOriginalFileId));
+        return documents.stream()
+                .map(d -> String.join("|", originalFileIds.get(d.getRagVersionFileId()), d.getOriginalDocumentId(),
+                        d.getContent(), String.valueOf(d.getPage()), String.valueOf(d.getVectorId())))
+                .sorted().collect(Collectors.toList());
+    }
+
+    private List<String> userFileRows(String userRagId) {
+        return userRagFileRepository
+                .selectList(Wrappers.<UserRagFileEntity>lambdaQuery().eq(UserRagFileEntity::getUserRagId, userRagId))
+                .stream()
+                .map(f -> String.join("|", f.getOriginalFileId(), f.getFileName(), String.valueOf(f.getFileSize()),
+                        String.valueOf(f.getFilePageSize()), f.getFileType(), f.getFilePath(),
+                        String.valueOf(f.getProcessStatus()), String.valueOf(f.getEmbeddingStatus()),
+                        String.valueOf(f.getCreatedAt()), String.valueOf(f.getUpdatedAt())))
+                .sorted().collect(Collectors.toList());
+    }
+
+    private List<String> userDocumentRows(String userRagId) {
+        return userDocumentRows(userRagId, userRagDocumentRepository.selectUserDocuments(userRagId, null));
+    }
+
+    private List<String> legacyUserDocumentRows(String userRagId) {
+        return userDocumentRows(userRagId, userRagDocumentRepository.selectList(
+                Wrappers.<UserRagDocumentEntity>lambdaQuery().eq(UserRagDocumentEntity::getUserRagId, userRagId)));
+    }
+
+    private List<String> userDocumentRows(String userRagId, List<UserRagDocumentEntity> documents) {
+        Map<String, String> originalFileIds = userRagFileRepository
+                .selectList(Wrappers.<UserRagFileEntity>lambdaQuery().eq(UserRagFileEntity::getUserRagId, userRagId))
+                .stream().collect(Collectors.toMap(UserRagFileEntity::getId, UserRagFileEntity::getOriginalFileId));
+        Function<UserRagDocumentEntity, String> row = d -> String.join("|",
+                originalFileIds.get(d.getUserRagFileId()), d.getOriginalDocumentId(), d.getContent(),
+                String.valueOf(d.getPage()), String.valueOf(d.getVectorId()));
+        return documents.stream().map(row).sorted().collect(Collectors.toList());
+    }
+
+    private FileDetailEntity addFile(String dataSetId, FileProcessingStatusEnum status, int documentCount) {
+        FileDetailEntity file = new FileDetailEntity();
+        file.setDataSetId(dataSetId);
+        file.setUserId(USER_ID);
+        file.setOriginalFilename("快照测试-" + UUID.randomUUID() + ".pdf");
+        file.setSize(1024L * (documentCount + 1));
+        file.setExt("pdf");
+        file.setPath("snapshot-test/" + UUID.randomUUID() + ".pdf");
+        file.setFilePageSize(documentCount);
+        file.setProcessingStatus(status != null ? status.getCode() : null);
+        fileDetailRepository.insert(file);
+
+        for (int page = 0; page < documentCount; page++) {
+            DocumentUnitEntity doc = new DocumentUnitEntity();
+            doc.setFileId(file.getId());
+            doc.setPage(page);
+            doc.setContent("第" + page + "页内容 " + file.getOriginalFilename());
+            doc.setIsVector(false);
+            doc.setIsOcr(true);
+            documentUnitRepository.insert(doc);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,98 @@
+package org.xhy.domain.rag.strategy.impl;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.xhy.infrastructure.rag.config.RagDocumentUnitProperties;
+import org.xhy.infrastructure.rag.config.RagFileProperties;
+import org.xhy.infrastructure.rag.file.DocumentSpooler;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
+import org.xhy.infrastructure.rag.ocr.PdfTextLayer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/** 大文件流式处理探针 由测试在小堆内存的子进程中运行：落盘一个合成的大输入流，经TXT策略的分批提取处理大文本文件并统计段落数和最大批次，
+ * 随机访问加载大PDF并提取末页文本层，结果写入参数指定的文件，不依赖子进程的标准输出 */
+public class LargeFileStreamingProbe {
+
+    public static void main(String[] args) throws Exception {
+        Path textPath = Paths.get(args[0]);
+        Path pdfPath = Paths.get(args[1]);
+        long syntheticBytes = Long.parseLong(args[2]);
+        Path resultPath = Paths.get(args[3]);
+
+        RagFileProperties properties = new RagFileProperties();
+        properties.setMaxMemoryBytes(8L * 1024 * 1024);
+        properties.setTempDir(textPath.getParent().toString());
+        DocumentSpooler spooler = new DocumentSpooler(properties, null);
+
+        long spooledSize;
+        try (InputStream in = new SyntheticInputStream(syntheticBytes);
+                SpooledDocument spooled = spooler.spool(in, "bin")) {
+            spooledSize = spooled.size();
+        }
+
+        RagDocumentUnitProperties documentUnitProperties = new RagDocumentUnitProperties();
+        TXTRagDocDocumentProcessing strategy = new TXTRagDocDocumentProcessing(null, documentUnitProperties, null,
+                spooler);
+        int segments;
+        int[] maxBatch = new int[1];
+        try (SpooledDocument text = new SpooledDocument(textPath, properties.getMaxMemoryBytes(), false)) {
+            segments = strategy.processFile(text, documentUnitProperties.effectiveWriteBatchSize(),
+                    batch -> maxBatch[0] = Math.max(maxBatch[0], batch.size()));
+        }
+
+        int pages;
+        String lastPageText;
+        try (SpooledDocument pdf = new SpooledDocument(pdfPath, properties.getMaxMemoryBytes(), false);
+                PDDocument document = pdf.loadPdf()) {
+            pages = document.getNumberOfPages();
+            lastPageText = PdfTextLayer.extract(document, pages - 1).getText().trim();
+        }
+
+        Properties result = new Properties();
+        result.setProperty("spooled", String.valueOf(spooledSize));
+        result.setProperty("segments", String.valueOf(segments));
+        result.setProperty("maxBatch", String.valueOf(maxBatch[0]));
+        result.setProperty("pages", String.valueOf(pages));
+        result.setProperty("lastPage", lastPageText);
+        try (OutputStream out = Files.newOutputStream(resultPath)) {
+            result.store(out, null);
+        }
+    }
+
+    /** 按需生成内容的输入流，不占用与长度相当的内存 */
+    static class SyntheticInputStream extends InputStream {
+
+        private long remaining;
+
+        SyntheticInputStream(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            remaining--;
+            return (int) (remaining & 0x7F);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = (int) Math.min(len, remaining);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) ((remaining - i) & 0x7F);
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.xhy.domain.rag.strategy.impl;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xhy.infrastructure.rag.config.RagDocumentUnitProperties;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 大文件流式处理测试 在堆内存只有48MB的子进程中处理远大于堆内存的文本和PDF文件，整文件读入字节数组的实现会直接内存溢出 */
+class LargeFileStreamingTest {
+
+    private static final String MAX_HEAP = "-Xmx48m";
+
+    private static final long LARGE_BYTES = 96L * 1024 * 1024;
+
+    private static final String LINE = "知识库文档流式处理测试，每一行都是完整的句子。Streaming keeps the heap flat.\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldProcessFilesLargerThanHeap() throws Exception {
+        Path text = writeText(tempDir.resolve("large.txt"));
+        Path pdf = writePdf(tempDir.resolve("large.pdf"));
+        Path resultPath = tempDir.resolve("result.properties");
+        assertThat(Files.size(text)).isGreaterThan(LARGE_BYTES / 2);
+        assertThat(Files.size(pdf)).isGreaterThan(LARGE_BYTES);
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add(MAX_HEAP);
+        command.add("-cp");
+        command.add(testClasspath());
+        command.add(LargeFileStreamingProbe.class.getName());
+        command.add(text.toString());
+        command.add(pdf.toString());
+        command.add(String.valueOf(LARGE_BYTES));
+        command.add(resultPath.toString());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(process.waitFor(5, TimeUnit.MINUTES)).isTrue();
+
+        assertThat(process.exitValue()).as(output).isZero();
+        Properties result = new Properties();
+        try (InputStream in = Files.newInputStream(resultPath)) {
+            result.load(in);
+        }
+        assertThat(result.getProperty("spooled")).isEqualTo(String.valueOf(LARGE_BYTES));
+        assertThat(Integer.parseInt(result.getProperty("segments"))).isGreaterThanOrEqualTo(1000);
+        // 段落按写入批大小分批交出，不在内存中汇总整个文件
+        assertThat(Integer.parseInt(result.getProperty("maxBatch")))
+                .isEqualTo(new RagDocumentUnitProperties().effectiveWriteBatchSize());
+        assertThat(result.getProperty("pages")).isEqualTo("3");
+        assertThat(result.getProperty("lastPage")).isEqualTo("page 2 of 3");
+        // 落盘的临时文件在关闭后被删除
+        try (var files = Files.list(tempDir)) {
+            assertThat(files.map(path -> path.getFileName().toString())).containsExactlyInAnyOrder("large.txt",
+                    "large.pdf", "result.properties");
+        }
+    }
+
+    /** 写入约48MB的纯文本，约为子进程堆内存的大小 */
+    private static Path writeText(Path path) throws Exception {
+        long target = LARGE_BYTES / 2;
+        long written = 0;
+        int lineBytes = LINE.getBytes(StandardCharsets.UTF_8).length;
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            while (written < target) {
+                writer.write(LINE);
+                written += lineBytes;
+            }
+        }
+        return path;
+    }
+
+    /** 写入3页带文本层的PDF，首页附带一个96MB的数据流 */
+    private static Path writePdf(Path path) throws Exception {
+        try (PDDocument document = new PDDocument(IOUtils.createTempFileOnlyStreamCache())) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int i = 0; i < 3; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText("page " + i + " of 3");
+                    content.endText();
+                }
+            }
+            COSStream junk = document.getDocument().createCOSStream();
+            byte[] chunk = new byte[1024 * 1024];
+            try (OutputStream out = junk.createRawOutputStream()) {
+                for (long written = 0; written < LARGE_BYTES; written += chunk.length) {
+                    out.write(chunk);
+                }
+            }
+            document.getPage(0).getCOSObject().setItem(COSName.getPDFName("Attachment"), junk);
+            document.save(path.toFile());
+        }
+        return path;
+    }
+
+    /** 子进程类路径：系统类路径加上测试运行器可能使用的独立类加载器中的路径 */
+    private static String testClasspath() throws Exception {
+        Set<String> entries = new LinkedHashSet<>(
+                List.of(System.getProperty("java.class.path").split(File.pathSeparator)));
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        while (loader != null) {
+            if (loader instanceof URLClassLoader urlClassLoader) {
+                for (URL url : urlClassLoader.getURLs()) {
+                    entries.add(new File(url.toURI()).getPath());
+                }
+            }
+            loader = loader.getParent();
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+}
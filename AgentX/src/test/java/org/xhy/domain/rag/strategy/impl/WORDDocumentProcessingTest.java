@@ -0,0 +1,52 @@
+package org.xhy.domain.rag.strategy.impl;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xhy.domain.rag.message.RagDocMessage;
+import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.domain.rag.service.DocumentUnitDomainService;
+import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.rag.config.RagDocumentUnitProperties;
+import org.xhy.infrastructure.rag.file.DocumentSpooler;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Word策略失败传播测试 超过单任务内存上限的文档不能被当作0页吞掉，需抛出以便文件置为失败 */
+class WORDDocumentProcessingTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void overCapDocumentShouldFailInsteadOfYieldingNoPages() throws Exception {
+        Path path = dir.resolve("big.xlsx");
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(path)) {
+            Sheet sheet = workbook.createSheet("明细");
+            for (int r = 0; r < 2000; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue("第" + r + "行的内容各不相同，共享字符串表随行数增长");
+            }
+            workbook.write(out);
+        }
+        DocumentSpooler spooler = mock(DocumentSpooler.class);
+        when(spooler.getTextWindowChars()).thenReturn(4096);
+        WORDDocumentProcessing strategy = new WORDDocumentProcessing(mock(DocumentUnitDomainService.class),
+                new RagDocumentUnitProperties(), mock(FileDetailRepository.class), spooler);
+
+        try (SpooledDocument file = new SpooledDocument(path, 16 * 1024, false)) {
+            assertThatThrownBy(() -> strategy.pushPageSize(file, new RagDocMessage()))
+                    .isInstanceOf(BusinessException.class).hasMessageContaining("内存上限");
+            assertThatThrownBy(() -> strategy.processFile(file, 1)).isInstanceOf(BusinessException.class);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.xhy.infrastructure.mq.rabbit;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.xhy.infrastructure.mq.core.DownstreamSaturation;
+import org.xhy.infrastructure.mq.events.RagDocSyncStorageEvent;
+import org.xhy.infrastructure.rag.config.RagListenerAutoscaleProperties;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** 监听器自动伸缩测试 校验积压驱动的逐步扩容、持续空闲后的延迟缩容、下游饱和时的退让，以及忙碌比例对长耗时消息的统计 */
+class ListenerAutoscalerTest {
+
+    private static final String QUEUE = RagDocSyncStorageEvent.QUEUE_NAME;
+
+    private RagListenerAutoscaleProperties properties;
+
+    private ListenerScalingPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RagListenerAutoscaleProperties();
+        properties.setMinConsumers(2);
+        properties.setMaxConsumers(10);
+        properties.setMinPrefetch(1);
+        properties.setMaxPrefetch(5);
+        properties.setMessagesPerConsumer(10);
+        properties.setScaleUpStep(4);
+        properties.setScaleDownStep(2);
+        properties.setScaleDownDelayCycles(3);
+        policy = new ListenerScalingPolicy(properties);
+    }
+
+    @Test
+    void backlogShouldScaleUpStepwiseAndRaisePrefetchOnlyAtCapacity() {
+        ListenerScalingPolicy.ScaleDecision first = policy.decide(QUEUE, 2, 1, 80, 1.0, 0.0);
+        assertThat(first.getAction()).isEqualTo(ListenerScalingPolicy.Action.SCALE_UP);
+        assertThat(first.getConsumers()).isEqualTo(6);
+        assertThat(first.getPrefetch()).isEqualTo(2);
+
+        ListenerScalingPolicy.ScaleDecision second = policy.decide(QUEUE, 6, 2, 80, 1.0, 0.0);
+        assertThat(second.getConsumers()).isEqualTo(8);
+        assertThat(second.getPrefetch()).isEqualTo(1);
+
+        // 积压远超最多消费者的承担量，消费者封顶后提高预取数
+        ListenerScalingPolicy.ScaleDecision saturated = policy.decide(QUEUE, 10, 1, 50_000, 1.0, 0.0);
+        assertThat(saturated.getConsumers()).isEqualTo(10);
+        assertThat(saturated.getPrefetch()).isEqualTo(5);
+    }
+
+    @Test
+    void idleQueueShouldScaleDownOnlyAfterDelayCycles() {
+        assertThat(policy.decide(QUEUE, 10, 1, 0, 0.1, 0.0).getAction()).isEqualTo(ListenerScalingPolicy.Action.HOLD);
+        assertThat(policy.decide(QUEUE, 10, 1, 0, 0.1, 0.0).getAction()).isEqualTo(ListenerScalingPolicy.Action.HOLD);
+        ListenerScalingPolicy.ScaleDecision third = policy.decide(QUEUE, 10, 1, 0, 0.1, 0.0);
+        assertThat(third.getAction()).isEqualTo(ListenerScalingPolicy.Action.SCALE_DOWN);
+        assertThat(third.getConsumers()).isEqualTo(8);
+
+        // 负载回升会重置缩容计数
+        policy.decide(QUEUE, 8, 1, 0, 0.1, 0.0);
+        policy.decide(QUEUE, 8, 1, 0, 0.9, 0.0);
+        assertThat(policy.decide(QUEUE, 8, 1, 0, 0.1, 0.0).getAction())
+                .isEqualTo(ListenerScalingPolicy.Action.HOLD);
+    }
+
+    @Test
+    void busyConsumersWithSmallBacklogShouldStillGrowByOne() {
+        ListenerScalingPolicy.ScaleDecision decision = policy.decide(QUEUE, 4, 1, 5, 0.95, 0.0);
+
+        assertThat(decision.getAction()).isEqualTo(ListenerScalingPolicy.Action.SCALE_UP);
+        assertThat(decision.getConsumers()).isEqualTo(5);
+    }
+
+    @Test
+    void saturatedDownstreamShouldBackOffDespiteBacklog() {
+        ListenerScalingPolicy.ScaleDecision decision = policy.decide(QUEUE, 10, 5, 50_000, 1.0, 0.95);
+
+        assertThat(decision.getAction()).isEqualTo(ListenerScalingPolicy.Action.BACKPRESSURE);
+        assertThat(decision.getConsumers()).isEqualTo(8);
+        assertThat(decision.getPrefetch()).isEqualTo(1);
+        assertThat(policy.decide(QUEUE, 2, 1, 50_000, 1.0, 0.95).getConsumers()).isEqualTo(2);
+    }
+
+    @Test
+    void utilizationShouldCountLongRunningMessagesWhileInFlight() throws Throwable {
+        AtomicLong now = new AtomicLong();
+        ListenerActivityTracker tracker = new ListenerActivityTracker(now::get);
+        tracker.sampleUtilization(QUEUE, 2);
+
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setConsumerQueue(QUEUE);
+        Message message = new Message(new byte[0], messageProperties);
+        // 一个消费者处理了前一半时间，另一个消费者的消息跨越采样点仍在处理
+        invoke(tracker, message, now, 0, 500);
+        MethodInvocation longRunning = mock(MethodInvocation.class);
+        when(longRunning.getArguments()).thenReturn(new Object[]{null, message});
+        when(longRunning.proceed()).thenAnswer(inv -> {
+            now.set(1000);
+            assertThat(tracker.inFlight(QUEUE)).isEqualTo(1);
+            assertThat(tracker.sampleUtilization(QUEUE, 2)).isEqualTo(0.75);
+            now.set(2000);
+            return null;
+        });
+        now.set(0);
+        tracker.invoke(longRunning);
+
+        assertThat(tracker.sampleUtilization(QUEUE, 2)).isEqualTo(0.5);
+        assertThat(tracker.inFlight(QUEUE)).isZero();
+    }
+
+    @Test
+    void autoscalerShouldRaiseMaxBeforeConcurrencyWhenScalingUp() {
+        AmqpAdmin amqpAdmin = mock(AmqpAdmin.class);
+        when(amqpAdmin.getQueueInfo(QUEUE)).thenReturn(new QueueInformation(QUEUE, 200, 2));
+        SimpleMessageListenerContainer container = mock(SimpleMessageListenerContainer.class);
+        when(container.getActiveConsumerCount()).thenReturn(2);
+        ListenerAutoscaler autoscaler = new ListenerAutoscaler(mock(RabbitListenerEndpointRegistry.class),
+                amqpAdmin, new ListenerActivityTracker(), List.of(DownstreamSaturation.of(QUEUE, () -> 0.2)),
+                properties);
+
+        autoscaler.adjust(QUEUE, container);
+
+        InOrder order = inOrder(container);
+        order.verify(container).setPrefetchCount(4);
+        order.verify(container).setMaxConcurrentConsumers(6);
+        order.verify(container).setConcurrentConsumers(6);
+        ListenerAutoscaleMetrics metrics = autoscaler.getMetrics().get(QUEUE);
+        assertThat(metrics.getQueueDepth()).isEqualTo(200);
+        assertThat(metrics.getConsumers()).isEqualTo(6);
+        assertThat(metrics.getDownstreamSaturation()).isEqualTo(0.2);
+        assertThat(metrics.getLastAction()).isEqualTo("SCALE_UP");
+    }
+
+    private static void invoke(ListenerActivityTracker tracker, Message message, AtomicLong now, long start,
+            long end) throws Throwable {
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        when(invocation.getArguments()).thenReturn(new Object[]{null, message});
+        when(invocation.proceed()).thenAnswer(inv -> {
+            now.set(end);
+            return null;
+        });
+        now.set(start);
+        tracker.invoke(invocation);
+    }
+}
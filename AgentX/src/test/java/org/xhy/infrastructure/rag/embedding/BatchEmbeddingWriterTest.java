@@ -0,0 +1,333 @@
+package org.xhy.infrastructure.rag.embedding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.rag.model.EmbeddingCacheEntity;
+import org.xhy.domain.rag.repository.EmbeddingCacheRepository;
+import org.xhy.infrastructure.rag.config.RagEmbeddingBatchProperties;
+import org.xhy.infrastructure.rag.stub.StubModelServer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** 批量向量写入测试 对比逐段与批量向量化的请求次数并输出吞吐，验证失败重试、毒段落隔离、重复写入幂等以及向量缓存复用 */
+class BatchEmbeddingWriterTest {
+
+    private static final int CHUNKS = 64;
+
+    /** 模拟嵌入服务单次往返耗时，仅用于输出吞吐对比 */
+    private static final long ROUND_TRIP_MILLIS = 10;
+
+    private static final String MODEL_KEY = "stub|stub-embedding";
+
+    /** 含此标记的段落总是向量化失败 */
+    private static final String POISON = "[poison]";
+
+    private static final int DIMENSION = 8;
+
+    /** 每次请求携带的段落数 */
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    private StubModelServer server;
+
+    private UpsertEmbeddingStore store;
+
+    private EmbeddingModel embeddingModel;
+
+    private Map<String, EmbeddingCacheEntity> cacheRows;
+
+    private EmbeddingCacheRepository cacheRepository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubModelServer("/v1/embeddings", this::embeddings);
+        store = new UpsertEmbeddingStore();
+        cacheRows = new ConcurrentHashMap<>();
+        cacheRepository = mock(EmbeddingCacheRepository.class);
+        when(cacheRepository.selectBatchIds(anyCollection())).thenAnswer(inv -> {
+            Collection<?> keys = inv.getArgument(0);
+            return keys.stream().map(cacheRows::get).filter(Objects::nonNull).toList();
+        });
+        when(cacheRepository.insertIgnoreBatch(anyList())).thenAnswer(inv -> {
+            List<EmbeddingCacheEntity> entries = inv.getArgument(0);
+            entries.forEach(entry -> cacheRows.putIfAbsent(entry.getId(), entry));
+            return entries.size();
+        });
+        embeddingModel = OpenAiEmbeddingModel.builder().baseUrl(server.baseUrl()).apiKey("stub")
+                .modelName("stub-embedding").maxRetries(0).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void batchingShouldCutRequestsByBatchSize() {
+        server.setDelayMillis(ROUND_TRIP_MILLIS);
+        List<String> ids = ids(CHUNKS);
+        List<TextSegment> segments = segments(ids);
+
+        double singleRate = throughput(writer(1, false), 1, ids, segments);
+        int singleRequests = server.requests();
+        double batchRate = throughput(writer(32, false), 32, ids, segments);
+
+        // 吞吐受机器负载影响，只输出不断言
+        System.out.printf("embedding throughput: batch=1 %.0f chunks/s, batch=32 %.0f chunks/s (%.1fx)%n",
+                singleRate, batchRate, batchRate / singleRate);
+
+        // 往返次数决定向量化耗时：逐段写入每段一次请求，批量写入每32段一次请求
+        assertThat(singleRequests).isEqualTo(CHUNKS);
+        assertThat(server.requests() - singleRequests).isEqualTo(CHUNKS / 32);
+        assertThat(batchSizes.subList(CHUNKS, batchSizes.size())).containsOnly(32);
+        assertThat(store.size()).isEqualTo(CHUNKS);
+    }
+
+    @Test
+    void transientFailureShouldBeRetried() {
+        List<String> ids = ids(16);
+        server.failNext();
+
+        EmbeddingWriteResult result = writer(16).write(embeddingModel, MODEL_KEY, ids, segments(ids));
+
+        assertThat(result.getFailedIds()).isEmpty();
+        assertThat(result.getCacheMisses()).isEqualTo(16);
+        assertThat(server.requests()).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(16);
+    }
+
+    @Test
+    void poisonSegmentShouldBeIsolated() {
+        List<String> ids = ids(16);
+        List<TextSegment> segments = segments(ids);
+        segments.set(5, TextSegment.from("段落5 " + POISON));
+
+        EmbeddingWriteResult result = writer(16).write(embeddingModel, MODEL_KEY, ids, segments);
+
+        assertThat(result.getFailedIds()).containsExactly(ids.get(5));
+        assertThat(store.size()).isEqualTo(15);
+        assertThat(store.contains(BatchEmbeddingWriter.vectorId(ids.get(5)))).isFalse();
+    }
+
+    @Test
+    void rewritingSameSegmentsShouldNotDuplicateVectors() {
+        List<String> ids = ids(16);
+        BatchEmbeddingWriter writer = writer(16, false);
+
+        writer.write(embeddingModel, MODEL_KEY, ids, segments(ids));
+        writer.write(embeddingModel, MODEL_KEY, ids, segments(ids));
+
+        assertThat(store.size()).isEqualTo(16);
+        assertThat(store.writes()).isEqualTo(32);
+    }
+
+    @Test
+    void reingestingSameContentShouldReuseCachedVectors() {
+        List<String> ids = ids(CHUNKS);
+        BatchEmbeddingWriter writer = writer(32);
+
+        for (int from = 0; from < CHUNKS; from += 32) {
+            writer.write(embeddingModel, MODEL_KEY, ids.subList(from, from + 32), segments(ids).subList(from, from + 32));
+        }
+        int firstRequests = server.requests();
+
+        // 同一内容以新的文档单元ID再次入库（重复上传或重新处理）
+        List<String> reuploadIds = new ArrayList<>();
+        ids.forEach(id -> reuploadIds.add("re-" + id));
+        int hits = 0;
+        for (int from = 0; from < CHUNKS; from += 32) {
+            EmbeddingWriteResult result = writer.write(embeddingModel, MODEL_KEY, reuploadIds.subList(from, from + 32),
+                    segments(ids).subList(from, from + 32));
+            assertThat(result.getFailedIds()).isEmpty();
+            assertThat(result.getCacheMisses()).isZero();
+            hits += result.getCacheHits();
+        }
+
+        assertThat(firstRequests).isEqualTo(CHUNKS / 32);
+        assertThat(server.requests()).isEqualTo(firstRequests);
+        assertThat(hits).isEqualTo(CHUNKS);
+        assertThat(store.size()).isEqualTo(CHUNKS * 2);
+        assertThat(store.vector(BatchEmbeddingWriter.vectorId("re-unit-0")))
+                .isEqualTo(store.vector(BatchEmbeddingWriter.vectorId("unit-0")));
+    }
+
+    @Test
+    void sharedBoilerplateShouldBeEmbeddedOnce() {
+        List<String> ids = ids(16);
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            // 页眉免责声明在每页重复出现，空白差异不影响复用
+            segments.add(TextSegment.from(i % 2 == 0 ? "本文件仅供内部使用，  未经许可不得外传。" : "段落内容 " + ids.get(i)));
+        }
+
+        EmbeddingWriteResult result = writer(16).write(embeddingModel, MODEL_KEY, ids, segments);
+
+        assertThat(result.getCacheMisses()).isEqualTo(9);
+        assertThat(result.getCacheHits()).isEqualTo(7);
+        assertThat(cacheRows).hasSize(9);
+        assertThat(store.size()).isEqualTo(16);
+    }
+
+    @Test
+    void differentModelsShouldNotShareCachedVectors() {
+        List<String> ids = ids(8);
+        BatchEmbeddingWriter writer = writer(8);
+
+        writer.write(embeddingModel, MODEL_KEY, ids, segments(ids));
+        EmbeddingWriteResult result = writer.write(embeddingModel, "stub|other-embedding", ids, segments(ids));
+
+        assertThat(result.getCacheHits()).isZero();
+        assertThat(server.requests()).isEqualTo(2);
+    }
+
+    /** 按批写入全部段落，返回每秒写入的段落数 */
+    private double throughput(BatchEmbeddingWriter writer, int batchSize, List<String> ids,
+            List<TextSegment> segments) {
+        long start = System.nanoTime();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            int to = Math.min(ids.size(), from + batchSize);
+            assertThat(writer.write(embeddingModel, MODEL_KEY, ids.subList(from, to), segments.subList(from, to))
+                    .getFailedIds()).isEmpty();
+        }
+        return ids.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /** 兼容OpenAI embeddings接口：按文本哈希生成固定向量，输入含毒段落标记时返回400 */
+    private JsonNode embeddings(JsonNode request) {
+        List<String> inputs = new ArrayList<>();
+        JsonNode input = request.path("input");
+        if (input.isArray()) {
+            input.forEach(node -> inputs.add(node.asText()));
+        } else {
+            inputs.add(input.asText());
+        }
+        batchSizes.add(inputs.size());
+        if (inputs.stream().anyMatch(text -> text.contains(POISON))) {
+            throw new StubModelServer.StubFailure(400, "poison input");
+        }
+
+        ObjectNode response = StubModelServer.json();
+        response.put("object", "list").put("model", "stub-embedding");
+        ArrayNode data = response.putArray("data");
+        for (int i = 0; i < inputs.size(); i++) {
+            ObjectNode item = data.addObject();
+            item.put("object", "embedding").put("index", i);
+            ArrayNode vector = item.putArray("embedding");
+            int hash = inputs.get(i).hashCode();
+            for (int d = 0; d < DIMENSION; d++) {
+                vector.add(((hash >> d) & 1) == 1 ? 1.0 : 0.1);
+            }
+        }
+        response.putObject("usage").put("prompt_tokens", inputs.size()).put("total_tokens", inputs.size());
+        return response;
+    }
+
+    private BatchEmbeddingWriter writer(int batchSize) {
+        return writer(batchSize, true);
+    }
+
+    private BatchEmbeddingWriter writer(int batchSize, boolean cacheEnabled) {
+        RagEmbeddingBatchProperties properties = new RagEmbeddingBatchProperties();
+        properties.setBatchSize(batchSize);
+        properties.setMaxRetries(1);
+        properties.setRetryBackoffMillis(1);
+        properties.setCacheEnabled(cacheEnabled);
+        return new BatchEmbeddingWriter(store, new EmbeddingCache(cacheRepository, properties), properties);
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add("unit-" + i);
+        }
+        return ids;
+    }
+
+    private static List<TextSegment> segments(List<String> ids) {
+        List<TextSegment> segments = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            segments.add(TextSegment.from("段落内容 " + id));
+        }
+        return segments;
+    }
+
+    /** 按ID覆盖写入的向量库，行为与pgvector的ON CONFLICT upsert一致 */
+    private static class UpsertEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+        private final Map<String, Embedding> vectors = new ConcurrentHashMap<>();
+
+        private final AtomicInteger writes = new AtomicInteger();
+
+        int size() {
+            return vectors.size();
+        }
+
+        int writes() {
+            return writes.get();
+        }
+
+        boolean contains(String id) {
+            return vectors.containsKey(id);
+        }
+
+        Embedding vector(String id) {
+            return vectors.get(id);
+        }
+
+        @Override
+        public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+            for (int i = 0; i < ids.size(); i++) {
+                vectors.put(ids.get(i), embeddings.get(i));
+                writes.incrementAndGet();
+            }
+        }
+
+        @Override
+        public String add(Embedding embedding) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(String id, Embedding embedding) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String add(Embedding embedding, TextSegment embedded) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> addAll(List<Embedding> embeddings) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
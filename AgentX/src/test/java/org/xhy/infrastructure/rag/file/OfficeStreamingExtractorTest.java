@@ -0,0 +1,204 @@
+package org.xhy.infrastructure.rag.file;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.poi.ApachePoiDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.extractor.XSSFExcelExtractor;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xhy.infrastructure.exception.BusinessException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Office流式提取黄金测试 用POI生成docx和xlsx样例，校验流式提取的文本和切分结果与整篇加载的DOM路径一致，并校验窗口边界和内存上限 */
+class OfficeStreamingExtractorTest {
+
+    private static final long MAX_MEMORY = 64L * 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void docxTextShouldMatchDomExtractor() throws Exception {
+        Path path = writeDocx(dir.resolve("report.docx"), 20);
+
+        String streamed = streamText(path);
+
+        try (InputStream in = Files.newInputStream(path);
+                XWPFWordExtractor extractor = new XWPFWordExtractor(new XWPFDocument(in))) {
+            assertThat(normalize(streamed)).isEqualTo(normalize(extractor.getText()));
+        }
+        assertThat(streamed).contains("季度\t收入\t同比").contains("第一段\t制表符后的文字\n换行后的文字");
+    }
+
+    @Test
+    void xlsxTextShouldMatchDomExtractor() throws Exception {
+        Path path = writeXlsx(dir.resolve("sales.xlsx"), 200);
+
+        String streamed = streamText(path);
+
+        try (InputStream in = Files.newInputStream(path);
+                XSSFExcelExtractor extractor = new XSSFExcelExtractor(new XSSFWorkbook(in))) {
+            assertThat(normalize(streamed)).isEqualTo(normalize(extractor.getText()));
+        }
+        assertThat(streamed).startsWith("销售明细\n").contains("汇总\n").contains("2025-01-02").contains("TRUE");
+    }
+
+    @Test
+    void segmentsShouldMatchDomParser() throws Exception {
+        for (Path path : List.of(writeDocx(dir.resolve("long.docx"), 300), writeXlsx(dir.resolve("long.xlsx"), 500))) {
+            List<String> streamed = new ArrayList<>();
+            DocumentBySentenceSplitter splitter = new DocumentBySentenceSplitter(500, 0);
+            // 窗口足够大时整篇作为一个窗口切分，结果应与DOM路径完全一致
+            boolean supported = OfficeStreamingExtractor.forEachWindow(document(path), Integer.MAX_VALUE / 2,
+                    window -> splitter.split(Document.from(window)).forEach(s -> streamed.add(s.text())));
+
+            List<String> dom;
+            try (InputStream in = Files.newInputStream(path)) {
+                dom = splitter.split(new ApachePoiDocumentParser().parse(in)).stream().map(TextSegment::text)
+                        .toList();
+            }
+            assertThat(supported).isTrue();
+            assertThat(streamed.stream().map(OfficeStreamingExtractorTest::collapse).toList())
+                    .isEqualTo(dom.stream().map(OfficeStreamingExtractorTest::collapse).toList());
+        }
+    }
+
+    @Test
+    void windowsShouldOnlyBreakBetweenBlocks() throws Exception {
+        Path path = writeDocx(dir.resolve("windows.docx"), 300);
+        List<String> windows = new ArrayList<>();
+
+        OfficeStreamingExtractor.forEachWindow(document(path), 2048, windows::add);
+
+        assertThat(windows).hasSizeGreaterThan(5).allMatch(window -> window.endsWith("\n"));
+        assertThat(String.join("", windows)).isEqualTo(streamText(path));
+    }
+
+    @Test
+    void oversizedSharedStringsShouldBeRejected() throws Exception {
+        Path path = writeXlsx(dir.resolve("big.xlsx"), 2000);
+
+        assertThatThrownBy(() -> OfficeStreamingExtractor.forEachBlock(new SpooledDocument(path, 16 * 1024, false),
+                block -> {
+                })).isInstanceOf(BusinessException.class).hasMessageContaining("内存上限");
+    }
+
+    @Test
+    void legacyFormatsShouldBeLeftToDomParser() throws Exception {
+        Path path = dir.resolve("legacy.xls");
+        try (Workbook workbook = new HSSFWorkbook(); OutputStream out = Files.newOutputStream(path)) {
+            workbook.createSheet("旧格式").createRow(0).createCell(0).setCellValue("内容");
+            workbook.write(out);
+        }
+        List<String> blocks = new ArrayList<>();
+
+        assertThat(OfficeStreamingExtractor.forEachBlock(document(path), blocks::add)).isFalse();
+        assertThat(blocks).isEmpty();
+    }
+
+    private String streamText(Path path) throws Exception {
+        StringBuilder text = new StringBuilder();
+        assertThat(OfficeStreamingExtractor.forEachBlock(document(path), block -> text.append(block).append('\n')))
+                .isTrue();
+        return text.toString();
+    }
+
+    private static SpooledDocument document(Path path) {
+        return new SpooledDocument(path, MAX_MEMORY, false);
+    }
+
+    /** 生成包含标题、带制表符和换行的段落、空段落和表格的Word文档 */
+    private static Path writeDocx(Path path, int paragraphs) throws Exception {
+        try (XWPFDocument doc = new XWPFDocument(); OutputStream out = Files.newOutputStream(path)) {
+            doc.createParagraph().createRun().setText("年度经营报告");
+            XWPFRun run = doc.createParagraph().createRun();
+            run.setText("第一段");
+            run.addTab();
+            run.setText("制表符后的文字");
+            run.addBreak();
+            run.setText("换行后的文字");
+            doc.createParagraph();
+
+            XWPFTable table = doc.createTable(3, 3);
+            String[][] cells = {{"季度", "收入", "同比"}, {"Q1", "1,200万", "12%"}, {"Q2", "1,350万", "15%"}};
+            for (int r = 0; r < cells.length; r++) {
+                for (int c = 0; c < cells[r].length; c++) {
+                    table.getRow(r).getCell(c).setText(cells[r][c]);
+                }
+            }
+
+            for (int i = 0; i < paragraphs; i++) {
+                XWPFParagraph paragraph = doc.createParagraph();
+                paragraph.createRun().setText("第" + i + "节讨论了业务的进展情况。The revenue grew steadily in section " + i
+                        + ". 各部门的协作效率持续提升，客户满意度保持在较高水平。");
+            }
+            doc.write(out);
+        }
+        return path;
+    }
+
+    /** 生成包含文本、数字格式、日期、布尔值的两张工作表 */
+    private static Path writeXlsx(Path path, int rows) throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(path)) {
+            CellStyle money = workbook.createCellStyle();
+            money.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+            CellStyle date = workbook.createCellStyle();
+            date.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+
+            Sheet detail = workbook.createSheet("销售明细");
+            Row header = detail.createRow(0);
+            String[] titles = {"订单号", "客户", "金额", "日期", "已结清"};
+            for (int c = 0; c < titles.length; c++) {
+                header.createCell(c).setCellValue(titles[c]);
+            }
+            for (int r = 1; r <= rows; r++) {
+                Row row = detail.createRow(r);
+                row.createCell(0).setCellValue("SO-" + (10000 + r));
+                row.createCell(1).setCellValue("客户" + (r % 37) + "，所在城市为第" + (r % 11) + "号区域。");
+                row.createCell(2).setCellValue(r * 123.456);
+                row.getCell(2).setCellStyle(money);
+                row.createCell(3).setCellValue(LocalDate.of(2025, 1, 1).plusDays(r));
+                row.getCell(3).setCellStyle(date);
+                row.createCell(4).setCellValue(r % 3 == 0);
+            }
+
+            Sheet summary = workbook.createSheet("汇总");
+            summary.createRow(0).createCell(0).setCellValue("订单总数");
+            summary.getRow(0).createCell(1).setCellValue(rows);
+            workbook.write(out);
+        }
+        return path;
+    }
+
+    /** 去掉每行首尾空白和空行，DOM提取器在表格后额外输出的空行不计入差异 */
+    private static String normalize(String text) {
+        return text.lines().map(String::strip).filter(line -> !line.isEmpty()).collect(Collectors.joining("\n"));
+    }
+
+    private static String collapse(String text) {
+        return text.replaceAll("\\s+", " ").strip();
+    }
+}
@@ -0,0 +1,28 @@
+package org.xhy.infrastructure.rag.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 文本窗口读取测试 验证没有换行和标点的长文本在窗口末尾截断时不拆开代理对 */
+class TextWindowReaderTest {
+
+    @Test
+    void windowShouldNotEndOnHighSurrogate() throws Exception {
+        // 首个窗口的第1024个字符恰好是表情符号的高位代理
+        String text = "a".repeat(1023) + "😀".repeat(600);
+        List<String> windows = new ArrayList<>();
+        TextWindowReader.forEachWindow(new StringReader(text), 1024, windows::add);
+
+        assertThat(windows).hasSizeGreaterThan(1);
+        assertThat(String.join("", windows)).isEqualTo(text);
+        for (String window : windows) {
+            assertThat(Character.isHighSurrogate(window.charAt(window.length() - 1))).isFalse();
+            assertThat(Character.isLowSurrogate(window.charAt(0))).isFalse();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.xhy.infrastructure.rag.fusion;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xhy.domain.rag.model.VectorStoreResult;
+import org.xhy.domain.rag.model.enums.FusionStrategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/** Top-K融合算子基准测试 对比HashMap全量排序的RRF与堆选择融合在不同候选池规模下的耗时，直接运行main方法即可 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopKFusionBenchmark {
+
+    /** 每路检索的候选数量 */
+    @Param({"30", "200", "1000"})
+    private int poolSize;
+
+    @Param({"15"})
+    private int topK;
+
+    private List<VectorStoreResult> vector;
+
+    private List<VectorStoreResult> keyword;
+
+    private final TopKFusion rrf = new TopKFusion(FusionStrategy.RRF, 60, 1.0, 1.0);
+
+    private final TopKFusion dbsf = new TopKFusion(FusionStrategy.DBSF, 60, 1.0, 1.0);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(7);
+        vector = new ArrayList<>(poolSize);
+        keyword = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            vector.add(result("doc-" + random.nextInt(poolSize * 3 / 2), 1.0 - (double) i / poolSize));
+            keyword.add(result("doc-" + random.nextInt(poolSize * 3 / 2), 30.0 - 20.0 * i / poolSize));
+        }
+    }
+
+    @Benchmark
+    public List<VectorStoreResult> fullSortRrf() {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, VectorStoreResult> documents = new HashMap<>();
+        for (int i = 0; i < vector.size(); i++) {
+            scores.merge(vector.get(i).getDocumentId(), 1.0 / (60 + i + 1), Double::sum);
+            documents.putIfAbsent(vector.get(i).getDocumentId(), vector.get(i));
+        }
+        for (int i = 0; i < keyword.size(); i++) {
+            scores.merge(keyword.get(i).getDocumentId(), 1.0 / (60 + i + 1), Double::sum);
+            documents.putIfAbsent(keyword.get(i).getDocumentId(), keyword.get(i));
+        }
+        return scores.entrySet().stream().sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(topK).map(entry -> documents.get(entry.getKey())).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<VectorStoreResult> heapRrf() {
+        return rrf.fuse(vector, keyword, topK);
+    }
+
+    @Benchmark
+    public List<VectorStoreResult> heapDbsf() {
+        return dbsf.fuse(vector, keyword, topK);
+    }
+
+    private static VectorStoreResult result(String documentId, double score) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("DOCUMENT_ID", documentId);
+        VectorStoreResult result = new VectorStoreResult();
+        result.setMetadata(metadata);
+        result.setScore(score);
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(TopKFusionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package org.xhy.infrastructure.rag.fusion;
+
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.rag.model.VectorStoreResult;
+import org.xhy.domain.rag.model.enums.FusionStrategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/** Top-K融合算子黄金结果测试 固定输入下各融合策略的排序结果，以及堆选择与全量排序的一致性 */
+class TopKFusionTest {
+
+    @Test
+    void rrfShouldMatchGoldenScores() {
+        List<VectorStoreResult> fused = new TopKFusion(FusionStrategy.RRF, 60, 3.0, 3.0).fuse(vector(), keyword(), 3);
+
+        assertThat(ids(fused)).containsExactly("B", "A", "D");
+        assertThat(fused.get(0).getScore()).isCloseTo(1.0 / 62 + 1.0 / 61, within(1e-12));
+        assertThat(fused.get(1).getScore()).isCloseTo(1.0 / 61 + 1.0 / 63, within(1e-12));
+        assertThat(fused.get(2).getScore()).isCloseTo(1.0 / 62, within(1e-12));
+    }
+
+    @Test
+    void weightedRrfShouldFavourVectorRetriever() {
+        List<VectorStoreResult> fused = new TopKFusion(FusionStrategy.WEIGHTED_RRF, 60, 2.0, 1.0).fuse(vector(),
+                keyword(), 4);
+
+        assertThat(ids(fused)).containsExactly("A", "B", "C", "D");
+    }
+
+    @Test
+    void normalizedStrategiesShouldMatchGoldenOrder() {
+        assertThat(ids(new TopKFusion(FusionStrategy.MIN_MAX, 60, 1.0, 1.0).fuse(vector(), keyword(), 4)))
+                .containsExactly("B", "A", "D", "C");
+        assertThat(ids(new TopKFusion(FusionStrategy.Z_SCORE, 60, 1.0, 1.0).fuse(vector(), keyword(), 4)))
+                .containsExactly("B", "D", "A", "C");
+        assertThat(ids(new TopKFusion(FusionStrategy.DBSF, 60, 1.0, 1.0).fuse(vector(), keyword(), 4)))
+                .containsExactly("B", "A", "D", "C");
+    }
+
+    @Test
+    void tiesShouldKeepFirstSeenOrder() {
+        List<VectorStoreResult> fused = new TopKFusion(FusionStrategy.RRF, 60, 1.0, 1.0)
+                .fuse(List.of(result("X", 0.9)), List.of(result("Y", 5.0)), 2);
+
+        assertThat(ids(fused)).containsExactly("X", "Y");
+    }
+
+    @Test
+    void heapSelectionShouldMatchFullSortOnLargePools() {
+        Random random = new Random(42);
+        List<VectorStoreResult> vector = new ArrayList<>();
+        List<VectorStoreResult> keyword = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            vector.add(result("doc-" + random.nextInt(300), 1.0 - i * 0.004));
+            keyword.add(result("doc-" + random.nextInt(300), 40.0 - i * 0.15));
+        }
+
+        List<String> actual = ids(new TopKFusion(FusionStrategy.WEIGHTED_RRF, 60, 1.5, 1.0).fuse(copy(vector),
+                copy(keyword), 20));
+
+        assertThat(actual).containsExactlyElementsOf(referenceRrf(vector, keyword, 1.5, 1.0, 20));
+    }
+
+    /** 参考实现：HashMap累加全部候选分数后整体排序取前K个，与融合算子改造前的做法一致 */
+    private List<String> referenceRrf(List<VectorStoreResult> vector, List<VectorStoreResult> keyword,
+            double vectorWeight, double keywordWeight, int topK) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (int i = 0; i < vector.size(); i++) {
+            scores.merge(vector.get(i).getDocumentId(), vectorWeight / (60 + i + 1), Double::sum);
+        }
+        for (int i = 0; i < keyword.size(); i++) {
+            scores.merge(keyword.get(i).getDocumentId(), keywordWeight / (60 + i + 1), Double::sum);
+        }
+        return scores.entrySet().stream().sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(topK).map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    private static List<VectorStoreResult> vector() {
+        return List.of(result("A", 0.9), result("B", 0.8), result("C", 0.5));
+    }
+
+    private static List<VectorStoreResult> keyword() {
+        return List.of(result("B", 12.0), result("D", 8.0), result("A", 2.0));
+    }
+
+    private static List<VectorStoreResult> copy(List<VectorStoreResult> results) {
+        return results.stream().map(r -> result(r.getDocumentId(), r.getScore())).collect(Collectors.toList());
+    }
+
+    private static VectorStoreResult result(String documentId, double score) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("DOCUMENT_ID", documentId);
+        VectorStoreResult result = new VectorStoreResult();
+        result.setMetadata(metadata);
+        result.setScore(score);
+        return result;
+    }
+
+    private static List<String> ids(List<VectorStoreResult> results) {
+        return results.stream().map(VectorStoreResult::getDocumentId).collect(Collectors.toList());
+    }
+}
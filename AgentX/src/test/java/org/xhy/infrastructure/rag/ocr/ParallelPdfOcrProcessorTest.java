@@ -0,0 +1,282 @@
+package org.xhy.infrastructure.rag.ocr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xhy.infrastructure.rag.config.RagOcrProperties;
+import org.xhy.infrastructure.rag.file.SpooledDocument;
+import org.xhy.infrastructure.rag.stub.StubModelServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** PDF并行提取测试 每页宽度不同，桩服务以宽度作为识别结果，用于校验按页重组、并发上限、失败重试、文本层优先、重新处理时沿用未变化页面以及任务之间互不阻塞 */
+class ParallelPdfOcrProcessorTest {
+
+    private static final int PAGES = 12;
+
+    @TempDir
+    Path tempDir;
+
+    /** 首次请求返回500的图片宽度 */
+    private final Set<Integer> failOnceWidths = ConcurrentHashMap.newKeySet();
+
+    private StubModelServer stubServer;
+    private RagOcrProperties properties;
+    private ParallelPdfOcrProcessor processor;
+    private ChatModel ocrModel;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stubServer = new StubModelServer("/v1/chat/completions", this::recognize);
+        properties = new RagOcrProperties();
+        properties.setRenderThreads(2);
+        properties.setMaxConcurrentRequests(3);
+        properties.setMaxRetries(2);
+        properties.setInitialBackoffMillis(10);
+        processor = new ParallelPdfOcrProcessor(properties);
+        ocrModel = OpenAiChatModel.builder().baseUrl(stubServer.baseUrl()).apiKey("stub").modelName("stub-vision")
+                .maxRetries(0).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.shutdown();
+        stubServer.close();
+    }
+
+    @Test
+    void shouldOcrAllPagesInOrderWithinConcurrencyLimit() throws Exception {
+        stubServer.setDelayMillis(100);
+        List<Integer> progress = new ArrayList<>();
+
+        Map<Integer, String> result = processor.process(pdf(PAGES), PAGES, ocrModel, stubServer.baseUrl(),
+                progress::add).getTexts();
+
+        assertThat(result.keySet()).containsExactlyElementsOf(range(PAGES));
+        for (int page = 0; page < PAGES; page++) {
+            assertThat(result.get(page)).isEqualTo("width-" + expectedWidth(page));
+        }
+        assertThat(stubServer.peakInFlight()).isGreaterThan(1).isLessThanOrEqualTo(3);
+        assertThat(progress).containsExactlyElementsOf(range(PAGES).stream().map(i -> i + 1).toList());
+    }
+
+    @Test
+    void shouldRetryFailedPages() throws Exception {
+        failOnceWidths.add(expectedWidth(4));
+
+        Map<Integer, String> result = processor.process(pdf(6), 6, ocrModel, stubServer.baseUrl(), done -> {
+        }).getTexts();
+
+        assertThat(result).hasSize(6).containsEntry(4, "width-" + expectedWidth(4));
+        assertThat(stubServer.requests()).isEqualTo(7);
+    }
+
+    @Test
+    void shouldSkipPageAfterRetriesExhausted() throws Exception {
+        properties.setMaxRetries(0);
+        failOnceWidths.add(expectedWidth(2));
+
+        Map<Integer, String> result = processor.process(pdf(4), 4, ocrModel, stubServer.baseUrl(), done -> {
+        }).getTexts();
+
+        assertThat(result.keySet()).containsExactly(0, 1, 3);
+    }
+
+    @Test
+    void shouldUseTextLayerAndOnlyOcrScannedPages() throws Exception {
+        List<Integer> progress = new ArrayList<>();
+
+        PdfExtractionResult result = processor.process(pdf(6, 1, 4), 6, ocrModel, stubServer.baseUrl(),
+                progress::add);
+
+        assertThat(result.getTexts()).hasSize(6);
+        assertThat(result.getTexts().get(1)).contains("born digital page 1");
+        assertThat(result.getTexts().get(4)).contains("born digital page 4");
+        assertThat(result.getTexts().get(0)).isEqualTo("width-" + expectedWidth(0));
+        assertThat(stubServer.requests()).isEqualTo(4);
+        assertThat(result.getTextLayerPageCount()).isEqualTo(2);
+        assertThat(result.getOcrPageCount()).isEqualTo(4);
+        assertThat(result.getPageStats()).extracting(PageExtractionStat::getMode).containsExactly(
+                PageExtractionStat.Mode.OCR, PageExtractionStat.Mode.TEXT_LAYER, PageExtractionStat.Mode.OCR,
+                PageExtractionStat.Mode.OCR, PageExtractionStat.Mode.TEXT_LAYER, PageExtractionStat.Mode.OCR);
+        assertThat(progress).hasSize(6);
+    }
+
+    @Test
+    void shouldStillUseTextLayerWithoutOcrModel() throws Exception {
+        PdfExtractionResult result = processor.process(pdf(4, 1), 4, null, null, done -> {
+        });
+
+        assertThat(result.getTexts()).containsOnlyKeys(1);
+        assertThat(result.getTexts().get(1)).contains("born digital page 1");
+        assertThat(stubServer.requests()).isZero();
+        assertThat(result.getPageStats()).extracting(PageExtractionStat::getMode).containsExactly(
+                PageExtractionStat.Mode.SKIPPED, PageExtractionStat.Mode.TEXT_LAYER, PageExtractionStat.Mode.SKIPPED,
+                PageExtractionStat.Mode.SKIPPED);
+    }
+
+    @Test
+    void shouldOcrEveryPageWhenTextLayerDisabled() throws Exception {
+        properties.setTextLayerEnabled(false);
+
+        PdfExtractionResult result = processor.process(pdf(3, 1), 3, ocrModel, stubServer.baseUrl(), done -> {
+        });
+
+        assertThat(result.getTexts().get(1)).isEqualTo("width-" + expectedWidth(1));
+        assertThat(result.getTextLayerPageCount()).isZero();
+        assertThat(stubServer.requests()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldOnlyOcrChangedPagesOnRerun() throws Exception {
+        PdfExtractionResult first = processor.process(blankPdf("v1", 200, 224, 248, 272, 296, 320), 6, ocrModel,
+                stubServer.baseUrl(), done -> {
+                });
+        Map<String, String> previous = new HashMap<>();
+        first.getPageFingerprints().forEach((page, fingerprint) -> previous.put(fingerprint, first.getTexts().get(page)));
+        int firstRequests = stubServer.requests();
+
+        // 新版本替换了第3页并在末尾追加一页
+        PdfExtractionResult second = processor.process(blankPdf("v2", 200, 224, 500, 272, 296, 320, 344), 7,
+                ocrModel, stubServer.baseUrl(), previous::get, done -> {
+                });
+
+        assertThat(firstRequests).isEqualTo(6);
+        assertThat(stubServer.requests() - firstRequests).isEqualTo(2);
+        assertThat(second.getReusedPageCount()).isEqualTo(5);
+        assertThat(second.getOcrPageCount()).isEqualTo(2);
+        assertThat(second.getTexts()).hasSize(7);
+        assertThat(second.getTexts().get(2)).isEqualTo("width-" + (int) (500 * 150 / 72f));
+        assertThat(second.getTexts().get(6)).isEqualTo("width-" + (int) (344 * 150 / 72f));
+        assertThat(second.getTexts().get(3)).isEqualTo(first.getTexts().get(3));
+        assertThat(second.getPageFingerprints().get(0)).isEqualTo(first.getPageFingerprints().get(0));
+        assertThat(second.getPageFingerprints().get(2)).isNotEqualTo(first.getPageFingerprints().get(2));
+    }
+
+    @Test
+    void jobWaitingForProviderPermitsShouldNotBlockOtherJobs() throws Exception {
+        properties.setMaxConcurrentRequests(1);
+        stubServer.setDelayMillis(500);
+        SpooledDocument scanned = pdf(6);
+        SpooledDocument bornDigital = pdf(3, 0, 1, 2);
+
+        // 第一个任务的渲染线程都在等待慢服务商的许可
+        CompletableFuture<PdfExtractionResult> slowJob = CompletableFuture
+                .supplyAsync(() -> processor.process(scanned, 6, ocrModel, "slow-provider", done -> {
+                }));
+        while (stubServer.requests() == 0) {
+            Thread.sleep(10);
+        }
+
+        PdfExtractionResult fastJob = processor.process(bornDigital, 3, ocrModel, "other-provider", done -> {
+        });
+
+        // 共用渲染线程时，要等慢任务某个渲染线程提交完自己的全部页面才轮到第二个任务
+        assertThat(fastJob.getTextLayerPageCount()).isEqualTo(3);
+        assertThat(stubServer.requests()).isLessThan(3);
+        assertThat(slowJob.get().getOcrPageCount()).isEqualTo(6);
+    }
+
+    /** 兼容OpenAI chat/completions接口：返回图片宽度作为识别文本，便于校验按页重组 */
+    private JsonNode recognize(JsonNode request) throws IOException {
+        int width = imageWidth(request);
+        if (failOnceWidths.remove(width)) {
+            throw new StubModelServer.StubFailure(500, "stub failure");
+        }
+        return StubModelServer.chatCompletion("stub-vision", "width-" + width);
+    }
+
+    /** 从请求的data URL中解码图片并返回宽度 */
+    private static int imageWidth(JsonNode request) throws IOException {
+        for (JsonNode message : request.path("messages")) {
+            for (JsonNode content : message.path("content")) {
+                String url = content.path("image_url").path("url").asText("");
+                if (url.startsWith("data:")) {
+                    byte[] bytes = Base64.getDecoder().decode(url.substring(url.indexOf(',') + 1));
+                    BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+                    return image.getWidth();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** 生成指定各页宽度的空白PDF */
+    private SpooledDocument blankPdf(String name, int... widths) throws Exception {
+        Path path = tempDir.resolve(name + ".pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (int width : widths) {
+                document.addPage(new PDPage(new PDRectangle(width, 200)));
+            }
+            document.save(path.toFile());
+        }
+        return new SpooledDocument(path, 16L * 1024 * 1024, false);
+    }
+
+    /** 生成每页宽度不同的PDF，第i页宽度为 200 + 24*i 磅，textPages中的页面带有文本层 */
+    private SpooledDocument pdf(int pages, int... textPages) throws Exception {
+        Path path = tempDir.resolve("test-" + pages + "-" + Arrays.toString(textPages) + ".pdf");
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int i = 0; i < pages; i++) {
+                PDPage page = new PDPage(new PDRectangle(200 + 24 * i, 200));
+                document.addPage(page);
+                int pageNumber = i;
+                if (Arrays.stream(textPages).noneMatch(textPage -> textPage == pageNumber)) {
+                    continue;
+                }
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 8);
+                    content.setLeading(10);
+                    content.newLineAtOffset(10, 180);
+                    for (int line = 0; line < 6; line++) {
+                        content.showText("born digital page " + i + " line " + line);
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(path.toFile());
+        }
+        return new SpooledDocument(path, 16L * 1024 * 1024, false);
+    }
+
+    /** 150DPI渲染后的像素宽度 */
+    private static int expectedWidth(int page) {
+        return (int) ((200 + 24 * page) * 150 / 72f);
+    }
+
+    private static List<Integer> range(int n) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+}
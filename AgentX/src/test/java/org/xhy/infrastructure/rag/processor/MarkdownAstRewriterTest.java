@@ -0,0 +1,140 @@
+package org.xhy.infrastructure.rag.processor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.rag.strategy.context.ProcessingContext;
+import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
+import org.xhy.infrastructure.rag.config.RagTranslationProperties;
+import org.xhy.infrastructure.rag.stub.StubModelServer;
+import org.xhy.infrastructure.rag.translator.CodeTranslator;
+import org.xhy.infrastructure.rag.translator.FormulaTranslator;
+import org.xhy.infrastructure.rag.translator.ImageTranslator;
+import org.xhy.infrastructure.rag.translator.NodeTranslationMetrics;
+import org.xhy.infrastructure.rag.translator.NodeTranslatorService;
+import org.xhy.infrastructure.rag.translator.TableTranslator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Markdown AST 重写测试 使用本地桩模型验证特殊节点并发翻译后按文档顺序拼回、相同节点去重以及跨文档的翻译缓存 */
+class MarkdownAstRewriterTest {
+
+    private static final int MAX_CONCURRENT = 4;
+
+    private static final long DELAY_MILLIS = 50;
+
+    private static final Pattern MARKER = Pattern.compile("[TCI]\\d+");
+
+    private StubModelServer server;
+
+    private NodeTranslatorService translatorService;
+
+    private MarkdownAstRewriter rewriter;
+
+    private ProcessingContext context;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubModelServer("/v1/chat/completions", MarkdownAstRewriterTest::describe);
+        server.setDelayMillis(DELAY_MILLIS);
+        RagTranslationProperties properties = new RagTranslationProperties();
+        properties.setMaxConcurrentRequests(MAX_CONCURRENT);
+        translatorService = new NodeTranslatorService(List.of(new CodeTranslator(), new TableTranslator(),
+                new ImageTranslator(), new FormulaTranslator()), properties);
+        rewriter = new MarkdownAstRewriter(translatorService);
+        ProviderConfig model = new ProviderConfig("stub", server.baseUrl(), "stub-chat", ProviderProtocol.OPENAI);
+        context = new ProcessingContext(null, model, model, "user-1", "file-1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        translatorService.shutdown();
+        server.close();
+    }
+
+    @Test
+    void translationsShouldBeSplicedBackInDocumentOrder() {
+        List<String> units = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            units.add(section(i));
+        }
+
+        long start = System.nanoTime();
+        List<String> translated = rewriter.translateSpecialNodes(units, context);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        for (int i = 0; i < 4; i++) {
+            String content = translated.get(i);
+            // 表格、代码、图片的描述都紧跟在各自原位置，段落顺序不变
+            assertThat(content).containsSubsequence("第" + i + "节", "| T" + i + " |", "表格分析：desc-T" + i,
+                    "中间段落" + i, "代码功能描述：desc-C" + i, "desc-I" + i, "结尾段落" + i);
+        }
+        // 每节3个特殊节点，串行至少需要 12 * 50ms
+        assertThat(server.requests()).isEqualTo(12);
+        assertThat(server.peakInFlight()).isGreaterThan(1).isLessThanOrEqualTo(MAX_CONCURRENT);
+        assertThat(elapsedMillis).isLessThan(12 * DELAY_MILLIS);
+    }
+
+    @Test
+    void identicalNodesShouldBeTranslatedOnce() {
+        String table = "| 名称 | 值 |\n|---|---|\n| T9 | 1 |\n";
+        List<String> units = List.of("# 第一节\n\n" + table + "\n说明一\n", "# 第二节\n\n" + table + "\n说明二\n",
+                "# 第三节\n\n" + table + "\n说明三\n");
+
+        List<String> translated = rewriter.translateSpecialNodes(units, context);
+
+        assertThat(server.requests()).isEqualTo(1);
+        assertThat(translated).allSatisfy(content -> assertThat(content).contains("表格分析：desc-T9"));
+        NodeTranslationMetrics tableMetrics = translatorService.getMetrics().get("table");
+        assertThat(tableMetrics.getNodes()).isEqualTo(3);
+        assertThat(tableMetrics.getCacheHits()).isEqualTo(2);
+        assertThat(tableMetrics.getCalls()).isEqualTo(1);
+    }
+
+    @Test
+    void reprocessingShouldReuseCachedTranslations() {
+        List<String> units = List.of(section(0), section(1));
+        List<String> first = rewriter.translateSpecialNodes(units, context);
+        int firstRequests = server.requests();
+
+        List<String> second = rewriter.translateSpecialNodes(units, context);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(server.requests()).isEqualTo(firstRequests);
+        Map<String, NodeTranslationMetrics> metrics = translatorService.getMetrics();
+        assertThat(metrics.get("code").getCacheHits()).isEqualTo(2);
+        assertThat(metrics.get("image").getCacheHitRatio()).isEqualTo(0.5);
+        assertThat(metrics.get("table").getAvgLatencyMillis()).isGreaterThanOrEqualTo(DELAY_MILLIS);
+    }
+
+    @Test
+    void changingModelShouldNotReuseCachedTranslations() {
+        rewriter.translateSpecialNodes(List.of(section(0)), context);
+        ProviderConfig other = new ProviderConfig("stub", server.baseUrl(), "other-chat", ProviderProtocol.OPENAI);
+
+        rewriter.translateSpecialNodes(List.of(section(0)), new ProcessingContext(null, other, other, "user-1",
+                "file-1"));
+
+        assertThat(server.requests()).isEqualTo(6);
+    }
+
+    private static String section(int i) {
+        return "# 第" + i + "节\n\n" + "| 名称 | 值 |\n|---|---|\n| T" + i + " | " + i + " |\n\n" + "中间段落" + i + "\n\n"
+                + "```java\nSystem.out.println(\"C" + i + "\");\n```\n\n" + "![图](http://img.local/I" + i + ".png)\n\n"
+                + "结尾段落" + i + "\n";
+    }
+
+    /** 兼容OpenAI chat/completions接口：从请求中找出节点标记并返回desc-标记 */
+    private static JsonNode describe(JsonNode request) {
+        Matcher matcher = MARKER.matcher(request.path("messages").toString());
+        return StubModelServer.chatCompletion("stub-chat", "desc-" + (matcher.find() ? matcher.group() : "none"));
+    }
+}
@@ -0,0 +1,66 @@
+package org.xhy.infrastructure.rag.processor;
+
+import com.vladsch.flexmark.util.ast.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xhy.domain.rag.model.ProcessedSegment;
+import org.xhy.infrastructure.rag.config.MarkdownProcessorProperties;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Markdown分段基准测试 对比构建文档树后递归分段与单遍流式分段在不同文档规模下的耗时，AST在准备阶段解析好，只计分段本身，直接运行main方法即可 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingMarkdownSplitterBenchmark {
+
+    /** 生成文档包含的块数，约三成为标题 */
+    @Param({"500", "5000", "50000"})
+    private int blocks;
+
+    private Node document;
+
+    private final MarkdownTextExtractor extractor = new MarkdownTextExtractor();
+
+    private final DocumentTreeBuilder treeBuilder = new DocumentTreeBuilder(extractor);
+
+    private final MarkdownProcessorProperties.SegmentSplit config = new MarkdownProcessorProperties.SegmentSplit();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        document = new MarkdownAstParser().parse(StreamingMarkdownSplitterTest.generate(new Random(7), blocks));
+    }
+
+    @Benchmark
+    public List<ProcessedSegment> treeSplit() {
+        return treeBuilder.buildRawDocumentTree(document, config).performHierarchicalSplit();
+    }
+
+    @Benchmark
+    public List<ProcessedSegment> streamingSplit() {
+        return new StreamingMarkdownSplitter(config, extractor::extractTextContent, extractor::extractRawContent)
+                .split(document);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(StreamingMarkdownSplitterBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
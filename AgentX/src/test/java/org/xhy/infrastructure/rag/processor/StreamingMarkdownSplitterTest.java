@@ -0,0 +1,131 @@
+package org.xhy.infrastructure.rag.processor;
+
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.rag.model.ProcessedSegment;
+import org.xhy.infrastructure.rag.config.MarkdownProcessorProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 流式分段黄金测试 以文档树递归分段的结果为基准，在真实讲义和随机生成的多种结构文档上校验流式分段输出完全一致 */
+class StreamingMarkdownSplitterTest {
+
+    /** 最大长度、最小长度、缓冲区 */
+    private static final int[][] CONFIGS = {{1800, 200, 100}, {600, 100, 50}, {300, 50, 20}, {150, 20, 10}};
+
+    private static final String[] WORDS = {"智能体", "知识库", "向量检索", "the agent", "calls a tool", "模型上下文协议",
+            "returns results", "工作流", "embedding", "分段策略"};
+
+    @Test
+    void realDocumentShouldMatchTreeSplit() throws Exception {
+        String markdown = Files.readString(Paths.get("src/test/java/org/xhy/infrastructure/rag/doc/AgentX 讲义.md"),
+                StandardCharsets.UTF_8);
+
+        for (int[] config : CONFIGS) {
+            assertSameSegments(markdown, config, true);
+            assertSameSegments(markdown, config, false);
+        }
+    }
+
+    @Test
+    void generatedDocumentsShouldMatchTreeSplit() {
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            String markdown = generate(random, 5 + random.nextInt(60));
+            int[] config = CONFIGS[i % CONFIGS.length];
+            assertSameSegments(markdown, config, true);
+            assertSameSegments(markdown, config, false);
+        }
+    }
+
+    @Test
+    void contentBeforeFirstHeadingShouldGoToVirtualRoot() {
+        String markdown = "前言内容。\n\n## 第一节\n\n正文。\n\n# 第二章\n\n结尾。";
+
+        List<ProcessedSegment> segments = processor(CONFIGS[0], true).processToSegments(markdown, null);
+
+        assertThat(segments).extracting(ProcessedSegment::getContent)
+                .containsExactly("# 文档内容\n\n前言内容。\n\n## 第一节\n\n正文。", "# 第二章\n\n结尾。");
+        assertSegmentsEqual(segments, processor(CONFIGS[0], false).processToSegments(markdown, null));
+    }
+
+    private static void assertSameSegments(String markdown, int[] config, boolean rawMode) {
+        StructuralMarkdownProcessor tree = processor(config, false);
+        StructuralMarkdownProcessor streaming = processor(config, true);
+        tree.setRawMode(rawMode);
+        streaming.setRawMode(rawMode);
+
+        assertSegmentsEqual(streaming.processToSegments(markdown, null), tree.processToSegments(markdown, null));
+    }
+
+    private static void assertSegmentsEqual(List<ProcessedSegment> actual, List<ProcessedSegment> expected) {
+        assertThat(actual).extracting(ProcessedSegment::getContent)
+                .containsExactlyElementsOf(expected.stream().map(ProcessedSegment::getContent).toList());
+        assertThat(actual).extracting(ProcessedSegment::getType)
+                .containsExactlyElementsOf(expected.stream().map(ProcessedSegment::getType).toList());
+        assertThat(actual).extracting(ProcessedSegment::getOrder)
+                .containsExactlyElementsOf(expected.stream().map(ProcessedSegment::getOrder).toList());
+    }
+
+    static StructuralMarkdownProcessor processor(int[] config, boolean streaming) {
+        MarkdownProcessorProperties properties = new MarkdownProcessorProperties();
+        MarkdownProcessorProperties.SegmentSplit split = new MarkdownProcessorProperties.SegmentSplit();
+        split.setMaxLength(config[0]);
+        split.setMinLength(config[1]);
+        split.setBufferSize(config[2]);
+        split.setStreaming(streaming);
+        properties.setSegmentSplit(split);
+        MarkdownTextExtractor extractor = new MarkdownTextExtractor();
+        return new StructuralMarkdownProcessor(new MarkdownAstParser(), extractor, new DocumentTreeBuilder(extractor),
+                properties);
+    }
+
+    /** 随机生成包含多级标题（含跳级和空节）、首个标题前的内容、长短段落、列表、代码块、表格和引用的文档 */
+    static String generate(Random random, int blocks) {
+        StringBuilder markdown = new StringBuilder();
+        if (random.nextBoolean()) {
+            markdown.append(paragraph(random, 1 + random.nextInt(3))).append("\n\n");
+        }
+        for (int b = 0; b < blocks; b++) {
+            int kind = random.nextInt(10);
+            if (kind < 3) {
+                markdown.append("#".repeat(1 + random.nextInt(4))).append(' ').append(WORDS[random.nextInt(WORDS.length)])
+                        .append(' ').append(b).append("\n\n");
+            } else if (kind < 6) {
+                markdown.append(paragraph(random, 1 + random.nextInt(6))).append("\n\n");
+            } else if (kind == 6) {
+                // 超过任一配置上限的长段落
+                markdown.append(paragraph(random, 40 + random.nextInt(40))).append("\n\n");
+            } else if (kind == 7) {
+                for (int i = 0; i < 2 + random.nextInt(4); i++) {
+                    markdown.append(i % 2 == 0 ? "- " : "1. ").append(paragraph(random, 1)).append('\n');
+                }
+                markdown.append('\n');
+            } else if (kind == 8) {
+                markdown.append("```java\nint x = ").append(b).append(";\n\nSystem.out.println(x);\n```\n\n");
+            } else if (random.nextBoolean()) {
+                markdown.append("| 列A | 列B |\n| --- | --- |\n| ").append(WORDS[random.nextInt(WORDS.length)])
+                        .append(" | ").append(b).append(" |\n\n");
+            } else {
+                markdown.append("> ").append(paragraph(random, 2)).append("\n\n");
+            }
+        }
+        return markdown.toString();
+    }
+
+    private static String paragraph(Random random, int sentences) {
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < sentences; s++) {
+            for (int w = 0; w < 3 + random.nextInt(8); w++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(5) == 0 ? "，" : " ");
+            }
+            text.append(random.nextBoolean() ? "。" : ". ");
+        }
+        return text.toString().trim();
+    }
+}
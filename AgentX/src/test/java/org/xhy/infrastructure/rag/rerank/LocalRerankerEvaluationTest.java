@@ -0,0 +1,96 @@
+package org.xhy.infrastructure.rag.rerank;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** 本地重排序器质量对比 在内置的小型问答集上比较RRF原始顺序与各本地重排序器的MRR，并输出各重排序器的单次打分延迟 */
+class LocalRerankerEvaluationTest {
+
+    /** 统计延迟前的预热轮数 */
+    private static final int WARMUP_ROUNDS = 20;
+
+    /** 统计延迟的轮数，每轮对问答集中每个问题打分一次 */
+    private static final int MEASURED_ROUNDS = 50;
+
+    private static List<QaCase> qaSet;
+
+    @BeforeAll
+    static void loadQaSet() throws Exception {
+        try (InputStream in = LocalRerankerEvaluationTest.class.getResourceAsStream("/rerank/qa-set.json")) {
+            qaSet = new ObjectMapper().readValue(in, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Test
+    void localRerankersShouldBeatFusionOrder() {
+        double baseline = meanReciprocalRank(null);
+        System.out.printf("rerank quality: fusion order MRR=%.3f%n", baseline);
+
+        assertThat(evaluate("bm25", new Bm25LocalReranker())).isGreaterThan(baseline);
+        assertThat(evaluate("term-proximity", new TermProximityLocalReranker())).isGreaterThan(baseline);
+    }
+
+    /** 计算MRR并输出单次打分延迟的p50/p95，延迟受机器负载影响，只输出不断言 */
+    private double evaluate(String name, LocalReranker reranker) {
+        double mrr = meanReciprocalRank(reranker);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            qaSet.forEach(qa -> reranker.score(qa.query, qa.candidates));
+        }
+        long[] latencies = new long[MEASURED_ROUNDS * qaSet.size()];
+        int n = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            for (QaCase qa : qaSet) {
+                long start = System.nanoTime();
+                reranker.score(qa.query, qa.candidates);
+                latencies[n++] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(latencies);
+        System.out.printf("rerank quality: %s MRR=%.3f, latency p50=%.1fus p95=%.1fus%n", name, mrr,
+                percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.95) / 1e3);
+        return mrr;
+    }
+
+    /** 已排序样本的最近秩百分位数 */
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /** 相关候选排名倒数的平均值，reranker为null时按RRF原始顺序计算 */
+    private double meanReciprocalRank(LocalReranker reranker) {
+        double reciprocalRankSum = 0;
+        for (QaCase qa : qaSet) {
+            reciprocalRankSum += 1.0 / (rank(reranker, qa).indexOf(qa.relevant) + 1);
+        }
+        return reciprocalRankSum / qaSet.size();
+    }
+
+    private List<Integer> rank(LocalReranker reranker, QaCase qa) {
+        if (reranker == null) {
+            return IntStream.range(0, qa.candidates.size()).boxed().collect(Collectors.toList());
+        }
+        double[] scores = reranker.score(qa.query, qa.candidates);
+        return IntStream.range(0, scores.length).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> -scores[i])).collect(Collectors.toList());
+    }
+
+    static class QaCase {
+        public String query;
+        public List<String> candidates = new ArrayList<>();
+        public int relevant;
+    }
+}
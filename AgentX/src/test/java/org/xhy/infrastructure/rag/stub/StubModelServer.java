@@ -0,0 +1,160 @@
+package org.xhy.infrastructure.rag.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** 本地模型桩服务 在随机端口上模拟OpenAI兼容的模型接口（embeddings、chat/completions、rerank），由各测试提供请求体到响应体的处理逻辑；
+ * 统一记录请求数和峰值并发，支持每次请求固定延迟以模拟网络往返，以及让下一次请求返回500 */
+public class StubModelServer implements AutoCloseable {
+
+    /** 请求处理逻辑 */
+    @FunctionalInterface
+    public interface Handler {
+
+        /** 由请求体生成响应体，抛出StubFailure时返回对应的错误状态码 */
+        JsonNode handle(JsonNode request) throws IOException;
+    }
+
+    /** 处理逻辑抛出该异常时，桩服务返回指定状态码和错误信息 */
+    public static class StubFailure extends RuntimeException {
+
+        private final int status;
+
+        public StubFailure(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+
+    private final String path;
+
+    private final Handler handler;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private final AtomicBoolean failNext = new AtomicBoolean();
+
+    private volatile long delayMillis;
+
+    /** @param path 接口路径，如 /v1/embeddings
+     * @param handler 请求处理逻辑，会被多个请求线程并发调用 */
+    public StubModelServer(String path, Handler handler) throws IOException {
+        this.path = path;
+        this.handler = handler;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(path, this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /** OpenAI兼容客户端使用的baseUrl */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    /** 接口完整地址 */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    public int peakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /** 下一次请求返回500 */
+    public void failNext() {
+        failNext.set(true);
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /** 创建空的JSON对象，供处理逻辑构造响应 */
+    public static ObjectNode json() {
+        return OBJECT_MAPPER.createObjectNode();
+    }
+
+    /** 构造只有一个回答的chat/completions响应 */
+    public static ObjectNode chatCompletion(String model, String content) {
+        ObjectNode response = json();
+        response.put("id", "stub").put("object", "chat.completion").put("created", 0).put("model", model);
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0).put("finish_reason", "stop");
+        choice.putObject("message").put("role", "assistant").put("content", content);
+        response.putObject("usage").put("prompt_tokens", 1).put("completion_tokens", 1).put("total_tokens", 2);
+        return response;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(current, Math::max);
+        requests.incrementAndGet();
+        try {
+            JsonNode request = OBJECT_MAPPER.readTree(exchange.getRequestBody());
+            int status = 200;
+            JsonNode body;
+            if (failNext.compareAndSet(true, false)) {
+                status = 500;
+                body = error("stub failure");
+            } else {
+                try {
+                    body = handler.handle(request);
+                } catch (StubFailure e) {
+                    status = e.status;
+                    body = error(e.getMessage());
+                }
+            }
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            write(exchange, status, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static ObjectNode error(String message) {
+        ObjectNode body = json();
+        body.putObject("error").put("message", message);
+        return body;
+    }
+
+    private static void write(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = OBJECT_MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
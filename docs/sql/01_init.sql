@@ -162,8 +162,12 @@ create table public.ai_rag_qa_dataset (
                                           user_id character varying(64),
                                           created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
                                           updated_at timestamp without time zone not null default CURRENT_TIMESTAMP,
-                                          deleted_at timestamp without time zone
+                                          deleted_at timestamp without time zone,
+                                          ingest_generation bigint not null default 0, -- 入库代次，数据集内容变化时递增，用于检索结果缓存失效
+                                          fusion_strategy character varying(32) -- 混合检索融合策略，为空时使用全局默认策略
 );
+comment on column public.ai_rag_qa_dataset.ingest_generation is '入库代次，数据集内容变化时递增，用于检索结果缓存失效';
+comment on column public.ai_rag_qa_dataset.fusion_strategy is '混合检索融合策略：RRF/WEIGHTED_RRF/MIN_MAX/Z_SCORE/DBSF，为空时使用全局默认策略';
 
 create table public.api_keys (
                                  id character varying(36) primary key not null, -- API Key ID
@@ -309,8 +313,11 @@ create table public.document_unit (
                                       created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
                                       updated_at timestamp without time zone not null default CURRENT_TIMESTAMP,
                                       deleted_at timestamp without time zone,
-                                      is_ocr boolean
+                                      is_ocr boolean,
+                                      source_hash character varying(64), -- 源页面指纹
+                                      content_hash character varying(64) -- 提取内容指纹
 );
+create index idx_document_unit_file_id on document_unit using btree (file_id, id);
 comment on table public.document_unit is '文档单元表';
 comment on column public.document_unit.id is '文件id';
 comment on column public.document_unit.file_id is '文档ID';
@@ -318,6 +325,141 @@ comment on column public.document_unit.page is '页码';
 comment on column public.document_unit.content is '当前页内容';
 comment on column public.document_unit.flag is '标记';
 comment on column public.document_unit.is_vector is '是否进行了向量化';
+comment on column public.document_unit.source_hash is '源页面指纹（PDF为页面内容流与图片资源的哈希，文本类文件与内容指纹相同）';
+comment on column public.document_unit.content_hash is '提取内容指纹，内容不变的段落沿用已有向量';
+
+create table public.embedding_cache (
+                                        id character varying(64) primary key not null, -- 嵌入模型标识与规范化文本的SHA-256
+                                        model_key character varying(512) not null, -- 嵌入模型标识（服务地址|模型名）
+                                        dimension integer not null, -- 向量维度
+                                        vector bytea not null, -- 小端序float32向量
+                                        created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
+                                        last_used_at timestamp without time zone not null default CURRENT_TIMESTAMP -- 最近一次写入或命中的时间
+);
+create index idx_embedding_cache_model_key on embedding_cache using btree (model_key);
+create index idx_embedding_cache_last_used_at on embedding_cache using btree (last_used_at);
+comment on table public.embedding_cache is '嵌入向量内容寻址缓存表';
+comment on column public.embedding_cache.id is '嵌入模型标识与规范化文本的SHA-256';
+comment on column public.embedding_cache.model_key is '嵌入模型标识（服务地址|模型名）';
+comment on column public.embedding_cache.dimension is '向量维度';
+comment on column public.embedding_cache.vector is '小端序float32向量';
+comment on column public.embedding_cache.last_used_at is '最近一次写入或命中的时间，用于淘汰长期未使用的条目';
+
+create table public.rag_dead_letter (
+                                        id character varying(36) primary key not null,
+                                        source_queue character varying(255), -- 原队列
+                                        source_exchange character varying(255), -- 原交换机
+                                        source_routing_key character varying(255), -- 原路由键
+                                        file_id character varying(36), -- 文件ID
+                                        trace_id character varying(64), -- 链路追踪ID
+                                        payload text, -- 原始消息体
+                                        error_message text, -- 最后一次失败原因
+                                        retry_count integer default 0, -- 已重试次数
+                                        status integer default 0, -- 状态：0-待处理，1-已重放
+                                        replayed_at timestamp without time zone, -- 重放时间
+                                        created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
+                                        updated_at timestamp without time zone not null default CURRENT_TIMESTAMP,
+                                        deleted_at timestamp without time zone
+);
+create index idx_rag_dead_letter_status on rag_dead_letter using btree (status);
+create index idx_rag_dead_letter_file_id on rag_dead_letter using btree (file_id);
+comment on table public.rag_dead_letter is 'RAG入库死信消息表';
+comment on column public.rag_dead_letter.source_queue is '原队列';
+comment on column public.rag_dead_letter.source_exchange is '原交换机';
+comment on column public.rag_dead_letter.source_routing_key is '原路由键';
+comment on column public.rag_dead_letter.file_id is '文件ID';
+comment on column public.rag_dead_letter.trace_id is '链路追踪ID';
+comment on column public.rag_dead_letter.payload is '原始消息体';
+comment on column public.rag_dead_letter.error_message is '最后一次失败原因';
+comment on column public.rag_dead_letter.retry_count is '已重试次数';
+comment on column public.rag_dead_letter.status is '状态：0-待处理，1-已重放';
+comment on column public.rag_dead_letter.replayed_at is '重放时间';
+
+create table public.rag_ingestion_task (
+                                           id character varying(36) primary key not null,
+                                           user_id character varying(36) not null, -- 提交用户ID
+                                           file_id character varying(36) not null, -- 文件ID
+                                           trace_id character varying(64), -- 链路追踪ID
+                                           payload text not null, -- 预处理消息体
+                                           status integer not null default 0, -- 状态：0-排队中，1-处理中，2-已结束
+                                           dispatched_at timestamp without time zone, -- 放行时间
+                                           finished_at timestamp without time zone, -- 结束时间
+                                           created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
+                                           updated_at timestamp without time zone not null default CURRENT_TIMESTAMP,
+                                           deleted_at timestamp without time zone
+);
+create index idx_rag_ingestion_task_status_user on rag_ingestion_task using btree (status, user_id, created_at);
+create index idx_rag_ingestion_task_file_id on rag_ingestion_task using btree (file_id);
+create unique index idx_rag_ingestion_task_unique_pending_file on rag_ingestion_task using btree (file_id) WHERE ((status = 0) AND (deleted_at IS NULL));
+create index idx_rag_ingestion_task_dispatched_at on rag_ingestion_task using btree (dispatched_at);
+comment on table public.rag_ingestion_task is 'RAG入库排队任务表';
+comment on column public.rag_ingestion_task.user_id is '提交用户ID';
+comment on column public.rag_ingestion_task.file_id is '文件ID';
+comment on column public.rag_ingestion_task.trace_id is '链路追踪ID';
+comment on column public.rag_ingestion_task.payload is '预处理消息体';
+comment on column public.rag_ingestion_task.status is '状态：0-排队中，1-处理中，2-已结束';
+comment on column public.rag_ingestion_task.dispatched_at is '放行时间，与创建时间之差即排队等待时间';
+comment on column public.rag_ingestion_task.finished_at is '结束时间';
+
+create table public.rag_chunk (
+                                  id character varying(64) primary key not null, -- 内容的SHA-256，与document_unit.content_hash一致
+                                  content text not null, -- 分块内容
+                                  ref_count integer not null default 0, -- 引用该分块的集合成员数
+                                  created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
+                                  updated_at timestamp without time zone not null default CURRENT_TIMESTAMP
+);
+create index idx_rag_chunk_orphan on rag_chunk using btree (updated_at) WHERE (ref_count <= 0);
+comment on table public.rag_chunk is 'RAG内容寻址分块表，内容相同的文档单元在所有版本和安装间共享一行';
+comment on column public.rag_chunk.id is '内容的SHA-256，与document_unit.content_hash一致';
+comment on column public.rag_chunk.content is '分块内容';
+comment on column public.rag_chunk.ref_count is '引用该分块的集合成员数';
+
+create table public.rag_chunk_set (
+                                      id character varying(64) primary key not null, -- 按页码排序的（页码:分块ID）序列的SHA-256
+                                      document_count integer not null default 0, -- 成员数
+                                      ref_count integer not null default 0, -- 引用该集合的版本文件和用户文件数
+                                      sealed boolean not null default false, -- 成员是否已写入
+                                      created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
+                                      updated_at timestamp without time zone not null default CURRENT_TIMESTAMP
+);
+create index idx_rag_chunk_set_orphan on rag_chunk_set using btree (updated_at) WHERE (ref_count <= 0);
+comment on table public.rag_chunk_set is 'RAG分块集合表，一个文件在某一时刻的全部分块，按内容寻址且写入成员后不再变化';
+comment on column public.rag_chunk_set.id is '按页码排序的（页码:分块ID）序列的SHA-256';
+comment on column public.rag_chunk_set.document_count is '成员数';
+comment on column public.rag_chunk_set.ref_count is '引用该集合的版本文件和用户文件数';
+comment on column public.rag_chunk_set.sealed is '成员是否已写入';
+
+create table public.rag_chunk_set_member (
+                                             id character varying(36) primary key not null,
+                                             chunk_set_id character varying(64) not null, -- 分块集合ID
+                                             chunk_id character varying(64) not null, -- 分块ID
+                                             page integer, -- 页码
+                                             original_document_id character varying(64), -- 首次写入该集合时的原始文档单元ID（仅标识）
+                                             created_at timestamp without time zone not null default CURRENT_TIMESTAMP
+);
+create index idx_rag_chunk_set_member_set on rag_chunk_set_member using btree (chunk_set_id, page);
+create index idx_rag_chunk_set_member_chunk on rag_chunk_set_member using btree (chunk_id);
+comment on table public.rag_chunk_set_member is 'RAG分块集合成员表';
+comment on column public.rag_chunk_set_member.chunk_set_id is '分块集合ID';
+comment on column public.rag_chunk_set_member.chunk_id is '分块ID';
+comment on column public.rag_chunk_set_member.page is '页码';
+comment on column public.rag_chunk_set_member.original_document_id is '首次写入该集合时的原始文档单元ID（仅标识）';
+
+create table public.rag_chunk_vector (
+                                         id character varying(64) primary key not null, -- 分块ID、嵌入模型与向量文本的SHA-256
+                                         chunk_id character varying(64) not null, -- 分块ID
+                                         embedding_model character varying(255) not null, -- 生成向量的嵌入模型标识
+                                         text text, -- 向量对应的段落文本
+                                         embedding vector not null, -- 向量，取自发布时数据集的向量库
+                                         created_at timestamp without time zone not null default CURRENT_TIMESTAMP
+);
+create index idx_rag_chunk_vector_chunk_model on rag_chunk_vector using btree (chunk_id, embedding_model);
+comment on table public.rag_chunk_vector is 'RAG分块向量表，随分块共享和回收，版本检索只在版本引用的分块内计算距离';
+comment on column public.rag_chunk_vector.id is '分块ID、嵌入模型与向量文本的SHA-256';
+comment on column public.rag_chunk_vector.chunk_id is '分块ID';
+comment on column public.rag_chunk_vector.embedding_model is '生成向量的嵌入模型标识，检索只比较同一模型的向量';
+comment on column public.rag_chunk_vector.text is '向量对应的段落文本';
+comment on column public.rag_chunk_vector.embedding is '向量，取自发布时数据集的向量库';
 
 create table public.file_detail (
                                     id character varying(64) primary key not null, -- 文件id
@@ -358,6 +500,13 @@ create table public.file_detail (
                                     current_embedding_page_number integer default 0, -- 当前向量化处理页数
                                     ocr_process_progress numeric(5,2) default 0.00, -- OCR处理进度百分比
                                     embedding_process_progress numeric(5,2) default 0.00, -- 向量化处理进度百分比(0-100)
+                                    text_layer_page_count integer default 0, -- 直接使用PDF文本层的页数
+                                    ocr_page_count integer default 0, -- 经过OCR识别的页数
+                                    page_extraction_stats text, -- 每页提取方式及文本层质量统计
+                                    embedding_total_count integer default 0, -- 本轮向量化已分发的段落数
+                                    embedding_done_count integer default 0, -- 本轮向量化已处理完成的段落数
+                                    embedding_cache_hits integer default 0, -- 本轮向量化复用缓存向量的段落数
+                                    embedding_cache_misses integer default 0, -- 本轮向量化调用嵌入接口的段落数
                                     processing_status integer default 0 -- 文件处理状态：0-已上传，1-OCR处理中，2-OCR完成，3-向量化处理中，4-处理完成，5-OCR失败，6-向量化失败
 );
 create index idx_file_detail_current_page on file_detail using btree (current_page_number);
@@ -399,8 +548,25 @@ comment on column public.file_detail.current_ocr_page_number is '当前OCR处理
 comment on column public.file_detail.current_embedding_page_number is '当前向量化处理页数';
 comment on column public.file_detail.ocr_process_progress is 'OCR处理进度百分比';
 comment on column public.file_detail.embedding_process_progress is '向量化处理进度百分比(0-100)';
+comment on column public.file_detail.text_layer_page_count is '直接使用PDF文本层的页数，即节省的OCR调用次数';
+comment on column public.file_detail.ocr_page_count is '经过OCR识别的页数';
+comment on column public.file_detail.page_extraction_stats is '每页提取方式及文本层质量统计';
+comment on column public.file_detail.embedding_total_count is '本轮向量化已分发的段落数';
+comment on column public.file_detail.embedding_done_count is '本轮向量化已处理完成的段落数，由原子自增维护';
+comment on column public.file_detail.embedding_cache_hits is '本轮向量化复用缓存向量的段落数';
+comment on column public.file_detail.embedding_cache_misses is '本轮向量化调用嵌入接口的段落数';
 comment on column public.file_detail.processing_status is '文件处理状态：0-已上传，1-OCR处理中，2-OCR完成，3-向量化处理中，4-处理完成，5-OCR失败，6-向量化失败';
 
+create table public.file_embedding_segment (
+                                               file_id character varying(64) not null, -- 文件ID
+                                               segment_id character varying(128) not null, -- 向量化段落ID
+                                               created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
+                                               primary key (file_id, segment_id)
+);
+comment on table public.file_embedding_segment is '本轮向量化已计入完成数的段落，开始新一轮或完成向量化时清空';
+comment on column public.file_embedding_segment.file_id is '文件ID';
+comment on column public.file_embedding_segment.segment_id is '向量化段落ID';
+
 create table public.messages (
                                  id character varying(36) primary key not null, -- 消息唯一ID
                                  session_id character varying(36) not null, -- 所属会话ID
@@ -567,6 +733,8 @@ create table public.rag_version_documents (
                                               updated_at timestamp without time zone not null default CURRENT_TIMESTAMP, -- 更新时间
                                               deleted_at timestamp without time zone -- 删除时间（软删除）
 );
+create index idx_rag_version_documents_file_id on rag_version_documents using btree (rag_version_file_id, id);
+create index idx_rag_version_documents_version_id on rag_version_documents using btree (rag_version_id);
 comment on table public.rag_version_documents is 'RAG版本文档单元表（文档内容快照）';
 comment on column public.rag_version_documents.id is '主键ID';
 comment on column public.rag_version_documents.rag_version_id is '关联RAG版本ID';
@@ -592,8 +760,11 @@ create table public.rag_version_files (
                                           created_at timestamp without time zone not null default CURRENT_TIMESTAMP, -- 创建时间
                                           updated_at timestamp without time zone not null default CURRENT_TIMESTAMP, -- 更新时间
                                           deleted_at timestamp without time zone, -- 删除时间（软删除）
-                                          file_page_size integer -- 文件页数
+                                          file_page_size integer, -- 文件页数
+                                          chunk_set_id character varying(64) -- 引用的分块集合ID
 );
+create index idx_rag_version_files_version_id on rag_version_files using btree (rag_version_id, original_file_id);
+create index idx_rag_version_files_chunk_set_id on rag_version_files using btree (chunk_set_id);
 comment on table public.rag_version_files is 'RAG版本文件表（文件快照）';
 comment on column public.rag_version_files.id is '主键ID';
 comment on column public.rag_version_files.rag_version_id is '关联RAG版本ID';
@@ -608,6 +779,7 @@ comment on column public.rag_version_files.created_at is '创建时间';
 comment on column public.rag_version_files.updated_at is '更新时间';
 comment on column public.rag_version_files.deleted_at is '删除时间（软删除）';
 comment on column public.rag_version_files.file_page_size is '文件页数';
+comment on column public.rag_version_files.chunk_set_id is '引用的分块集合ID，文件没有文档时为空';
 
 create table public.rag_versions (
                                      id character varying(36) primary key not null, -- 主键ID
@@ -894,6 +1066,7 @@ create table public.user_rag_documents (
                                            updated_at timestamp without time zone not null default CURRENT_TIMESTAMP,
                                            deleted_at timestamp without time zone
 );
+create index idx_user_rag_documents_user_rag_id on user_rag_documents using btree (user_rag_id);
 comment on table public.user_rag_documents is '用户RAG文档快照表 - 用于SNAPSHOT类型RAG的完全数据隔离';
 comment on column public.user_rag_documents.id is '主键ID';
 comment on column public.user_rag_documents.user_rag_id is '关联user_rags表的ID';
@@ -916,8 +1089,11 @@ create table public.user_rag_files (
                                        created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
                                        updated_at timestamp without time zone not null default CURRENT_TIMESTAMP,
                                        deleted_at timestamp without time zone,
-                                       file_page_size integer default 0 -- 文件页数（快照）
+                                       file_page_size integer default 0, -- 文件页数（快照）
+                                       chunk_set_id character varying(64) -- 引用的分块集合ID
 );
+create index idx_user_rag_files_user_rag_id on user_rag_files using btree (user_rag_id, original_file_id);
+create index idx_user_rag_files_chunk_set_id on user_rag_files using btree (chunk_set_id);
 comment on table public.user_rag_files is '用户RAG文件快照表 - 用于SNAPSHOT类型RAG的完全数据隔离';
 comment on column public.user_rag_files.id is '主键ID';
 comment on column public.user_rag_files.user_rag_id is '关联user_rags表的ID';
@@ -929,6 +1105,7 @@ comment on column public.user_rag_files.file_path is '文件存储路径';
 comment on column public.user_rag_files.process_status is '处理状态（快照）';
 comment on column public.user_rag_files.embedding_status is '向量化状态（快照）';
 comment on column public.user_rag_files.file_page_size is '文件页数（快照）';
+comment on column public.user_rag_files.chunk_set_id is '引用的分块集合ID，文件没有文档时为空';
 
 create table public.user_rags (
                                   id character varying(36) primary key not null, -- 主键ID
@@ -1189,4 +1366,6 @@ CREATE TABLE IF NOT EXISTS public.memory_items (
     created_at timestamp without time zone default CURRENT_TIMESTAMP, -- 创建时间
     updated_at timestamp without time zone default CURRENT_TIMESTAMP, -- 更新时间
     deleted_at timestamp without time zone -- 删除时间（软删除）
-    )
+    );
+
+create index idx_memory_items_user_dedupe on memory_items using btree (user_id, dedupe_hash) where deleted_at is null;